@@ -2,6 +2,10 @@ package org.labubus.benchmarks;
 
 import org.labubus.indexing.service.InvertedIndexBuilder;
 import org.labubus.indexing.service.MetadataExtractor;
+import org.labubus.indexing.service.AsciiTokenizer;
+import org.labubus.indexing.service.TermTable;
+import org.labubus.indexing.service.Tokenizer;
+import org.labubus.indexing.service.UnicodeTokenizer;
 import org.labubus.indexing.storage.DatalakeReader;
 import org.labubus.indexing.model.BookMetadata;
 import org.labubus.indexing.indexer.InvertedIndexWriter;
@@ -9,6 +13,7 @@ import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -30,6 +35,8 @@ public class DataProcessingBenchmark {
 
 	private DatalakeReader datalakeReader;
 	private MetadataExtractor metadataExtractor;
+	private final Tokenizer asciiTokenizer = new AsciiTokenizer(50);
+	private final Tokenizer unicodeTokenizer = new UnicodeTokenizer(50);
 	private List<Integer> availableBooks;
 
 	private String sampleHeader;
@@ -70,6 +77,22 @@ public class DataProcessingBenchmark {
 		blackhole.consume(words);
 	}
 
+	/**
+	 * Benchmark: Tokenize a single book body with the indexer's ASCII scanner
+	 */
+	@Benchmark
+	public void tokenizeSingleBookAscii(Blackhole blackhole) throws IOException {
+		blackhole.consume(tokenize(asciiTokenizer));
+	}
+
+	/**
+	 * Benchmark: Tokenize a single book body with the indexer's Unicode scanner
+	 */
+	@Benchmark
+	public void tokenizeSingleBookUnicode(Blackhole blackhole) throws IOException {
+		blackhole.consume(tokenize(unicodeTokenizer));
+	}
+
 	/**
 	 * Benchmark: Extract metadata from a single book header
 	 */
@@ -146,6 +169,16 @@ public class DataProcessingBenchmark {
 		blackhole.consume(allMetadata);
 	}
 
+	private TermTable tokenize(Tokenizer tokenizer) throws IOException {
+		TermTable terms = new TermTable(Set.of(), false);
+		tokenizer.tokenize(new StringReader(sampleBody), (word, length, position) -> {
+			if (length >= 3 && length <= 50) {
+				terms.add(word, length, position);
+			}
+		});
+		return terms;
+	}
+
 	private Set<String> extractWords(String text, int minLength, int maxLength) {
 		Set<String> words = new HashSet<>();
 		String[] tokens = text.toLowerCase().split("\\s+");
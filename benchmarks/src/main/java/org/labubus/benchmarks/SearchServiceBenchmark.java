@@ -1,5 +1,6 @@
 package org.labubus.benchmarks;
 
+import org.labubus.indexing.indexer.BinaryIndexWriter;
 import org.labubus.indexing.indexer.InvertedIndexWriter;
 import org.labubus.indexing.indexer.JsonIndexWriter;
 import org.labubus.indexing.model.BookMetadata;
@@ -7,6 +8,15 @@ import org.labubus.indexing.repository.SqliteMetadataRepository;
 import org.labubus.indexing.service.InvertedIndexBuilder;
 import org.labubus.indexing.service.MetadataExtractor;
 import org.labubus.indexing.storage.DatalakeReader;
+import org.labubus.search.indexer.BinaryIndexReader;
+import org.labubus.search.postings.ArrayPostingsEngine;
+import org.labubus.search.postings.DocSet;
+import org.labubus.search.query.QueryNode;
+import org.labubus.search.query.QueryParser;
+import org.labubus.search.query.QueryPlanner;
+import org.labubus.search.ranking.Bm25Scorer;
+import org.labubus.search.ranking.ScoredBook;
+import org.labubus.search.service.MetadataStore;
 import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
@@ -39,6 +49,12 @@ public class SearchServiceBenchmark {
 	private Map<String, Set<Integer>> invertedIndex;
 	private List<Integer> availableBooks;
 	private List<BookMetadata> allMetadata;
+	private QueryPlanner queryPlanner;
+	private QueryNode rankedQuery;
+	private Bm25Scorer exhaustiveScorer;
+	private Bm25Scorer wandScorer;
+	private org.labubus.search.repository.SqliteMetadataRepository searchRepository;
+	private MetadataStore metadataStore;
 
 	@Param({"50", "100", "300"})
 	private int datasetSize;
@@ -63,6 +79,8 @@ public class SearchServiceBenchmark {
 		String indexDir = BENCHMARK_DIR;
 		InvertedIndexWriter indexWriter = new JsonIndexWriter(indexDir, "search_index_" + datasetSize + ".json");
 		InvertedIndexBuilder indexBuilder = new InvertedIndexBuilder(indexWriter, 3, 50, new HashSet<>());
+		BinaryIndexWriter binaryWriter = new BinaryIndexWriter(indexDir, "search_index_" + datasetSize);
+		InvertedIndexBuilder binaryBuilder = new InvertedIndexBuilder(binaryWriter, 3, 50, new HashSet<>());
 
 		System.out.println("Building dataset with " + datasetSize + " books...");
 		allMetadata = new ArrayList<>();
@@ -77,11 +95,23 @@ public class SearchServiceBenchmark {
 
 			String body = datalakeReader.readBookBody(bookId);
 			indexBuilder.indexBook(bookId, body);
+			binaryBuilder.indexBook(bookId, body);
 		}
 
 		indexWriter.save();
 		invertedIndex = new HashMap<>(indexWriter.getIndex());
 
+		binaryWriter.save();
+		BinaryIndexReader binaryReader = new BinaryIndexReader(indexDir, "search_index_" + datasetSize);
+		binaryReader.load();
+		queryPlanner = new QueryPlanner(new ArrayPostingsEngine(binaryReader));
+		rankedQuery = new QueryParser(QueryParser.Operator.OR).parse("adventure mystery treasure the");
+		exhaustiveScorer = new Bm25Scorer(binaryReader, 1.2, 0.75, false);
+		wandScorer = new Bm25Scorer(binaryReader, 1.2, 0.75, true);
+		searchRepository = new org.labubus.search.repository.SqliteMetadataRepository(dbPath);
+		metadataStore = new MetadataStore(searchRepository);
+		metadataStore.load();
+
 		System.out.println("Dataset ready: " + datasetSize + " books, " + invertedIndex.size() + " unique words");
 	}
 
@@ -90,6 +120,9 @@ public class SearchServiceBenchmark {
 		if (repository != null) {
 			repository.close();
 		}
+		if (searchRepository != null) {
+			searchRepository.close();
+		}
 
 		try {
 			Files.walk(Paths.get(BENCHMARK_DIR))
@@ -168,6 +201,14 @@ public class SearchServiceBenchmark {
 		blackhole.consume(filtered);
 	}
 
+	/**
+	 * Benchmark: Combined filters (author + language) as intersections of the search service's precomputed bitmaps
+	 */
+	@Benchmark
+	public void filterByAuthorAndLanguageBitmaps(Blackhole blackhole) {
+		blackhole.consume(metadataStore.matching("a", "en", null));
+	}
+
 	/**
 	 * Benchmark: Combined filters (author + language + year)
 	 */
@@ -232,6 +273,22 @@ public class SearchServiceBenchmark {
 		blackhole.consume(ranked);
 	}
 
+	/**
+	 * Benchmark: Full search pipeline with BM25 scoring every match, then fetching the top 20
+	 */
+	@Benchmark
+	public void fullSearchPipelineExhaustive(Blackhole blackhole) throws SQLException {
+		blackhole.consume(rankedSearch(exhaustiveScorer));
+	}
+
+	/**
+	 * Benchmark: Full search pipeline with WAND top-k pruning, then fetching the top 20
+	 */
+	@Benchmark
+	public void fullSearchPipelineWand(Blackhole blackhole) throws SQLException {
+		blackhole.consume(rankedSearch(wandScorer));
+	}
+
 	/**
 	 * Benchmark: Retrieve books by IDs from database
 	 */
@@ -248,6 +305,25 @@ public class SearchServiceBenchmark {
 		blackhole.consume(books);
 	}
 
+	/**
+	 * Benchmark: Expand a misspelled word to the indexed words within two edits
+	 */
+	@Benchmark
+	public void expandFuzzyWord(Blackhole blackhole) {
+		blackhole.consume(queryPlanner.expand(new QueryNode.Fuzzy("adventrue", 2)));
+	}
+
+	private List<BookMetadata> rankedSearch(Bm25Scorer scorer) throws SQLException {
+		DocSet matches = queryPlanner.evaluate(rankedQuery);
+		List<ScoredBook> top = scorer.topK(matches, rankedQuery.positiveTerms(), 20);
+
+		List<BookMetadata> books = new ArrayList<>(top.size());
+		for (ScoredBook scored : top) {
+			repository.findById(scored.bookId()).ifPresent(books::add);
+		}
+		return books;
+	}
+
 	private Set<Integer> searchIndex(String query) {
 		String[] words = query.toLowerCase().trim().split("\\s+");
 		Set<Integer> allResults = new HashSet<>();
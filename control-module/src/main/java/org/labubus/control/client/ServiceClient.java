@@ -6,11 +6,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ServiceClient {
 	private static final Logger logger = LoggerFactory.getLogger(ServiceClient.class);
@@ -92,6 +96,33 @@ public class ServiceClient {
 		return response.body();
 	}
 
+	/**
+	 * Send POST request with JSON body and hand each line of a streamed
+	 * (newline-delimited) response to {@code onLine} as it arrives
+	 */
+	public void postLines(String url, String jsonBody, Consumer<String> onLine) throws IOException, InterruptedException {
+		logger.debug("POST {} (streamed) with body: {}", url, jsonBody);
+
+		HttpRequest request = HttpRequest.newBuilder()
+				.uri(URI.create(url))
+				.timeout(Duration.ofMillis(readTimeout))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+				.build();
+
+		HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+
+		try (Stream<String> lines = response.body()) {
+			if (response.statusCode() >= 400) {
+				throw new IOException("HTTP " + response.statusCode() + " for URL: " + url + " - "
+						+ lines.collect(Collectors.joining("\n")));
+			}
+			lines.filter(line -> !line.isBlank()).forEach(onLine);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
 	/**
 	 * Check if a service is reachable
 	 */
@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PipelineService {
 	private static final Logger logger = LoggerFactory.getLogger(PipelineService.class);
@@ -103,35 +104,42 @@ public class PipelineService {
 		updateStatus("verification", "completed", "All services healthy", 0, bookIds.size());
 
 		updateStatus("ingestion", "running", "Downloading books...", 0, bookIds.size());
-		int successfulIngestions = 0;
-		int failedIngestions = 0;
-
-		for (int i = 0; i < bookIds.size(); i++) {
-			int bookId = bookIds.get(i);
-			try {
-				String url = ingestionUrl + "/ingest/" + bookId;
-				String response = client.post(url);
-				JsonObject json = client.parseJson(response);
-
-				String status = json.get("status").getAsString();
+		// One streamed batch request; the ingestion service downloads in parallel and reports each book as it finishes
+		AtomicInteger completedIngestions = new AtomicInteger();
+		AtomicInteger successCount = new AtomicInteger();
+		try {
+			String body = client.toJson(Map.of("bookIds", bookIds));
+			client.postLines(ingestionUrl + "/ingest/batch", body, line -> {
+				JsonObject json = client.parseJson(line);
+				if (!"book".equals(json.get("type").getAsString())) {
+					logger.info("Batch ingestion summary: {}", line);
+					return;
+				}
+				JsonObject book = json.getAsJsonObject("book");
+				int bookId = book.get("bookId").getAsInt();
+				String status = book.get("status").getAsString();
 				if ("downloaded".equals(status) || "already_exists".equals(status)) {
-					successfulIngestions++;
-					logger.info("Ingested book {} ({}/{})", bookId, i + 1, bookIds.size());
+					successCount.incrementAndGet();
+					logger.info("Ingested book {} ({}/{})", bookId, json.get("completed").getAsInt(),
+							json.get("total").getAsInt());
 				} else {
-					failedIngestions++;
-					errors.add("Failed to ingest book " + bookId + ": " + status);
+					String message = book.has("message") ? book.get("message").getAsString() : status;
+					errors.add("Failed to ingest book " + bookId + ": " + message);
 				}
-
-			} catch (Exception e) {
-				failedIngestions++;
-				String errorMsg = "Failed to ingest book " + bookId + ": " + e.getMessage();
-				errors.add(errorMsg);
-				logger.error(errorMsg);
-			}
-
-			updateStatus("ingestion", "running", "Downloading books...", i + 1, bookIds.size());
+				completedIngestions.set(json.get("completed").getAsInt());
+				updateStatus("ingestion", "running", "Downloading books...",
+						json.get("completed").getAsInt(), json.get("total").getAsInt());
+			});
+		} catch (Exception e) {
+			String errorMsg = "Batch ingestion stopped after " + completedIngestions.get() + " books: " + e.getMessage();
+			errors.add(errorMsg);
+			logger.error(errorMsg);
 		}
 
+		// Books never reported, e.g. because the stream broke, count as failed
+		int successfulIngestions = successCount.get();
+		int failedIngestions = new HashSet<>(bookIds).size() - successfulIngestions;
+
 		details.put("successful_ingestions", successfulIngestions);
 		details.put("failed_ingestions", failedIngestions);
 		updateStatus("ingestion", "completed",
@@ -2,15 +2,22 @@ package org.labubus.indexing;
 
 import io.javalin.Javalin;
 import org.labubus.indexing.controller.IndexingController;
+import org.labubus.indexing.indexer.BinaryIndexWriter;
 import org.labubus.indexing.indexer.InvertedIndexWriter;
 import org.labubus.indexing.indexer.JsonIndexWriter;
+import org.labubus.indexing.indexer.MergePolicy;
+import org.labubus.indexing.indexer.SegmentedIndexWriter;
+import org.labubus.indexing.indexer.TieredMergePolicy;
 import org.labubus.indexing.repository.MetadataRepository;
 import org.labubus.indexing.repository.MongoMetadataRepository;
 import org.labubus.indexing.repository.PostgreSqlMetadataRepository;
 import org.labubus.indexing.repository.SqliteMetadataRepository;
+import org.labubus.indexing.service.AsciiTokenizer;
 import org.labubus.indexing.service.IndexingService;
 import org.labubus.indexing.service.InvertedIndexBuilder;
 import org.labubus.indexing.service.MetadataExtractor;
+import org.labubus.indexing.service.Tokenizer;
+import org.labubus.indexing.service.UnicodeTokenizer;
 import org.labubus.indexing.storage.DatalakeReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,8 +62,11 @@ public class IndexingApp {
 			String stopWordsStr = config.getProperty("index.stop.words", "");
 			Set<String> stopWords = InvertedIndexBuilder.parseStopWords(stopWordsStr);
 
+			String tokenizerType = config.getProperty("index.tokenizer", "ascii");
+			Tokenizer tokenizer = createTokenizer(tokenizerType, maxWordLength);
+
 			InvertedIndexBuilder indexBuilder = new InvertedIndexBuilder(
-					indexWriter, minWordLength, maxWordLength, stopWords
+					indexWriter, minWordLength, maxWordLength, stopWords, tokenizer
 			);
 			logger.info("  Index Builder: min length={}, max length={}, stop words={}",
 					minWordLength, maxWordLength, stopWords.size());
@@ -68,12 +78,19 @@ public class IndexingApp {
 				logger.info("  No existing index found, will create new one");
 			}
 
+			int rebuildThreads = Integer.parseInt(config.getProperty("index.rebuild.threads", "0"));
+			if (rebuildThreads <= 0) {
+				rebuildThreads = Runtime.getRuntime().availableProcessors();
+			}
+			logger.info("  Rebuild threads: {}", rebuildThreads);
+
 			IndexingService indexingService = new IndexingService(
 					datalakeReader,
 					metadataExtractor,
 					metadataRepository,
 					indexBuilder,
-					indexWriter
+					indexWriter,
+					rebuildThreads
 			);
 
 			IndexingController controller = new IndexingController(indexingService);
@@ -142,7 +159,14 @@ public class IndexingApp {
 		System.out.println("  --db.type <type>              Database type (default: sqlite)");
 		System.out.println("                                Options: sqlite, postgresql, mongodb");
 		System.out.println("  --index.type <type>           Index storage type (default: json)");
-		System.out.println("                                Options: json, folder");
+		System.out.println("                                Options: json, binary, segmented");
+		System.out.println("  --index.positions <bool>      Store word positions, binary and segmented (default: false)");
+		System.out.println("  --index.tokenizer <type>      How body text is split into words (default: ascii)");
+		System.out.println("                                Options: ascii, unicode");
+		System.out.println("  --index.rebuild.threads <n>   Threads for a full rebuild, 0 = all cores (default: 0)");
+		System.out.println("  --index.segments.flush.books <n>  Books per new segment, segmented only (default: 1)");
+		System.out.println("  --index.segments.merge.policy <p> Segment merge policy (default: tiered)");
+		System.out.println("                                Options: tiered, none");
 		System.out.println("  --server.port <port>          Server port (default: 7002)");
 		System.out.println("  --datalake.path <path>        Datalake path (default: ../datalake)");
 		System.out.println("  --datamart.path <path>        Datamart path (default: ../datamart)");
@@ -202,8 +226,49 @@ public class IndexingApp {
 			String indexFilename = config.getProperty("index.filename", "inverted_index.json");
 			logger.info("  Index: JSON file ({}/{})", datamartPath, indexFilename);
 			return new JsonIndexWriter(datamartPath, indexFilename);
+		} else if (type.equalsIgnoreCase("binary")) {
+			String indexName = config.getProperty("index.binary.name", "inverted_index");
+			boolean positions = Boolean.parseBoolean(config.getProperty("index.positions", "false"));
+			logger.info("  Index: Binary files ({}/{}.terms, .postings{})", datamartPath, indexName,
+					positions ? ", .positions" : "");
+			return new BinaryIndexWriter(datamartPath, indexName, positions);
+		} else if (type.equalsIgnoreCase("segmented")) {
+			boolean positions = Boolean.parseBoolean(config.getProperty("index.positions", "false"));
+			int flushBooks = Integer.parseInt(config.getProperty("index.segments.flush.books", "1"));
+			long flushInterval = Long.parseLong(config.getProperty("index.segments.flush.interval.ms", "1000"));
+			MergePolicy mergePolicy = createMergePolicy(config.getProperty("index.segments.merge.policy", "tiered"), config);
+			logger.info("  Index: Segments ({}/segments, flush every {} books or {} ms)",
+					datamartPath, flushBooks, flushInterval);
+			return new SegmentedIndexWriter(datamartPath, positions, mergePolicy, flushBooks, flushInterval);
+		} else {
+			throw new IllegalArgumentException("Unknown index type: " + type + ". Valid options: json, binary, segmented");
+		}
+	}
+
+	private static MergePolicy createMergePolicy(String type, Properties config) {
+		if (type.equalsIgnoreCase("tiered")) {
+			int factor = Integer.parseInt(config.getProperty("index.segments.merge.factor", "10"));
+			int maxAtOnce = Integer.parseInt(config.getProperty("index.segments.merge.max.at.once", "10"));
+			int floorBooks = Integer.parseInt(config.getProperty("index.segments.merge.floor.books", "10"));
+			logger.info("  Merge policy: tiered ({} segments per tier, floor {} books)", factor, floorBooks);
+			return new TieredMergePolicy(factor, maxAtOnce, floorBooks);
+		} else if (type.equalsIgnoreCase("none")) {
+			logger.info("  Merge policy: none");
+			return MergePolicy.NONE;
+		} else {
+			throw new IllegalArgumentException("Unknown merge policy: " + type + ". Valid options: tiered, none");
+		}
+	}
+
+	private static Tokenizer createTokenizer(String type, int maxWordLength) {
+		if (type.equalsIgnoreCase("ascii")) {
+			logger.info("  Tokenizer: ASCII letters");
+			return new AsciiTokenizer(maxWordLength);
+		} else if (type.equalsIgnoreCase("unicode")) {
+			logger.info("  Tokenizer: Unicode letters");
+			return new UnicodeTokenizer(maxWordLength);
 		} else {
-			throw new IllegalArgumentException("Unknown index type: " + type);
+			throw new IllegalArgumentException("Unknown tokenizer: " + type + ". Valid options: ascii, unicode");
 		}
 	}
 
@@ -95,14 +95,17 @@ public class IndexingController {
 		try {
 			logger.info("Received index rebuild request");
 
-			int booksIndexed = indexingService.rebuildIndex();
+			IndexingService.RebuildResult result = indexingService.rebuildIndex();
 
 			Map<String, Object> response = new HashMap<>();
 			response.put("status", "completed");
-			response.put("books_indexed", booksIndexed);
+			response.put("books_indexed", result.booksIndexed());
+			response.put("books_failed", result.booksFailed());
+			response.put("elapsed_ms", result.elapsedMillis());
+			response.put("books_per_second", String.format("%.1f", result.booksPerSecond()));
 
 			ctx.status(200).result(gson.toJson(response));
-			logger.info("Successfully rebuilt index with {} books", booksIndexed);
+			logger.info("Successfully rebuilt index with {} books", result.booksIndexed());
 
 		} catch (Exception e) {
 			Map<String, String> error = new HashMap<>();
@@ -0,0 +1,481 @@
+package org.labubus.indexing.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.labubus.indexing.indexer.BinaryIndexFormat.*;
+
+/**
+ * Writes the index as a sorted term dictionary plus a postings file, so that
+ * search-service can memory-map it instead of parsing JSON.
+ * Term frequencies and per-book lengths are kept for BM25 ranking. With positions
+ * enabled, another file records where each word occurs in each book.
+ */
+public class BinaryIndexWriter implements InvertedIndexWriter {
+	private static final Logger logger = LoggerFactory.getLogger(BinaryIndexWriter.class);
+	private static final int[] NO_POSITIONS = new int[0];
+	private final Map<String, PostingList> index;
+	private final Map<String, Map<Integer, int[]>> positions;
+	private final Map<Integer, Integer> documentLengths;
+	private final String datamartPath;
+	private final String indexName;
+	private final boolean storePositions;
+
+	public BinaryIndexWriter(String datamartPath, String indexName) {
+		this(datamartPath, indexName, false);
+	}
+
+	public BinaryIndexWriter(String datamartPath, String indexName, boolean storePositions) {
+		this.datamartPath = datamartPath;
+		this.indexName = indexName;
+		this.storePositions = storePositions;
+		this.index = new HashMap<>();
+		this.positions = new HashMap<>();
+		this.documentLengths = new HashMap<>();
+
+		try {
+			Files.createDirectories(Paths.get(datamartPath));
+			logger.info("Binary index writer initialized at: {}", datamartPath);
+		} catch (IOException e) {
+			logger.error("Failed to create datamart directory", e);
+			throw new RuntimeException("Failed to create datamart directory", e);
+		}
+	}
+
+	@Override
+	public void addWord(String word, int bookId) {
+		word = word.toLowerCase().trim();
+		index.computeIfAbsent(word, k -> new PostingList()).addInt(bookId);
+	}
+
+	@Override
+	public void addWord(String word, int bookId, int frequency) {
+		word = word.toLowerCase().trim();
+		index.computeIfAbsent(word, k -> new PostingList()).addInt(bookId, frequency);
+	}
+
+	@Override
+	public void addWord(String word, int bookId, int[] wordPositions) {
+		word = word.toLowerCase().trim();
+		index.computeIfAbsent(word, k -> new PostingList()).addInt(bookId, wordPositions.length);
+
+		if (storePositions) {
+			positions.computeIfAbsent(word, k -> new HashMap<>()).put(bookId, wordPositions);
+		}
+	}
+
+	@Override
+	public void setDocumentLength(int bookId, int length) {
+		documentLengths.put(bookId, length);
+	}
+
+	@Override
+	public boolean storesPositions() {
+		return storePositions;
+	}
+
+	@Override
+	public void save() throws IOException {
+		Path termsPath = termsPath();
+		Path postingsPath = postingsPath();
+		Path termsTmp = termsPath.resolveSibling(termsPath.getFileName() + ".tmp");
+		Path postingsTmp = postingsPath.resolveSibling(postingsPath.getFileName() + ".tmp");
+
+		List<byte[]> terms = sortedTerms();
+		long buildId = ThreadLocalRandom.current().nextLong();
+
+		try (DataOutputStream termsOut = openStream(termsTmp);
+			 DataOutputStream postingsOut = openStream(postingsTmp)) {
+
+			termsOut.writeInt(TERMS_MAGIC);
+			termsOut.writeInt(VERSION);
+			termsOut.writeLong(buildId);
+			termsOut.writeInt(terms.size());
+			termsOut.writeInt(TERM_BLOCK_SIZE);
+
+			postingsOut.writeInt(POSTINGS_MAGIC);
+			postingsOut.writeInt(VERSION);
+			postingsOut.writeLong(buildId);
+
+			long postingsOffset = POSTINGS_HEADER_BYTES;
+
+			for (byte[] term : terms) {
+				PostingList bookIds = index.get(new String(term, StandardCharsets.UTF_8));
+
+				termsOut.writeLong(postingsOffset);
+				termsOut.writeInt(bookIds.size());
+
+				postingsOffset += bookIds.writeDeltas(postingsOut);
+				postingsOffset += bookIds.writeFrequencies(postingsOut);
+			}
+
+			writeDictionary(termsOut, terms);
+		}
+
+		saveDocumentLengths(buildId);
+
+		if (storePositions) {
+			savePositions(terms, buildId);
+		} else {
+			Files.deleteIfExists(positionsPath());
+		}
+
+		Files.move(postingsTmp, postingsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Files.move(termsTmp, termsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		logger.info("Saved binary inverted index to {} ({} unique words, {} MB)",
+				termsPath, index.size(), getSizeInMB());
+	}
+
+	/**
+	 * Front-codes the sorted terms: block offsets first, so the blocks are encoded in memory
+	 */
+	private static void writeDictionary(DataOutputStream out, List<byte[]> terms) throws IOException {
+		int blockCount = (terms.size() + TERM_BLOCK_SIZE - 1) / TERM_BLOCK_SIZE;
+		ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+		DataOutputStream blocks = new DataOutputStream(blockBytes);
+		int[] offsets = new int[blockCount];
+
+		byte[] previous = null;
+		for (int i = 0; i < terms.size(); i++) {
+			byte[] term = terms.get(i);
+			if (i % TERM_BLOCK_SIZE == 0) {
+				offsets[i / TERM_BLOCK_SIZE] = blocks.size();
+				PostingList.writeVInt(blocks, term.length);
+				blocks.write(term);
+			} else {
+				int shared = Arrays.mismatch(previous, term);
+				shared = shared < 0 ? term.length : Math.min(shared, term.length);
+				PostingList.writeVInt(blocks, shared);
+				PostingList.writeVInt(blocks, term.length - shared);
+				blocks.write(term, shared, term.length - shared);
+			}
+			previous = term;
+		}
+
+		for (int offset : offsets) {
+			out.writeInt(offset);
+		}
+		blockBytes.writeTo(out);
+	}
+
+	/**
+	 * Decodes every term of the dictionary in order
+	 */
+	private static List<String> readDictionary(ByteBuffer in, int termCount, int blockSize) {
+		int blockCount = (termCount + blockSize - 1) / blockSize;
+		in.position(TERMS_HEADER_BYTES + termCount * ENTRY_BYTES + blockCount * Integer.BYTES);
+
+		List<String> terms = new ArrayList<>(termCount);
+		byte[] term = new byte[0];
+		for (int i = 0; i < termCount; i++) {
+			int shared = i % blockSize == 0 ? 0 : PostingList.readVInt(in);
+			int suffix = PostingList.readVInt(in);
+			term = Arrays.copyOf(term, shared + suffix);
+			in.get(term, shared, suffix);
+			terms.add(new String(term, StandardCharsets.UTF_8));
+		}
+		return terms;
+	}
+
+	private void saveDocumentLengths(long buildId) throws IOException {
+		Path doclensPath = doclensPath();
+		Path doclensTmp = doclensPath.resolveSibling(doclensPath.getFileName() + ".tmp");
+
+		int[] bookIds = documentLengths.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+		long totalLength = 0;
+		for (int length : documentLengths.values()) {
+			totalLength += length;
+		}
+
+		try (DataOutputStream out = openStream(doclensTmp)) {
+			out.writeInt(DOCLENS_MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(buildId);
+			out.writeInt(bookIds.length);
+			out.writeLong(totalLength);
+			for (int bookId : bookIds) {
+				out.writeInt(bookId);
+				out.writeInt(documentLengths.get(bookId));
+			}
+		}
+
+		Files.move(doclensTmp, doclensPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Sizes every block first so the offset table can be written ahead of the blocks in one pass
+	 */
+	private void savePositions(List<byte[]> terms, long buildId) throws IOException {
+		Path positionsPath = positionsPath();
+		Path positionsTmp = positionsPath.resolveSibling(positionsPath.getFileName() + ".tmp");
+
+		long[] blockOffsets = new long[terms.size()];
+		long offset = POSITIONS_HEADER_BYTES + (long) terms.size() * Long.BYTES;
+		for (int i = 0; i < terms.size(); i++) {
+			String word = new String(terms.get(i), StandardCharsets.UTF_8);
+			blockOffsets[i] = offset;
+			offset += blockSize(index.get(word), positions.getOrDefault(word, Collections.emptyMap()));
+		}
+
+		try (DataOutputStream out = openStream(positionsTmp)) {
+			out.writeInt(POSITIONS_MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(buildId);
+			out.writeInt(terms.size());
+			for (long blockOffset : blockOffsets) {
+				out.writeLong(blockOffset);
+			}
+
+			for (byte[] term : terms) {
+				String word = new String(term, StandardCharsets.UTF_8);
+				PostingList bookIds = index.get(word);
+				Map<Integer, int[]> wordPositions = positions.getOrDefault(word, Collections.emptyMap());
+
+				for (int i = 0; i < bookIds.size(); i++) {
+					int[] bookPositions = wordPositions.getOrDefault(bookIds.getInt(i), NO_POSITIONS);
+					PostingList.writeVInt(out, bookPositions.length);
+					PostingList.ofSorted(bookPositions, bookPositions.length).writeDeltas(out);
+				}
+			}
+		}
+
+		Files.move(positionsTmp, positionsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static long blockSize(PostingList bookIds, Map<Integer, int[]> wordPositions) {
+		long bytes = 0;
+		for (int i = 0; i < bookIds.size(); i++) {
+			int[] bookPositions = wordPositions.getOrDefault(bookIds.getInt(i), NO_POSITIONS);
+			bytes += PostingList.vIntSize(bookPositions.length);
+			int previous = 0;
+			for (int position : bookPositions) {
+				bytes += PostingList.vIntSize(position - previous);
+				previous = position;
+			}
+		}
+		return bytes;
+	}
+
+	@Override
+	public void load() throws IOException {
+		Path termsPath = termsPath();
+		Path postingsPath = postingsPath();
+
+		if (!Files.exists(termsPath) || !Files.exists(postingsPath)) {
+			logger.warn("Index files do not exist: {}", termsPath);
+			return;
+		}
+
+		ByteBuffer terms = map(termsPath);
+		ByteBuffer postings = map(postingsPath);
+
+		if (terms.getInt(0) != TERMS_MAGIC || postings.getInt(0) != POSTINGS_MAGIC) {
+			throw new IOException("Not a binary index: " + termsPath);
+		}
+		if (terms.getInt(4) != VERSION || postings.getInt(4) != VERSION) {
+			throw new IOException("Unsupported binary index version in " + termsPath);
+		}
+		long buildId = terms.getLong(BUILD_ID_OFFSET);
+		if (postings.getLong(BUILD_ID_OFFSET) != buildId) {
+			throw new IOException("Index files are from different builds: " + termsPath + ", " + postingsPath);
+		}
+
+		int termCount = terms.getInt(16);
+		List<String> words = readDictionary(terms, termCount, terms.getInt(20));
+
+		index.clear();
+		for (int i = 0; i < termCount; i++) {
+			int entry = TERMS_HEADER_BYTES + i * ENTRY_BYTES;
+			int postingsOffset = (int) terms.getLong(entry);
+			int docFreq = terms.getInt(entry + 8);
+
+			postings.position(postingsOffset);
+			PostingList bookIds = PostingList.readDeltas(postings, docFreq);
+			bookIds.readFrequencies(postings);
+			index.put(words.get(i), bookIds);
+		}
+
+		documentLengths.clear();
+		loadDocumentLengths(buildId);
+
+		positions.clear();
+		if (storePositions) {
+			loadPositions(words, buildId);
+		}
+
+		logger.info("Loaded binary inverted index from {} ({} unique words)", termsPath, index.size());
+	}
+
+	private void loadDocumentLengths(long buildId) throws IOException {
+		Path doclensPath = doclensPath();
+		if (!Files.exists(doclensPath)) {
+			logger.warn("No document lengths at {}; ranking will not normalize by length", doclensPath);
+			return;
+		}
+
+		ByteBuffer in = map(doclensPath);
+		if (in.getInt(0) != DOCLENS_MAGIC || in.getInt(4) != VERSION) {
+			throw new IOException("Not a document lengths file: " + doclensPath);
+		}
+		if (in.getLong(BUILD_ID_OFFSET) != buildId) {
+			throw new IOException("Document lengths are from a different build: " + doclensPath);
+		}
+
+		int bookCount = in.getInt(16);
+		for (int i = 0; i < bookCount; i++) {
+			int entry = DOCLENS_HEADER_BYTES + i * DOCLENS_ENTRY_BYTES;
+			documentLengths.put(in.getInt(entry), in.getInt(entry + 4));
+		}
+	}
+
+	private void loadPositions(List<String> words, long buildId) throws IOException {
+		int termCount = words.size();
+		Path positionsPath = positionsPath();
+		if (!Files.exists(positionsPath)) {
+			logger.warn("No positions file at {}; phrase queries will not match books indexed before now", positionsPath);
+			return;
+		}
+
+		ByteBuffer in = map(positionsPath);
+		if (in.getInt(0) != POSITIONS_MAGIC || in.getInt(4) != VERSION
+				|| in.getLong(BUILD_ID_OFFSET) != buildId || in.getInt(16) != termCount) {
+			throw new IOException("Positions file does not match index: " + positionsPath);
+		}
+
+		for (int i = 0; i < termCount; i++) {
+			String word = words.get(i);
+
+			PostingList bookIds = index.get(word);
+			Map<Integer, int[]> wordPositions = new HashMap<>(bookIds.size() * 2);
+			in.position((int) in.getLong(POSITIONS_HEADER_BYTES + i * Long.BYTES));
+			for (int j = 0; j < bookIds.size(); j++) {
+				int frequency = PostingList.readVInt(in);
+				wordPositions.put(bookIds.getInt(j), PostingList.readDeltas(in, frequency).toIntArray());
+			}
+			positions.put(word, wordPositions);
+		}
+	}
+
+	/**
+	 * Books this index has a length for, i.e. every book indexed into it
+	 */
+	public Set<Integer> bookIds() {
+		return Collections.unmodifiableSet(documentLengths.keySet());
+	}
+
+	/**
+	 * Add every posting, position and document length to {@code target}, leaving out
+	 * the books in {@code excluded}. Used to merge segments.
+	 */
+	public void copyTo(WordSink target, Set<Integer> excluded) {
+		for (Map.Entry<String, PostingList> entry : index.entrySet()) {
+			String word = entry.getKey();
+			PostingList bookIds = entry.getValue();
+			Map<Integer, int[]> wordPositions = positions.get(word);
+
+			for (int i = 0; i < bookIds.size(); i++) {
+				int bookId = bookIds.getInt(i);
+				if (excluded.contains(bookId)) {
+					continue;
+				}
+				if (wordPositions != null) {
+					target.addWord(word, bookId, wordPositions.getOrDefault(bookId, NO_POSITIONS));
+				} else {
+					target.addWord(word, bookId, bookIds.frequencyAt(i));
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, Integer> entry : documentLengths.entrySet()) {
+			if (!excluded.contains(entry.getKey())) {
+				target.setDocumentLength(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Set<Integer>> getIndex() {
+		return Collections.<String, Set<Integer>>unmodifiableMap(index);
+	}
+
+	@Override
+	public double getSizeInMB() {
+		long bytes = 0;
+		try {
+			for (Path path : List.of(termsPath(), postingsPath(), positionsPath(), doclensPath())) {
+				if (Files.exists(path)) {
+					bytes += Files.size(path);
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to get index file size", e);
+		}
+		return bytes / (1024.0 * 1024.0);
+	}
+
+	@Override
+	public void clear() {
+		index.clear();
+		positions.clear();
+		documentLengths.clear();
+		logger.info("Cleared inverted index");
+	}
+
+	/**
+	 * Terms as UTF-8, ordered by unsigned byte comparison so readers can binary search raw bytes
+	 */
+	private List<byte[]> sortedTerms() {
+		List<byte[]> terms = new ArrayList<>(index.size());
+		for (String word : index.keySet()) {
+			terms.add(word.getBytes(StandardCharsets.UTF_8));
+		}
+		terms.sort(Arrays::compareUnsigned);
+		return terms;
+	}
+
+	private Path termsPath() {
+		return Paths.get(datamartPath, indexName + TERMS_SUFFIX);
+	}
+
+	private Path postingsPath() {
+		return Paths.get(datamartPath, indexName + POSTINGS_SUFFIX);
+	}
+
+	private Path positionsPath() {
+		return Paths.get(datamartPath, indexName + POSITIONS_SUFFIX);
+	}
+
+	private Path doclensPath() {
+		return Paths.get(datamartPath, indexName + DOCLENS_SUFFIX);
+	}
+
+	private static DataOutputStream openStream(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+	}
+
+	private static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Index file too large to map: " + path);
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+}
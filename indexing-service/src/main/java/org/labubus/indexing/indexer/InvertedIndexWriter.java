@@ -4,12 +4,45 @@ import java.io.IOException;
 import java.util.Map;
 import java.util.Set;
 
-public interface InvertedIndexWriter {
+public interface InvertedIndexWriter extends WordSink {
 	/**
 	 * Add a word and its associated book to the index
 	 */
 	void addWord(String word, int bookId);
 
+	/**
+	 * Add a word with the number of times it occurs in the book.
+	 * Writers that do not store frequencies only record the posting.
+	 */
+	@Override
+	default void addWord(String word, int bookId, int frequency) {
+		addWord(word, bookId);
+	}
+
+	/**
+	 * Add a word with the ascending positions at which it occurs in the book.
+	 * Writers that do not store positions only record the posting.
+	 */
+	@Override
+	default void addWord(String word, int bookId, int[] positions) {
+		addWord(word, bookId);
+	}
+
+	/**
+	 * Record how many indexed words a book has, for length normalization when ranking
+	 */
+	@Override
+	default void setDocumentLength(int bookId, int length) {
+	}
+
+	/**
+	 * Whether this writer keeps the positions passed to {@link #addWord(String, int, int[])}
+	 */
+	@Override
+	default boolean storesPositions() {
+		return false;
+	}
+
 	/**
 	 * Save the index to storage
 	 */
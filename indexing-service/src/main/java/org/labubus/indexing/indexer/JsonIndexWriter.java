@@ -2,7 +2,10 @@ package org.labubus.indexing.indexer;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,11 +14,12 @@ import java.lang.reflect.Type;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 public class JsonIndexWriter implements InvertedIndexWriter {
 	private static final Logger logger = LoggerFactory.getLogger(JsonIndexWriter.class);
-	private final Map<String, Set<Integer>> index;
+	private final Map<String, PostingList> index;
 	private final String datamartPath;
 	private final String indexFilename;
 	private final Gson gson;
@@ -24,7 +28,10 @@ public class JsonIndexWriter implements InvertedIndexWriter {
 		this.datamartPath = datamartPath;
 		this.indexFilename = indexFilename;
 		this.index = new HashMap<>();
-		this.gson = new GsonBuilder().setPrettyPrinting().create();
+		this.gson = new GsonBuilder()
+				.setPrettyPrinting()
+				.registerTypeAdapter(PostingList.class, new PostingListAdapter())
+				.create();
 
 		try {
 			Files.createDirectories(Paths.get(datamartPath));
@@ -38,17 +45,19 @@ public class JsonIndexWriter implements InvertedIndexWriter {
 	@Override
 	public void addWord(String word, int bookId) {
 		word = word.toLowerCase().trim();
-		index.computeIfAbsent(word, k -> new TreeSet<>()).add(bookId);
+		index.computeIfAbsent(word, k -> new PostingList()).addInt(bookId);
 	}
 
 	@Override
 	public void save() throws IOException {
 		Path indexPath = Paths.get(datamartPath, indexFilename);
 
-		Map<String, Set<Integer>> sortedIndex = new TreeMap<>(index);
+		Map<String, PostingList> sortedIndex = new TreeMap<>(index);
 
 		String json = gson.toJson(sortedIndex);
-		Files.writeString(indexPath, json);
+		Path indexTmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+		Files.writeString(indexTmp, json);
+		Files.move(indexTmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 
 		logger.info("Saved inverted index to {} ({} unique words, {} MB)",
 				indexPath, index.size(), getSizeInMB());
@@ -64,8 +73,8 @@ public class JsonIndexWriter implements InvertedIndexWriter {
 		}
 
 		String json = Files.readString(indexPath);
-		Type type = new TypeToken<Map<String, Set<Integer>>>(){}.getType();
-		Map<String, Set<Integer>> loadedIndex = gson.fromJson(json, type);
+		Type type = new TypeToken<Map<String, PostingList>>(){}.getType();
+		Map<String, PostingList> loadedIndex = gson.fromJson(json, type);
 
 		if (loadedIndex != null) {
 			index.clear();
@@ -77,7 +86,7 @@ public class JsonIndexWriter implements InvertedIndexWriter {
 
 	@Override
 	public Map<String, Set<Integer>> getIndex() {
-		return Collections.unmodifiableMap(index);
+		return Collections.<String, Set<Integer>>unmodifiableMap(index);
 	}
 
 	@Override
@@ -99,4 +108,30 @@ public class JsonIndexWriter implements InvertedIndexWriter {
 		index.clear();
 		logger.info("Cleared inverted index");
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Keeps the on-disk JSON as plain arrays of book IDs
+	 */
+	private static class PostingListAdapter extends TypeAdapter<PostingList> {
+		@Override
+		public void write(JsonWriter out, PostingList postings) throws IOException {
+			out.beginArray();
+			for (int i = 0; i < postings.size(); i++) {
+				out.value(postings.getInt(i));
+			}
+			out.endArray();
+		}
+
+		@Override
+		public PostingList read(JsonReader in) throws IOException {
+			PostingList postings = new PostingList();
+			in.beginArray();
+			while (in.hasNext()) {
+				postings.addInt(in.nextInt());
+			}
+			in.endArray();
+			postings.trimToSize();
+			return postings;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.labubus.indexing.indexer;
+
+import java.util.List;
+
+/**
+ * Decides which segments of a {@link SegmentedIndexWriter} to merge next.
+ * Merges must be contiguous so the merged segment can take their place in the
+ * manifest without changing which of two segments is newer.
+ */
+public interface MergePolicy {
+	/**
+	 * Never merge
+	 */
+	MergePolicy NONE = segments -> List.of();
+
+	/**
+	 * @param segments live segments, oldest first
+	 * @return a contiguous sublist of {@code segments} to merge, empty if none is needed
+	 */
+	List<SegmentedIndexWriter.Segment> findMerge(List<SegmentedIndexWriter.Segment> segments);
+}
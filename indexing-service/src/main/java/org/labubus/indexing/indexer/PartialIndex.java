@@ -0,0 +1,99 @@
+package org.labubus.indexing.indexer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory collector for a slice of books, filled by one worker during a parallel
+ * rebuild or buffered by the segmented writer, and then replayed into a real writer
+ * with {@link #mergeInto}. It is never saved or loaded itself.
+ * Keeps whatever the target writer would keep (frequencies, lengths and, when the
+ * target stores them, positions) so the merged index matches a serial build.
+ */
+public class PartialIndex implements WordSink {
+	private final Map<String, PostingList> index = new HashMap<>();
+	private final Map<String, Map<Integer, int[]>> positions = new HashMap<>();
+	private final Map<Integer, Integer> documentLengths = new HashMap<>();
+	private final boolean storePositions;
+
+	public PartialIndex(boolean storePositions) {
+		this.storePositions = storePositions;
+	}
+
+	@Override
+	public void addWord(String word, int bookId, int frequency) {
+		index.computeIfAbsent(word.toLowerCase().trim(), k -> new PostingList()).addInt(bookId, frequency);
+	}
+
+	@Override
+	public void addWord(String word, int bookId, int[] wordPositions) {
+		word = word.toLowerCase().trim();
+		index.computeIfAbsent(word, k -> new PostingList()).addInt(bookId, wordPositions.length);
+
+		if (storePositions) {
+			positions.computeIfAbsent(word, k -> new HashMap<>()).put(bookId, wordPositions);
+		}
+	}
+
+	@Override
+	public void setDocumentLength(int bookId, int length) {
+		documentLengths.put(bookId, length);
+	}
+
+	@Override
+	public boolean storesPositions() {
+		return storePositions;
+	}
+
+	/**
+	 * Number of books added so far
+	 */
+	public int bookCount() {
+		return documentLengths.size();
+	}
+
+	/**
+	 * Books added so far
+	 */
+	public Set<Integer> bookIds() {
+		return Collections.unmodifiableSet(documentLengths.keySet());
+	}
+
+	/**
+	 * Add every posting and document length to {@code target}
+	 */
+	public void mergeInto(WordSink target) {
+		mergeInto(target, Set.of());
+	}
+
+	/**
+	 * Add every posting and document length to {@code target}, leaving out the books in {@code excluded}
+	 */
+	public void mergeInto(WordSink target, Set<Integer> excluded) {
+		for (Map.Entry<String, PostingList> entry : index.entrySet()) {
+			String word = entry.getKey();
+			PostingList bookIds = entry.getValue();
+			Map<Integer, int[]> wordPositions = positions.get(word);
+
+			for (int i = 0; i < bookIds.size(); i++) {
+				int bookId = bookIds.getInt(i);
+				if (excluded.contains(bookId)) {
+					continue;
+				}
+				if (wordPositions != null) {
+					target.addWord(word, bookId, wordPositions.get(bookId));
+				} else {
+					target.addWord(word, bookId, bookIds.frequencyAt(i));
+				}
+			}
+		}
+
+		for (Map.Entry<Integer, Integer> entry : documentLengths.entrySet()) {
+			if (!excluded.contains(entry.getKey())) {
+				target.setDocumentLength(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+}
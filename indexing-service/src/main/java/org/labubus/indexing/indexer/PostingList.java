@@ -0,0 +1,259 @@
+package org.labubus.indexing.indexer;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted, duplicate-free list of book IDs backed by a primitive int array.
+ * Exposed as a Set<Integer> so it can sit behind InvertedIndexWriter.getIndex()
+ * without boxing every posting. On disk, postings are delta-encoded as variable-byte ints.
+ * An optional parallel array keeps how often the word occurs in each book.
+ * Must stay in sync with org.labubus.search.indexer.PostingList in search-service.
+ */
+public final class PostingList extends AbstractSet<Integer> {
+	private int[] docs;
+	private int[] frequencies; // null while every frequency is 1
+	private int size;
+
+	public PostingList() {
+		this.docs = new int[4];
+	}
+
+	private PostingList(int[] docs, int size) {
+		this.docs = docs;
+		this.size = size;
+	}
+
+	/**
+	 * Wrap an array that is already sorted and free of duplicates
+	 */
+	public static PostingList ofSorted(int[] docs, int size) {
+		return new PostingList(docs, size);
+	}
+
+	/**
+	 * Add a book ID. Appending in increasing order is O(1); anything else is an insertion.
+	 */
+	public boolean addInt(int doc) {
+		if (size == 0 || doc > docs[size - 1]) {
+			ensureCapacity(size + 1);
+			if (frequencies != null) {
+				frequencies[size] = 1;
+			}
+			docs[size++] = doc;
+			return true;
+		}
+
+		int pos = Arrays.binarySearch(docs, 0, size, doc);
+		if (pos >= 0) {
+			return false;
+		}
+
+		int insertAt = -pos - 1;
+		ensureCapacity(size + 1);
+		System.arraycopy(docs, insertAt, docs, insertAt + 1, size - insertAt);
+		docs[insertAt] = doc;
+		if (frequencies != null) {
+			System.arraycopy(frequencies, insertAt, frequencies, insertAt + 1, size - insertAt);
+			frequencies[insertAt] = 1;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Add a book ID together with the number of times the word occurs in it,
+	 * replacing the count if the book is already present
+	 */
+	public void addInt(int doc, int frequency) {
+		if (frequency != 1 && frequencies == null) {
+			frequencies = new int[docs.length];
+			Arrays.fill(frequencies, 1);
+		}
+
+		addInt(doc);
+		if (frequencies != null) {
+			int index = docs[size - 1] == doc ? size - 1 : Arrays.binarySearch(docs, 0, size, doc);
+			frequencies[index] = frequency;
+		}
+	}
+
+	/**
+	 * Number of occurrences in the book at {@code index}
+	 */
+	public int frequencyAt(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return frequencies == null ? 1 : frequencies[index];
+	}
+
+	public boolean containsInt(int doc) {
+		return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+	}
+
+	public int getInt(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return docs[index];
+	}
+
+	public int[] toIntArray() {
+		return Arrays.copyOf(docs, size);
+	}
+
+	/**
+	 * Release the spare capacity left over from growing the array
+	 */
+	public void trimToSize() {
+		if (docs.length != size) {
+			docs = Arrays.copyOf(docs, size);
+			if (frequencies != null) {
+				frequencies = Arrays.copyOf(frequencies, size);
+			}
+		}
+	}
+
+	@Override
+	public boolean add(Integer doc) {
+		return addInt(doc);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer doc && containsInt(doc);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+		frequencies = null;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public Integer next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return docs[next++];
+			}
+		};
+	}
+
+	/**
+	 * Write the gaps between consecutive IDs as variable-byte ints
+	 * @return number of bytes written
+	 */
+	public int writeDeltas(DataOutput out) throws IOException {
+		int bytes = 0;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			bytes += writeVInt(out, docs[i] - previous);
+			previous = docs[i];
+		}
+		return bytes;
+	}
+
+	/**
+	 * Write one variable-byte frequency per book, in posting order
+	 * @return number of bytes written
+	 */
+	public int writeFrequencies(DataOutput out) throws IOException {
+		int bytes = 0;
+		for (int i = 0; i < size; i++) {
+			bytes += writeVInt(out, frequencyAt(i));
+		}
+		return bytes;
+	}
+
+	/**
+	 * Read the frequencies written by {@link #writeFrequencies(DataOutput)} for this list
+	 */
+	public void readFrequencies(ByteBuffer in) {
+		for (int i = 0; i < size; i++) {
+			int frequency = readVInt(in);
+			if (frequency != 1 && frequencies == null) {
+				frequencies = new int[docs.length];
+				Arrays.fill(frequencies, 1);
+			}
+			if (frequencies != null) {
+				frequencies[i] = frequency;
+			}
+		}
+	}
+
+	/**
+	 * Decode {@code count} delta-encoded IDs starting at the buffer's current position
+	 */
+	public static PostingList readDeltas(ByteBuffer in, int count) {
+		int[] docs = new int[count];
+		int previous = 0;
+		for (int i = 0; i < count; i++) {
+			previous += readVInt(in);
+			docs[i] = previous;
+		}
+		return new PostingList(docs, count);
+	}
+
+	static int writeVInt(DataOutput out, int value) throws IOException {
+		int bytes = 1;
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+			bytes++;
+		}
+		out.writeByte(value);
+		return bytes;
+	}
+
+	static int vIntSize(int value) {
+		int bytes = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			bytes++;
+		}
+		return bytes;
+	}
+
+	static int readVInt(ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > docs.length) {
+			docs = Arrays.copyOf(docs, Math.max(capacity, docs.length + (docs.length >> 1)));
+			if (frequencies != null) {
+				frequencies = Arrays.copyOf(frequencies, docs.length);
+			}
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package org.labubus.indexing.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.labubus.indexing.indexer.BinaryIndexFormat.*;
+
+/**
+ * Index stored as immutable binary segments under {@code datamart/segments}.
+ * Words are buffered in memory; {@link #save()} seals the buffered books and, once
+ * {@code flushBooks} of them are waiting (or {@code flushIntervalMillis} has passed),
+ * writes them as one new segment, so indexing a book never rewrites the whole index.
+ * A {@link MergePolicy} picks segments to merge on a background thread.
+ * The manifest is replaced atomically after every flush and merge, so a crash leaves
+ * either the old or the new set of segments; files it does not name are removed on load.
+ */
+public class SegmentedIndexWriter implements InvertedIndexWriter {
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedIndexWriter.class);
+	private static final String SEGMENT_PREFIX = "seg_";
+
+	private final Path segmentsDir;
+	private final boolean storePositions;
+	private final MergePolicy mergePolicy;
+	private final int flushBooks;
+	private final long flushIntervalMillis;
+	private final ScheduledExecutorService background;
+	private final Object lock = new Object();
+	private final Object flushLock = new Object();
+
+	// Guarded by lock
+	private List<Segment> segments = new ArrayList<>();
+	private List<PartialIndex> pending = new ArrayList<>();
+	private int pendingBooks;
+	private long pendingSince;
+	private boolean cleared;
+	private boolean mergeQueued;
+	private long nextSegmentId;
+	private Map<String, Set<Integer>> mergedView;
+
+	// Only touched by the indexing thread
+	private PartialIndex buffer;
+
+	/**
+	 * @param flushBooks sealed books that trigger writing a segment; 1 writes one per save
+	 * @param flushIntervalMillis longest a sealed book waits for its segment when {@code flushBooks} > 1
+	 */
+	public SegmentedIndexWriter(String datamartPath, boolean storePositions, MergePolicy mergePolicy,
+								int flushBooks, long flushIntervalMillis) {
+		this.segmentsDir = Paths.get(datamartPath, SEGMENTS_DIR);
+		this.storePositions = storePositions;
+		this.mergePolicy = mergePolicy;
+		this.flushBooks = Math.max(1, flushBooks);
+		this.flushIntervalMillis = flushIntervalMillis;
+		this.buffer = new PartialIndex(storePositions);
+		this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "segment-merger");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			Files.createDirectories(segmentsDir);
+			logger.info("Segmented index writer initialized at: {}", segmentsDir);
+		} catch (IOException e) {
+			logger.error("Failed to create segments directory", e);
+			throw new RuntimeException("Failed to create segments directory", e);
+		}
+
+		if (this.flushBooks > 1 && flushIntervalMillis > 0) {
+			background.scheduleWithFixedDelay(this::flushIfStale, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void addWord(String word, int bookId) {
+		buffer.addWord(word, bookId, 1);
+	}
+
+	@Override
+	public void addWord(String word, int bookId, int frequency) {
+		buffer.addWord(word, bookId, frequency);
+	}
+
+	@Override
+	public void addWord(String word, int bookId, int[] positions) {
+		buffer.addWord(word, bookId, positions);
+	}
+
+	@Override
+	public void setDocumentLength(int bookId, int length) {
+		buffer.setDocumentLength(bookId, length);
+	}
+
+	@Override
+	public boolean storesPositions() {
+		return storePositions;
+	}
+
+	/**
+	 * Seal the buffered books and write a segment once enough are waiting.
+	 * After {@link #clear()} the next save always writes, replacing every segment.
+	 */
+	@Override
+	public void save() throws IOException {
+		PartialIndex sealed = buffer;
+		buffer = new PartialIndex(storePositions);
+
+		boolean flushNow;
+		synchronized (lock) {
+			if (sealed.bookCount() > 0) {
+				pending.add(sealed);
+				pendingBooks += sealed.bookCount();
+				if (pendingSince == 0) {
+					pendingSince = System.currentTimeMillis();
+				}
+			}
+			flushNow = cleared || pendingBooks >= flushBooks;
+		}
+
+		if (flushNow) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write every sealed book as one segment and publish it
+	 */
+	public void flush() throws IOException {
+		synchronized (flushLock) {
+			List<PartialIndex> batch;
+			boolean reset;
+			synchronized (lock) {
+				batch = pending;
+				reset = cleared;
+				if (batch.isEmpty() && !reset) {
+					return;
+				}
+				pending = new ArrayList<>();
+				pendingBooks = 0;
+				pendingSince = 0;
+				cleared = false;
+			}
+
+			try {
+				Segment segment = batch.isEmpty() ? null : writeBatch(batch);
+
+				List<Segment> obsolete = List.of();
+				synchronized (lock) {
+					List<Segment> updated = new ArrayList<>(reset ? List.of() : segments);
+					if (reset) {
+						obsolete = segments;
+					}
+					if (segment != null) {
+						updated.add(segment);
+					}
+					publish(updated);
+				}
+				deleteSegments(obsolete);
+
+				logger.info("Flushed index segment {} ({} books, {} live segments)",
+						segment != null ? segment.name() : "-", segment != null ? segment.bookCount() : 0, segmentCount());
+			} catch (IOException e) {
+				synchronized (lock) {
+					pending.addAll(0, batch);
+					for (PartialIndex partial : batch) {
+						pendingBooks += partial.bookCount();
+					}
+					cleared |= reset;
+				}
+				throw e;
+			}
+		}
+		scheduleMerges();
+	}
+
+	/**
+	 * Later saves win over earlier ones for a book saved twice in the same batch
+	 */
+	private Segment writeBatch(List<PartialIndex> batch) throws IOException {
+		String name = newSegmentName();
+		BinaryIndexWriter writer = segmentWriter(name);
+		Set<Integer> seen = new HashSet<>();
+		for (int i = batch.size() - 1; i >= 0; i--) {
+			batch.get(i).mergeInto(writer, seen);
+			seen.addAll(batch.get(i).bookIds());
+		}
+		writer.save();
+		return new Segment(name, seen.size());
+	}
+
+	private void flushIfStale() {
+		synchronized (lock) {
+			if (pendingSince == 0 || System.currentTimeMillis() - pendingSince < flushIntervalMillis) {
+				return;
+			}
+		}
+		try {
+			flush();
+		} catch (Exception e) {
+			logger.error("Scheduled segment flush failed", e);
+		}
+	}
+
+	/**
+	 * Run the merge the policy asks for, if any.
+	 * Segments are combined newest first so a re-indexed book keeps its latest postings.
+	 * @return whether a merge happened
+	 */
+	public boolean maybeMerge() throws IOException {
+		List<Segment> run;
+		synchronized (lock) {
+			run = List.copyOf(mergePolicy.findMerge(segments));
+		}
+		if (run.size() < 2) {
+			return false;
+		}
+
+		String name = newSegmentName();
+		BinaryIndexWriter writer = segmentWriter(name);
+		Set<Integer> seen = new HashSet<>();
+		for (int i = run.size() - 1; i >= 0; i--) {
+			BinaryIndexWriter segment = segmentWriter(run.get(i).name());
+			segment.load();
+			segment.copyTo(writer, seen);
+			seen.addAll(segment.bookIds());
+		}
+		writer.save();
+		Segment merged = new Segment(name, seen.size());
+
+		synchronized (lock) {
+			int start = Collections.indexOfSubList(segments, run);
+			if (start < 0) {
+				// The index was cleared while merging
+				deleteSegments(List.of(merged));
+				return false;
+			}
+			List<Segment> updated = new ArrayList<>(segments);
+			updated.subList(start, start + run.size()).clear();
+			updated.add(start, merged);
+			publish(updated);
+		}
+		deleteSegments(run);
+
+		logger.info("Merged {} segments into {} ({} books)", run.size(), merged.name(), merged.bookCount());
+		return true;
+	}
+
+	/**
+	 * Read the manifest and remove segment files it does not reference
+	 * (left behind by a crash or by a merge whose inputs were still open)
+	 */
+	@Override
+	public void load() throws IOException {
+		Path manifest = segmentsDir.resolve(MANIFEST_FILE);
+		List<Segment> loaded = new ArrayList<>();
+
+		if (Files.exists(manifest)) {
+			for (String line : Files.readAllLines(manifest)) {
+				String[] parts = line.trim().split("\\s+");
+				if (parts.length == 2) {
+					loaded.add(new Segment(parts[0], Integer.parseInt(parts[1])));
+				}
+			}
+		} else {
+			logger.warn("Segment manifest does not exist: {}", manifest);
+		}
+
+		Set<String> live = new HashSet<>();
+		for (Segment segment : loaded) {
+			live.add(segment.name());
+			nextSegmentId = Math.max(nextSegmentId, segmentId(segment.name()) + 1);
+		}
+
+		try (Stream<Path> files = Files.list(segmentsDir)) {
+			for (Path file : files.toList()) {
+				String fileName = file.getFileName().toString();
+				int dot = fileName.indexOf('.');
+				String name = dot < 0 ? fileName : fileName.substring(0, dot);
+				if (name.startsWith(SEGMENT_PREFIX) && (!live.contains(name) || fileName.endsWith(".tmp"))) {
+					nextSegmentId = Math.max(nextSegmentId, segmentId(name) + 1);
+					Files.deleteIfExists(file);
+					logger.info("Removed orphaned segment file {}", file);
+				}
+			}
+		}
+
+		synchronized (lock) {
+			segments = loaded;
+			pending = new ArrayList<>();
+			pendingBooks = 0;
+			pendingSince = 0;
+			cleared = false;
+			mergedView = null;
+		}
+		buffer = new PartialIndex(storePositions);
+
+		logger.info("Loaded segmented index from {} ({} segments)", segmentsDir, loaded.size());
+		scheduleMerges();
+	}
+
+	/**
+	 * Every live book's postings across all segments, newest segment winning.
+	 * Built on first use after a change; only meant for stats and tooling.
+	 */
+	@Override
+	public Map<String, Set<Integer>> getIndex() {
+		List<Segment> current;
+		synchronized (lock) {
+			if (mergedView != null) {
+				return mergedView;
+			}
+			current = segments;
+		}
+
+		Map<String, PostingList> merged = new HashMap<>();
+		Set<Integer> seen = new HashSet<>();
+		try {
+			for (int i = current.size() - 1; i >= 0; i--) {
+				BinaryIndexWriter segment = segmentWriter(current.get(i).name());
+				segment.load();
+				for (Map.Entry<String, Set<Integer>> entry : segment.getIndex().entrySet()) {
+					for (int bookId : entry.getValue()) {
+						if (!seen.contains(bookId)) {
+							merged.computeIfAbsent(entry.getKey(), k -> new PostingList()).addInt(bookId);
+						}
+					}
+				}
+				seen.addAll(segment.bookIds());
+			}
+		} catch (IOException e) {
+			logger.error("Failed to read index segments", e);
+			return Collections.emptyMap();
+		}
+
+		Map<String, Set<Integer>> view = Collections.unmodifiableMap(merged);
+		synchronized (lock) {
+			if (segments == current) {
+				mergedView = view;
+			}
+		}
+		return view;
+	}
+
+	@Override
+	public double getSizeInMB() {
+		long bytes = 0;
+		try (Stream<Path> files = Files.list(segmentsDir)) {
+			for (Path file : files.toList()) {
+				bytes += Files.size(file);
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to get index size", e);
+		}
+		return bytes / (1024.0 * 1024.0);
+	}
+
+	/**
+	 * Drop buffered books and, on the next save, every existing segment
+	 */
+	@Override
+	public void clear() {
+		buffer = new PartialIndex(storePositions);
+		synchronized (lock) {
+			pending = new ArrayList<>();
+			pendingBooks = 0;
+			pendingSince = 0;
+			cleared = true;
+		}
+		logger.info("Cleared inverted index");
+	}
+
+	/**
+	 * Live segments, oldest first
+	 */
+	public List<Segment> segments() {
+		synchronized (lock) {
+			return List.copyOf(segments);
+		}
+	}
+
+	private int segmentCount() {
+		synchronized (lock) {
+			return segments.size();
+		}
+	}
+
+	private void scheduleMerges() {
+		synchronized (lock) {
+			if (mergeQueued || mergePolicy.findMerge(segments).isEmpty()) {
+				return;
+			}
+			mergeQueued = true;
+		}
+
+		background.execute(() -> {
+			try {
+				while (maybeMerge()) {
+					// a merge can complete a run in the tier above
+				}
+			} catch (Exception e) {
+				logger.error("Segment merge failed", e);
+			} finally {
+				synchronized (lock) {
+					mergeQueued = false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write the manifest to a temporary file and move it into place. Caller holds the lock.
+	 */
+	private void publish(List<Segment> updated) throws IOException {
+		Path manifest = segmentsDir.resolve(MANIFEST_FILE);
+		Path tmp = manifest.resolveSibling(MANIFEST_FILE + ".tmp");
+
+		StringBuilder content = new StringBuilder();
+		for (Segment segment : updated) {
+			content.append(segment.name()).append(' ').append(segment.bookCount()).append('\n');
+		}
+		Files.writeString(tmp, content);
+		Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		segments = updated;
+		mergedView = null;
+	}
+
+	/**
+	 * Best effort: a file still mapped by a reader may not be deletable yet, and is
+	 * cleaned up on the next load instead
+	 */
+	private void deleteSegments(List<Segment> obsolete) {
+		for (Segment segment : obsolete) {
+			for (String suffix : List.of(TERMS_SUFFIX, POSTINGS_SUFFIX, POSITIONS_SUFFIX, DOCLENS_SUFFIX)) {
+				try {
+					Files.deleteIfExists(segmentsDir.resolve(segment.name() + suffix));
+				} catch (IOException e) {
+					logger.warn("Could not delete {}{}: {}", segment.name(), suffix, e.getMessage());
+				}
+			}
+		}
+	}
+
+	private String newSegmentName() {
+		synchronized (lock) {
+			return String.format("%s%08d", SEGMENT_PREFIX, nextSegmentId++);
+		}
+	}
+
+	private static long segmentId(String name) {
+		try {
+			return Long.parseLong(name.substring(SEGMENT_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private BinaryIndexWriter segmentWriter(String name) {
+		return new BinaryIndexWriter(segmentsDir.toString(), name, storePositions);
+	}
+
+	public record Segment(String name, int bookCount) {}
+}
@@ -0,0 +1,57 @@
+package org.labubus.indexing.indexer;
+
+import java.util.List;
+
+/**
+ * Groups segments into tiers by book count, each tier {@code segmentsPerTier} times
+ * larger than the one below, and merges a run of segments once a tier holds that
+ * many of them. A book is rewritten about once per tier, so write amplification
+ * grows with the logarithm of the index size rather than linearly.
+ * Segments smaller than {@code floorBooks} all count as the bottom tier.
+ */
+public class TieredMergePolicy implements MergePolicy {
+	private final int segmentsPerTier;
+	private final int maxMergeAtOnce;
+	private final int floorBooks;
+
+	public TieredMergePolicy(int segmentsPerTier, int maxMergeAtOnce, int floorBooks) {
+		if (segmentsPerTier < 2 || maxMergeAtOnce < 2 || floorBooks < 1) {
+			throw new IllegalArgumentException("Invalid tiered merge policy: segmentsPerTier and maxMergeAtOnce "
+					+ "must be at least 2, floorBooks at least 1");
+		}
+		this.segmentsPerTier = segmentsPerTier;
+		this.maxMergeAtOnce = maxMergeAtOnce;
+		this.floorBooks = floorBooks;
+	}
+
+	/**
+	 * Newer segments are smaller, so tiers form runs; the newest full run is merged, oldest part first
+	 */
+	@Override
+	public List<SegmentedIndexWriter.Segment> findMerge(List<SegmentedIndexWriter.Segment> segments) {
+		int end = segments.size();
+		while (end > 0) {
+			int tier = tier(segments.get(end - 1));
+			int start = end - 1;
+			while (start > 0 && tier(segments.get(start - 1)) == tier) {
+				start--;
+			}
+			if (end - start >= segmentsPerTier) {
+				return segments.subList(start, Math.min(end, start + maxMergeAtOnce));
+			}
+			end = start;
+		}
+		return List.of();
+	}
+
+	int tier(SegmentedIndexWriter.Segment segment) {
+		long size = Math.max(segment.bookCount(), floorBooks);
+		long bound = (long) floorBooks * segmentsPerTier;
+		int tier = 0;
+		while (size >= bound) {
+			bound *= segmentsPerTier;
+			tier++;
+		}
+		return tier;
+	}
+}
@@ -0,0 +1,27 @@
+package org.labubus.indexing.indexer;
+
+/**
+ * Receives a tokenized book's words. Implemented by every index writer and by
+ * {@link PartialIndex}, which collects books in memory during a parallel rebuild.
+ */
+public interface WordSink {
+	/**
+	 * Add a word with the number of times it occurs in the book
+	 */
+	void addWord(String word, int bookId, int frequency);
+
+	/**
+	 * Add a word with the ascending positions at which it occurs in the book
+	 */
+	void addWord(String word, int bookId, int[] positions);
+
+	/**
+	 * Record how many indexed words a book has, for length normalization when ranking
+	 */
+	void setDocumentLength(int bookId, int length);
+
+	/**
+	 * Whether positions passed to {@link #addWord(String, int, int[])} are kept
+	 */
+	boolean storesPositions();
+}
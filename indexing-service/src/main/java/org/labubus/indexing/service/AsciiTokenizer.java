@@ -0,0 +1,51 @@
+package org.labubus.indexing.service;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Words are maximal runs of ASCII letters; everything else separates words.
+ * A range check per character, lowercasing by setting the case bit.
+ */
+public final class AsciiTokenizer implements Tokenizer {
+	private final int maxWordLength;
+
+	/**
+	 * @param maxWordLength longer words are still reported, with a length of {@code maxWordLength + 1}
+	 */
+	public AsciiTokenizer(int maxWordLength) {
+		this.maxWordLength = maxWordLength;
+	}
+
+	@Override
+	public int tokenize(Reader reader, WordSink sink) throws IOException {
+		char[] window = new char[WINDOW_CHARS];
+		char[] word = new char[maxWordLength + 1];
+		int length = 0;
+		int position = 0;
+
+		int read;
+		while ((read = reader.read(window)) != -1) {
+			for (int i = 0; i < read; i++) {
+				char c = window[i];
+				if (c >= 'A' && c <= 'Z') {
+					c = (char) (c | 0x20);
+				} else if (c < 'a' || c > 'z') {
+					if (length > 0) {
+						sink.accept(word, Math.min(length, word.length), position++);
+						length = 0;
+					}
+					continue;
+				}
+				if (length < word.length) {
+					word[length] = c;
+				}
+				length++;
+			}
+		}
+		if (length > 0) {
+			sink.accept(word, Math.min(length, word.length), position++);
+		}
+		return position;
+	}
+}
@@ -1,6 +1,7 @@
 package org.labubus.indexing.service;
 
 import org.labubus.indexing.indexer.InvertedIndexWriter;
+import org.labubus.indexing.indexer.PartialIndex;
 import org.labubus.indexing.model.BookMetadata;
 import org.labubus.indexing.repository.MetadataRepository;
 import org.labubus.indexing.storage.DatalakeReader;
@@ -8,17 +9,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class IndexingService {
 	private static final Logger logger = LoggerFactory.getLogger(IndexingService.class);
+	private static final int MAX_CHUNK_SIZE = 32;
 
 	private final DatalakeReader datalakeReader;
 	private final MetadataExtractor metadataExtractor;
 	private final MetadataRepository metadataRepository;
 	private final InvertedIndexBuilder indexBuilder;
 	private final InvertedIndexWriter indexWriter;
+	private final int parallelism;
 
 	public IndexingService(
 			DatalakeReader datalakeReader,
@@ -26,6 +38,21 @@ public class IndexingService {
 			MetadataRepository metadataRepository,
 			InvertedIndexBuilder indexBuilder,
 			InvertedIndexWriter indexWriter) {
+		this(datalakeReader, metadataExtractor, metadataRepository, indexBuilder, indexWriter,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism threads used by {@link #rebuildIndex()}
+	 */
+	public IndexingService(
+			DatalakeReader datalakeReader,
+			MetadataExtractor metadataExtractor,
+			MetadataRepository metadataRepository,
+			InvertedIndexBuilder indexBuilder,
+			InvertedIndexWriter indexWriter,
+			int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
 		this.datalakeReader = datalakeReader;
 		this.metadataExtractor = metadataExtractor;
 		this.metadataRepository = metadataRepository;
@@ -44,7 +71,6 @@ public class IndexingService {
 		}
 
 		String header = datalakeReader.readBookHeader(bookId);
-		String body = datalakeReader.readBookBody(bookId);
 
 		String path = "datalake/book_" + bookId; // Simplified path
 		BookMetadata metadata = metadataExtractor.extractMetadata(bookId, header, path);
@@ -52,7 +78,9 @@ public class IndexingService {
 		metadataRepository.save(metadata);
 		logger.info("Saved metadata for book {}: {}", bookId, metadata.title());
 
-		indexBuilder.indexBook(bookId, body);
+		try (Reader body = datalakeReader.openBookBody(bookId)) {
+			indexBuilder.indexBook(bookId, body);
+		}
 		logger.info("Indexed words for book {}", bookId);
 
 		indexWriter.save();
@@ -60,31 +88,96 @@ public class IndexingService {
 	}
 
 	/**
-	 * Rebuild entire index from all books in datalake
+	 * Rebuild entire index from all books in datalake.
+	 * Books are read and tokenized on a work-stealing pool, a chunk at a time, each
+	 * chunk into its own partial index. Chunks are merged into the writer in book
+	 * order as they finish, with at most twice the thread count in flight, metadata is saved from this thread (repositories are not
+	 * shared across threads), and the index is written once at the end. As in
+	 * {@link #indexBook}, a book's metadata is saved first and a book that fails is left out of the index.
 	 */
-	public int rebuildIndex() throws IOException, SQLException {
-		logger.info("Starting full index rebuild...");
+	public RebuildResult rebuildIndex() throws IOException, SQLException {
+		logger.info("Starting full index rebuild with {} threads...", parallelism);
+		long start = System.nanoTime();
 
 		indexWriter.clear();
 
-		List<Integer> bookIds = datalakeReader.getDownloadedBooks();
+		List<Integer> bookIds = new ArrayList<>(datalakeReader.getDownloadedBooks());
+		Collections.sort(bookIds);
 		logger.info("Found {} books to index", bookIds.size());
 
+		int chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, bookIds.size() / (parallelism * 4)));
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
 		int successCount = 0;
 		int failureCount = 0;
 
+		try {
+			// Only a few chunks ahead of the merge point are queued or held, so finished
+			// partial indexes cannot pile up while an earlier chunk is still running
+			int window = parallelism * 2;
+			Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>(window);
+			int from = 0;
+			while (from < bookIds.size() || !inFlight.isEmpty()) {
+				while (from < bookIds.size() && inFlight.size() < window) {
+					List<Integer> slice = bookIds.subList(from, Math.min(bookIds.size(), from + chunkSize));
+					inFlight.add(pool.submit(() -> indexChunk(slice)));
+					from += slice.size();
+				}
+
+				Chunk chunk = inFlight.poll().join();
+				Set<Integer> failed = new HashSet<>(chunk.failed());
+				for (BookMetadata metadata : chunk.metadata()) {
+					try {
+						metadataRepository.save(metadata);
+						successCount++;
+					} catch (SQLException e) {
+						logger.error("Failed to save metadata for book {}: {}", metadata.bookId(), e.getMessage());
+						failed.add(metadata.bookId());
+					}
+				}
+				failureCount += failed.size();
+
+				chunk.partialIndex().mergeInto(indexWriter, failed);
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		indexWriter.save();
+
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+		double booksPerSecond = elapsedMillis > 0 ? successCount * 1000.0 / elapsedMillis : successCount;
+		logger.info("Index rebuild complete: {} succeeded, {} failed in {} ms ({} books/sec)",
+				successCount, failureCount, elapsedMillis, String.format("%.1f", booksPerSecond));
+		return new RebuildResult(successCount, failureCount, elapsedMillis, booksPerSecond);
+	}
+
+	/**
+	 * Runs on a pool thread: reads and tokenizes a slice of books into a fresh partial index
+	 */
+	private Chunk indexChunk(List<Integer> bookIds) {
+		PartialIndex partialIndex = new PartialIndex(indexBuilder.storesPositions());
+		InvertedIndexBuilder builder = indexBuilder.withWriter(partialIndex);
+		List<BookMetadata> metadata = new ArrayList<>(bookIds.size());
+		List<Integer> failed = new ArrayList<>();
+
 		for (int bookId : bookIds) {
 			try {
-				indexBook(bookId);
-				successCount++;
+				String header = datalakeReader.readBookHeader(bookId);
+
+				String path = "datalake/book_" + bookId; // Simplified path
+				BookMetadata bookMetadata = metadataExtractor.extractMetadata(bookId, header, path);
+				try (Reader body = datalakeReader.openBookBody(bookId)) {
+					builder.indexBook(bookId, body);
+				}
+				metadata.add(bookMetadata);
 			} catch (Exception e) {
+				// Words read before the failure are already in the partial index
 				logger.error("Failed to index book {}: {}", bookId, e.getMessage());
-				failureCount++;
+				failed.add(bookId);
 			}
 		}
-
-		logger.info("Index rebuild complete: {} succeeded, {} failed", successCount, failureCount);
-		return successCount;
+		return new Chunk(partialIndex, metadata, failed);
 	}
 
 	/**
@@ -102,4 +195,11 @@ public class IndexingService {
 	 * Simple stats container
 	 */
 	public record IndexStats(int booksIndexed, int uniqueWords, double indexSizeMB) {}
+
+	/**
+	 * Outcome of a full rebuild
+	 */
+	public record RebuildResult(int booksIndexed, int booksFailed, long elapsedMillis, double booksPerSecond) {}
+
+	private record Chunk(PartialIndex partialIndex, List<BookMetadata> metadata, List<Integer> failed) {}
 }
\ No newline at end of file
@@ -1,74 +1,91 @@
 package org.labubus.indexing.service;
 
-import org.labubus.indexing.indexer.InvertedIndexWriter;
+import org.labubus.indexing.indexer.WordSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 public class InvertedIndexBuilder {
 	private static final Logger logger = LoggerFactory.getLogger(InvertedIndexBuilder.class);
 
-	private final InvertedIndexWriter indexWriter;
+	private final WordSink indexWriter;
 	private final int minWordLength;
 	private final int maxWordLength;
 	private final Set<String> stopWords;
+	private final Tokenizer tokenizer;
 
-	private static final Pattern WORD_PATTERN = Pattern.compile("[a-zA-Z]+");
+	public InvertedIndexBuilder(WordSink indexWriter, int minWordLength, int maxWordLength, Set<String> stopWords) {
+		this(indexWriter, minWordLength, maxWordLength, stopWords, new AsciiTokenizer(maxWordLength));
+	}
 
-	public InvertedIndexBuilder(InvertedIndexWriter indexWriter, int minWordLength, int maxWordLength, Set<String> stopWords) {
+	public InvertedIndexBuilder(WordSink indexWriter, int minWordLength, int maxWordLength,
+								Set<String> stopWords, Tokenizer tokenizer) {
 		this.indexWriter = indexWriter;
 		this.minWordLength = minWordLength;
 		this.maxWordLength = maxWordLength;
 		this.stopWords = stopWords;
+		this.tokenizer = tokenizer;
 	}
 
 	/**
-	 * Index a book's body text
+	 * Same settings, writing to another index. Builders hold no per-book state,
+	 * so one per worker can tokenize books in parallel.
 	 */
-	public void indexBook(int bookId, String bodyText) {
-		Set<String> uniqueWords = extractWords(bodyText);
-
-		for (String word : uniqueWords) {
-			indexWriter.addWord(word, bookId);
-		}
-
-		logger.debug("Indexed book {} with {} unique words", bookId, uniqueWords.size());
+	public InvertedIndexBuilder withWriter(WordSink writer) {
+		return new InvertedIndexBuilder(writer, minWordLength, maxWordLength, stopWords, tokenizer);
 	}
 
 	/**
-	 * Extract unique words from text
+	 * Whether books are indexed with word positions
 	 */
-	private Set<String> extractWords(String text) {
-		Set<String> words = new HashSet<>();
-
-		String[] tokens = text.toLowerCase().split("\\s+");
-
-		for (String token : tokens) {
-			var matcher = WORD_PATTERN.matcher(token);
-			while (matcher.find()) {
-				String word = matcher.group();
+	public boolean storesPositions() {
+		return indexWriter.storesPositions();
+	}
 
-				if (isValidWord(word)) {
-					words.add(word);
-				}
-			}
+	/**
+	 * Index a book's body text
+	 */
+	public void indexBook(int bookId, String bodyText) {
+		try {
+			indexBook(bookId, new StringReader(bodyText));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-
-		return words;
 	}
 
 	/**
-	 * Check if a word is valid for indexing
+	 * Index a book's body as it is read, without holding the whole text in memory.
+	 * Every word counts towards the position, including stop words and words
+	 * outside the length limits, so phrases keep their gaps.
 	 */
-	private boolean isValidWord(String word) {
-		if (word.length() < minWordLength || word.length() > maxWordLength) {
-			return false;
-		}
+	public void indexBook(int bookId, Reader body) throws IOException {
+		boolean storePositions = indexWriter.storesPositions();
+		TermTable terms = new TermTable(stopWords, storePositions);
+
+		tokenizer.tokenize(body, (word, length, position) -> {
+			if (length >= minWordLength && length <= maxWordLength) {
+				terms.add(word, length, position);
+			}
+		});
+
+		int[] length = {0};
+		terms.forEach((term, count, positions) -> {
+			if (storePositions) {
+				indexWriter.addWord(term, bookId, positions);
+			} else {
+				indexWriter.addWord(term, bookId, count);
+			}
+			length[0] += count;
+		});
+		indexWriter.setDocumentLength(bookId, length[0]);
 
-		return !stopWords.contains(word);
+		logger.debug("Indexed book {} with {} unique words{}", bookId, terms.size(), storePositions ? " and positions" : "");
 	}
 
 	/**
@@ -0,0 +1,165 @@
+package org.labubus.indexing.service;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Per-book word counts (and optionally positions) keyed by the tokenizer's reused
+ * character buffer. Open addressing over parallel arrays; a {@code String} is only
+ * created the first time a word is seen in the book. Stop words are pre-inserted
+ * and silently ignored.
+ */
+public final class TermTable {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final boolean trackPositions;
+	private int[] slots;
+	private String[] terms;
+	private int[] hashes;
+	private int[] counts;
+	private int[][] positions;
+	private boolean[] ignored;
+	private int size;
+	private int stopWordCount;
+
+	public TermTable(Set<String> stopWords, boolean trackPositions) {
+		this.trackPositions = trackPositions;
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < stopWords.size() * 4) {
+			capacity <<= 1;
+		}
+		this.slots = new int[capacity];
+		Arrays.fill(slots, -1);
+		this.terms = new String[capacity / 2];
+		this.hashes = new int[capacity / 2];
+		this.counts = new int[capacity / 2];
+		this.positions = trackPositions ? new int[capacity / 2][] : null;
+		this.ignored = new boolean[capacity / 2];
+
+		for (String stopWord : stopWords) {
+			char[] chars = stopWord.toCharArray();
+			int entry = entry(chars, chars.length);
+			if (!ignored[entry]) {
+				ignored[entry] = true;
+				stopWordCount++;
+			}
+		}
+	}
+
+	/**
+	 * Count one occurrence of a word at a position
+	 */
+	public void add(char[] word, int length, int position) {
+		int entry = entry(word, length);
+		if (ignored[entry]) {
+			return;
+		}
+		if (trackPositions) {
+			int[] list = positions[entry];
+			if (list == null) {
+				list = positions[entry] = new int[4];
+			} else if (counts[entry] == list.length) {
+				list = positions[entry] = Arrays.copyOf(list, list.length * 2);
+			}
+			list[counts[entry]] = position;
+		}
+		counts[entry]++;
+	}
+
+	/**
+	 * Number of distinct words counted, stop words excluded
+	 */
+	public int size() {
+		return size - stopWordCount;
+	}
+
+	/**
+	 * Call {@code consumer} once per distinct counted word
+	 */
+	public void forEach(TermConsumer consumer) {
+		for (int i = 0; i < size; i++) {
+			if (ignored[i]) {
+				continue;
+			}
+			int[] wordPositions = trackPositions ? Arrays.copyOf(positions[i], counts[i]) : null;
+			consumer.accept(terms[i], counts[i], wordPositions);
+		}
+	}
+
+	@FunctionalInterface
+	public interface TermConsumer {
+		/**
+		 * @param positions ascending positions, null unless positions are tracked
+		 */
+		void accept(String term, int count, int[] positions);
+	}
+
+	private int entry(char[] word, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + word[i];
+		}
+
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (true) {
+			int entry = slots[slot];
+			if (entry == -1) {
+				break;
+			}
+			if (hashes[entry] == hash && matches(terms[entry], word, length)) {
+				return entry;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size == terms.length) {
+			grow();
+			return entry(word, length);
+		}
+		int entry = size++;
+		terms[entry] = new String(word, 0, length);
+		hashes[entry] = hash;
+		slots[slot] = entry;
+		return entry;
+	}
+
+	private void grow() {
+		int capacity = slots.length * 2;
+		terms = Arrays.copyOf(terms, capacity / 2);
+		hashes = Arrays.copyOf(hashes, capacity / 2);
+		counts = Arrays.copyOf(counts, capacity / 2);
+		ignored = Arrays.copyOf(ignored, capacity / 2);
+		if (trackPositions) {
+			positions = Arrays.copyOf(positions, capacity / 2);
+		}
+
+		slots = new int[capacity];
+		Arrays.fill(slots, -1);
+		int mask = capacity - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = mix(hashes[entry]) & mask;
+			while (slots[slot] != -1) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry;
+		}
+	}
+
+	private static int mix(int hash) {
+		int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean matches(String term, char[] word, int length) {
+		if (term.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (term.charAt(i) != word[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,33 @@
+package org.labubus.indexing.service;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits text into lowercased words while reading it through a fixed window, so a
+ * book is never held in memory as a whole. Words are handed over in a reused
+ * buffer; nothing is allocated per word. Implementations keep no state between
+ * calls and can be shared across threads.
+ */
+public interface Tokenizer {
+	/**
+	 * Size of the window text is read through
+	 */
+	int WINDOW_CHARS = 8192;
+
+	/**
+	 * Receives each word in order. {@code word} is only valid during the call.
+	 */
+	@FunctionalInterface
+	interface WordSink {
+		/**
+		 * @param length word length in chars, {@code maxWordLength + 1} for any longer word
+		 */
+		void accept(char[] word, int length, int position);
+	}
+
+	/**
+	 * @return number of words read
+	 */
+	int tokenize(Reader reader, WordSink sink) throws IOException;
+}
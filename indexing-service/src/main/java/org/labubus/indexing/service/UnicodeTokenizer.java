@@ -0,0 +1,129 @@
+package org.labubus.indexing.service;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Words are maximal runs of Unicode letters, so accented words such as "café" or
+ * "straße" stay whole. Combining marks continue a word, and surrogate pairs are
+ * joined even across window boundaries. ASCII takes the same range checks as
+ * {@link AsciiTokenizer}; only other characters go through {@link Character}.
+ */
+public final class UnicodeTokenizer implements Tokenizer {
+	private final int maxWordLength;
+
+	/**
+	 * @param maxWordLength longer words are still reported, with a length of {@code maxWordLength + 1}
+	 */
+	public UnicodeTokenizer(int maxWordLength) {
+		this.maxWordLength = maxWordLength;
+	}
+
+	@Override
+	public int tokenize(Reader reader, WordSink sink) throws IOException {
+		char[] window = new char[WINDOW_CHARS];
+		Scan scan = new Scan(new char[maxWordLength + 1], sink);
+		char highSurrogate = 0;
+
+		int read;
+		while ((read = reader.read(window)) != -1) {
+			for (int i = 0; i < read; i++) {
+				char c = window[i];
+
+				if (c < 0x80) {
+					if (highSurrogate != 0) {
+						scan.endWord();
+						highSurrogate = 0;
+					}
+					if (c >= 'A' && c <= 'Z') {
+						scan.append((char) (c | 0x20));
+					} else if (c >= 'a' && c <= 'z') {
+						scan.append(c);
+					} else {
+						scan.endWord();
+					}
+					continue;
+				}
+
+				int codePoint;
+				if (highSurrogate != 0) {
+					if (Character.isLowSurrogate(c)) {
+						codePoint = Character.toCodePoint(highSurrogate, c);
+						highSurrogate = 0;
+					} else {
+						// Unpaired surrogate: not part of any word
+						scan.endWord();
+						highSurrogate = 0;
+						if (Character.isHighSurrogate(c)) {
+							highSurrogate = c;
+							continue;
+						}
+						codePoint = c;
+					}
+				} else if (Character.isHighSurrogate(c)) {
+					highSurrogate = c;
+					continue;
+				} else {
+					codePoint = c;
+				}
+				scan.accept(codePoint);
+			}
+		}
+		scan.endWord();
+		return scan.position;
+	}
+
+	/**
+	 * Per-call state, so one tokenizer can serve several threads
+	 */
+	private static final class Scan {
+		private final char[] word;
+		private final WordSink sink;
+		private int length;
+		private int position;
+
+		Scan(char[] word, WordSink sink) {
+			this.word = word;
+			this.sink = sink;
+		}
+
+		void accept(int codePoint) {
+			if (Character.isLetter(codePoint)) {
+				appendCodePoint(Character.toLowerCase(codePoint));
+			} else if (length > 0 && isCombiningMark(codePoint)) {
+				appendCodePoint(codePoint);
+			} else {
+				endWord();
+			}
+		}
+
+		void append(char c) {
+			if (length < word.length) {
+				word[length] = c;
+			}
+			length++;
+		}
+
+		void appendCodePoint(int codePoint) {
+			if (Character.isBmpCodePoint(codePoint)) {
+				append((char) codePoint);
+			} else {
+				append(Character.highSurrogate(codePoint));
+				append(Character.lowSurrogate(codePoint));
+			}
+		}
+
+		void endWord() {
+			if (length > 0) {
+				sink.accept(word, Math.min(length, word.length), position++);
+				length = 0;
+			}
+		}
+
+		private static boolean isCombiningMark(int codePoint) {
+			int type = Character.getType(codePoint);
+			return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+					|| type == Character.ENCLOSING_MARK;
+		}
+	}
+}
@@ -4,31 +4,59 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 public class DatalakeReader {
 	private static final Logger logger = LoggerFactory.getLogger(DatalakeReader.class);
+	private static final String TRACKING_FILE = "downloaded_books.txt";
+	private static final String HEADER_SUFFIX = "_header.txt";
+	private static final String BODY_SUFFIX = "_body.txt";
+	private static final String PACKED_DIR = "packed";
+	private static final String PACKED_INDEX = "index.txt";
+
 	private final String datalakePath;
+	/** Directory holding each book's header and body, so lookups do not walk the datalake */
+	private final Map<Integer, Path> bookDirs = new ConcurrentHashMap<>();
+	private boolean locationsBuilt;
+	private String indexedTrackingVersion;
+	/** Where each book of a packed datalake is, read from the index as it grows */
+	private final Map<Integer, PackedBook> packedBooks = new ConcurrentHashMap<>();
+	private final Map<Integer, FileChannel> packedSegments = new ConcurrentHashMap<>();
+	private long packedIndexRead;
 
 	public DatalakeReader(String datalakePath) {
 		this.datalakePath = datalakePath;
 	}
 
 	/**
-	 * Get list of all downloaded book IDs from the tracking file
+	 * Get list of all downloaded book IDs from the tracking file. The file is a journal
+	 * that may list a book more than once; each is returned once, in first-seen order.
 	 */
 	public List<Integer> getDownloadedBooks() throws IOException {
-		Path trackingFile = Paths.get(datalakePath, "downloaded_books.txt");
-		List<Integer> bookIds = new ArrayList<>();
+		Path trackingFile = Paths.get(datalakePath, TRACKING_FILE);
+		Set<Integer> bookIds = new LinkedHashSet<>();
 
 		if (!Files.exists(trackingFile)) {
 			logger.warn("Tracking file not found: {}", trackingFile);
-			return bookIds;
+			return new ArrayList<>();
 		}
 
 		List<String> lines = Files.readAllLines(trackingFile);
@@ -46,13 +74,17 @@ public class DatalakeReader {
 		}
 
 		logger.info("Found {} downloaded books in datalake", bookIds.size());
-		return bookIds;
+		return new ArrayList<>(bookIds);
 	}
 
 	/**
 	 * Read book header for a specific book ID
 	 */
 	public String readBookHeader(int bookId) throws IOException {
+		PackedBook packed = findPackedBook(bookId);
+		if (packed != null) {
+			return StandardCharsets.UTF_8.decode(readPacked(packed.segment(), packed.offset(), packed.headerLength())).toString();
+		}
 		Path headerPath = findBookHeader(bookId);
 		if (headerPath == null) {
 			throw new IOException("Header file not found for book " + bookId);
@@ -64,6 +96,10 @@ public class DatalakeReader {
 	 * Read book body for a specific book ID
 	 */
 	public String readBookBody(int bookId) throws IOException {
+		PackedBook packed = findPackedBook(bookId);
+		if (packed != null) {
+			return StandardCharsets.UTF_8.decode(mapPackedBody(packed)).toString();
+		}
 		Path bodyPath = findBookBody(bookId);
 		if (bodyPath == null) {
 			throw new IOException("Body file not found for book " + bookId);
@@ -71,22 +107,139 @@ public class DatalakeReader {
 		return Files.readString(bodyPath);
 	}
 
+	/**
+	 * Open a book body for streaming, so it need not be held in memory as one string
+	 */
+	public Reader openBookBody(int bookId) throws IOException {
+		PackedBook packed = findPackedBook(bookId);
+		if (packed != null) {
+			return new InputStreamReader(new ByteBufferInputStream(mapPackedBody(packed)), StandardCharsets.UTF_8);
+		}
+		Path bodyPath = findBookBody(bookId);
+		if (bodyPath == null) {
+			throw new IOException("Body file not found for book " + bookId);
+		}
+		return Files.newBufferedReader(bodyPath);
+	}
+
+	/**
+	 * Where a book sits in a packed datalake, null if it is not packed. The index is
+	 * append-only, so on a miss only the lines added since the last read are parsed.
+	 */
+	private PackedBook findPackedBook(int bookId) throws IOException {
+		PackedBook packed = packedBooks.get(bookId);
+		if (packed == null && readNewPackedEntries()) {
+			packed = packedBooks.get(bookId);
+		}
+		return packed;
+	}
+
+	/**
+	 * @return whether any complete line was added since the last read
+	 */
+	private synchronized boolean readNewPackedEntries() throws IOException {
+		Path index = Paths.get(datalakePath, PACKED_DIR, PACKED_INDEX);
+		if (!Files.exists(index)) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size <= packedIndexRead) {
+				return false;
+			}
+			ByteBuffer added = readFully(channel, packedIndexRead, (int) (size - packedIndexRead));
+			// A line still being written is left for the next read
+			int complete = added.limit();
+			while (complete > 0 && added.get(complete - 1) != '\n') {
+				complete--;
+			}
+			if (complete == 0) {
+				return false;
+			}
+			String lines = StandardCharsets.UTF_8.decode(added.limit(complete)).toString();
+			for (String line : lines.split("\n")) {
+				addPackedEntry(line);
+			}
+			packedIndexRead += complete;
+			return true;
+		}
+	}
+
+	private void addPackedEntry(String line) {
+		String[] parts = line.split("\\|");
+		if (parts.length != 5) {
+			return;
+		}
+		try {
+			packedBooks.put(Integer.parseInt(parts[0]), new PackedBook(Integer.parseInt(parts[1]),
+					Long.parseLong(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4])));
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid line in packed index: {}", line);
+		}
+	}
+
+	/**
+	 * One positioned read on the segment's shared channel
+	 */
+	private ByteBuffer readPacked(int segment, long offset, int length) throws IOException {
+		return readFully(packedSegment(segment), offset, length);
+	}
+
+	/**
+	 * The body as a read-only slice of the segment mapped into memory, so it is paged in
+	 * as it is consumed rather than copied onto the heap first
+	 */
+	private ByteBuffer mapPackedBody(PackedBook packed) throws IOException {
+		if (packed.bodyLength() == 0) {
+			return ByteBuffer.allocate(0);
+		}
+		return packedSegment(packed.segment()).map(FileChannel.MapMode.READ_ONLY,
+				packed.offset() + packed.headerLength(), packed.bodyLength());
+	}
+
+	private FileChannel packedSegment(int segment) throws IOException {
+		FileChannel channel = packedSegments.get(segment);
+		if (channel != null) {
+			return channel;
+		}
+		synchronized (packedSegments) {
+			channel = packedSegments.get(segment);
+			if (channel == null) {
+				Path path = Paths.get(datalakePath, PACKED_DIR, String.format("segment_%05d.dat", segment));
+				channel = FileChannel.open(path, StandardOpenOption.READ);
+				packedSegments.put(segment, channel);
+			}
+			return channel;
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of " + channel + " at " + (position + buffer.position()));
+			}
+		}
+		return buffer.flip();
+	}
+
 	/**
 	 * Find header file for a book (searches all bucket/timestamp structures)
 	 */
 	private Path findBookHeader(int bookId) throws IOException {
-		return findBookFile(bookId, "_header.txt");
+		return findBookFile(bookId, HEADER_SUFFIX);
 	}
 
 	/**
 	 * Find body file for a book (searches all bucket/timestamp structures)
 	 */
 	private Path findBookBody(int bookId) throws IOException {
-		return findBookFile(bookId, "_body.txt");
+		return findBookFile(bookId, BODY_SUFFIX);
 	}
 
 	/**
-	 * Generic method to find a book file with a specific suffix
+	 * Look a book file up in the location index, rebuilding the index first if the
+	 * datalake has changed since it was built
 	 */
 	private Path findBookFile(int bookId, String suffix) throws IOException {
 		Path datalakeDir = Paths.get(datalakePath);
@@ -95,12 +248,111 @@ public class DatalakeReader {
 			throw new IOException("Datalake directory not found: " + datalakePath);
 		}
 
-		try (Stream<Path> paths = Files.walk(datalakeDir)) {
-			return paths
-					.filter(Files::isRegularFile)
-					.filter(p -> p.getFileName().toString().equals(bookId + suffix))
-					.findFirst()
-					.orElse(null);
+		Path bookDir = bookDirs.get(bookId);
+		if (bookDir == null || !Files.exists(bookDir.resolve(bookId + suffix))) {
+			refreshLocations();
+			bookDir = bookDirs.get(bookId);
+		}
+
+		if (bookDir == null) {
+			return null;
+		}
+		Path file = bookDir.resolve(bookId + suffix);
+		return Files.isRegularFile(file) ? file : null;
+	}
+
+	/**
+	 * Rebuild the book location index unless the tracking file is unchanged since the
+	 * last build. Ingestion appends to the tracking file on every download, so an
+	 * unchanged file means a missing book is really missing and no scan is needed.
+	 */
+	private synchronized void refreshLocations() throws IOException {
+		Path trackingFile = Paths.get(datalakePath, TRACKING_FILE);
+		String trackingVersion = Files.exists(trackingFile)
+				? Files.getLastModifiedTime(trackingFile).toMillis() + ":" + Files.size(trackingFile)
+				: null;
+		if (locationsBuilt && Objects.equals(trackingVersion, indexedTrackingVersion)) {
+			return;
+		}
+
+		Map<Integer, Path> locations = new HashMap<>();
+		boolean needsScan = addTrackedLocations(trackingFile, locations);
+		if (needsScan) {
+			scanLocations(locations);
+		}
+
+		bookDirs.clear();
+		bookDirs.putAll(locations);
+		indexedTrackingVersion = trackingVersion;
+		locationsBuilt = true;
+		logger.info("Indexed locations of {} books in datalake{}", locations.size(), needsScan ? " (full scan)" : "");
+	}
+
+	/**
+	 * Timestamp layout records each book's directory in the tracking file ("id|path").
+	 * The path is relative to the ingestion service, so it is also tried below this
+	 * datalake by its date/hour/id part.
+	 * @return whether some tracked book has no usable recorded path (always the case for the bucket layout)
+	 */
+	private boolean addTrackedLocations(Path trackingFile, Map<Integer, Path> locations) throws IOException {
+		if (!Files.exists(trackingFile)) {
+			return true;
+		}
+
+		boolean missing = false;
+		for (String line : Files.readAllLines(trackingFile)) {
+			String[] parts = line.split("\\|");
+			if (parts[0].isBlank()) {
+				continue;
+			}
+			int bookId;
+			try {
+				bookId = Integer.parseInt(parts[0].trim());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+
+			Path bookDir = parts.length == 2 ? trackedBookDir(bookId, Paths.get(parts[1].trim())) : null;
+			if (bookDir != null) {
+				locations.put(bookId, bookDir);
+			} else {
+				missing = true;
+			}
+		}
+		return missing;
+	}
+
+	private Path trackedBookDir(int bookId, Path recorded) {
+		if (Files.exists(recorded.resolve(bookId + HEADER_SUFFIX))) {
+			return recorded;
+		}
+		int names = recorded.getNameCount();
+		if (names >= 3) {
+			Path relocated = Paths.get(datalakePath).resolve(recorded.subpath(names - 3, names));
+			if (Files.exists(relocated.resolve(bookId + HEADER_SUFFIX))) {
+				return relocated;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * One walk over the whole datalake, recording the directory of every header file
+	 */
+	private void scanLocations(Map<Integer, Path> locations) throws IOException {
+		try (Stream<Path> paths = Files.walk(Paths.get(datalakePath))) {
+			paths.filter(Files::isRegularFile).forEach(path -> {
+				String name = path.getFileName().toString();
+				if (!name.endsWith(HEADER_SUFFIX)) {
+					return;
+				}
+				try {
+					int bookId = Integer.parseInt(name.substring(0, name.length() - HEADER_SUFFIX.length()));
+					locations.putIfAbsent(bookId, path.getParent());
+				} catch (NumberFormatException e) {
+					// not a book file
+				}
+			});
 		}
 	}
 
@@ -109,9 +361,60 @@ public class DatalakeReader {
 	 */
 	public boolean bookExists(int bookId) {
 		try {
+			if (findPackedBook(bookId) != null) {
+				return true;
+			}
 			return findBookHeader(bookId) != null && findBookBody(bookId) != null;
 		} catch (IOException e) {
 			return false;
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Close the channels kept open on packed segment files
+	 */
+	public void close() throws IOException {
+		synchronized (packedSegments) {
+			for (FileChannel channel : packedSegments.values()) {
+				channel.close();
+			}
+			packedSegments.clear();
+		}
+	}
+
+	/**
+	 * A book in a packed segment: the header at {@code offset}, the body right after it
+	 */
+	private record PackedBook(int segment, long offset, int headerLength, int bodyLength) {}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -1,8 +1,31 @@
 package org.labubus.indexing;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.labubus.indexing.indexer.BinaryIndexWriter;
+import org.labubus.indexing.indexer.MergePolicy;
+import org.labubus.indexing.indexer.SegmentedIndexWriter;
+import org.labubus.indexing.indexer.TieredMergePolicy;
+import org.labubus.indexing.model.BookMetadata;
+import org.labubus.indexing.repository.SqliteMetadataRepository;
+import org.labubus.indexing.service.AsciiTokenizer;
+import org.labubus.indexing.service.IndexingService;
 import org.labubus.indexing.service.InvertedIndexBuilder;
+import org.labubus.indexing.service.MetadataExtractor;
+import org.labubus.indexing.service.Tokenizer;
+import org.labubus.indexing.service.UnicodeTokenizer;
+import org.labubus.indexing.storage.DatalakeReader;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -59,4 +82,313 @@ public class IndexingServiceTest {
 		System.out.println("✅ Metadata extraction test passed!");
 		System.out.println("   " + metadata);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testBinaryIndexRoundTrip(@TempDir Path tempDir) throws Exception {
+		BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "test_index");
+		writer.addWord("alice", 11, 3);
+		writer.addWord("alice", 42);
+		writer.addWord("wonderland", 11);
+		writer.addWord("café", 7);
+		writer.setDocumentLength(11, 120);
+		writer.save();
+
+		assertTrue(Files.exists(tempDir.resolve("test_index.terms")));
+		assertTrue(Files.exists(tempDir.resolve("test_index.postings")));
+
+		BinaryIndexWriter reloaded = new BinaryIndexWriter(tempDir.toString(), "test_index");
+		reloaded.load();
+
+		assertEquals(writer.getIndex(), reloaded.getIndex());
+		assertEquals(Set.of(11, 42), reloaded.getIndex().get("alice"));
+		assertEquals(Set.of(7), reloaded.getIndex().get("café"));
+
+		// Frequencies and document lengths survive a load/save cycle unchanged
+		byte[] postings = Files.readAllBytes(tempDir.resolve("test_index.postings"));
+		byte[] doclens = Files.readAllBytes(tempDir.resolve("test_index.doclens"));
+		reloaded.save();
+		byte[] resaved = Files.readAllBytes(tempDir.resolve("test_index.postings"));
+		assertFalse(Arrays.equals(postings, resaved), "every save is stamped with a new build id");
+		assertArrayEquals(withoutBuildId(postings), withoutBuildId(resaved));
+		assertArrayEquals(withoutBuildId(doclens), withoutBuildId(Files.readAllBytes(tempDir.resolve("test_index.doclens"))));
+
+		System.out.println("✅ Binary index round trip test passed!");
+	}
+
+	@Test
+	public void testPositionalIndexRoundTrip(@TempDir Path tempDir) throws Exception {
+		BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "test_index", true);
+		InvertedIndexBuilder builder = new InvertedIndexBuilder(writer, 3, 50, Set.of("and", "the"));
+		builder.indexBook(1342, "Pride and Prejudice, the pride of Longbourn");
+		builder.indexBook(11, "Alice was beginning to get very tired");
+		writer.save();
+
+		Path positions = tempDir.resolve("test_index.positions");
+		assertTrue(Files.exists(positions));
+
+		BinaryIndexWriter reloaded = new BinaryIndexWriter(tempDir.toString(), "test_index", true);
+		reloaded.load();
+		assertEquals(writer.getIndex(), reloaded.getIndex());
+
+		byte[] original = Files.readAllBytes(positions);
+		reloaded.save();
+		assertArrayEquals(withoutBuildId(original), withoutBuildId(Files.readAllBytes(positions)));
+
+		BinaryIndexWriter withoutPositions = new BinaryIndexWriter(tempDir.toString(), "test_index");
+		withoutPositions.load();
+		withoutPositions.save();
+		assertFalse(Files.exists(positions));
+
+		System.out.println("✅ Positional index round trip test passed!");
+	}
+
+	@Test
+	public void testParallelRebuildMatchesSerialIndex(@TempDir Path tempDir) throws Exception {
+		Path datalake = Files.createDirectories(tempDir.resolve("datalake/20240101/12"));
+		StringBuilder tracking = new StringBuilder();
+		String[] words = {"whale", "captain", "ocean", "garden", "rabbit", "queen", "letter", "ship"};
+
+		BinaryIndexWriter serialWriter = new BinaryIndexWriter(tempDir.resolve("serial").toString(), "index");
+		InvertedIndexBuilder serialBuilder = new InvertedIndexBuilder(serialWriter, 3, 50, Set.of("the"));
+
+		for (int bookId = 1; bookId <= 40; bookId++) {
+			StringBuilder body = new StringBuilder();
+			for (int i = 0; i < 50 + bookId; i++) {
+				body.append(words[(i * bookId) % words.length]).append(i % 7 == 0 ? " the " : " ");
+			}
+			Files.writeString(datalake.resolve(bookId + "_header.txt"), "Title: Book " + bookId + "\n\nAuthor: Someone\n");
+			Files.writeString(datalake.resolve(bookId + "_body.txt"), body);
+			tracking.append(bookId).append("|20240101\n");
+			serialBuilder.indexBook(bookId, body.toString());
+		}
+		Files.writeString(tempDir.resolve("datalake/downloaded_books.txt"), tracking);
+
+		BinaryIndexWriter parallelWriter = new BinaryIndexWriter(tempDir.resolve("parallel").toString(), "index");
+		SqliteMetadataRepository repository = new SqliteMetadataRepository(tempDir.resolve("books.sqlite").toString());
+		try {
+			IndexingService service = new IndexingService(
+					new DatalakeReader(tempDir.resolve("datalake").toString()),
+					new MetadataExtractor(),
+					repository,
+					new InvertedIndexBuilder(parallelWriter, 3, 50, Set.of("the")),
+					parallelWriter,
+					4
+			);
+
+			IndexingService.RebuildResult result = service.rebuildIndex();
+			assertEquals(40, result.booksIndexed());
+			assertEquals(0, result.booksFailed());
+			assertEquals(40, repository.count());
+		} finally {
+			repository.close();
+		}
+
+		// Same postings, frequencies and lengths as indexing the books one by one
+		serialWriter.save();
+		for (String suffix : List.of(".terms", ".postings", ".doclens")) {
+			assertArrayEquals(withoutBuildId(Files.readAllBytes(tempDir.resolve("serial/index" + suffix))),
+					withoutBuildId(Files.readAllBytes(tempDir.resolve("parallel/index" + suffix))), suffix);
+		}
+
+		// A book whose metadata cannot be saved is counted as failed and left out of the index
+		SqliteMetadataRepository failingRepository = new SqliteMetadataRepository(tempDir.resolve("failing.sqlite").toString()) {
+			@Override
+			public void save(BookMetadata metadata) throws SQLException {
+				if (metadata.bookId() == 7) {
+					throw new SQLException("disk full");
+				}
+				super.save(metadata);
+			}
+		};
+		try {
+			IndexingService service = new IndexingService(
+					new DatalakeReader(tempDir.resolve("datalake").toString()),
+					new MetadataExtractor(),
+					failingRepository,
+					new InvertedIndexBuilder(parallelWriter, 3, 50, Set.of("the")),
+					parallelWriter,
+					4
+			);
+
+			IndexingService.RebuildResult result = service.rebuildIndex();
+			assertEquals(39, result.booksIndexed());
+			assertEquals(1, result.booksFailed());
+			assertEquals(39, failingRepository.count());
+			for (Set<Integer> bookIds : parallelWriter.getIndex().values()) {
+				assertFalse(bookIds.contains(7));
+			}
+			assertTrue(parallelWriter.getIndex().get("whale").contains(8));
+		} finally {
+			failingRepository.close();
+		}
+
+		System.out.println("✅ Parallel rebuild test passed!");
+	}
+
+	@Test
+	public void testSegmentedIndexAppendsAndCompacts(@TempDir Path tempDir) throws Exception {
+		SegmentedIndexWriter writer = new SegmentedIndexWriter(tempDir.toString(), false, new TieredMergePolicy(3, 3, 1), 1, 0);
+		writer.load();
+		InvertedIndexBuilder builder = new InvertedIndexBuilder(writer, 3, 50, Set.of());
+
+		builder.indexBook(11, "Alice rabbit hole");
+		writer.save();
+		builder.indexBook(1342, "Pride and prejudice");
+		writer.save();
+		assertEquals(2, writer.segments().size());
+
+		// Re-indexing a book writes a new segment that hides the old postings
+		builder.indexBook(11, "Alice looking glass");
+		writer.save();
+
+		// Three small segments trigger a background merge into one
+		long deadline = System.currentTimeMillis() + 5000;
+		while (writer.segments().size() > 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, writer.segments().size());
+		assertEquals(2, writer.segments().get(0).bookCount());
+
+		SegmentedIndexWriter reopened = new SegmentedIndexWriter(tempDir.toString(), false, MergePolicy.NONE, 1, 0);
+		reopened.load();
+		assertEquals(Set.of(11), reopened.getIndex().get("glass"));
+		assertNull(reopened.getIndex().get("rabbit"));
+		assertEquals(Set.of(11, 1342), reopened.getIndex().keySet().stream()
+				.flatMap(word -> reopened.getIndex().get(word).stream())
+				.collect(java.util.stream.Collectors.toSet()));
+
+		System.out.println("✅ Segmented index test passed!");
+	}
+
+	@Test
+	public void testTieredMergePolicyAndBatchedFlush(@TempDir Path tempDir) throws Exception {
+		TieredMergePolicy policy = new TieredMergePolicy(3, 3, 10);
+		List<SegmentedIndexWriter.Segment> segments = List.of(
+				new SegmentedIndexWriter.Segment("seg_0", 300),
+				new SegmentedIndexWriter.Segment("seg_1", 40),
+				new SegmentedIndexWriter.Segment("seg_2", 35),
+				new SegmentedIndexWriter.Segment("seg_3", 5),
+				new SegmentedIndexWriter.Segment("seg_4", 1));
+
+		// Two small segments are not a full tier; adding a third one is
+		assertEquals(List.of(), policy.findMerge(segments));
+		List<SegmentedIndexWriter.Segment> withThird = new java.util.ArrayList<>(segments);
+		withThird.add(new SegmentedIndexWriter.Segment("seg_5", 2));
+		assertEquals(withThird.subList(3, 6), policy.findMerge(withThird));
+
+		// Books wait for a batch before a segment is written
+		SegmentedIndexWriter writer = new SegmentedIndexWriter(tempDir.toString(), false, MergePolicy.NONE, 2, 0);
+		writer.load();
+		InvertedIndexBuilder builder = new InvertedIndexBuilder(writer, 3, 50, Set.of());
+		builder.indexBook(11, "Alice rabbit hole");
+		writer.save();
+		assertEquals(0, writer.segments().size());
+		builder.indexBook(84, "Frankenstein monster");
+		writer.save();
+		assertEquals(1, writer.segments().size());
+		assertEquals(2, writer.segments().get(0).bookCount());
+
+		System.out.println("✅ Tiered merge policy test passed!");
+	}
+
+	@Test
+	public void testDatalakeReaderLocatesBooks(@TempDir Path tempDir) throws Exception {
+		Path datalake = tempDir.resolve("datalake");
+
+		// Timestamp layout, tracked with a path relative to the ingestion service
+		Path timestampDir = Files.createDirectories(datalake.resolve("20240101/10/11"));
+		Files.writeString(timestampDir.resolve("11_header.txt"), "Title: Alice");
+		Files.writeString(timestampDir.resolve("11_body.txt"), "alice body");
+
+		// Bucket layout, tracked by ID only
+		Path bucketDir = Files.createDirectories(datalake.resolve("bucket_13"));
+		Files.writeString(bucketDir.resolve("1342_header.txt"), "Title: Pride");
+		Files.writeString(bucketDir.resolve("1342_body.txt"), "pride body");
+
+		Path tracking = datalake.resolve("downloaded_books.txt");
+		Files.writeString(tracking, "11|../datalake/20240101/10/11\n1342\n");
+
+		DatalakeReader reader = new DatalakeReader(datalake.toString());
+		assertEquals("Title: Alice", reader.readBookHeader(11));
+		assertEquals("pride body", reader.readBookBody(1342));
+		assertTrue(reader.bookExists(1342));
+		assertFalse(reader.bookExists(84));
+
+		// A book downloaded later is found once the tracking file changes
+		Path newBucket = Files.createDirectories(datalake.resolve("bucket_0"));
+		Files.writeString(newBucket.resolve("84_header.txt"), "Title: Frankenstein");
+		Files.writeString(newBucket.resolve("84_body.txt"), "frankenstein body");
+		Files.writeString(tracking, "11|../datalake/20240101/10/11\n84\n1342\n");
+
+		assertTrue(reader.bookExists(84));
+		assertEquals("frankenstein body", reader.readBookBody(84));
+
+		System.out.println("✅ Datalake book location test passed!");
+	}
+
+	@Test
+	public void testDatalakeReaderReadsPackedSegments(@TempDir Path tempDir) throws Exception {
+		Path packed = Files.createDirectories(tempDir.resolve("datalake/packed"));
+		byte[] first = "Title: Alicealice body ü".getBytes(StandardCharsets.UTF_8);
+		byte[] second = "Title: Pridepride body".getBytes(StandardCharsets.UTF_8);
+		Files.write(packed.resolve("segment_00000.dat"), first);
+		Files.write(packed.resolve("segment_00001.dat"), second);
+		Files.writeString(packed.resolve("index.txt"), "11|0|0|12|" + (first.length - 12) + "\n");
+		Files.writeString(tempDir.resolve("datalake/downloaded_books.txt"), "11\n");
+
+		DatalakeReader reader = new DatalakeReader(tempDir.resolve("datalake").toString());
+		assertEquals("Title: Alice", reader.readBookHeader(11));
+		assertEquals("alice body ü", reader.readBookBody(11));
+		try (Reader body = reader.openBookBody(11)) {
+			char[] chars = new char[64];
+			assertEquals("alice body ü", new String(chars, 0, body.read(chars)));
+		}
+		assertFalse(reader.bookExists(1342));
+
+		// Entries appended later are picked up, a line still being written is not
+		Files.writeString(packed.resolve("index.txt"), "1342|1|0|12|10\n84|1|", StandardOpenOption.APPEND);
+		assertTrue(reader.bookExists(1342));
+		assertEquals("pride body", reader.readBookBody(1342));
+		assertFalse(reader.bookExists(84));
+		reader.close();
+
+		System.out.println("✅ Packed datalake reader test passed!");
+	}
+
+	@Test
+	public void testAsciiAndUnicodeTokenizers() throws Exception {
+		String text = "Café crème, STRAẞE naïve e\u0301te\u0301 don't 42x";
+
+		assertEquals(List.of("caf", "cr", "me", "stra", "e", "na", "ve", "e", "te", "don", "t", "x"),
+				words(new AsciiTokenizer(50), text));
+		assertEquals(List.of("café", "crème", "straße", "naïve", "e\u0301te\u0301", "don", "t", "x"),
+				words(new UnicodeTokenizer(50), text));
+
+		// A surrogate pair split by the read window still forms one letter
+		String padded = " ".repeat(Tokenizer.WINDOW_CHARS - 1) + "a\uD835\uDC9Cb";
+		assertEquals(List.of("a\uD835\uDC9Cb"), words(new UnicodeTokenizer(50), padded));
+
+		// Words over the limit are reported as limit + 1 and still take a position
+		assertEquals(List.of("abc", "abcd", "ab"), words(new UnicodeTokenizer(3), "abc abcdef ab"));
+
+		System.out.println("✅ Tokenizer test passed!");
+	}
+
+	private static List<String> words(Tokenizer tokenizer, String text) throws Exception {
+		List<String> words = new ArrayList<>();
+		tokenizer.tokenize(new StringReader(text), (word, length, position) -> {
+			assertEquals(words.size(), position);
+			words.add(new String(word, 0, length));
+		});
+		return words;
+	}
+
+	/**
+	 * A saved index file with the build id in its header blanked, to compare two saves by content
+	 */
+	private static byte[] withoutBuildId(byte[] file) {
+		byte[] copy = file.clone();
+		Arrays.fill(copy, 8, 16, (byte) 0);
+		return copy;
+	}
+}
@@ -2,11 +2,14 @@ package org.labubus.ingestion;
 
 import io.javalin.Javalin;
 import org.labubus.ingestion.controller.IngestionController;
+import org.labubus.ingestion.service.BatchIngestionService;
 import org.labubus.ingestion.service.BookDownloader;
 import org.labubus.ingestion.service.BookIngestionService;
 import org.labubus.ingestion.service.GutenbergDownloader;
+import org.labubus.ingestion.service.HttpClientBookDownloader;
 import org.labubus.ingestion.storage.BucketDatalakeStorage;
 import org.labubus.ingestion.storage.DatalakeStorage;
+import org.labubus.ingestion.storage.PackedDatalakeStorage;
 import org.labubus.ingestion.storage.TimestampDatalakeStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +40,10 @@ public class IngestionApp {
 			BookDownloader downloader = createBookDownloader(bookSource, config);
 
 			BookIngestionService ingestionService = new BookIngestionService(storage, downloader);
-			IngestionController controller = new IngestionController(ingestionService, storage);
+			int batchThreads = Integer.parseInt(config.getProperty("ingestion.batch.threads", "8"));
+			BatchIngestionService batchService = new BatchIngestionService(ingestionService, batchThreads);
+			logger.info("  Batch download threads: {}", batchThreads);
+			IngestionController controller = new IngestionController(ingestionService, batchService, storage);
 
 			Javalin app = Javalin.create(javalinConfig -> {
 				javalinConfig.http.defaultContentType = "application/json";
@@ -65,10 +71,14 @@ public class IngestionApp {
 	/**
 	 * Parse command line arguments and update configuration
 	 * Supported arguments:
-	 *   --datalake.type <bucket|timestamp>
+	 *   --datalake.type <bucket|timestamp|packed>
 	 *   --server.port <port>
 	 *   --datalake.path <path>
 	 *   --datalake.bucket.size <size>
+	 *   --datalake.packed.segment.mb <megabytes>
+	 *   --ingestion.batch.threads <threads>
+	 *   --gutenberg.max.connections.per.host <connections>
+	 *   --gutenberg.client <httpclient|urlconnection>
 	 */
 	private static void parseArguments(String[] args, Properties config) {
 		for (int i = 0; i < args.length; i++) {
@@ -93,16 +103,25 @@ public class IngestionApp {
 		System.out.println("Usage: java -jar ingestion-service-1.0.0.jar [options]\n");
 		System.out.println("Options:");
 		System.out.println("  --datalake.type <type>        Datalake storage type (default: bucket)");
-		System.out.println("                                Options: bucket, timestamp");
+		System.out.println("                                Options: bucket, timestamp, packed");
 		System.out.println("  --server.port <port>          Server port (default: 7001)");
 		System.out.println("  --datalake.path <path>        Datalake path (default: ../datalake)");
 		System.out.println("  --datalake.bucket.size <size> Bucket size (default: 10)");
+		System.out.println("  --datalake.packed.segment.mb <mb>");
+		System.out.println("                                Size of a packed datalake segment file (default: 256)");
+		System.out.println("  --ingestion.batch.threads <n> Concurrent downloads for POST /ingest/batch (default: 8)");
+		System.out.println("  --gutenberg.max.connections.per.host <n>");
+		System.out.println("                                Concurrent requests to one mirror (default: 4)");
+		System.out.println("  --gutenberg.client <client>   HTTP client for downloads (default: httpclient)");
+		System.out.println("                                Options: httpclient, urlconnection");
 		System.out.println("  -h, --help                    Show this help message\n");
 		System.out.println("Examples:");
 		System.out.println("  # Run with bucket datalake (default)");
 		System.out.println("  java -jar ingestion-service-1.0.0.jar\n");
 		System.out.println("  # Run with timestamp datalake");
 		System.out.println("  java -jar ingestion-service-1.0.0.jar --datalake.type timestamp\n");
+		System.out.println("  # Run with books packed into large segment files");
+		System.out.println("  java -jar ingestion-service-1.0.0.jar --datalake.type packed\n");
 		System.out.println("  # Run with custom port and bucket size");
 		System.out.println("  java -jar ingestion-service-1.0.0.jar --server.port 8001 --datalake.bucket.size 20\n");
 	}
@@ -117,9 +136,13 @@ public class IngestionApp {
 		} else if (type.equalsIgnoreCase("timestamp")) {
 			logger.info("  Datalake: Timestamp-based");
 			return new TimestampDatalakeStorage(datalakePath);
+		} else if (type.equalsIgnoreCase("packed")) {
+			long segmentMb = Long.parseLong(config.getProperty("datalake.packed.segment.mb", "256"));
+			logger.info("  Datalake: Packed segments (segment={} MB)", segmentMb);
+			return new PackedDatalakeStorage(datalakePath, segmentMb * 1024 * 1024);
 		} else {
 			throw new IllegalArgumentException(
-					"Unknown datalake type: " + type + ". Valid options: bucket, timestamp"
+					"Unknown datalake type: " + type + ". Valid options: bucket, timestamp, packed"
 			);
 		}
 	}
@@ -129,10 +152,21 @@ public class IngestionApp {
 			String baseUrl = config.getProperty("gutenberg.base.url",
 					"https://www.gutenberg.org/cache/epub");
 			int timeout = Integer.parseInt(config.getProperty("gutenberg.download.timeout", "30000"));
-			logger.info("  Book Source: Project Gutenberg");
+			int connectionsPerHost = Integer.parseInt(config.getProperty("gutenberg.max.connections.per.host",
+					String.valueOf(GutenbergDownloader.DEFAULT_MAX_CONNECTIONS_PER_HOST)));
+			String client = config.getProperty("gutenberg.client", "httpclient");
+			logger.info("  Book Source: Project Gutenberg ({} client)", client);
 			logger.info("  Base URL: {}", baseUrl);
-			logger.info("  Timeout: {}ms", timeout);
-			return new GutenbergDownloader(baseUrl, timeout);
+			logger.info("  Timeout: {}ms, at most {} connections per host", timeout, connectionsPerHost);
+			if (client.equalsIgnoreCase("httpclient")) {
+				return new HttpClientBookDownloader(baseUrl, timeout, connectionsPerHost);
+			} else if (client.equalsIgnoreCase("urlconnection")) {
+				return new GutenbergDownloader(baseUrl, timeout, connectionsPerHost);
+			} else {
+				throw new IllegalArgumentException(
+						"Unknown Gutenberg client: " + client + ". Valid options: httpclient, urlconnection"
+				);
+			}
 		} else {
 			throw new IllegalArgumentException("Unknown book source: " + source);
 		}
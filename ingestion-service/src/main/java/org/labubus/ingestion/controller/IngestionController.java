@@ -2,15 +2,23 @@ package org.labubus.ingestion.controller;
 
 import com.google.gson.Gson;
 import io.javalin.Javalin;
+import com.google.gson.JsonParseException;
 import io.javalin.http.Context;
+import org.labubus.ingestion.model.BatchIngestionRequest;
+import org.labubus.ingestion.model.BatchSummary;
 import org.labubus.ingestion.model.IngestionResponse;
 import org.labubus.ingestion.model.IngestionStatusResponse;
+import org.labubus.ingestion.service.BatchIngestionService;
 import org.labubus.ingestion.service.BookIngestionService;
 import org.labubus.ingestion.storage.DatalakeStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,10 +27,13 @@ public class IngestionController {
 	private static final Logger logger = LoggerFactory.getLogger(IngestionController.class);
 	private static final Gson gson = new Gson();
 	private final BookIngestionService ingestionService;
+	private final BatchIngestionService batchService;
 	private final DatalakeStorage storage;
 
-	public IngestionController(BookIngestionService ingestionService, DatalakeStorage storage) {
+	public IngestionController(BookIngestionService ingestionService, BatchIngestionService batchService,
+							   DatalakeStorage storage) {
 		this.ingestionService = ingestionService;
+		this.batchService = batchService;
 		this.storage = storage;
 	}
 
@@ -32,6 +43,9 @@ public class IngestionController {
 	public void registerRoutes(Javalin app) {
 		app.get("/health", this::handleHealth);
 
+		// Registered first, so "batch" is not taken for a book_id
+		app.post("/ingest/batch", this::handleBatch);
+
 		app.post("/ingest/{book_id}", this::handleIngest);
 
 		app.get("/ingest/status/{book_id}", this::handleStatus);
@@ -99,6 +113,51 @@ public class IngestionController {
 		}
 	}
 
+	/**
+	 * POST /ingest/batch with {"bookIds": [...]} or {"from": n, "to": m}
+	 * Download many books concurrently. The response is newline-delimited JSON: one
+	 * line per book as it finishes, then a summary line with counts and throughput.
+	 */
+	private void handleBatch(Context ctx) {
+		List<Integer> bookIds;
+		try {
+			BatchIngestionRequest request = gson.fromJson(ctx.body(), BatchIngestionRequest.class);
+			if (request == null) {
+				throw new IllegalArgumentException("Request body is required");
+			}
+			bookIds = request.resolve(BatchIngestionService.MAX_BATCH_SIZE);
+		} catch (JsonParseException | IllegalArgumentException e) {
+			Map<String, String> error = new HashMap<>();
+			error.put("error", "Invalid batch request: " + e.getMessage());
+			ctx.status(400).result(gson.toJson(error));
+			logger.warn("Invalid batch request: {}", e.getMessage());
+			return;
+		}
+
+		logger.info("Received batch ingest request for {} books", bookIds.size());
+		ctx.status(200).contentType("application/x-ndjson");
+		try (Writer writer = new OutputStreamWriter(ctx.res().getOutputStream(), StandardCharsets.UTF_8)) {
+			BatchSummary summary = batchService.ingest(bookIds, progress -> writeLine(writer, progress));
+			writeLine(writer, summary);
+		} catch (IOException | UncheckedIOException e) {
+			// The client went away; books already submitted still finish in the background
+			logger.warn("Batch progress stream closed early: {}", e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Batch ingestion interrupted");
+		}
+	}
+
+	private static void writeLine(Writer writer, Object line) {
+		try {
+			writer.write(gson.toJson(line));
+			writer.write('\n');
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	/**
 	 * GET /ingest/status/{book_id}
 	 * Check if a book has been downloaded
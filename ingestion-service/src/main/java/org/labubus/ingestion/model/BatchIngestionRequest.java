@@ -0,0 +1,38 @@
+package org.labubus.ingestion.model;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Body of POST /ingest/batch: either explicit {@code bookIds} or an inclusive {@code from}..{@code to} range
+ */
+public record BatchIngestionRequest(
+		List<Integer> bookIds,
+		Integer from,
+		Integer to
+) {
+	/**
+	 * @throws IllegalArgumentException if neither or both forms are given, the range is backwards
+	 * or it holds more than {@code maxSize} IDs
+	 */
+	public List<Integer> resolve(int maxSize) {
+		boolean hasList = bookIds != null && !bookIds.isEmpty();
+		boolean hasRange = from != null || to != null;
+		if (hasList == hasRange) {
+			throw new IllegalArgumentException("Give either 'bookIds' or both 'from' and 'to'");
+		}
+		if (hasList) {
+			if (bookIds.size() > maxSize) {
+				throw new IllegalArgumentException("Batch holds more than " + maxSize + " books");
+			}
+			return bookIds;
+		}
+		if (from == null || to == null || from > to) {
+			throw new IllegalArgumentException("Range needs 'from' <= 'to'");
+		}
+		if ((long) to - from >= maxSize) {
+			throw new IllegalArgumentException("Range holds more than " + maxSize + " books");
+		}
+		return IntStream.rangeClosed(from, to).boxed().toList();
+	}
+}
@@ -0,0 +1,16 @@
+package org.labubus.ingestion.model;
+
+/**
+ * One line of a batch ingestion stream, sent as each book finishes
+ * @param completed books finished so far in this batch, including this one
+ */
+public record BatchProgress(
+		String type,
+		int completed,
+		int total,
+		IngestionResponse book
+) {
+	public static BatchProgress of(int completed, int total, IngestionResponse book) {
+		return new BatchProgress("book", completed, total, book);
+	}
+}
@@ -0,0 +1,20 @@
+package org.labubus.ingestion.model;
+
+/**
+ * Last line of a batch ingestion stream
+ * @param booksPerSecond books finished (in any state) per second of wall time
+ */
+public record BatchSummary(
+		String type,
+		int requested,
+		int downloaded,
+		int alreadyExisting,
+		int failed,
+		long elapsedMillis,
+		double booksPerSecond
+) {
+	public static BatchSummary of(int requested, int downloaded, int alreadyExisting, int failed, long elapsedMillis) {
+		double booksPerSecond = elapsedMillis == 0 ? requested : requested * 1000.0 / elapsedMillis;
+		return new BatchSummary("summary", requested, downloaded, alreadyExisting, failed, elapsedMillis, booksPerSecond);
+	}
+}
@@ -0,0 +1,104 @@
+package org.labubus.ingestion.service;
+
+import org.labubus.ingestion.model.BatchProgress;
+import org.labubus.ingestion.model.BatchSummary;
+import org.labubus.ingestion.model.IngestionResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ingests many books at once on a fixed pool of worker threads shared by all batches,
+ * so concurrent batches together never run more than {@code threads} downloads. The
+ * downloader additionally caps the connections per host.
+ */
+public class BatchIngestionService {
+	private static final Logger logger = LoggerFactory.getLogger(BatchIngestionService.class);
+
+	public static final int MAX_BATCH_SIZE = 10_000;
+
+	private final BookIngestionService ingestionService;
+	private final ExecutorService workers;
+
+	public BatchIngestionService(BookIngestionService ingestionService, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Batch threads must be at least 1, got " + threads);
+		}
+		this.ingestionService = ingestionService;
+		AtomicInteger workerCount = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "ingest-worker-" + workerCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Ingest every book, calling {@code progress} from the calling thread as each one
+	 * finishes, in completion order. A failed book is reported and does not stop the batch.
+	 * Repeated IDs are ingested once.
+	 * @throws IllegalArgumentException if the batch is empty or larger than {@link #MAX_BATCH_SIZE}
+	 */
+	public BatchSummary ingest(List<Integer> requestedIds, Consumer<BatchProgress> progress) throws InterruptedException {
+		List<Integer> bookIds = List.copyOf(new LinkedHashSet<>(requestedIds));
+		if (bookIds.isEmpty() || bookIds.size() > MAX_BATCH_SIZE) {
+			throw new IllegalArgumentException("A batch must have between 1 and " + MAX_BATCH_SIZE
+					+ " books, got " + bookIds.size());
+		}
+
+		long start = System.nanoTime();
+		logger.info("Starting batch of {} books", bookIds.size());
+
+		ExecutorCompletionService<IngestionResponse> completion = new ExecutorCompletionService<>(workers);
+		for (int bookId : bookIds) {
+			completion.submit(() -> ingestOne(bookId));
+		}
+
+		int downloaded = 0;
+		int alreadyExisting = 0;
+		int failed = 0;
+		for (int completed = 1; completed <= bookIds.size(); completed++) {
+			IngestionResponse response;
+			try {
+				response = completion.take().get();
+			} catch (ExecutionException e) {
+				// ingestOne reports its own failures, so this is a bug rather than a bad book
+				throw new IllegalStateException("Batch worker failed", e.getCause());
+			}
+
+			switch (response.status()) {
+				case "downloaded" -> downloaded++;
+				case "already_exists" -> alreadyExisting++;
+				default -> failed++;
+			}
+			progress.accept(BatchProgress.of(completed, bookIds.size(), response));
+		}
+
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+		BatchSummary summary = BatchSummary.of(bookIds.size(), downloaded, alreadyExisting, failed, elapsedMillis);
+		logger.info("Batch finished in {} ms: {} downloaded, {} already present, {} failed ({} books/s)",
+				elapsedMillis, downloaded, alreadyExisting, failed, String.format("%.1f", summary.booksPerSecond()));
+		return summary;
+	}
+
+	private IngestionResponse ingestOne(int bookId) {
+		try {
+			if (ingestionService.isBookDownloaded(bookId)) {
+				return IngestionResponse.alreadyExists(bookId, ingestionService.getBookPath(bookId));
+			}
+			return IngestionResponse.success(bookId, ingestionService.downloadAndSave(bookId));
+		} catch (IOException | RuntimeException e) {
+			logger.error("Failed to ingest book {}: {}", bookId, e.getMessage());
+			return IngestionResponse.failure(bookId, e.getMessage());
+		}
+	}
+}
@@ -1,6 +1,12 @@
 package org.labubus.ingestion.service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 public interface BookDownloader {
 	/**
@@ -10,4 +16,23 @@ public interface BookDownloader {
 	 * @throws IOException if download fails
 	 */
 	String downloadBook(int bookId) throws IOException;
-}
\ No newline at end of file
+
+	/**
+	 * Open a book's content as UTF-8 bytes; the caller must close the stream.
+	 * Downloaders that can stream override this, the default buffers {@link #downloadBook}.
+	 * @throws IOException if the book cannot be found
+	 */
+	default InputStream openBook(int bookId) throws IOException {
+		return new ByteArrayInputStream(downloadBook(bookId).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Download a book straight into {@code target}, replacing it
+	 * @return number of bytes written
+	 */
+	default long downloadBookTo(int bookId, Path target) throws IOException {
+		try (InputStream content = openBook(bookId)) {
+			return Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
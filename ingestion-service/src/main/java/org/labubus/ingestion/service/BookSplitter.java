@@ -0,0 +1,165 @@
+package org.labubus.ingestion.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a Project Gutenberg text into header and body in a single pass over its bytes.
+ * The header is everything before the {@code *** START OF} marker; the body is
+ * everything after the rest of that marker's line, up to {@code *** END OF}. Both are
+ * trimmed of surrounding whitespace, like {@link String#trim()}. Memory use does not
+ * depend on the book's size: only a partly matched marker and a run of whitespace that
+ * may turn out to be trailing are held back.
+ */
+final class BookSplitter {
+	private static final byte[] START_MARKER = "*** START OF".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] END_MARKER = "*** END OF".getBytes(StandardCharsets.US_ASCII);
+
+	private enum Phase { HEADER, START_LINE, BODY, DONE }
+
+	private BookSplitter() {}
+
+	/**
+	 * Bytes written to each side after trimming
+	 */
+	record Split(long headerBytes, long bodyBytes) {}
+
+	/**
+	 * Copy the header and body of {@code content} to the two outputs. Reading stops at the
+	 * end marker. The outputs are not closed.
+	 * @throws IOException if a marker is missing or either part is empty
+	 */
+	static Split split(InputStream content, OutputStream header, OutputStream body) throws IOException {
+		TrimmedOutput headerOut = new TrimmedOutput(header);
+		TrimmedOutput bodyOut = new TrimmedOutput(body);
+		MarkerScanner start = new MarkerScanner(START_MARKER);
+		MarkerScanner end = new MarkerScanner(END_MARKER);
+
+		Phase phase = Phase.HEADER;
+		byte[] buffer = new byte[64 * 1024];
+		int read;
+		while (phase != Phase.DONE && (read = content.read(buffer)) != -1) {
+			for (int i = 0; i < read && phase != Phase.DONE; i++) {
+				byte b = buffer[i];
+				switch (phase) {
+					case HEADER -> {
+						if (start.feed(b, headerOut)) {
+							phase = Phase.START_LINE;
+						}
+					}
+					case START_LINE -> {
+						if (b == '\n') {
+							phase = Phase.BODY;
+						}
+					}
+					case BODY -> {
+						if (end.feed(b, bodyOut)) {
+							phase = Phase.DONE;
+						}
+					}
+					default -> throw new IllegalStateException("Unexpected phase " + phase);
+				}
+			}
+		}
+
+		if (phase == Phase.HEADER) {
+			throw new IOException("Invalid book format: START marker not found. " +
+					"This book may not be in plain text format or may be corrupted.");
+		}
+		if (phase != Phase.DONE) {
+			throw new IOException("Invalid book format: END marker not found. " +
+					"This book may be incomplete or corrupted.");
+		}
+		if (headerOut.written == 0) {
+			throw new IOException("Invalid book format: Header is empty");
+		}
+		if (bodyOut.written == 0) {
+			throw new IOException("Invalid book format: Body is empty");
+		}
+		return new Split(headerOut.written, bodyOut.written);
+	}
+
+	/**
+	 * Finds a marker anywhere in a byte stream (Knuth-Morris-Pratt), passing on every byte
+	 * that turns out not to be part of it
+	 */
+	private static final class MarkerScanner {
+		private final byte[] marker;
+		private final int[] fallback;
+		private int matched;
+
+		MarkerScanner(byte[] marker) {
+			this.marker = marker;
+			this.fallback = new int[marker.length];
+			for (int i = 1, k = 0; i < marker.length; i++) {
+				while (k > 0 && marker[i] != marker[k]) {
+					k = fallback[k - 1];
+				}
+				if (marker[i] == marker[k]) {
+					k++;
+				}
+				fallback[i] = k;
+			}
+		}
+
+		/**
+		 * @return true once the whole marker has been seen; its bytes are not passed on
+		 */
+		boolean feed(byte b, TrimmedOutput out) throws IOException {
+			int before = matched;
+			while (matched > 0 && marker[matched] != b) {
+				matched = fallback[matched - 1];
+			}
+			if (marker[matched] == b) {
+				matched++;
+			}
+			if (matched == marker.length) {
+				return true;
+			}
+
+			// Held back were the first `before` marker bytes plus b; only the last `matched` still count
+			int released = before + 1 - matched;
+			for (int i = 0; i < released; i++) {
+				out.write(i < before ? marker[i] : b);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Drops leading whitespace and holds whitespace back until something follows it, so
+	 * trailing whitespace is never written
+	 */
+	private static final class TrimmedOutput {
+		private final OutputStream out;
+		private byte[] pending = new byte[64];
+		private int pendingCount;
+		private long written;
+
+		TrimmedOutput(OutputStream out) {
+			this.out = out;
+		}
+
+		void write(byte b) throws IOException {
+			if ((b & 0xFF) <= ' ') {
+				if (written > 0) {
+					if (pendingCount == pending.length) {
+						pending = Arrays.copyOf(pending, pendingCount * 2);
+					}
+					pending[pendingCount++] = b;
+				}
+				return;
+			}
+			if (pendingCount > 0) {
+				out.write(pending, 0, pendingCount);
+				written += pendingCount;
+				pendingCount = 0;
+			}
+			out.write(b);
+			written++;
+		}
+	}
+}
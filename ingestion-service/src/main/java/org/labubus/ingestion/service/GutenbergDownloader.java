@@ -10,15 +10,28 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Downloads plain-text books from a Project Gutenberg mirror. Safe to call from several
+ * threads; at most {@code maxConnectionsPerHost} requests run against any one host at a
+ * time, so a large batch does not hammer the mirror.
+ */
 public class GutenbergDownloader implements BookDownloader {
 	private static final Logger logger = LoggerFactory.getLogger(GutenbergDownloader.class);
 
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
 	private final String baseUrl;
 	private final int timeout;
+	private final HostConnectionLimiter hostLimiter;
 
 	public GutenbergDownloader(String baseUrl, int timeout) {
+		this(baseUrl, timeout, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	}
+
+	public GutenbergDownloader(String baseUrl, int timeout, int maxConnectionsPerHost) {
 		this.baseUrl = baseUrl;
 		this.timeout = timeout;
+		this.hostLimiter = new HostConnectionLimiter(maxConnectionsPerHost);
 	}
 
 	@Override
@@ -53,6 +66,15 @@ public class GutenbergDownloader implements BookDownloader {
 
 	private String downloadFromUrl(String urlString) throws IOException {
 		URL url = new URL(urlString);
+		hostLimiter.acquire(url.getAuthority());
+		try {
+			return fetch(url, urlString);
+		} finally {
+			hostLimiter.release(url.getAuthority());
+		}
+	}
+
+	private String fetch(URL url, String urlString) throws IOException {
 		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
 		connection.setRequestMethod("GET");
 		connection.setConnectTimeout(timeout);
@@ -0,0 +1,41 @@
+package org.labubus.ingestion.service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps how many requests run against one host at a time, across all threads sharing the limiter
+ */
+class HostConnectionLimiter {
+	private final int maxConnectionsPerHost;
+	private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+	HostConnectionLimiter(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("Connections per host must be at least 1, got " + maxConnectionsPerHost);
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Wait for a free connection to {@code host}; every successful call must be paired with {@link #release}
+	 */
+	void acquire(String host) throws IOException {
+		try {
+			permits(host).acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection to " + host, e);
+		}
+	}
+
+	void release(String host) {
+		permits(host).release();
+	}
+
+	private Semaphore permits(String host) {
+		return hostPermits.computeIfAbsent(host, key -> new Semaphore(maxConnectionsPerHost, true));
+	}
+}
@@ -0,0 +1,249 @@
+package org.labubus.ingestion.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Downloads Project Gutenberg books over one shared {@link HttpClient}, so connections
+ * are pooled and reused, HTTP/2 is used where the mirror offers it, and responses may
+ * come gzip-compressed. Books are handed out as streams rather than strings.
+ *
+ * Gutenberg files a book under one of a few URL formats, and neighbouring books tend
+ * to use the same one. The format that last worked is remembered per block of
+ * {@value #ID_BLOCK} IDs and tried first, so most books take a single request.
+ *
+ * The client's timeouts stop at the response headers, so a watchdog closes a body
+ * whose read has been blocked for longer than the timeout, like a socket read timeout.
+ */
+public class HttpClientBookDownloader implements BookDownloader {
+	private static final Logger logger = LoggerFactory.getLogger(HttpClientBookDownloader.class);
+
+	private static final int ID_BLOCK = 1000;
+	private static final String[] URL_FORMATS = {"%s/%d/pg%d.txt", "%s/%d/%d.txt", "%s/%d/%d-0.txt"};
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "download-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String baseUrl;
+	private final Duration timeout;
+	private final HttpClient client;
+	private final HostConnectionLimiter hostLimiter;
+	private final Map<Integer, Integer> formatByBlock = new ConcurrentHashMap<>();
+
+	/**
+	 * @param timeout milliseconds allowed to connect, to receive the response headers and for each read of the body
+	 */
+	public HttpClientBookDownloader(String baseUrl, int timeout, int maxConnectionsPerHost) {
+		this.baseUrl = baseUrl;
+		this.timeout = Duration.ofMillis(timeout);
+		this.hostLimiter = new HostConnectionLimiter(maxConnectionsPerHost);
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(this.timeout)
+				.build();
+	}
+
+	@Override
+	public String downloadBook(int bookId) throws IOException {
+		try (InputStream content = openBook(bookId)) {
+			return new String(content.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Stream a book from the first URL format that has it. The stream holds one of the
+	 * host's connections until it is closed.
+	 */
+	@Override
+	public InputStream openBook(int bookId) throws IOException {
+		int block = bookId / ID_BLOCK;
+		int preferred = formatByBlock.getOrDefault(block, 0);
+
+		IOException lastException = null;
+		StringBuilder attemptedUrls = new StringBuilder();
+		for (int attempt = 0; attempt < URL_FORMATS.length; attempt++) {
+			// Remembered format first, then the others in their usual order
+			int format = attempt == 0 ? preferred : (attempt <= preferred ? attempt - 1 : attempt);
+			String url = String.format(URL_FORMATS[format], baseUrl, bookId, bookId);
+			try {
+				logger.debug("Trying URL: {}", url);
+				InputStream content = open(URI.create(url));
+				formatByBlock.put(block, format);
+				logger.info("Downloading book {} from {}", bookId, url);
+				return content;
+			} catch (IOException e) {
+				logger.debug("Failed to download from {}: {}", url, e.getMessage());
+				attemptedUrls.append("\n  - ").append(url);
+				lastException = e;
+			}
+		}
+
+		throw new IOException(
+				String.format("Failed to download book %d. Attempted URLs:%s", bookId, attemptedUrls),
+				lastException
+		);
+	}
+
+	private InputStream open(URI uri) throws IOException {
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.timeout(timeout)
+				.header("Accept-Encoding", "gzip")
+				.header("User-Agent", "Mozilla/5.0 (Stage2 Book Ingestion Service)")
+				.GET()
+				.build();
+
+		String host = uri.getAuthority();
+		hostLimiter.acquire(host);
+		boolean handedOff = false;
+		try {
+			HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+			InputStream body = response.body();
+			if (response.statusCode() != 200) {
+				body.close();
+				throw new IOException("HTTP " + response.statusCode() + " for URL: " + uri);
+			}
+
+			InputStream timed = new ReadTimeoutStream(body, uri);
+			boolean gzip = response.headers().firstValue("Content-Encoding")
+					.map(encoding -> encoding.equalsIgnoreCase("gzip"))
+					.orElse(false);
+			InputStream decoded = timed;
+			if (gzip) {
+				try {
+					decoded = new GZIPInputStream(timed, 64 * 1024);
+				} catch (IOException e) {
+					timed.close();
+					throw e;
+				}
+			}
+			InputStream content = new PermitReleasingStream(decoded, host);
+			handedOff = true;
+			return content;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while downloading " + uri, e);
+		} finally {
+			if (!handedOff) {
+				hostLimiter.release(host);
+			}
+		}
+	}
+
+	/**
+	 * Gives the host connection back when the caller closes the stream
+	 */
+	private final class PermitReleasingStream extends FilterInputStream {
+		private final String host;
+		private boolean closed;
+
+		PermitReleasingStream(InputStream in, String host) {
+			super(in);
+			this.host = host;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				super.close();
+			} finally {
+				hostLimiter.release(host);
+			}
+		}
+	}
+
+	/**
+	 * Closes the response body when a read blocks for longer than the timeout, which
+	 * wakes the reader; the read then fails with a {@link SocketTimeoutException}
+	 * rather than ending the book early
+	 */
+	private final class ReadTimeoutStream extends FilterInputStream {
+		private final URI uri;
+		private final ScheduledFuture<?> check;
+		private volatile long readStartedAt;
+		private volatile boolean timedOut;
+
+		ReadTimeoutStream(InputStream in, URI uri) {
+			super(in);
+			this.uri = uri;
+			long period = Math.max(1, timeout.toMillis() / 4);
+			this.check = watchdog.scheduleAtFixedRate(this::closeIfStalled, period, period, TimeUnit.MILLISECONDS);
+		}
+
+		private void closeIfStalled() {
+			long started = readStartedAt;
+			if (started != 0 && System.nanoTime() - started > timeout.toNanos()) {
+				timedOut = true;
+				check.cancel(false);
+				try {
+					in.close();
+				} catch (IOException e) {
+					logger.debug("Failed to close stalled download from {}: {}", uri, e.getMessage());
+				}
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			int n = read(single, 0, 1);
+			return n == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			readStartedAt = System.nanoTime();
+			int n;
+			try {
+				n = in.read(buffer, offset, length);
+			} catch (IOException e) {
+				throw timedOut ? timeout(e) : e;
+			} finally {
+				readStartedAt = 0;
+			}
+			if (timedOut) {
+				throw timeout(null);
+			}
+			return n;
+		}
+
+		private SocketTimeoutException timeout(IOException cause) {
+			SocketTimeoutException e = new SocketTimeoutException(
+					"No data from " + uri + " for " + timeout.toMillis() + " ms");
+			if (cause != null) {
+				e.initCause(cause);
+			}
+			return e;
+		}
+
+		@Override
+		public void close() throws IOException {
+			check.cancel(false);
+			super.close();
+		}
+	}
+}
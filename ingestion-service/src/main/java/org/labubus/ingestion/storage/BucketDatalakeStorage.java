@@ -12,6 +12,7 @@ public class BucketDatalakeStorage implements DatalakeStorage {
 	private final String datalakePath;
 	private final int bucketSize;
 	private final Path downloadedBooksFile;
+	private DownloadTracker tracker;
 
 	public BucketDatalakeStorage(String datalakePath, int bucketSize) {
 		this.datalakePath = datalakePath;
@@ -24,10 +25,7 @@ public class BucketDatalakeStorage implements DatalakeStorage {
 		try {
 			Files.createDirectories(Paths.get(datalakePath));
 
-			if (!Files.exists(downloadedBooksFile)) {
-				Files.createFile(downloadedBooksFile);
-				logger.info("Created downloaded_books.txt tracking file");
-			}
+			tracker = new DownloadTracker(downloadedBooksFile);
 
 			logger.info("Bucket-based datalake initialized at: {}", datalakePath);
 		} catch (IOException e) {
@@ -63,15 +61,18 @@ public class BucketDatalakeStorage implements DatalakeStorage {
 		return bucketPath.toString();
 	}
 
+	@Override
+	public BookWriter openBook(int bookId) throws IOException {
+		Path bucketPath = getBucketPath(bookId);
+		return new FileBookWriter(bookId, bucketPath, () -> {
+			trackDownloadedBook(bookId);
+			logger.info("Saved book {} to bucket {}", bookId, bucketPath);
+		});
+	}
+
 	@Override
 	public boolean isBookDownloaded(int bookId) {
-		try {
-			Set<Integer> downloadedBooks = getDownloadedBooks();
-			return downloadedBooks.contains(bookId);
-		} catch (IOException e) {
-			logger.error("Error checking if book is downloaded", e);
-			return false;
-		}
+		return tracker.contains(bookId);
 	}
 
 	@Override
@@ -83,52 +84,21 @@ public class BucketDatalakeStorage implements DatalakeStorage {
 	}
 
 	private void trackDownloadedBook(int bookId) throws IOException {
-		Set<Integer> downloadedBooks = getDownloadedBooks();
-		downloadedBooks.add(bookId);
-
-		List<Integer> sortedBooks = new ArrayList<>(downloadedBooks);
-		Collections.sort(sortedBooks);
-
-		StringBuilder content = new StringBuilder();
-		for (int id : sortedBooks) {
-			content.append(id).append("\n");
-		}
-
-		Files.writeString(downloadedBooksFile, content.toString());
+		tracker.record(bookId, null);
 	}
 
 	@Override
-	public Set<Integer> getDownloadedBooks() throws IOException {
-		Set<Integer> books = new HashSet<>();
-
-		if (!Files.exists(downloadedBooksFile)) {
-			return books;
-		}
-
-		List<String> lines = Files.readAllLines(downloadedBooksFile);
-		for (String line : lines) {
-			line = line.trim();
-			if (!line.isEmpty()) {
-				try {
-					books.add(Integer.parseInt(line));
-				} catch (NumberFormatException e) {
-					logger.warn("Invalid book ID in tracking file: {}", line);
-				}
-			}
-		}
-
-		return books;
+	public Set<Integer> getDownloadedBooks() {
+		return tracker.ids();
 	}
 
 	@Override
-	public List<Integer> getDownloadedBooksList() throws IOException {
-		List<Integer> books = new ArrayList<>(getDownloadedBooks());
-		Collections.sort(books);
-		return books;
+	public List<Integer> getDownloadedBooksList() {
+		return tracker.sortedIds();
 	}
 
 	@Override
-	public int getDownloadedBooksCount() throws IOException {
-		return getDownloadedBooks().size();
+	public int getDownloadedBooksCount() {
+		return tracker.size();
 	}
-}
\ No newline at end of file
+}
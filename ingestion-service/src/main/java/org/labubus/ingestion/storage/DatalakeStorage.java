@@ -1,6 +1,10 @@
 package org.labubus.ingestion.storage;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
 
@@ -10,6 +14,36 @@ public interface DatalakeStorage {
 	 */
 	String saveBook(int bookId, String header, String body) throws IOException;
 
+	/**
+	 * Start saving a book whose header and body are written as UTF-8 bytes. Storages that
+	 * can write straight to their files override this; the default collects both parts
+	 * in memory and hands them to {@link #saveBook(int, String, String)} on commit.
+	 */
+	default BookWriter openBook(int bookId) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		return new BookWriter() {
+			@Override
+			public OutputStream header() {
+				return header;
+			}
+
+			@Override
+			public OutputStream body() {
+				return body;
+			}
+
+			@Override
+			public String commit() throws IOException {
+				return saveBook(bookId, header.toString(StandardCharsets.UTF_8), body.toString(StandardCharsets.UTF_8));
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
 	/**
 	 * Check if a book has been downloaded
 	 */
@@ -34,4 +68,20 @@ public interface DatalakeStorage {
 	 * Get count of downloaded books
 	 */
 	int getDownloadedBooksCount() throws IOException;
-}
\ No newline at end of file
+
+	/**
+	 * One book being written. Nothing is visible to readers until {@link #commit()};
+	 * closing without committing discards whatever was written.
+	 */
+	interface BookWriter extends Closeable {
+		OutputStream header();
+
+		OutputStream body();
+
+		/**
+		 * Make the book visible and record it as downloaded
+		 * @return where the book was stored
+		 */
+		String commit() throws IOException;
+	}
+}
@@ -0,0 +1,192 @@
+package org.labubus.ingestion.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which books are in the datalake. The set lives in memory, so lookups never touch the
+ * disk, and is persisted as an append-only journal of {@code id} or {@code id|path}
+ * lines in which later lines win. Recording a book appends one line. Once the journal
+ * holds more than twice as many lines as there are books it is compacted: rewritten
+ * with one sorted line per book to a temporary file that then replaces it, which keeps
+ * the file readable by tools that expect one line per book.
+ */
+final class DownloadTracker implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(DownloadTracker.class);
+
+	private static final int MIN_COMPACTION_LINES = 1024;
+	private static final String NO_PATH = "";
+
+	private final Path journal;
+	private final Map<Integer, String> paths = new ConcurrentHashMap<>();
+	private volatile long version;
+	private volatile SortedSnapshot sorted = new SortedSnapshot(-1, List.of());
+	private Writer writer; // guarded by this
+	private int journalLines; // guarded by this
+
+	DownloadTracker(Path journal) throws IOException {
+		this.journal = journal;
+		load();
+		if (needsCompaction()) {
+			compact();
+		}
+		this.writer = openWriter();
+	}
+
+	boolean contains(int bookId) {
+		return paths.containsKey(bookId);
+	}
+
+	/**
+	 * Recorded path of a book, null if the book is not tracked or was recorded without one
+	 */
+	String path(int bookId) {
+		String path = paths.get(bookId);
+		return path == null || path.equals(NO_PATH) ? null : path;
+	}
+
+	int size() {
+		return paths.size();
+	}
+
+	/**
+	 * Live, read-only view of the tracked IDs
+	 */
+	Set<Integer> ids() {
+		return Collections.unmodifiableSet(paths.keySet());
+	}
+
+	/**
+	 * Tracked IDs in ascending order, sorted again only after a book has been added
+	 */
+	List<Integer> sortedIds() {
+		SortedSnapshot snapshot = sorted;
+		long current = version;
+		if (snapshot.version() != current) {
+			List<Integer> ids = new ArrayList<>(paths.keySet());
+			Collections.sort(ids);
+			snapshot = new SortedSnapshot(current, Collections.unmodifiableList(ids));
+			sorted = snapshot;
+		}
+		return snapshot.ids();
+	}
+
+	/**
+	 * Record a book, appending to the journal unless it is already tracked with the same path
+	 */
+	synchronized void record(int bookId, String path) throws IOException {
+		String value = path == null ? NO_PATH : path;
+		if (value.equals(paths.get(bookId))) {
+			return;
+		}
+		writer.write(line(bookId, value));
+		writer.flush();
+		journalLines++;
+		paths.put(bookId, value);
+		// Bumped after the put, so a sorted snapshot taken under the old version is never reused
+		version++;
+
+		if (needsCompaction()) {
+			writer.close();
+			compact();
+			writer = openWriter();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	private void load() throws IOException {
+		if (!Files.exists(journal)) {
+			Files.createFile(journal);
+			logger.info("Created {} tracking file", journal.getFileName());
+			return;
+		}
+		for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+			if (line.isBlank()) {
+				continue;
+			}
+			journalLines++;
+			String[] parts = line.split("\\|", 2);
+			try {
+				int bookId = Integer.parseInt(parts[0].trim());
+				paths.put(bookId, parts.length == 2 ? parts[1].trim() : NO_PATH);
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid book ID in tracking file: {}", line);
+			}
+		}
+		version++;
+		logger.info("Tracking {} downloaded books ({} journal lines)", paths.size(), journalLines);
+	}
+
+	private boolean needsCompaction() {
+		return journalLines >= MIN_COMPACTION_LINES && journalLines > 2 * paths.size();
+	}
+
+	private void compact() throws IOException {
+		List<Integer> ids = new ArrayList<>(paths.keySet());
+		Collections.sort(ids);
+		Path temp = journal.resolveSibling(journal.getFileName() + ".compact");
+		try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			for (int bookId : ids) {
+				out.write(line(bookId, paths.get(bookId)));
+			}
+		}
+		try {
+			Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING);
+		}
+		logger.info("Compacted tracking file from {} to {} lines", journalLines, ids.size());
+		journalLines = ids.size();
+	}
+
+	private Writer openWriter() throws IOException {
+		Writer out = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		if (endsMidLine()) {
+			// A line cut short by a crash must not run into the next one
+			out.write('\n');
+			out.flush();
+		}
+		return out;
+	}
+
+	private boolean endsMidLine() throws IOException {
+		long size = Files.size(journal);
+		if (size == 0) {
+			return false;
+		}
+		try (SeekableByteChannel channel = Files.newByteChannel(journal)) {
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.position(size - 1).read(last);
+			return last.get(0) != '\n';
+		}
+	}
+
+	private static String line(int bookId, String path) {
+		return path.equals(NO_PATH) ? bookId + "\n" : bookId + "|" + path + "\n";
+	}
+
+	private record SortedSnapshot(long version, List<Integer> ids) {}
+}
@@ -0,0 +1,99 @@
+package org.labubus.ingestion.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a book's {@code {id}_header.txt} and {@code {id}_body.txt} into a directory
+ * through {@code .part} files, which are renamed into place on commit, so readers
+ * never see a half-written book.
+ */
+class FileBookWriter implements DatalakeStorage.BookWriter {
+	private static final String PART_SUFFIX = ".part";
+
+	private final Path directory;
+	private final Path headerPath;
+	private final Path bodyPath;
+	private final OutputStream header;
+	private final OutputStream body;
+	private final AfterCommit afterCommit;
+	private boolean committed;
+
+	@FunctionalInterface
+	interface AfterCommit {
+		void run() throws IOException;
+	}
+
+	/**
+	 * @param afterCommit runs once both files are in place, e.g. to track the book
+	 */
+	FileBookWriter(int bookId, Path directory, AfterCommit afterCommit) throws IOException {
+		Files.createDirectories(directory);
+		this.directory = directory;
+		this.headerPath = directory.resolve(bookId + "_header.txt");
+		this.bodyPath = directory.resolve(bookId + "_body.txt");
+		this.afterCommit = afterCommit;
+		this.header = new BufferedOutputStream(Files.newOutputStream(part(headerPath)));
+		OutputStream bodyStream;
+		try {
+			bodyStream = new BufferedOutputStream(Files.newOutputStream(part(bodyPath)));
+		} catch (IOException e) {
+			header.close();
+			Files.deleteIfExists(part(headerPath));
+			throw e;
+		}
+		this.body = bodyStream;
+	}
+
+	@Override
+	public OutputStream header() {
+		return header;
+	}
+
+	@Override
+	public OutputStream body() {
+		return body;
+	}
+
+	@Override
+	public String commit() throws IOException {
+		header.close();
+		body.close();
+		move(part(headerPath), headerPath);
+		move(part(bodyPath), bodyPath);
+		committed = true;
+		afterCommit.run();
+		return directory.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (committed) {
+			return;
+		}
+		try {
+			header.close();
+			body.close();
+		} finally {
+			Files.deleteIfExists(part(headerPath));
+			Files.deleteIfExists(part(bodyPath));
+		}
+	}
+
+	private static Path part(Path path) {
+		return path.resolveSibling(path.getFileName() + PART_SUFFIX);
+	}
+
+	private static void move(Path from, Path to) throws IOException {
+		try {
+			Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package org.labubus.ingestion.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Appends books to a few large segment files instead of writing two small files per
+ * book. Each book is stored as its header bytes directly followed by its body bytes,
+ * and {@code packed/index.txt} records where: one {@code id|segment|offset|headerLength|bodyLength}
+ * line per book, later lines winning. A segment is closed once the next book would take
+ * it past the configured size. Books are spooled to temporary files while they download
+ * and copied into the current segment on commit, so concurrent downloads never interleave.
+ * The index line is only written after the bytes it points to, so a crash leaves at
+ * worst some unreferenced bytes at the end of a segment.
+ */
+public class PackedDatalakeStorage implements DatalakeStorage {
+	private static final Logger logger = LoggerFactory.getLogger(PackedDatalakeStorage.class);
+
+	private static final String PACKED_DIR = "packed";
+	private static final String INDEX_FILE = "index.txt";
+	private static final String SEGMENT_PREFIX = "segment_";
+	private static final String SEGMENT_SUFFIX = ".dat";
+	private static final String SPOOL_SUFFIX = ".part";
+
+	private final String datalakePath;
+	private final long segmentBytes;
+	private final Path packedDir;
+	private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+	private DownloadTracker tracker;
+	private Writer indexWriter; // guarded by this
+	private FileChannel segment; // guarded by this
+	private int segmentNumber; // guarded by this
+
+	/**
+	 * @param segmentBytes size after which a new segment is started; a single larger book still gets written
+	 */
+	public PackedDatalakeStorage(String datalakePath, long segmentBytes) {
+		if (segmentBytes <= 0) {
+			throw new IllegalArgumentException("Segment size must be positive, got " + segmentBytes);
+		}
+		this.datalakePath = datalakePath;
+		this.segmentBytes = segmentBytes;
+		this.packedDir = Paths.get(datalakePath, PACKED_DIR);
+		initializeDatalake();
+	}
+
+	private void initializeDatalake() {
+		try {
+			Files.createDirectories(packedDir);
+			tracker = new DownloadTracker(Paths.get(datalakePath, "downloaded_books.txt"));
+
+			deleteSpoolLeftovers();
+			loadIndex();
+			segmentNumber = lastSegmentNumber();
+			segment = openSegment(segmentNumber);
+			indexWriter = openIndexWriter();
+
+			// A crash between the index line and the tracking line leaves the book untracked
+			for (int bookId : entries.keySet()) {
+				if (!tracker.contains(bookId)) {
+					tracker.record(bookId, null);
+				}
+			}
+
+			logger.info("Packed datalake initialized at: {} ({} books, segment {})", packedDir, entries.size(), segmentNumber);
+		} catch (IOException e) {
+			logger.error("Failed to initialize datalake", e);
+			throw new RuntimeException("Failed to initialize datalake", e);
+		}
+	}
+
+	@Override
+	public String saveBook(int bookId, String header, String body) throws IOException {
+		ByteBuffer headerBytes = ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8));
+		ByteBuffer bodyBytes = ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8));
+		return append(bookId, headerBytes.remaining(), bodyBytes.remaining(), (channel, position) -> {
+			position = writeFully(channel, headerBytes, position);
+			writeFully(channel, bodyBytes, position);
+		});
+	}
+
+	@Override
+	public BookWriter openBook(int bookId) throws IOException {
+		return new SpoolingBookWriter(bookId);
+	}
+
+	@Override
+	public boolean isBookDownloaded(int bookId) {
+		return tracker.contains(bookId);
+	}
+
+	@Override
+	public String getBookPath(int bookId) {
+		Entry entry = entries.get(bookId);
+		return entry == null ? null : segmentPath(entry.segment()).toString();
+	}
+
+	@Override
+	public Set<Integer> getDownloadedBooks() {
+		return tracker.ids();
+	}
+
+	@Override
+	public List<Integer> getDownloadedBooksList() {
+		return tracker.sortedIds();
+	}
+
+	@Override
+	public int getDownloadedBooksCount() {
+		return tracker.size();
+	}
+
+	/**
+	 * Copy a book into the current segment and index it
+	 * @return the segment it went into
+	 */
+	private synchronized String append(int bookId, long headerLength, long bodyLength, SegmentWrite write) throws IOException {
+		long length = headerLength + bodyLength;
+		if (segment.size() > 0 && segment.size() + length > segmentBytes) {
+			segment.close();
+			segmentNumber++;
+			segment = openSegment(segmentNumber);
+		}
+
+		long offset = segment.size();
+		write.writeTo(segment, offset);
+
+		Entry entry = new Entry(segmentNumber, offset, headerLength, bodyLength);
+		indexWriter.write(bookId + "|" + entry.segment() + "|" + offset + "|" + headerLength + "|" + bodyLength + "\n");
+		indexWriter.flush();
+		entries.put(bookId, entry);
+		tracker.record(bookId, null);
+
+		Path segmentPath = segmentPath(segmentNumber);
+		logger.info("Saved book {} to {} at offset {}", bookId, segmentPath.getFileName(), offset);
+		return segmentPath.toString();
+	}
+
+	/**
+	 * Spool files of downloads that were cut short by a shutdown
+	 */
+	private void deleteSpoolLeftovers() throws IOException {
+		try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(packedDir, "*" + SPOOL_SUFFIX)) {
+			for (Path path : leftovers) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	private void loadIndex() throws IOException {
+		Path index = packedDir.resolve(INDEX_FILE);
+		if (!Files.exists(index)) {
+			return;
+		}
+		for (String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+			if (line.isBlank()) {
+				continue;
+			}
+			String[] parts = line.split("\\|");
+			try {
+				if (parts.length != 5) {
+					throw new NumberFormatException();
+				}
+				entries.put(Integer.parseInt(parts[0]), new Entry(Integer.parseInt(parts[1]),
+						Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4])));
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid line in packed index: {}", line);
+			}
+		}
+	}
+
+	private int lastSegmentNumber() throws IOException {
+		int last = 0;
+		try (DirectoryStream<Path> segments = Files.newDirectoryStream(packedDir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			for (Path path : segments) {
+				String name = path.getFileName().toString();
+				try {
+					last = Math.max(last, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					// not a segment
+				}
+			}
+		}
+		return last;
+	}
+
+	private FileChannel openSegment(int number) throws IOException {
+		return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
+	private Path segmentPath(int number) {
+		return packedDir.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+	}
+
+	private Writer openIndexWriter() throws IOException {
+		Path index = packedDir.resolve(INDEX_FILE);
+		boolean endsMidLine = false;
+		if (Files.exists(index) && Files.size(index) > 0) {
+			try (SeekableByteChannel channel = Files.newByteChannel(index)) {
+				ByteBuffer last = ByteBuffer.allocate(1);
+				channel.position(channel.size() - 1).read(last);
+				endsMidLine = last.get(0) != '\n';
+			}
+		}
+		Writer out = Files.newBufferedWriter(index, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		if (endsMidLine) {
+			// Keep a line torn by a crash from swallowing the next entry
+			out.write('\n');
+			out.flush();
+		}
+		return out;
+	}
+
+	private static long writeFully(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+		while (bytes.hasRemaining()) {
+			position += channel.write(bytes, position);
+		}
+		return position;
+	}
+
+	private static long transferFully(Path source, FileChannel target, long position) throws IOException {
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+			long size = in.size();
+			long copied = 0;
+			while (copied < size) {
+				copied += target.transferFrom(in.position(copied), position + copied, size - copied);
+			}
+			return position + size;
+		}
+	}
+
+	/**
+	 * Where a book is: its header starts at {@code offset} and its body follows right after it
+	 */
+	private record Entry(int segment, long offset, long headerLength, long bodyLength) {}
+
+	@FunctionalInterface
+	private interface SegmentWrite {
+		void writeTo(FileChannel segment, long position) throws IOException;
+	}
+
+	/**
+	 * Collects a book in two temporary files next to the segments, which are copied
+	 * into the current segment on commit and deleted either way
+	 */
+	private final class SpoolingBookWriter implements BookWriter {
+		private final int bookId;
+		private final Path headerSpool;
+		private final Path bodySpool;
+		private final OutputStream header;
+		private final OutputStream body;
+
+		SpoolingBookWriter(int bookId) throws IOException {
+			this.bookId = bookId;
+			this.headerSpool = Files.createTempFile(packedDir, bookId + "_header_", SPOOL_SUFFIX);
+			this.bodySpool = Files.createTempFile(packedDir, bookId + "_body_", SPOOL_SUFFIX);
+			this.header = new BufferedOutputStream(Files.newOutputStream(headerSpool));
+			this.body = new BufferedOutputStream(Files.newOutputStream(bodySpool));
+		}
+
+		@Override
+		public OutputStream header() {
+			return header;
+		}
+
+		@Override
+		public OutputStream body() {
+			return body;
+		}
+
+		@Override
+		public String commit() throws IOException {
+			header.close();
+			body.close();
+			return append(bookId, Files.size(headerSpool), Files.size(bodySpool), (channel, position) -> {
+				position = transferFully(headerSpool, channel, position);
+				transferFully(bodySpool, channel, position);
+			});
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				header.close();
+				body.close();
+			} finally {
+				Files.deleteIfExists(headerSpool);
+				Files.deleteIfExists(bodySpool);
+			}
+		}
+	}
+}
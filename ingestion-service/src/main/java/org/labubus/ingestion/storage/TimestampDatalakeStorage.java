@@ -15,6 +15,7 @@ public class TimestampDatalakeStorage implements DatalakeStorage {
 
 	private final String datalakePath;
 	private final Path downloadedBooksFile;
+	private DownloadTracker tracker;
 
 	public TimestampDatalakeStorage(String datalakePath) {
 		this.datalakePath = datalakePath;
@@ -26,10 +27,7 @@ public class TimestampDatalakeStorage implements DatalakeStorage {
 		try {
 			Files.createDirectories(Paths.get(datalakePath));
 
-			if (!Files.exists(downloadedBooksFile)) {
-				Files.createFile(downloadedBooksFile);
-				logger.info("Created downloaded_books.txt tracking file");
-			}
+			tracker = new DownloadTracker(downloadedBooksFile);
 
 			logger.info("Timestamp-based datalake initialized at: {}", datalakePath);
 		} catch (IOException e) {
@@ -63,134 +61,41 @@ public class TimestampDatalakeStorage implements DatalakeStorage {
 		return bookPath.toString();
 	}
 
+	@Override
+	public BookWriter openBook(int bookId) throws IOException {
+		Path bookPath = getTimestampPath(bookId);
+		return new FileBookWriter(bookId, bookPath, () -> {
+			trackDownloadedBook(bookId, bookPath.toString());
+			logger.info("Saved book {} to {}", bookId, bookPath);
+		});
+	}
+
 	@Override
 	public boolean isBookDownloaded(int bookId) {
-		try {
-			Set<Integer> downloadedBooks = getDownloadedBooks();
-			return downloadedBooks.contains(bookId);
-		} catch (IOException e) {
-			logger.error("Error checking if book is downloaded", e);
-			return false;
-		}
+		return tracker.contains(bookId);
 	}
 
 	@Override
 	public String getBookPath(int bookId) {
-		try {
-			if (!Files.exists(downloadedBooksFile)) {
-				return null;
-			}
-
-			List<String> lines = Files.readAllLines(downloadedBooksFile);
-			for (String line : lines) {
-				String[] parts = line.split("\\|");
-				if (parts.length == 2) {
-					int id = Integer.parseInt(parts[0].trim());
-					if (id == bookId) {
-						return parts[1].trim();
-					}
-				}
-			}
-		} catch (IOException e) {
-			logger.error("Error getting book path", e);
-		}
-		return null;
+		return tracker.path(bookId);
 	}
 
 	private void trackDownloadedBook(int bookId, String path) throws IOException {
-		Set<BookEntry> entries = getDownloadedBookEntries();
-		entries.add(new BookEntry(bookId, path));
-
-		List<BookEntry> sortedEntries = new ArrayList<>(entries);
-		sortedEntries.sort(Comparator.comparingInt(e -> e.bookId));
-
-		StringBuilder content = new StringBuilder();
-		for (BookEntry entry : sortedEntries) {
-			content.append(entry.bookId).append("|").append(entry.path).append("\n");
-		}
-
-		Files.writeString(downloadedBooksFile, content.toString());
+		tracker.record(bookId, path);
 	}
 
 	@Override
-	public Set<Integer> getDownloadedBooks() throws IOException {
-		Set<Integer> books = new HashSet<>();
-
-		if (!Files.exists(downloadedBooksFile)) {
-			return books;
-		}
-
-		List<String> lines = Files.readAllLines(downloadedBooksFile);
-		for (String line : lines) {
-			String[] parts = line.split("\\|");
-			if (parts.length >= 1) {
-				try {
-					books.add(Integer.parseInt(parts[0].trim()));
-				} catch (NumberFormatException e) {
-					logger.warn("Invalid book ID in tracking file: {}", line);
-				}
-			}
-		}
-
-		return books;
-	}
-
-	private Set<BookEntry> getDownloadedBookEntries() throws IOException {
-		Set<BookEntry> entries = new HashSet<>();
-
-		if (!Files.exists(downloadedBooksFile)) {
-			return entries;
-		}
-
-		List<String> lines = Files.readAllLines(downloadedBooksFile);
-		for (String line : lines) {
-			String[] parts = line.split("\\|");
-			if (parts.length == 2) {
-				try {
-					int id = Integer.parseInt(parts[0].trim());
-					String path = parts[1].trim();
-					entries.add(new BookEntry(id, path));
-				} catch (NumberFormatException e) {
-					logger.warn("Invalid entry in tracking file: {}", line);
-				}
-			}
-		}
-
-		return entries;
+	public Set<Integer> getDownloadedBooks() {
+		return tracker.ids();
 	}
 
 	@Override
-	public List<Integer> getDownloadedBooksList() throws IOException {
-		List<Integer> books = new ArrayList<>(getDownloadedBooks());
-		Collections.sort(books);
-		return books;
+	public List<Integer> getDownloadedBooksList() {
+		return tracker.sortedIds();
 	}
 
 	@Override
-	public int getDownloadedBooksCount() throws IOException {
-		return getDownloadedBooks().size();
-	}
-
-	private static class BookEntry {
-		int bookId;
-		String path;
-
-		BookEntry(int bookId, String path) {
-			this.bookId = bookId;
-			this.path = path;
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (this == o) return true;
-			if (o == null || getClass() != o.getClass()) return false;
-			BookEntry that = (BookEntry) o;
-			return bookId == that.bookId;
-		}
-
-		@Override
-		public int hashCode() {
-			return Integer.hashCode(bookId);
-		}
+	public int getDownloadedBooksCount() {
+		return tracker.size();
 	}
-}
\ No newline at end of file
+}
@@ -1,16 +1,51 @@
 package org.labubus.ingestion;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import io.javalin.Javalin;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.labubus.ingestion.controller.IngestionController;
+import org.labubus.ingestion.model.BatchProgress;
+import org.labubus.ingestion.model.BatchSummary;
+import org.labubus.ingestion.service.BatchIngestionService;
 import org.labubus.ingestion.service.BookDownloader;
 import org.labubus.ingestion.service.BookIngestionService;
 import org.labubus.ingestion.service.GutenbergDownloader;
+import org.labubus.ingestion.service.HttpClientBookDownloader;
 import org.labubus.ingestion.storage.BucketDatalakeStorage;
 import org.labubus.ingestion.storage.DatalakeStorage;
+import org.labubus.ingestion.storage.PackedDatalakeStorage;
 import org.labubus.ingestion.storage.TimestampDatalakeStorage;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -88,4 +123,369 @@ public class IngestionServiceTest {
 
 		System.out.println("Book not found test passed!\n");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testBatchIngestionAgainstStubServer(@TempDir Path tempDir) throws Exception {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		Pattern bookPath = Pattern.compile("/epub/(\\d+)/pg\\1\\.txt");
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		ExecutorService serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.createContext("/epub/", exchange -> {
+			int now = active.incrementAndGet();
+			maxActive.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(30);
+				Matcher matcher = bookPath.matcher(exchange.getRequestURI().getPath());
+				if (!matcher.matches() || matcher.group(1).equals("404")) {
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				byte[] book = ("Title: Book " + matcher.group(1) + "\n*** START OF THE BOOK ***\nBody of book "
+						+ matcher.group(1) + "\n*** END OF THE BOOK ***\n").getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, book.length);
+				try (OutputStream body = exchange.getResponseBody()) {
+					body.write(book);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				active.decrementAndGet();
+				exchange.close();
+			}
+		});
+		server.start();
+
+		Javalin app = null;
+		try {
+			String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/epub";
+			DatalakeStorage storage = new BucketDatalakeStorage(tempDir.toString(), 10);
+			BookIngestionService service = new BookIngestionService(storage, new GutenbergDownloader(baseUrl, 5000, 2));
+			BatchIngestionService batchService = new BatchIngestionService(service, 6);
+
+			List<BatchProgress> progress = Collections.synchronizedList(new ArrayList<>());
+			BatchSummary summary = batchService.ingest(List.of(1, 2, 3, 4, 5, 6, 7, 8, 404, 8), progress::add);
+
+			assertEquals(9, summary.requested());
+			assertEquals(8, summary.downloaded());
+			assertEquals(1, summary.failed());
+			assertEquals(9, progress.size());
+			assertEquals(9, progress.get(8).completed());
+			assertEquals(1, progress.stream().filter(p -> p.book().bookId() == 404 && p.book().status().equals("failed")).count());
+			assertTrue(maxActive.get() <= 2, "per-host limit exceeded: " + maxActive.get());
+			assertEquals(8, storage.getDownloadedBooksCount());
+
+			// Through the HTTP endpoint: one NDJSON line per book, then the summary
+			app = Javalin.create(config -> config.showJavalinBanner = false).start(0);
+			new IngestionController(service, batchService, storage).registerRoutes(app);
+			HttpClient client = HttpClient.newHttpClient();
+			String url = "http://127.0.0.1:" + app.port() + "/ingest/batch";
+
+			HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url))
+					.POST(HttpRequest.BodyPublishers.ofString("{\"from\": 7, \"to\": 9}")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, response.statusCode());
+			List<String> lines = response.body().lines().toList();
+			assertEquals(4, lines.size());
+			Gson gson = new Gson();
+			JsonObject last = gson.fromJson(lines.get(3), JsonObject.class);
+			assertEquals("summary", last.get("type").getAsString());
+			assertEquals(2, last.get("alreadyExisting").getAsInt());
+			assertEquals(1, last.get("downloaded").getAsInt());
+			assertEquals("book", gson.fromJson(lines.get(0), JsonObject.class).get("type").getAsString());
+
+			HttpResponse<String> invalid = client.send(HttpRequest.newBuilder(URI.create(url))
+					.POST(HttpRequest.BodyPublishers.ofString("{\"from\": 9, \"to\": 7}")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(400, invalid.statusCode());
+		} finally {
+			if (app != null) {
+				app.stop();
+			}
+			server.stop(0);
+			serverThreads.shutdownNow();
+		}
+
+		System.out.println("Batch ingestion test passed!");
+	}
+
+	@Test
+	public void testHttpClientDownloaderRemembersUrlFormat(@TempDir Path tempDir) throws Exception {
+		List<String> requests = Collections.synchronizedList(new ArrayList<>());
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/epub/", exchange -> {
+			String path = exchange.getRequestURI().getPath();
+			requests.add(path);
+			Matcher matcher = Pattern.compile("/epub/(\\d+)/\\1-0\\.txt").matcher(path);
+			if (!matcher.matches() || matcher.group(1).equals("1404")) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			byte[] book = ("Title: Book " + matcher.group(1) + "\n*** START OF THE BOOK ***\nÉtude "
+					+ "and body ".repeat(1000) + "\n*** END OF THE BOOK ***\n").getBytes(StandardCharsets.UTF_8);
+			if ("gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream body = new GZIPOutputStream(exchange.getResponseBody())) {
+					body.write(book);
+				}
+			} else {
+				exchange.sendResponseHeaders(200, book.length);
+				try (OutputStream body = exchange.getResponseBody()) {
+					body.write(book);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+
+		try {
+			String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/epub";
+			// One connection per host: a permit leaked by a failed attempt would hang the next request
+			HttpClientBookDownloader downloader = new HttpClientBookDownloader(baseUrl, 5000, 1);
+
+			assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+				String content = downloader.downloadBook(1001);
+				assertTrue(content.startsWith("Title: Book 1001"));
+				assertTrue(content.contains("Étude"));
+				assertEquals(3, requests.size());
+
+				// Same block of IDs: the format that worked is tried first
+				requests.clear();
+				Path target = tempDir.resolve("1002.txt");
+				long bytes = downloader.downloadBookTo(1002, target);
+				assertEquals(List.of("/epub/1002/1002-0.txt"), requests);
+				assertEquals(Files.size(target), bytes);
+				assertTrue(Files.readString(target).endsWith("*** END OF THE BOOK ***\n"));
+
+				IOException missing = assertThrows(IOException.class, () -> downloader.downloadBook(1404));
+				assertTrue(missing.getMessage().contains("Failed to download book 1404"));
+				assertTrue(downloader.downloadBook(1003).startsWith("Title: Book 1003"));
+			});
+		} finally {
+			server.stop(0);
+		}
+
+		System.out.println("HttpClient downloader test passed!");
+	}
+
+	@Test
+	public void testHttpClientDownloaderTimesOutStalledBody() throws Exception {
+		CountDownLatch stalled = new CountDownLatch(1);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		ExecutorService serverThreads = Executors.newCachedThreadPool();
+		server.setExecutor(serverThreads);
+		server.createContext("/epub/", exchange -> {
+			exchange.sendResponseHeaders(200, 0);
+			try (OutputStream body = exchange.getResponseBody()) {
+				body.write("Title: Book\n*** START OF THE BOOK ***\n".getBytes(StandardCharsets.UTF_8));
+				body.flush();
+				// Book 1 stops sending after the first chunk, like a mirror that hangs mid-download
+				if (exchange.getRequestURI().getPath().startsWith("/epub/1/")) {
+					stalled.await();
+				}
+				body.write("Body\n*** END OF THE BOOK ***\n".getBytes(StandardCharsets.UTF_8));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.close();
+		});
+		server.start();
+
+		try {
+			String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/epub";
+			// One connection per host: the stalled download must give its permit back
+			HttpClientBookDownloader downloader = new HttpClientBookDownloader(baseUrl, 300, 1);
+
+			assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+				assertThrows(SocketTimeoutException.class, () -> downloader.downloadBook(1));
+				assertTrue(downloader.downloadBook(2).endsWith("*** END OF THE BOOK ***\n"));
+			});
+		} finally {
+			stalled.countDown();
+			server.stop(0);
+			serverThreads.shutdownNow();
+		}
+
+		System.out.println("Stalled download timeout test passed!");
+	}
+
+	@Test
+	public void testStreamingSplitMatchesStringSplit(@TempDir Path tempDir) throws Exception {
+		List<String> books = List.of(
+				"Title: Plain\n\n*** START OF THE PROJECT GUTENBERG EBOOK ***\nChapter 1\nText.\n*** END OF THE PROJECT ***\nLicense",
+				"  \r\nTitle: CRLF *** STAR and **** START OF\r\n*** START OF X ***\r\n\r\n  Body *** EN with\r\n"
+						+ "trailing space   \r\n\t*** END OF X ***",
+				"Title: Ünïcode ✓\n*** START OF ***\nÉtude ✓ " + "long line ".repeat(20000) + "\n  \n*** END OF"
+		);
+
+		DatalakeStorage storage = new BucketDatalakeStorage(tempDir.toString(), 10);
+		for (int i = 0; i < books.size(); i++) {
+			String book = books.get(i);
+			BookIngestionService service = new BookIngestionService(storage, bookId -> book);
+			String path = service.downloadAndSave(i);
+
+			String[] expected = referenceSplit(book);
+			assertEquals(expected[0], Files.readString(Path.of(path, i + "_header.txt")));
+			assertEquals(expected[1], Files.readString(Path.of(path, i + "_body.txt")));
+		}
+
+		Map<String, String> invalid = Map.of(
+				"Title\nno markers at all", "START marker not found",
+				"Title\n*** START OF X\nbody without end", "END marker not found",
+				"*** START OF X\nbody\n*** END OF", "Header is empty",
+				"Title\n*** START OF X\n  \n*** END OF", "Body is empty"
+		);
+		for (Map.Entry<String, String> entry : invalid.entrySet()) {
+			BookIngestionService service = new BookIngestionService(storage, bookId -> entry.getKey());
+			IOException error = assertThrows(IOException.class, () -> service.downloadAndSave(7));
+			assertTrue(error.getMessage().contains(entry.getValue()), error.getMessage());
+		}
+		assertFalse(storage.isBookDownloaded(7));
+		try (var files = Files.walk(tempDir)) {
+			assertTrue(files.noneMatch(file -> file.toString().endsWith(".part")), "partial files left behind");
+		}
+
+		System.out.println("Streaming split test passed!");
+	}
+
+	/**
+	 * The String-based split the streaming splitter replaced
+	 */
+	private static String[] referenceSplit(String content) {
+		int startIndex = content.indexOf("*** START OF");
+		int endIndex = content.indexOf("*** END OF", startIndex);
+		String header = content.substring(0, startIndex).trim();
+		String body = content.substring(startIndex, endIndex).trim();
+		body = body.replaceFirst("\\*\\*\\* START OF[^\\n]*\\n", "").trim();
+		return new String[]{header, body};
+	}
+
+	@Test
+	public void testDownloadTrackingJournal(@TempDir Path tempDir) throws Exception {
+		DatalakeStorage storage = new BucketDatalakeStorage(tempDir.toString(), 10);
+
+		// Concurrent saves must all be tracked
+		ExecutorService savers = Executors.newFixedThreadPool(8);
+		List<Future<String>> saves = new ArrayList<>();
+		for (int bookId = 1; bookId <= 400; bookId++) {
+			int id = bookId;
+			saves.add(savers.submit(() -> storage.saveBook(id, "Header " + id, "Body " + id)));
+		}
+		for (Future<String> save : saves) {
+			save.get();
+		}
+		savers.shutdown();
+
+		assertEquals(400, storage.getDownloadedBooksCount());
+		assertEquals(1, storage.getDownloadedBooksList().get(0));
+		assertEquals(400, storage.getDownloadedBooksList().get(399));
+		storage.saveBook(401, "Header", "Body");
+		assertEquals(401, storage.getDownloadedBooksList().size());
+
+		Path journal = tempDir.resolve("downloaded_books.txt");
+		assertEquals(401, Files.readAllLines(journal).size());
+		assertEquals(401, new BucketDatalakeStorage(tempDir.toString(), 10).getDownloadedBooksCount());
+
+		// A journal mostly made of repeats is compacted when opened, and a line cut short stays separate
+		StringBuilder repeated = new StringBuilder();
+		for (int round = 0; round < 3; round++) {
+			for (int bookId = 1; bookId <= 500; bookId++) {
+				repeated.append(bookId).append("\n");
+			}
+		}
+		repeated.append("501");
+		Files.writeString(journal, repeated.toString());
+		DatalakeStorage reopened = new BucketDatalakeStorage(tempDir.toString(), 10);
+		assertEquals(501, reopened.getDownloadedBooksCount());
+		assertEquals(501, Files.readAllLines(journal).size());
+		reopened.saveBook(502, "Header", "Body");
+		assertEquals(List.of("501", "502"), Files.readAllLines(journal).subList(500, 502));
+		assertTrue(reopened.isBookDownloaded(502));
+
+		// The timestamp layout keeps the path of each book, later lines win
+		Path timestampDir = tempDir.resolve("timestamp");
+		Files.createDirectories(timestampDir);
+		Files.writeString(timestampDir.resolve("downloaded_books.txt"), "7|old/path\n8|other\n7|new/path\n");
+		TimestampDatalakeStorage timestamp = new TimestampDatalakeStorage(timestampDir.toString());
+		assertEquals("new/path", timestamp.getBookPath(7));
+		assertEquals(List.of(7, 8), timestamp.getDownloadedBooksList());
+		assertNull(timestamp.getBookPath(9));
+
+		System.out.println("Download tracking journal test passed!");
+	}
+
+	@Test
+	public void testPackedDatalakeStorage(@TempDir Path tempDir) throws Exception {
+		DatalakeStorage storage = new PackedDatalakeStorage(tempDir.toString(), 4096);
+
+		// Concurrent saves, both whole and streamed, must not interleave inside a segment
+		ExecutorService savers = Executors.newFixedThreadPool(8);
+		List<Future<String>> saves = new ArrayList<>();
+		for (int bookId = 1; bookId <= 200; bookId++) {
+			int id = bookId;
+			saves.add(savers.submit(() -> {
+				if (id % 2 == 0) {
+					return storage.saveBook(id, "Header " + id, "Body " + id + " ü".repeat(id));
+				}
+				try (DatalakeStorage.BookWriter writer = storage.openBook(id)) {
+					writer.header().write(("Header " + id).getBytes(StandardCharsets.UTF_8));
+					writer.body().write(("Body " + id + " ü".repeat(id)).getBytes(StandardCharsets.UTF_8));
+					return writer.commit();
+				}
+			}));
+		}
+		for (Future<String> save : saves) {
+			save.get();
+		}
+		savers.shutdown();
+
+		assertEquals(200, storage.getDownloadedBooksCount());
+		assertTrue(storage.isBookDownloaded(77));
+		assertNull(storage.getBookPath(201));
+
+		// A discarded writer leaves nothing behind
+		try (DatalakeStorage.BookWriter writer = storage.openBook(500)) {
+			writer.header().write("Header".getBytes(StandardCharsets.UTF_8));
+		}
+		assertFalse(storage.isBookDownloaded(500));
+
+		Path packed = tempDir.resolve("packed");
+		try (Stream<Path> files = Files.list(packed)) {
+			List<String> names = files.map(path -> path.getFileName().toString()).sorted().toList();
+			assertTrue(names.contains("segment_00001.dat"), "Small segments must roll over: " + names);
+			assertTrue(names.stream().noneMatch(name -> name.endsWith(".part")));
+		}
+
+		// Every index line points at the book's header followed by its body
+		List<String> index = Files.readAllLines(packed.resolve("index.txt"));
+		assertEquals(200, index.size());
+		for (String line : index) {
+			String[] parts = line.split("\\|");
+			int bookId = Integer.parseInt(parts[0]);
+			assertEquals(packed.resolve(String.format("segment_%05d.dat", Integer.parseInt(parts[1]))).toString(),
+					storage.getBookPath(bookId));
+			byte[] bytes = new byte[Integer.parseInt(parts[3]) + Integer.parseInt(parts[4])];
+			try (RandomAccessFile segment = new RandomAccessFile(storage.getBookPath(bookId), "r")) {
+				segment.seek(Long.parseLong(parts[2]));
+				segment.readFully(bytes);
+			}
+			assertEquals("Header " + bookId + "Body " + bookId + " ü".repeat(bookId), new String(bytes, StandardCharsets.UTF_8));
+		}
+
+		// Reopening reloads the index and keeps appending; a torn last line is skipped
+		Files.writeString(packed.resolve("index.txt"), "999|0|12", StandardOpenOption.APPEND);
+		DatalakeStorage reopened = new PackedDatalakeStorage(tempDir.toString(), 4096);
+		assertEquals(storage.getBookPath(150), reopened.getBookPath(150));
+		assertNull(reopened.getBookPath(999));
+		reopened.saveBook(201, "Header", "Body");
+		assertTrue(reopened.getBookPath(201).endsWith(".dat"));
+		assertTrue(Files.readAllLines(packed.resolve("index.txt")).get(201).startsWith("201|"));
+		assertEquals(201, reopened.getDownloadedBooksCount());
+
+		System.out.println("Packed datalake storage test passed!");
+	}
+}
@@ -2,15 +2,27 @@ package org.labubus.search;
 
 import io.javalin.Javalin;
 import org.labubus.search.controller.SearchController;
+import org.labubus.search.indexer.BinaryIndexReader;
 import org.labubus.search.indexer.InvertedIndexReader;
 import org.labubus.search.indexer.JsonIndexReader;
+import org.labubus.search.indexer.ReloadableIndexReader;
+import org.labubus.search.indexer.SegmentedIndexReader;
+import org.labubus.search.postings.ArrayPostingsEngine;
+import org.labubus.search.postings.BitmapPostingsEngine;
+import org.labubus.search.postings.PostingsEngine;
+import org.labubus.search.query.QueryParser;
+import org.labubus.search.query.StopWords;
+import org.labubus.search.ranking.Bm25Scorer;
 import org.labubus.search.repository.*;
+import org.labubus.search.service.MetadataStore;
+import org.labubus.search.service.QueryResultCache;
 import org.labubus.search.service.SearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.Properties;
 
@@ -34,8 +46,24 @@ public class SearchApp {
 			String dbType = config.getProperty("db.type", "sqlite");
 			metadataRepository = createMetadataRepository(dbType, config);
 
+			MetadataStore metadataStore = new MetadataStore(metadataRepository);
+			try {
+				metadataStore.load();
+				logger.info("  Metadata loaded: {} books", metadataStore.size());
+			} catch (SQLException e) {
+				logger.warn("Failed to load book metadata - searches return no books until it loads", e);
+			}
+
+			long metadataRefreshMillis = Long.parseLong(config.getProperty("db.refresh.ms", "5000"));
+			if (metadataRefreshMillis > 0) {
+				metadataStore.watch(metadataRefreshMillis);
+				logger.info("  Metadata refresh: new and changed books every {} ms", metadataRefreshMillis);
+			} else {
+				logger.info("  Metadata refresh: only at startup");
+			}
+
 			String indexType = config.getProperty("index.type", "json");
-			InvertedIndexReader indexReader = createIndexReader(indexType, config);
+			ReloadableIndexReader indexReader = createIndexReader(indexType, config);
 
 			try {
 				indexReader.load();
@@ -44,13 +72,46 @@ public class SearchApp {
                 logger.warn("Failed to load inverted index - service will start but searches will fail until index is created", e);
 			}
 
+			long reloadWatchMillis = Long.parseLong(config.getProperty("index.reload.watch.ms", "2000"));
+			if (reloadWatchMillis > 0) {
+				indexReader.watch(reloadWatchMillis);
+				logger.info("  Index reload: on change, checked every {} ms", reloadWatchMillis);
+			} else {
+				logger.info("  Index reload: on request only (POST /index/reload)");
+			}
+
 			int maxResults = Integer.parseInt(config.getProperty("search.max.results", "100"));
 			int defaultResults = Integer.parseInt(config.getProperty("search.default.results", "10"));
 
-			SearchService searchService = new SearchService(metadataRepository, indexReader, maxResults);
+			String engineType = config.getProperty("search.postings.engine", "array");
+			PostingsEngine postingsEngine = createPostingsEngine(engineType, indexReader, config);
+
+			String defaultOperator = config.getProperty("search.default.operator", "and");
+			QueryParser queryParser = createQueryParser(defaultOperator);
+
+			int minWordLength = Integer.parseInt(config.getProperty("index.min.word.length", "3"));
+			int maxWordLength = Integer.parseInt(config.getProperty("index.max.word.length", "50"));
+			StopWords stopWords = StopWords.parse(config.getProperty("index.stop.words", ""), minWordLength, maxWordLength);
+			logger.info("  Phrase gaps: {} stop words, words shorter than {} or longer than {}",
+					stopWords.words().size(), minWordLength, maxWordLength);
+
+			double bm25K1 = Double.parseDouble(config.getProperty("search.bm25.k1", "1.2"));
+			double bm25B = Double.parseDouble(config.getProperty("search.bm25.b", "0.75"));
+			String topKStrategy = config.getProperty("search.topk.strategy", "wand");
+			Bm25Scorer scorer = createScorer(topKStrategy, indexReader, bm25K1, bm25B);
+
+			boolean fuzzyFallback = Boolean.parseBoolean(config.getProperty("search.fuzzy.fallback", "true"));
+
+			int cacheMegabytes = Integer.parseInt(config.getProperty("search.cache.size.mb", "32"));
+			QueryResultCache resultCache = new QueryResultCache(cacheMegabytes * 1024L * 1024L);
+
+			SearchService searchService = new SearchService(metadataStore, indexReader, postingsEngine,
+					queryParser, stopWords, scorer, maxResults, fuzzyFallback, resultCache);
 			logger.info("  Max results: {}, Default results: {}", maxResults, defaultResults);
+			logger.info("  Fuzzy fallback for queries without matches: {}", fuzzyFallback ? "on" : "off");
+			logger.info("  Query result cache: {}", cacheMegabytes > 0 ? cacheMegabytes + " MB" : "off");
 
-			SearchController controller = new SearchController(searchService, defaultResults);
+			SearchController controller = new SearchController(searchService, defaultResults, indexReader);
 
 			Javalin app = Javalin.create(javalinConfig -> {
 				javalinConfig.http.defaultContentType = "application/json";
@@ -115,8 +176,27 @@ public class SearchApp {
 		System.out.println("Options:");
 		System.out.println("  --db.type <type>              Database type (default: sqlite)");
 		System.out.println("                                Options: sqlite, postgresql, mongodb");
+		System.out.println("  --db.refresh.ms <ms>          Copy new and changed books from the database this");
+		System.out.println("                                often (default: 5000, 0 = only at startup)");
 		System.out.println("  --index.type <type>           Index storage type (default: json)");
-		System.out.println("                                Options: json, folder");
+		System.out.println("                                Options: json, binary, segmented");
+		System.out.println("  --index.reload.watch.ms <ms>  Reload the index when its files change, checked");
+		System.out.println("                                this often (default: 2000, 0 = only on request)");
+		System.out.println("  --search.postings.engine <e>  Postings engine (default: array)");
+		System.out.println("                                Options: array, bitmap");
+		System.out.println("  --search.default.operator <o> Operator between bare terms (default: and)");
+		System.out.println("                                Options: and, or");
+		System.out.println("  --search.topk.strategy <s>    Top-k ranking strategy (default: wand)");
+		System.out.println("                                Options: exhaustive, wand");
+		System.out.println("  --index.stop.words <words>    Comma-separated stop words the index was built with,");
+		System.out.println("                                skipped inside phrases (default: none)");
+		System.out.println("  --index.min.word.length <n>   Shortest indexed word, shorter ones are skipped inside");
+		System.out.println("                                phrases (default: 3)");
+		System.out.println("  --index.max.word.length <n>   Longest indexed word (default: 50)");
+		System.out.println("  --search.fuzzy.fallback <b>   Retry queries without matches with fuzzy words");
+		System.out.println("                                (default: true)");
+		System.out.println("  --search.cache.size.mb <mb>   Memory for cached search results (default: 32,");
+		System.out.println("                                0 = no caching)");
 		System.out.println("  --server.port <port>          Server port (default: 7003)");
 		System.out.println("  --datamart.path <path>        Datamart path (default: ../datamart)");
 		System.out.println("  -h, --help                    Show this help message\n");
@@ -161,15 +241,71 @@ public class SearchApp {
 		}
 	}
 
-	private static InvertedIndexReader createIndexReader(String type, Properties config) {
+	/**
+	 * Every index type is wrapped so it can be reloaded without a restart; json and binary
+	 * indexes are reloaded when the file their writer replaces last changes
+	 */
+	private static ReloadableIndexReader createIndexReader(String type, Properties config) {
 		String datamartPath = config.getProperty("datamart.path", "../datamart");
 
 		if (type.equalsIgnoreCase("json")) {
 			String indexFilename = config.getProperty("index.filename", "inverted_index.json");
 			logger.info("  Index: JSON file ({}/{})", datamartPath, indexFilename);
-			return new JsonIndexReader(datamartPath, indexFilename);
+			return new ReloadableIndexReader(() -> new JsonIndexReader(datamartPath, indexFilename),
+					Paths.get(datamartPath, indexFilename));
+		} else if (type.equalsIgnoreCase("binary")) {
+			String indexName = config.getProperty("index.binary.name", "inverted_index");
+			logger.info("  Index: Binary memory-mapped files ({}/{}.terms, .postings)", datamartPath, indexName);
+			return new ReloadableIndexReader(() -> new BinaryIndexReader(datamartPath, indexName),
+					BinaryIndexReader.termsPath(datamartPath, indexName));
+		} else if (type.equalsIgnoreCase("segmented")) {
+			long refreshMillis = Long.parseLong(config.getProperty("index.segments.refresh.ms", "1000"));
+			logger.info("  Index: Segments ({}/segments, checked for new segments every {} ms)", datamartPath, refreshMillis);
+			SegmentedIndexReader reader = new SegmentedIndexReader(datamartPath);
+			if (refreshMillis > 0) {
+				reader.watch(refreshMillis);
+			}
+			// Already swaps in new segments by itself, so a reload only re-reads the manifest
+			return new ReloadableIndexReader(() -> reader, null);
+		} else {
+			throw new IllegalArgumentException("Unknown index type: " + type + ". Valid options: json, binary, segmented");
+		}
+	}
+
+	private static PostingsEngine createPostingsEngine(String type, InvertedIndexReader indexReader, Properties config) {
+		if (type.equalsIgnoreCase("array")) {
+			logger.info("  Postings engine: sorted arrays");
+			return new ArrayPostingsEngine(indexReader);
+		} else if (type.equalsIgnoreCase("bitmap")) {
+			int cacheWords = Integer.parseInt(config.getProperty("search.bitmap.cache.words", "10000"));
+			logger.info("  Postings engine: compressed bitmaps (cache: {} words)", cacheWords);
+			return new BitmapPostingsEngine(indexReader, cacheWords);
+		} else {
+			throw new IllegalArgumentException("Unknown postings engine: " + type + ". Valid options: array, bitmap");
+		}
+	}
+
+	private static Bm25Scorer createScorer(String strategy, InvertedIndexReader indexReader, double k1, double b) {
+		if (strategy.equalsIgnoreCase("exhaustive")) {
+			logger.info("  Ranking: BM25 (k1={}, b={}), scoring every match", k1, b);
+			return new Bm25Scorer(indexReader, k1, b, false);
+		} else if (strategy.equalsIgnoreCase("wand")) {
+			logger.info("  Ranking: BM25 (k1={}, b={}), WAND top-k pruning", k1, b);
+			return new Bm25Scorer(indexReader, k1, b, true);
+		} else {
+			throw new IllegalArgumentException("Unknown top-k strategy: " + strategy + ". Valid options: exhaustive, wand");
+		}
+	}
+
+	private static QueryParser createQueryParser(String defaultOperator) {
+		if (defaultOperator.equalsIgnoreCase("and")) {
+			logger.info("  Default query operator: AND");
+			return new QueryParser(QueryParser.Operator.AND);
+		} else if (defaultOperator.equalsIgnoreCase("or")) {
+			logger.info("  Default query operator: OR");
+			return new QueryParser(QueryParser.Operator.OR);
 		} else {
-			throw new IllegalArgumentException("Unknown index type: " + type);
+			throw new IllegalArgumentException("Unknown default operator: " + defaultOperator + ". Valid options: and, or");
 		}
 	}
 
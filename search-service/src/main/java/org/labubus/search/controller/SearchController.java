@@ -3,8 +3,11 @@ package org.labubus.search.controller;
 import com.google.gson.Gson;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import org.labubus.search.indexer.ReloadableIndexReader;
+import org.labubus.search.model.SearchFacets;
 import org.labubus.search.model.SearchResponse;
 import org.labubus.search.model.SearchResult;
+import org.labubus.search.service.QueryResultCache;
 import org.labubus.search.service.SearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,16 +15,21 @@ import org.slf4j.LoggerFactory;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 public class SearchController {
 	private static final Logger logger = LoggerFactory.getLogger(SearchController.class);
 	private static final Gson gson = new Gson();
+	private static final int DEFAULT_YEAR_BUCKET = 10;
+	private static final int DEFAULT_AUTHOR_FACETS = 10;
 	private final SearchService searchService;
 	private final int defaultLimit;
+	private final ReloadableIndexReader indexReader;
 
-	public SearchController(SearchService searchService, int defaultLimit) {
+	public SearchController(SearchService searchService, int defaultLimit, ReloadableIndexReader indexReader) {
 		this.searchService = searchService;
 		this.defaultLimit = defaultLimit;
+		this.indexReader = indexReader;
 	}
 
 	/**
@@ -32,10 +40,14 @@ public class SearchController {
 
 		app.get("/search", this::handleSearch);
 
+		app.get("/search/count", this::handleCount);
+
 		app.get("/books", this::handleBrowse);
 
 		app.get("/stats", this::handleStats);
 
+		app.post("/index/reload", this::handleReload);
+
 		logger.info("Search routes registered");
 	}
 
@@ -63,8 +75,9 @@ public class SearchController {
 	}
 
 	/**
-	 * GET /search?q={query}&author={author}&language={lang}&year={year}&limit={limit}
-	 * Search for books
+	 * GET /search?q={query}&author={author}&language={lang}&year={year}&limit={limit}&facets={true|false}
+	 * Search for books. With facets=true the response also counts every matching book by
+	 * language, year (year_bucket years wide, default 10) and author (top author_facets, default 10).
 	 */
 	private void handleSearch(Context ctx) {
 		try {
@@ -98,6 +111,19 @@ public class SearchController {
 				}
 			}
 
+			boolean withFacets = Boolean.parseBoolean(ctx.queryParam("facets"));
+			int yearBucket;
+			int authorFacets;
+			try {
+				yearBucket = intParam(ctx, "year_bucket", DEFAULT_YEAR_BUCKET);
+				authorFacets = intParam(ctx, "author_facets", DEFAULT_AUTHOR_FACETS);
+			} catch (NumberFormatException e) {
+				Map<String, String> error = new HashMap<>();
+				error.put("error", "Invalid facet parameter. year_bucket and author_facets must be positive integers.");
+				ctx.status(400).result(gson.toJson(error));
+				return;
+			}
+
 			if (query == null || query.trim().isEmpty()) {
 				Map<String, String> error = new HashMap<>();
 				error.put("error", "Query parameter 'q' is required.");
@@ -108,18 +134,32 @@ public class SearchController {
 			logger.info("Search request: q='{}', author='{}', language='{}', year={}, limit={}",
 					query, author, language, year, limit);
 
-			List<SearchResult> results = searchService.search(query, author, language, year, limit);
+			List<SearchResult> results;
+			SearchFacets facets = null;
+			if (withFacets) {
+				SearchService.FacetedResults faceted = searchService.searchWithFacets(query, author, language, year,
+						limit, yearBucket, authorFacets);
+				results = faceted.results();
+				facets = faceted.facets();
+			} else {
+				results = searchService.search(query, author, language, year, limit);
+			}
 
 			SearchResponse response = new SearchResponse(
 					query,
 					results.size(),
 					results.size(),
-					results
+					results,
+					facets
 			);
 
 			ctx.status(200).result(gson.toJson(response));
 			logger.info("Returned {} search results", results.size());
 
+		} catch (IllegalArgumentException e) {
+			Map<String, String> error = new HashMap<>();
+			error.put("error", "Invalid query: " + e.getMessage());
+			ctx.status(400).result(gson.toJson(error));
 		} catch (Exception e) {
 			Map<String, String> error = new HashMap<>();
 			error.put("error", "Search failed: " + e.getMessage());
@@ -128,6 +168,42 @@ public class SearchController {
 		}
 	}
 
+	/**
+	 * GET /search/count?q={query}
+	 * Count matching books without fetching metadata
+	 */
+	private void handleCount(Context ctx) {
+		try {
+			String query = ctx.queryParam("q");
+
+			if (query == null || query.trim().isEmpty()) {
+				Map<String, String> error = new HashMap<>();
+				error.put("error", "Query parameter 'q' is required.");
+				ctx.status(400).result(gson.toJson(error));
+				return;
+			}
+
+			int count = searchService.countMatches(query);
+
+			Map<String, Object> response = new HashMap<>();
+			response.put("query", query);
+			response.put("count", count);
+
+			ctx.status(200).result(gson.toJson(response));
+			logger.debug("Counted {} matches for '{}'", count, query);
+
+		} catch (IllegalArgumentException e) {
+			Map<String, String> error = new HashMap<>();
+			error.put("error", "Invalid query: " + e.getMessage());
+			ctx.status(400).result(gson.toJson(error));
+		} catch (Exception e) {
+			Map<String, String> error = new HashMap<>();
+			error.put("error", "Count failed: " + e.getMessage());
+			ctx.status(500).result(gson.toJson(error));
+			logger.error("Count failed", e);
+		}
+	}
+
 	/**
 	 * GET /books?limit={limit}
 	 * Browse all books (no search query)
@@ -183,6 +259,19 @@ public class SearchController {
 			response.put("index_size_mb", String.format("%.2f", stats.indexSizeMB()));
 			response.put("index_loaded", stats.indexLoaded());
 
+			QueryResultCache.Stats cache = stats.queryCache();
+			Map<String, Object> queryCache = new HashMap<>();
+			queryCache.put("hits", cache.hits());
+			queryCache.put("misses", cache.misses());
+			queryCache.put("hit_rate", String.format("%.3f", cache.hitRate()));
+			queryCache.put("evictions", cache.evictions());
+			queryCache.put("rejections", cache.rejections());
+			queryCache.put("invalidations", cache.invalidations());
+			queryCache.put("entries", cache.entries());
+			queryCache.put("size_mb", String.format("%.2f", cache.sizeBytes() / (1024.0 * 1024.0)));
+			queryCache.put("max_mb", String.format("%.2f", cache.maxBytes() / (1024.0 * 1024.0)));
+			response.put("query_cache", queryCache);
+
 			ctx.status(200).result(gson.toJson(response));
 			logger.debug("Retrieved search statistics");
 
@@ -193,4 +282,55 @@ public class SearchController {
 			logger.error("Failed to get statistics", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * POST /index/reload?wait={true|false}
+	 * Load the index again in the background; searches keep using the current one until it is ready
+	 */
+	private void handleReload(Context ctx) {
+		boolean wait = Boolean.parseBoolean(ctx.queryParam("wait"));
+		var reload = indexReader.reload();
+
+		if (!wait) {
+			Map<String, Object> response = new HashMap<>();
+			response.put("status", "reloading");
+			response.put("version", indexReader.status().version());
+			ctx.status(202).result(gson.toJson(response));
+			logger.info("Index reload requested");
+			return;
+		}
+
+		try {
+			ReloadableIndexReader.ReloadStatus status = reload.join();
+
+			Map<String, Object> response = new HashMap<>();
+			response.put("status", "reloaded");
+			response.put("version", status.version());
+			response.put("loaded_at", status.loadedAt());
+			response.put("unique_words", indexReader.getStats().uniqueWords());
+			ctx.status(200).result(gson.toJson(response));
+
+		} catch (CompletionException e) {
+			Map<String, Object> error = new HashMap<>();
+			error.put("error", e.getCause().getMessage());
+			error.put("version", indexReader.status().version());
+			ctx.status(500).result(gson.toJson(error));
+		}
+	}
+
+	/**
+	 * Positive integer query parameter, or the default if absent
+	 * @throws NumberFormatException if present but not a positive integer
+	 */
+	private static int intParam(Context ctx, String name, int defaultValue) {
+		String value = ctx.queryParam(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		int parsed = Integer.parseInt(value);
+		if (parsed < 1) {
+			throw new NumberFormatException(name + " must be positive");
+		}
+		return parsed;
+	}
+}
@@ -0,0 +1,60 @@
+package org.labubus.search.indexer;
+
+/**
+ * Layout constants for the binary inverted index.
+ * Must stay in sync with org.labubus.indexing.indexer.BinaryIndexFormat in indexing-service.
+ *
+ * Every file starts with MAGIC, VERSION and the build id (long) of the save that wrote
+ * it. The four files are replaced one at a time, so a reader only accepts a set whose
+ * build ids agree.
+ *
+ * Terms file:    MAGIC, VERSION, buildId, termCount, blockSize, termCount fixed-width entries in
+ *                term order, then the front-coded term dictionary
+ * Entry:         postingsOffset (long), docFreq (int)
+ * Dictionary:    terms sorted by UTF-8 bytes in blocks of blockSize; blockCount block
+ *                offsets (int, relative to the first block), then the blocks. A block's
+ *                first term is a variable-byte length and the bytes; every other term is
+ *                the variable-byte length of the prefix shared with the previous term,
+ *                the variable-byte suffix length and the suffix bytes.
+ * Postings file: MAGIC, VERSION, buildId, then one block per term at its postingsOffset: the book IDs
+ *                as variable-byte gaps, followed by one variable-byte term frequency per book
+ *
+ * Doclens file:  MAGIC, VERSION, buildId, bookCount, totalLength (long), then bookCount
+ *                (bookId int, length int) pairs sorted by bookId
+ *
+ * Positions file (optional, written when positions are enabled):
+ *                MAGIC, VERSION, buildId, termCount, termCount block offsets (long), then one block
+ *                per term. A block holds, for each book in the term's posting list, the
+ *                number of occurrences followed by the word positions as variable-byte gaps.
+ *
+ * Segmented index: a directory of binary indexes ("segments", each the files above
+ * under its own name) plus a manifest listing the live segments oldest first, one
+ * "name bookCount" line each. The manifest is replaced atomically, so it always
+ * names complete segments. A book in a newer segment hides it in older ones.
+ */
+final class BinaryIndexFormat {
+	static final int TERMS_MAGIC = 0x4C425449;     // "LBTI"
+	static final int POSTINGS_MAGIC = 0x4C42504F;  // "LBPO"
+	static final int POSITIONS_MAGIC = 0x4C425053; // "LBPS"
+	static final int DOCLENS_MAGIC = 0x4C42444C;   // "LBDL"
+	static final int VERSION = 5;
+	static final int BUILD_ID_OFFSET = 8;
+
+	static final int TERMS_HEADER_BYTES = 24;
+	static final int POSTINGS_HEADER_BYTES = 16;
+	static final int POSITIONS_HEADER_BYTES = 20;
+	static final int DOCLENS_HEADER_BYTES = 28;
+	static final int DOCLENS_ENTRY_BYTES = 8;
+	static final int ENTRY_BYTES = 12;
+	static final int TERM_BLOCK_SIZE = 16;
+
+	static final String TERMS_SUFFIX = ".terms";
+	static final String POSTINGS_SUFFIX = ".postings";
+	static final String POSITIONS_SUFFIX = ".positions";
+	static final String DOCLENS_SUFFIX = ".doclens";
+
+	static final String SEGMENTS_DIR = "segments";
+	static final String MANIFEST_FILE = "segments.manifest";
+
+	private BinaryIndexFormat() {}
+}
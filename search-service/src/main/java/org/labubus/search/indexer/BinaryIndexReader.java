@@ -0,0 +1,475 @@
+package org.labubus.search.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static org.labubus.search.indexer.BinaryIndexFormat.*;
+
+/**
+ * Memory-maps the binary index written by indexing-service.
+ * Lookups search the front-coded term dictionary in place, so loading is O(1)
+ * and the dictionary and postings stay off-heap until a query touches them.
+ * {@link #close()} unmaps the files right away instead of waiting for the buffers to
+ * be garbage collected, so callers must make sure no query is still reading them.
+ */
+public class BinaryIndexReader implements InvertedIndexReader {
+	private static final Logger logger = LoggerFactory.getLogger(BinaryIndexReader.class);
+	private static final int LOAD_ATTEMPTS = 5;
+	private static final long LOAD_RETRY_MILLIS = 50;
+
+	private final String datamartPath;
+	private final String indexName;
+	private MappedByteBuffer terms;
+	private MappedByteBuffer postings;
+	private MappedByteBuffer positions;
+	private MappedByteBuffer doclens;
+	private int minLength;
+	private int termCount;
+	private FrontCodedDictionary dictionary = FrontCodedDictionary.empty();
+	private volatile PostingList scannedDocumentIds;
+	private volatile boolean loaded;
+
+	public BinaryIndexReader(String datamartPath, String indexName) {
+		this.datamartPath = datamartPath;
+		this.indexName = indexName;
+		this.loaded = false;
+	}
+
+	/**
+	 * The writer replaces the files one by one, so a load that races a save can see files
+	 * from two builds; it waits for the save to finish and maps them again
+	 */
+	@Override
+	public void load() throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			if (tryLoad(attempt == LOAD_ATTEMPTS)) {
+				return;
+			}
+			logger.info("Index files at {} are from different builds, retrying (attempt {})", termsPath(), attempt);
+			try {
+				Thread.sleep(LOAD_RETRY_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for index files at " + termsPath());
+			}
+		}
+	}
+
+	/**
+	 * @param lastAttempt fail instead of asking for a retry when the files are from different builds
+	 * @return false if they were, with nothing left mapped
+	 */
+	private boolean tryLoad(boolean lastAttempt) throws IOException {
+		Path termsPath = termsPath();
+		Path postingsPath = postingsPath();
+
+		if (!Files.exists(termsPath) || !Files.exists(postingsPath)) {
+			throw new IOException("Index files not found: " + termsPath + ", " + postingsPath);
+		}
+
+		MappedByteBuffer mappedTerms = map(termsPath);
+		MappedByteBuffer mappedPostings = map(postingsPath);
+
+		if (mappedTerms.getInt(0) != TERMS_MAGIC || mappedPostings.getInt(0) != POSTINGS_MAGIC) {
+			throw new IOException("Not a binary index: " + termsPath);
+		}
+		if (mappedTerms.getInt(4) != VERSION || mappedPostings.getInt(4) != VERSION) {
+			throw new IOException("Unsupported binary index version in " + termsPath);
+		}
+		long buildId = mappedTerms.getLong(BUILD_ID_OFFSET);
+		boolean mixed = mappedPostings.getLong(BUILD_ID_OFFSET) != buildId;
+
+		MappedByteBuffer mappedDoclens = null;
+		Path doclensPath = doclensPath();
+		if (Files.exists(doclensPath)) {
+			mappedDoclens = map(doclensPath);
+			if (mappedDoclens.getInt(0) != DOCLENS_MAGIC || mappedDoclens.getInt(4) != VERSION) {
+				throw new IOException("Not a document lengths file: " + doclensPath);
+			}
+			mixed |= mappedDoclens.getLong(BUILD_ID_OFFSET) != buildId;
+		} else {
+			logger.warn("No document lengths at {}; ranking will not normalize by length", doclensPath);
+		}
+
+		MappedByteBuffer mappedPositions = null;
+		Path positionsPath = positionsPath();
+		if (Files.exists(positionsPath)) {
+			mappedPositions = map(positionsPath);
+			if (mappedPositions.getInt(0) != POSITIONS_MAGIC || mappedPositions.getInt(4) != VERSION
+					|| mappedPositions.getInt(16) != mappedTerms.getInt(16)) {
+				logger.warn("Ignoring positions file that does not match the index: {}", positionsPath);
+				unmap(mappedPositions);
+				mappedPositions = null;
+			} else if (mappedPositions.getLong(BUILD_ID_OFFSET) != buildId) {
+				if (lastAttempt) {
+					logger.warn("Ignoring positions file from a different build: {}", positionsPath);
+					unmap(mappedPositions);
+					mappedPositions = null;
+				} else {
+					mixed = true;
+				}
+			}
+		}
+
+		if (mixed) {
+			for (MappedByteBuffer buffer : new MappedByteBuffer[]{mappedTerms, mappedPostings, mappedPositions, mappedDoclens}) {
+				if (buffer != null) {
+					unmap(buffer);
+				}
+			}
+			if (lastAttempt) {
+				throw new IOException("Index files are from different builds: " + termsPath);
+			}
+			return false;
+		}
+
+		terms = mappedTerms;
+		postings = mappedPostings;
+		positions = mappedPositions;
+		doclens = mappedDoclens;
+		minLength = doclens != null ? shortestDocument(doclens) : 0;
+		scannedDocumentIds = null;
+		termCount = terms.getInt(16);
+		dictionary = new FrontCodedDictionary(terms, TERMS_HEADER_BYTES + termCount * ENTRY_BYTES,
+				termCount, terms.getInt(20));
+		loaded = true;
+
+		logger.info("Mapped binary inverted index from {} ({} unique words, positions: {})",
+				termsPath, termCount, positions != null);
+		return true;
+	}
+
+	@Override
+	public Set<Integer> search(String word) {
+		return postings(word);
+	}
+
+	@Override
+	public PostingList postings(String word) {
+		if (!loaded) {
+			logger.warn("Index not loaded, returning empty results");
+			return PostingList.empty();
+		}
+
+		word = word.toLowerCase().trim();
+		int ordinal = findTerm(word.getBytes(StandardCharsets.UTF_8));
+		if (ordinal < 0) {
+			return PostingList.empty();
+		}
+		return readPostings(ordinal);
+	}
+
+	/**
+	 * Decodes the book IDs and then the frequencies stored right after them
+	 */
+	@Override
+	public TermPostings termPostings(String word) {
+		if (!loaded) {
+			return new TermPostings(PostingList.empty(), null);
+		}
+
+		int ordinal = findTerm(word.toLowerCase().trim().getBytes(StandardCharsets.UTF_8));
+		if (ordinal < 0) {
+			return new TermPostings(PostingList.empty(), null);
+		}
+
+		ByteBuffer in = postingsBuffer(ordinal);
+		PostingList bookIds = PostingList.readDeltas(in, docFreq(ordinal));
+		int[] frequencies = new int[bookIds.size()];
+		for (int i = 0; i < frequencies.length; i++) {
+			frequencies[i] = PostingList.readVInt(in);
+		}
+		return new TermPostings(bookIds, frequencies);
+	}
+
+	/**
+	 * Binary search over the fixed-width (bookId, length) pairs
+	 */
+	@Override
+	public int documentLength(int bookId) {
+		if (!loaded || doclens == null) {
+			return 0;
+		}
+
+		int low = 0;
+		int high = doclens.getInt(16) - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int entry = DOCLENS_HEADER_BYTES + mid * DOCLENS_ENTRY_BYTES;
+			int current = doclens.getInt(entry);
+			if (current < bookId) {
+				low = mid + 1;
+			} else if (current > bookId) {
+				high = mid - 1;
+			} else {
+				return doclens.getInt(entry + 4);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Read from the document lengths table, which has every indexed book in order.
+	 * An index written without lengths has its postings scanned once instead.
+	 */
+	@Override
+	public PostingList documentIds() {
+		if (!loaded) {
+			return PostingList.empty();
+		}
+		if (doclens == null) {
+			return scanDocumentIds();
+		}
+
+		int bookCount = doclens.getInt(16);
+		int[] bookIds = new int[bookCount];
+		for (int i = 0; i < bookCount; i++) {
+			bookIds[i] = doclens.getInt(DOCLENS_HEADER_BYTES + i * DOCLENS_ENTRY_BYTES);
+		}
+		return PostingList.ofSorted(bookIds, bookCount);
+	}
+
+	private PostingList scanDocumentIds() {
+		PostingList scanned = scannedDocumentIds;
+		if (scanned == null) {
+			BitSet seen = new BitSet();
+			for (int i = 0; i < termCount; i++) {
+				PostingList bookIds = readPostings(i);
+				for (int j = 0; j < bookIds.size(); j++) {
+					seen.set(bookIds.getInt(j));
+				}
+			}
+			int[] bookIds = seen.stream().toArray();
+			scanned = PostingList.ofSorted(bookIds, bookIds.length);
+			scannedDocumentIds = scanned;
+		}
+		return scanned;
+	}
+
+	@Override
+	public CorpusStats corpusStats() {
+		if (!loaded || doclens == null) {
+			return new CorpusStats(0, 0.0, 0);
+		}
+
+		int bookCount = doclens.getInt(16);
+		long totalLength = doclens.getLong(20);
+		return new CorpusStats(bookCount, bookCount == 0 ? 0.0 : (double) totalLength / bookCount, minLength);
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return loaded && positions != null;
+	}
+
+	@Override
+	public PositionsCursor positions(String word) {
+		if (!hasPositions()) {
+			throw new UnsupportedOperationException("Index does not store positions");
+		}
+
+		int ordinal = findTerm(word.toLowerCase().trim().getBytes(StandardCharsets.UTF_8));
+		if (ordinal < 0) {
+			return PositionsCursor.empty();
+		}
+
+		ByteBuffer in = positions.duplicate();
+		in.position((int) positions.getLong(POSITIONS_HEADER_BYTES + ordinal * Long.BYTES));
+		return new PositionsCursor(readPostings(ordinal), in);
+	}
+
+	/**
+	 * Reads the stored document frequency without decoding the postings
+	 */
+	@Override
+	public int documentFrequency(String word) {
+		if (!loaded) {
+			return 0;
+		}
+
+		int ordinal = findTerm(word.toLowerCase().trim().getBytes(StandardCharsets.UTF_8));
+		return ordinal < 0 ? 0 : docFreq(ordinal);
+	}
+
+	/**
+	 * Seeks to the prefix in the dictionary and decodes terms until they stop matching
+	 */
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		if (!loaded) {
+			return;
+		}
+
+		byte[] key = prefix.toLowerCase().getBytes(StandardCharsets.UTF_8);
+		FrontCodedDictionary.Cursor cursor = dictionary.cursor(dictionary.ceiling(key));
+		while (cursor.next() && cursor.startsWith(key)) {
+			if (!visitor.test(cursor.term())) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		if (loaded) {
+			dictionary.intersect(automaton, visitor);
+		}
+	}
+
+	/**
+	 * Materializes the whole index on the heap. Only meant for tooling and tests.
+	 */
+	@Override
+	public Map<String, Set<Integer>> getIndex() {
+		if (!loaded) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, Set<Integer>> index = new HashMap<>(termCount * 2);
+		for (int i = 0; i < termCount; i++) {
+			index.put(dictionary.term(i), readPostings(i));
+		}
+		return Collections.unmodifiableMap(index);
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	@Override
+	public IndexStats getStats() {
+		if (!loaded) {
+			return new IndexStats(0, 0, 0.0);
+		}
+
+		int totalMappings = 0;
+		for (int i = 0; i < termCount; i++) {
+			totalMappings += docFreq(i);
+		}
+
+		long bytes = 0;
+		try {
+			bytes = Files.size(termsPath()) + Files.size(postingsPath());
+		} catch (IOException e) {
+			logger.warn("Failed to get index file size", e);
+		}
+
+		return new IndexStats(termCount, totalMappings, bytes / (1024.0 * 1024.0));
+	}
+
+	private int findTerm(byte[] key) {
+		return dictionary.find(key);
+	}
+
+	private PostingList readPostings(int ordinal) {
+		return PostingList.readDeltas(postingsBuffer(ordinal), docFreq(ordinal));
+	}
+
+	private ByteBuffer postingsBuffer(int ordinal) {
+		ByteBuffer in = postings.duplicate();
+		in.position((int) terms.getLong(entryOffset(ordinal)));
+		return in;
+	}
+
+	private int docFreq(int ordinal) {
+		return terms.getInt(entryOffset(ordinal) + 8);
+	}
+
+	private static int shortestDocument(ByteBuffer lengths) {
+		int bookCount = lengths.getInt(16);
+		int min = bookCount == 0 ? 0 : Integer.MAX_VALUE;
+		for (int i = 0; i < bookCount; i++) {
+			min = Math.min(min, lengths.getInt(DOCLENS_HEADER_BYTES + i * DOCLENS_ENTRY_BYTES + 4));
+		}
+		return min;
+	}
+
+	private static int entryOffset(int ordinal) {
+		return TERMS_HEADER_BYTES + ordinal * ENTRY_BYTES;
+	}
+
+	private Path termsPath() {
+		return termsPath(datamartPath, indexName);
+	}
+
+	/**
+	 * Terms file of an index; the writer replaces it last, so a change to it means a complete new index
+	 */
+	public static Path termsPath(String datamartPath, String indexName) {
+		return Paths.get(datamartPath, indexName + TERMS_SUFFIX);
+	}
+
+	private Path postingsPath() {
+		return Paths.get(datamartPath, indexName + POSTINGS_SUFFIX);
+	}
+
+	private Path positionsPath() {
+		return Paths.get(datamartPath, indexName + POSITIONS_SUFFIX);
+	}
+
+	private Path doclensPath() {
+		return Paths.get(datamartPath, indexName + DOCLENS_SUFFIX);
+	}
+
+	/**
+	 * Unmap every file. Lookups on a closed reader behave as if it was never loaded.
+	 */
+	@Override
+	public void close() {
+		if (!loaded) {
+			return;
+		}
+		loaded = false;
+		dictionary = FrontCodedDictionary.empty();
+		scannedDocumentIds = null;
+		for (MappedByteBuffer buffer : new MappedByteBuffer[]{terms, postings, positions, doclens}) {
+			if (buffer != null) {
+				unmap(buffer);
+			}
+		}
+		terms = null;
+		postings = null;
+		positions = null;
+		doclens = null;
+		logger.info("Closed binary inverted index {}", termsPath());
+	}
+
+	/**
+	 * Release a mapping through the JDK's cleaner; if that is unavailable the mapping
+	 * goes away when the buffer is garbage collected
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.debug("Could not unmap index buffer, leaving it to the garbage collector: {}", e.getMessage());
+		}
+	}
+
+	private static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Index file too large to map: " + path);
+			}
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+}
@@ -0,0 +1,428 @@
+package org.labubus.search.indexer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted term dictionary, front-coded in blocks: the first term of each block is
+ * stored whole, every other term as the length of the prefix it shares with the
+ * previous term plus the remaining bytes. Terms are ordered by their UTF-8 bytes
+ * and numbered by rank (their ordinal). Lookups binary search the block heads and
+ * decode a single block, so the dictionary is read in place, from a mapped file
+ * or a heap buffer, without a key object per term.
+ *
+ * Layout: blockCount block offsets (int, relative to the first block), then the blocks.
+ * Must stay in sync with the dictionary written by org.labubus.indexing.indexer.BinaryIndexWriter.
+ */
+public final class FrontCodedDictionary {
+	private static final FrontCodedDictionary EMPTY = build(List.of(), 1);
+
+	private final ByteBuffer buffer;
+	private final int offsetsStart;
+	private final int blocksStart;
+	private final int termCount;
+	private final int blockSize;
+	private final int blockCount;
+
+	/**
+	 * @param start position of the block offsets in {@code buffer}
+	 */
+	public FrontCodedDictionary(ByteBuffer buffer, int start, int termCount, int blockSize) {
+		this.buffer = buffer;
+		this.offsetsStart = start;
+		this.termCount = termCount;
+		this.blockSize = blockSize;
+		this.blockCount = (termCount + blockSize - 1) / blockSize;
+		this.blocksStart = start + blockCount * Integer.BYTES;
+	}
+
+	public static FrontCodedDictionary empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Encode terms already sorted by their UTF-8 bytes into a heap dictionary
+	 */
+	public static FrontCodedDictionary build(List<byte[]> sortedTerms, int blockSize) {
+		int blockCount = (sortedTerms.size() + blockSize - 1) / blockSize;
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		int[] offsets = new int[blockCount];
+
+		byte[] previous = null;
+		for (int i = 0; i < sortedTerms.size(); i++) {
+			byte[] term = sortedTerms.get(i);
+			if (i % blockSize == 0) {
+				offsets[i / blockSize] = blocks.size();
+				writeVInt(blocks, term.length);
+				blocks.write(term, 0, term.length);
+			} else {
+				int shared = Arrays.mismatch(previous, term);
+				shared = shared < 0 ? term.length : Math.min(shared, term.length);
+				writeVInt(blocks, shared);
+				writeVInt(blocks, term.length - shared);
+				blocks.write(term, shared, term.length - shared);
+			}
+			previous = term;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(blockCount * Integer.BYTES + blocks.size());
+		for (int offset : offsets) {
+			buffer.putInt(offset);
+		}
+		buffer.put(blocks.toByteArray());
+		return new FrontCodedDictionary(buffer, 0, sortedTerms.size(), blockSize);
+	}
+
+	public int size() {
+		return termCount;
+	}
+
+	/**
+	 * Bytes the encoded dictionary takes
+	 */
+	public long sizeInBytes() {
+		if (blockCount == 0) {
+			return 0;
+		}
+		Cursor cursor = cursor(termCount - 1);
+		cursor.next();
+		return cursor.position - offsetsStart;
+	}
+
+	/**
+	 * @return the term's ordinal, -1 if it is not in the dictionary
+	 */
+	public int find(byte[] key) {
+		int ordinal = ceiling(key);
+		if (ordinal == termCount) {
+			return -1;
+		}
+		Cursor cursor = cursor(ordinal);
+		cursor.next();
+		return cursor.compareTo(key) == 0 ? ordinal : -1;
+	}
+
+	/**
+	 * @return ordinal of the first term not smaller than {@code key}, {@link #size()} if there is none
+	 */
+	public int ceiling(byte[] key) {
+		if (blockCount == 0 || compareHead(0, key) > 0) {
+			return 0;
+		}
+		Cursor cursor = cursor(floorBlock(key, 0) * blockSize);
+		while (cursor.next()) {
+			if (cursor.compareTo(key) >= 0) {
+				return cursor.ordinal();
+			}
+		}
+		return termCount;
+	}
+
+	/**
+	 * Last block whose first term is not greater than {@code key}, galloping forward from
+	 * {@code from}, whose first term must not be greater either. Costs O(log distance),
+	 * so seeking a little way ahead stays cheap.
+	 */
+	private int floorBlock(byte[] key, int from) {
+		int low = from;
+		int step = 1;
+		while (low + step < blockCount && compareHead(low + step, key) <= 0) {
+			low += step;
+			step <<= 1;
+		}
+		int high = Math.min(low + step, blockCount) - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (compareHead(mid, key) <= 0) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	public String term(int ordinal) {
+		Cursor cursor = cursor(ordinal);
+		cursor.next();
+		return cursor.term();
+	}
+
+	/**
+	 * Cursor whose first {@link Cursor#next()} moves to {@code ordinal}
+	 */
+	public Cursor cursor(int ordinal) {
+		Cursor cursor = new Cursor();
+		cursor.seek(ordinal);
+		return cursor;
+	}
+
+	/**
+	 * Visit the terms the automaton accepts, in sorted order, until the visitor returns
+	 * false. The automaton state of each character is kept, so a term only steps through
+	 * the characters it does not share with the previous one; once a prefix can no longer
+	 * match, the walk seeks to the next sibling prefix that can, skipping every term in
+	 * between instead of decoding them.
+	 */
+	public void intersect(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		int[][] states = new int[9][];
+		states[0] = automaton.start();
+		int[] scratch = new int[automaton.stateSize()];
+		// Byte length of the prefix each state has read
+		int[] ends = new int[states.length];
+		int depth = 0;
+		byte[] previous = new byte[32];
+		int previousLength = 0;
+
+		Cursor cursor = cursor(0);
+		boolean more = cursor.next();
+		while (more) {
+			byte[] bytes = cursor.bytes();
+			int length = cursor.length();
+			int shared = Arrays.mismatch(previous, 0, previousLength, bytes, 0, length);
+			if (shared < 0) {
+				shared = length;
+			}
+			while (ends[depth] > shared) {
+				depth--;
+			}
+
+			boolean alive = true;
+			int position = ends[depth];
+			int codePoint = 0;
+			while (position < length) {
+				int width = utf8Width(bytes[position]);
+				codePoint = decodeCodePoint(bytes, position, width);
+				if (depth + 1 == states.length) {
+					states = Arrays.copyOf(states, states.length * 2);
+					ends = Arrays.copyOf(ends, states.length);
+				}
+				if (states[depth + 1] == null) {
+					states[depth + 1] = new int[automaton.stateSize()];
+				}
+				alive = automaton.step(states[depth], codePoint, states[depth + 1]);
+				position += width;
+				ends[++depth] = position;
+				if (!alive) {
+					break;
+				}
+			}
+
+			if (previous.length < length) {
+				previous = Arrays.copyOf(previous, Math.max(previous.length * 2, length));
+			}
+			System.arraycopy(bytes, 0, previous, 0, length);
+			previousLength = length;
+
+			if (!alive) {
+				// Nothing starting with this prefix can match: jump to the next sibling that can,
+				// or past the parent prefix when no sibling can
+				int parentEnd = ends[depth - 1];
+				int candidate = automaton.nextCandidate(states[depth - 1], codePoint, scratch);
+				byte[] key = candidate >= 0 ? append(bytes, parentEnd, candidate) : successor(bytes, parentEnd);
+				if (key == null) {
+					return;
+				}
+				more = cursor.advanceTo(key);
+			} else if (automaton.isMatch(states[depth]) && !visitor.visit(cursor.term(), automaton.distance(states[depth]))) {
+				return;
+			} else {
+				more = cursor.next();
+			}
+		}
+	}
+
+	/**
+	 * Smallest key greater than every key starting with the first {@code length} bytes,
+	 * null if there is none
+	 */
+	private static byte[] successor(byte[] bytes, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (bytes[i] != (byte) 0xFF) {
+				byte[] successor = Arrays.copyOf(bytes, i + 1);
+				successor[i]++;
+				return successor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The first {@code length} bytes followed by the UTF-8 encoding of a code point
+	 */
+	private static byte[] append(byte[] bytes, int length, int codePoint) {
+		int width = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+		byte[] key = Arrays.copyOf(bytes, length + width);
+		if (width == 1) {
+			key[length] = (byte) codePoint;
+			return key;
+		}
+		for (int i = width - 1; i > 0; i--) {
+			key[length + i] = (byte) (0x80 | (codePoint & 0x3F));
+			codePoint >>>= 6;
+		}
+		key[length] = (byte) ((0xF00 >> width) | codePoint);
+		return key;
+	}
+
+	private static int utf8Width(byte lead) {
+		if ((lead & 0x80) == 0) {
+			return 1;
+		} else if ((lead & 0xE0) == 0xC0) {
+			return 2;
+		} else if ((lead & 0xF0) == 0xE0) {
+			return 3;
+		}
+		return 4;
+	}
+
+	private static int decodeCodePoint(byte[] bytes, int position, int width) {
+		if (width == 1) {
+			return bytes[position];
+		}
+		int codePoint = bytes[position] & (0x7F >> width);
+		for (int i = 1; i < width; i++) {
+			codePoint = (codePoint << 6) | (bytes[position + i] & 0x3F);
+		}
+		return codePoint;
+	}
+
+	/**
+	 * Walks terms in order, decoding each into a reused buffer
+	 */
+	public final class Cursor {
+		private byte[] bytes = new byte[32];
+		private int length;
+		private int ordinal;
+		private int position;
+
+		/**
+		 * Reposition so that the next call to {@link #next()} moves to {@code ordinal}
+		 */
+		public void seek(int ordinal) {
+			if (ordinal >= termCount) {
+				this.ordinal = termCount - 1;
+				return;
+			}
+			int block = ordinal / blockSize;
+			position = blocksStart + buffer.getInt(offsetsStart + block * Integer.BYTES);
+			this.ordinal = block * blockSize - 1;
+			while (this.ordinal + 1 < ordinal) {
+				next();
+			}
+		}
+
+		/**
+		 * Move to the first term not smaller than {@code key}, which must sort after the
+		 * current term. Stays in the current block when the key is there.
+		 * @return false if there is no such term
+		 */
+		public boolean advanceTo(byte[] key) {
+			int block = ordinal / blockSize;
+			if (block + 1 < blockCount && compareHead(block + 1, key) <= 0) {
+				seek(floorBlock(key, block + 1) * blockSize);
+			}
+			while (next()) {
+				if (compareTo(key) >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return false once past the last term
+		 */
+		public boolean next() {
+			if (ordinal + 1 >= termCount) {
+				ordinal = termCount;
+				return false;
+			}
+			ordinal++;
+
+			int shared = 0;
+			if (ordinal % blockSize != 0) {
+				shared = readVInt();
+			}
+			int suffix = readVInt();
+			if (shared + suffix > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, shared + suffix));
+			}
+			buffer.get(position, bytes, shared, suffix);
+			position += suffix;
+			length = shared + suffix;
+			return true;
+		}
+
+		public int ordinal() {
+			return ordinal;
+		}
+
+		/**
+		 * Current term's UTF-8 bytes, valid until the next call to {@link #next()}
+		 */
+		public byte[] bytes() {
+			return bytes;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public String term() {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+
+		public boolean startsWith(byte[] prefix) {
+			return length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+		}
+
+		int compareTo(byte[] key) {
+			return Arrays.compareUnsigned(bytes, 0, length, key, 0, key.length);
+		}
+
+		private int readVInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(position++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+	}
+
+	private int compareHead(int block, byte[] key) {
+		int position = blocksStart + buffer.getInt(offsetsStart + block * Integer.BYTES);
+		int length = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(position++);
+			length |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int cmp = Byte.compareUnsigned(buffer.get(position + i), key[i]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(length, key.length);
+	}
+
+	private static void writeVInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
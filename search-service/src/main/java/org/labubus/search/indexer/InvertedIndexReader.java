@@ -1,8 +1,13 @@
 package org.labubus.search.indexer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 public interface InvertedIndexReader {
 	/**
@@ -16,6 +21,116 @@ public interface InvertedIndexReader {
 	 */
 	Set<Integer> search(String word);
 
+	/**
+	 * Same lookup as {@link #search(String)}, typed as the sorted primitive posting list
+	 */
+	PostingList postings(String word);
+
+	/**
+	 * Number of books containing a word, used by the query planner to order terms
+	 */
+	default int documentFrequency(String word) {
+		return postings(word).size();
+	}
+
+	/**
+	 * Posting list with per-book term frequencies, all 1 when the index does not store them
+	 */
+	default TermPostings termPostings(String word) {
+		return new TermPostings(postings(word), null);
+	}
+
+	/**
+	 * Number of indexed words in a book, 0 if the index does not record lengths
+	 */
+	default int documentLength(int bookId) {
+		return 0;
+	}
+
+	/**
+	 * Every book ID in the index, in ascending order, e.g. the universe for a bare NOT
+	 */
+	PostingList documentIds();
+
+	/**
+	 * Collection-wide figures used by BM25
+	 */
+	CorpusStats corpusStats();
+
+	/**
+	 * Whether the index stores word positions
+	 */
+	default boolean hasPositions() {
+		return false;
+	}
+
+	/**
+	 * Positions of a word in each book of its posting list.
+	 * Only available when {@link #hasPositions()} is true.
+	 */
+	default PositionsCursor positions(String word) {
+		throw new UnsupportedOperationException("Index does not store positions");
+	}
+
+	/**
+	 * Visit the indexed words starting with {@code prefix} in sorted order until the
+	 * visitor returns false. Readers with a sorted dictionary only touch the matching range.
+	 */
+	default void forEachTerm(String prefix, Predicate<String> visitor) {
+		List<String> words = new ArrayList<>();
+		for (String word : getIndex().keySet()) {
+			if (word.startsWith(prefix)) {
+				words.add(word);
+			}
+		}
+		Collections.sort(words);
+		for (String word : words) {
+			if (!visitor.test(word)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Visit the indexed words the automaton accepts, with their edit distance, in sorted
+	 * order until the visitor returns false. Readers with a sorted dictionary skip every
+	 * prefix that can no longer match instead of testing each word.
+	 */
+	default void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		List<String> words = new ArrayList<>(getIndex().keySet());
+		Collections.sort(words);
+		for (String word : words) {
+			int distance = automaton.distance(word);
+			if (distance <= automaton.maxEdits() && !visitor.visit(word, distance)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Changes whenever the reader switches to a newer version of the index,
+	 * so anything cached from an older version can be dropped
+	 */
+	default long generation() {
+		return 0;
+	}
+
+	/**
+	 * Hold on to the index version being served for the length of one query: every
+	 * lookup on the pinned reader sees that version, even if a reload swaps in another
+	 * meanwhile. Close it when the query is done so a replaced version can be released.
+	 */
+	default Pinned pin() {
+		return new Pinned(this, () -> {});
+	}
+
+	/**
+	 * Release the files and mappings behind the index. Readers that are swapped out
+	 * are closed once no query has them pinned; a closed reader must not be used.
+	 */
+	default void close() {
+	}
+
 	/**
 	 * Get the complete index
 	 */
@@ -32,4 +147,35 @@ public interface InvertedIndexReader {
 	IndexStats getStats();
 
 	record IndexStats(int uniqueWords, int totalMappings, double sizeInMB) {}
+
+	/**
+	 * A reader fixed to one index version until closed. Closing more than once has no effect.
+	 */
+	final class Pinned implements AutoCloseable {
+		private final InvertedIndexReader reader;
+		private final Runnable release;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		public Pinned(InvertedIndexReader reader, Runnable release) {
+			this.reader = reader;
+			this.release = release;
+		}
+
+		public InvertedIndexReader reader() {
+			return reader;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				release.run();
+			}
+		}
+	}
+
+	/**
+	 * @param averageLength mean document length in words, 0 if unknown
+	 * @param minLength shortest document length in words, 0 if unknown
+	 */
+	record CorpusStats(int documentCount, double averageLength, int minLength) {}
 }
\ No newline at end of file
@@ -1,30 +1,43 @@
 package org.labubus.search.indexer;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Predicate;
 
+/**
+ * Loads the JSON index onto the heap. Words are kept in a front-coded dictionary
+ * with the posting lists in an array by ordinal, rather than as map keys.
+ */
 public class JsonIndexReader implements InvertedIndexReader {
 	private static final Logger logger = LoggerFactory.getLogger(JsonIndexReader.class);
-	private final Map<String, Set<Integer>> index;
+	private static final int TERM_BLOCK_SIZE = 16;
+	private volatile Terms terms = new Terms(FrontCodedDictionary.empty(), new PostingList[0]);
 	private final String datamartPath;
 	private final String indexFilename;
 	private final Gson gson;
 	private boolean loaded;
+	private volatile PostingList documentIds = PostingList.empty();
 
 	public JsonIndexReader(String datamartPath, String indexFilename) {
 		this.datamartPath = datamartPath;
 		this.indexFilename = indexFilename;
-		this.index = new HashMap<>();
-		this.gson = new Gson();
+		this.gson = new GsonBuilder()
+				.registerTypeAdapter(PostingList.class, new PostingListAdapter())
+				.create();
 		this.loaded = false;
 	}
 
@@ -37,15 +50,31 @@ public class JsonIndexReader implements InvertedIndexReader {
 		}
 
 		String json = Files.readString(indexPath);
-		Type type = new TypeToken<Map<String, Set<Integer>>>(){}.getType();
-		Map<String, Set<Integer>> loadedIndex = gson.fromJson(json, type);
+		Type type = new TypeToken<Map<String, PostingList>>(){}.getType();
+		Map<String, PostingList> loadedIndex = gson.fromJson(json, type);
 
 		if (loadedIndex != null) {
-			index.clear();
-			index.putAll(loadedIndex);
+			List<byte[]> words = new ArrayList<>(loadedIndex.size());
+			for (String word : loadedIndex.keySet()) {
+				words.add(word.getBytes(StandardCharsets.UTF_8));
+			}
+			words.sort(Arrays::compareUnsigned);
+
+			PostingList[] postings = new PostingList[words.size()];
+			for (int i = 0; i < postings.length; i++) {
+				postings[i] = loadedIndex.get(new String(words.get(i), StandardCharsets.UTF_8));
+			}
+
+			terms = new Terms(FrontCodedDictionary.build(words, TERM_BLOCK_SIZE), postings);
+			int[] bookIds = loadedIndex.values().stream()
+					.flatMapToInt(postingList -> Arrays.stream(postingList.toIntArray()))
+					.distinct()
+					.sorted()
+					.toArray();
+			documentIds = PostingList.ofSorted(bookIds, bookIds.length);
 			loaded = true;
-			logger.info("Loaded inverted index from {} ({} unique words)",
-					indexPath, index.size());
+			logger.info("Loaded inverted index from {} ({} unique words, dictionary {} KB)",
+					indexPath, postings.length, terms.dictionary().sizeInBytes() / 1024);
 		} else {
 			throw new IOException("Failed to parse index file");
 		}
@@ -53,20 +82,65 @@ public class JsonIndexReader implements InvertedIndexReader {
 
 	@Override
 	public Set<Integer> search(String word) {
+		return postings(word);
+	}
+
+	@Override
+	public PostingList postings(String word) {
 		if (!loaded) {
 			logger.warn("Index not loaded, returning empty results");
-			return Collections.emptySet();
+			return PostingList.empty();
 		}
 
-		word = word.toLowerCase().trim();
-		return index.getOrDefault(word, Collections.emptySet());
+		Terms current = terms;
+		int ordinal = current.dictionary().find(word.toLowerCase().trim().getBytes(StandardCharsets.UTF_8));
+		return ordinal >= 0 ? current.postings()[ordinal] : PostingList.empty();
+	}
+
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		FrontCodedDictionary dictionary = terms.dictionary();
+		byte[] key = prefix.toLowerCase().getBytes(StandardCharsets.UTF_8);
+		FrontCodedDictionary.Cursor cursor = dictionary.cursor(dictionary.ceiling(key));
+		while (cursor.next() && cursor.startsWith(key)) {
+			if (!visitor.test(cursor.term())) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		terms.dictionary().intersect(automaton, visitor);
 	}
 
+	/**
+	 * Builds a map of the whole index. Only meant for tooling and for engines that cache the result.
+	 */
 	@Override
 	public Map<String, Set<Integer>> getIndex() {
+		Terms current = terms;
+		Map<String, Set<Integer>> index = new HashMap<>(current.postings().length * 2);
+		FrontCodedDictionary.Cursor cursor = current.dictionary().cursor(0);
+		while (cursor.next()) {
+			index.put(cursor.term(), current.postings()[cursor.ordinal()]);
+		}
 		return Collections.unmodifiableMap(index);
 	}
 
+	@Override
+	public PostingList documentIds() {
+		return documentIds;
+	}
+
+	/**
+	 * The JSON format has no document lengths, so BM25 degrades to IDF weighting
+	 */
+	@Override
+	public CorpusStats corpusStats() {
+		return new CorpusStats(documentIds.size(), 0.0, 0);
+	}
+
 	@Override
 	public boolean isLoaded() {
 		return loaded;
@@ -78,9 +152,10 @@ public class JsonIndexReader implements InvertedIndexReader {
 			return new IndexStats(0, 0, 0.0);
 		}
 
-		int uniqueWords = index.size();
-		int totalMappings = index.values().stream()
-				.mapToInt(Set::size)
+		PostingList[] postings = terms.postings();
+		int uniqueWords = postings.length;
+		int totalMappings = Arrays.stream(postings)
+				.mapToInt(PostingList::size)
 				.sum();
 
 		double sizeInMB = 0.0;
@@ -96,4 +171,32 @@ public class JsonIndexReader implements InvertedIndexReader {
 
 		return new IndexStats(uniqueWords, totalMappings, sizeInMB);
 	}
-}
\ No newline at end of file
+
+	private record Terms(FrontCodedDictionary dictionary, PostingList[] postings) {}
+
+	/**
+	 * Reads the JSON arrays of book IDs straight into primitive posting lists
+	 */
+	private static class PostingListAdapter extends TypeAdapter<PostingList> {
+		@Override
+		public void write(JsonWriter out, PostingList postings) throws IOException {
+			out.beginArray();
+			for (int i = 0; i < postings.size(); i++) {
+				out.value(postings.getInt(i));
+			}
+			out.endArray();
+		}
+
+		@Override
+		public PostingList read(JsonReader in) throws IOException {
+			PostingList postings = new PostingList();
+			in.beginArray();
+			while (in.hasNext()) {
+				postings.addInt(in.nextInt());
+			}
+			in.endArray();
+			postings.trimToSize();
+			return postings;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package org.labubus.search.indexer;
+
+/**
+ * Accepts the words within {@code maxEdits} insertions, deletions or substitutions of a
+ * target word, compared code point by code point. A state is one row of the edit
+ * distance table, capped at {@code maxEdits + 1}; the automaton is stepped one character
+ * at a time, so a sorted dictionary can be walked against it and every prefix whose state
+ * cannot match any more is skipped along with all the words that start with it.
+ */
+public final class LevenshteinAutomaton {
+	/**
+	 * Largest supported edit distance; beyond 2 almost every short word matches
+	 */
+	public static final int MAX_EDITS = 2;
+
+	private final String word;
+	private final int[] target;
+	private final int[] targetCodePoints;
+	private final int maxEdits;
+
+	public LevenshteinAutomaton(String word, int maxEdits) {
+		if (maxEdits < 0 || maxEdits > MAX_EDITS) {
+			throw new IllegalArgumentException("Edit distance must be between 0 and " + MAX_EDITS + ", got " + maxEdits);
+		}
+		this.word = word;
+		this.target = word.codePoints().toArray();
+		this.targetCodePoints = word.codePoints().distinct().sorted().toArray();
+		this.maxEdits = maxEdits;
+	}
+
+	public String word() {
+		return word;
+	}
+
+	public int maxEdits() {
+		return maxEdits;
+	}
+
+	/**
+	 * Size of a state array
+	 */
+	public int stateSize() {
+		return target.length + 1;
+	}
+
+	/**
+	 * State before any character has been read
+	 */
+	public int[] start() {
+		int[] state = new int[stateSize()];
+		for (int i = 0; i < state.length; i++) {
+			state[i] = Math.min(i, maxEdits + 1);
+		}
+		return state;
+	}
+
+	/**
+	 * Read one code point, writing the next state into {@code next}
+	 * @return whether any continuation can still match
+	 */
+	public boolean step(int[] state, int codePoint, int[] next) {
+		int cap = maxEdits + 1;
+		next[0] = Math.min(state[0] + 1, cap);
+		int best = next[0];
+		for (int i = 1; i < next.length; i++) {
+			int substitute = state[i - 1] + (target[i - 1] == codePoint ? 0 : 1);
+			int delete = state[i] + 1;
+			int insert = next[i - 1] + 1;
+			next[i] = Math.min(Math.min(substitute, delete), Math.min(insert, cap));
+			best = Math.min(best, next[i]);
+		}
+		return best <= maxEdits;
+	}
+
+	/**
+	 * Smallest code point after {@code codePoint} that keeps {@code state} alive, given that
+	 * {@code codePoint} did not, or -1 if there is none. Any character outside the word moves
+	 * to the same state as {@code codePoint} or a worse one, so only the word's own characters
+	 * are tried, which lets a dictionary walk skip all the siblings in between.
+	 * @param scratch state-sized array that is overwritten
+	 */
+	public int nextCandidate(int[] state, int codePoint, int[] scratch) {
+		for (int candidate : targetCodePoints) {
+			if (candidate > codePoint && step(state, candidate, scratch)) {
+				return candidate;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Edit distance of the characters read so far, {@code maxEdits + 1} if too far
+	 */
+	public int distance(int[] state) {
+		return state[state.length - 1];
+	}
+
+	public boolean isMatch(int[] state) {
+		return distance(state) <= maxEdits;
+	}
+
+	/**
+	 * Edit distance of a whole word, {@code maxEdits + 1} if it is too far
+	 */
+	public int distance(String candidate) {
+		int[] state = start();
+		int[] next = new int[state.length];
+		for (int codePoint : candidate.codePoints().toArray()) {
+			if (!step(state, codePoint, next)) {
+				return maxEdits + 1;
+			}
+			int[] swap = state;
+			state = next;
+			next = swap;
+		}
+		return distance(state);
+	}
+
+	@Override
+	public String toString() {
+		return word + "~" + maxEdits;
+	}
+
+	@FunctionalInterface
+	public interface MatchVisitor {
+		/**
+		 * @return false to stop the walk
+		 */
+		boolean visit(String term, int distance);
+	}
+}
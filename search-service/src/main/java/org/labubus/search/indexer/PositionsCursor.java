@@ -0,0 +1,85 @@
+package org.labubus.search.indexer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward-only cursor over one word's positions block.
+ * Books are visited in posting-list order; positions of skipped books are
+ * stepped over without being materialized.
+ */
+public final class PositionsCursor {
+	private static final ByteBuffer NO_BYTES = ByteBuffer.allocate(0);
+
+	private final PostingList bookIds;
+	private final ByteBuffer in;
+	private int index = -1;
+	private boolean blockRead = true;
+	private int[] current;
+
+	PositionsCursor(PostingList bookIds, ByteBuffer in) {
+		this.bookIds = bookIds;
+		this.in = in;
+	}
+
+	public static PositionsCursor empty() {
+		return new PositionsCursor(PostingList.empty(), NO_BYTES);
+	}
+
+	/**
+	 * Move to a book at or after the current one
+	 * @return true if the word occurs in that book
+	 */
+	public boolean advanceTo(int bookId) {
+		while (index < bookIds.size() && (index < 0 || bookIds.getInt(index) < bookId)) {
+			if (!blockRead) {
+				skipBlock();
+			}
+			index++;
+			blockRead = false;
+			current = null;
+		}
+		return index < bookIds.size() && bookIds.getInt(index) == bookId;
+	}
+
+	/**
+	 * Ascending positions of the word in the current book
+	 */
+	public int[] positions() {
+		if (current == null) {
+			int frequency = PostingList.readVInt(in);
+			current = PostingList.readDeltas(in, frequency).toIntArray();
+			blockRead = true;
+		}
+		return current;
+	}
+
+	/**
+	 * Copy of a cursor that has not moved yet, with its positions block on the heap,
+	 * for callers that keep it past the point where the index may be closed
+	 */
+	PositionsCursor onHeap() {
+		if (!in.isDirect()) {
+			return this;
+		}
+		ByteBuffer block = in.duplicate();
+		for (int i = 0; i < bookIds.size(); i++) {
+			int frequency = PostingList.readVInt(block);
+			for (int j = 0; j < frequency; j++) {
+				PostingList.readVInt(block);
+			}
+		}
+		ByteBuffer source = in.duplicate();
+		source.limit(block.position());
+		ByteBuffer copy = ByteBuffer.allocate(source.remaining());
+		copy.put(source).flip();
+		return new PositionsCursor(bookIds, copy);
+	}
+
+	private void skipBlock() {
+		int frequency = PostingList.readVInt(in);
+		for (int i = 0; i < frequency; i++) {
+			PostingList.readVInt(in);
+		}
+		blockRead = true;
+	}
+}
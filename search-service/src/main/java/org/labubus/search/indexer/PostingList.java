@@ -0,0 +1,256 @@
+package org.labubus.search.indexer;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted, duplicate-free list of book IDs backed by a primitive int array.
+ * Exposed as a Set<Integer> so it can be returned from InvertedIndexReader.search()
+ * without boxing every posting; set algebra runs directly over the arrays.
+ * Must stay in sync with org.labubus.indexing.indexer.PostingList in indexing-service.
+ */
+public final class PostingList extends AbstractSet<Integer> {
+	private static final int[] NO_DOCS = new int[0];
+
+	private int[] docs;
+	private int size;
+
+	public PostingList() {
+		this.docs = new int[4];
+	}
+
+	private PostingList(int[] docs, int size) {
+		this.docs = docs;
+		this.size = size;
+	}
+
+	public static PostingList empty() {
+		return new PostingList(NO_DOCS, 0);
+	}
+
+	/**
+	 * Wrap an array that is already sorted and free of duplicates
+	 */
+	public static PostingList ofSorted(int[] docs, int size) {
+		return new PostingList(docs, size);
+	}
+
+	/**
+	 * Add a book ID. Appending in increasing order is O(1); anything else is an insertion.
+	 */
+	public boolean addInt(int doc) {
+		if (size == 0 || doc > docs[size - 1]) {
+			ensureCapacity(size + 1);
+			docs[size++] = doc;
+			return true;
+		}
+
+		int pos = Arrays.binarySearch(docs, 0, size, doc);
+		if (pos >= 0) {
+			return false;
+		}
+
+		int insertAt = -pos - 1;
+		ensureCapacity(size + 1);
+		System.arraycopy(docs, insertAt, docs, insertAt + 1, size - insertAt);
+		docs[insertAt] = doc;
+		size++;
+		return true;
+	}
+
+	public boolean containsInt(int doc) {
+		return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+	}
+
+	/**
+	 * Index of a book ID, or a negative value if absent
+	 */
+	public int indexOf(int doc) {
+		return Arrays.binarySearch(docs, 0, size, doc);
+	}
+
+	/**
+	 * First index at or after {@code fromIndex} whose book ID is {@code >= doc}, or size() if none.
+	 * Gallops forward before binary searching, so short skips stay cheap.
+	 */
+	public int ceilingIndex(int doc, int fromIndex) {
+		if (fromIndex >= size || docs[fromIndex] >= doc) {
+			return fromIndex;
+		}
+
+		int low = fromIndex;
+		int step = 1;
+		int high = fromIndex + step;
+		while (high < size && docs[high] < doc) {
+			low = high;
+			step <<= 1;
+			high = fromIndex + step;
+		}
+		high = Math.min(high, size);
+
+		int pos = Arrays.binarySearch(docs, low + 1, high, doc);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+	public int getInt(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return docs[index];
+	}
+
+	public int[] toIntArray() {
+		return Arrays.copyOf(docs, size);
+	}
+
+	/**
+	 * Release the spare capacity left over from growing the array
+	 */
+	public void trimToSize() {
+		if (docs.length != size) {
+			docs = Arrays.copyOf(docs, size);
+		}
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer doc && containsInt(doc);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public Integer next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return docs[next++];
+			}
+		};
+	}
+
+	/**
+	 * Merge-based intersection of two sorted lists
+	 */
+	public static PostingList intersect(PostingList a, PostingList b) {
+		int[] result = new int[Math.min(a.size, b.size)];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < a.size && j < b.size) {
+			int x = a.docs[i];
+			int y = b.docs[j];
+			if (x < y) {
+				i++;
+			} else if (x > y) {
+				j++;
+			} else {
+				result[n++] = x;
+				i++;
+				j++;
+			}
+		}
+		return new PostingList(result, n);
+	}
+
+	/**
+	 * Merge-based union of two sorted lists
+	 */
+	public static PostingList union(PostingList a, PostingList b) {
+		int[] result = new int[a.size + b.size];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < a.size && j < b.size) {
+			int x = a.docs[i];
+			int y = b.docs[j];
+			if (x < y) {
+				result[n++] = x;
+				i++;
+			} else if (x > y) {
+				result[n++] = y;
+				j++;
+			} else {
+				result[n++] = x;
+				i++;
+				j++;
+			}
+		}
+		while (i < a.size) {
+			result[n++] = a.docs[i++];
+		}
+		while (j < b.size) {
+			result[n++] = b.docs[j++];
+		}
+		return new PostingList(result, n);
+	}
+
+	/**
+	 * Merge-based difference: IDs in {@code a} that are not in {@code b}
+	 */
+	public static PostingList difference(PostingList a, PostingList b) {
+		int[] result = new int[a.size];
+		int n = 0;
+		int j = 0;
+
+		for (int i = 0; i < a.size; i++) {
+			int x = a.docs[i];
+			while (j < b.size && b.docs[j] < x) {
+				j++;
+			}
+			if (j >= b.size || b.docs[j] != x) {
+				result[n++] = x;
+			}
+		}
+		return new PostingList(result, n);
+	}
+
+	/**
+	 * Decode {@code count} delta-encoded IDs starting at the buffer's current position
+	 */
+	public static PostingList readDeltas(ByteBuffer in, int count) {
+		int[] docs = new int[count];
+		int previous = 0;
+		for (int i = 0; i < count; i++) {
+			previous += readVInt(in);
+			docs[i] = previous;
+		}
+		return new PostingList(docs, count);
+	}
+
+	static int readVInt(ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > docs.length) {
+			docs = Arrays.copyOf(docs, Math.max(capacity, docs.length + (docs.length >> 1)));
+		}
+	}
+}
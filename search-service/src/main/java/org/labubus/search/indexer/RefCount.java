@@ -0,0 +1,41 @@
+package org.labubus.search.indexer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the queries using a reader. Starts with the one reference held by whoever
+ * publishes the reader; once that and every query's reference are released, the
+ * release action runs exactly once.
+ */
+final class RefCount {
+	private final AtomicInteger count = new AtomicInteger(1);
+	private final Runnable onRelease;
+
+	RefCount(Runnable onRelease) {
+		this.onRelease = onRelease;
+	}
+
+	/**
+	 * @return false if the last reference is already gone and the reader is being released
+	 */
+	boolean acquire() {
+		while (true) {
+			int current = count.get();
+			if (current == 0) {
+				return false;
+			}
+			if (count.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	void release() {
+		int remaining = count.decrementAndGet();
+		if (remaining == 0) {
+			onRelease.run();
+		} else if (remaining < 0) {
+			throw new IllegalStateException("Reader released more often than acquired");
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package org.labubus.search.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Serves queries from one fully loaded reader while a replacement loads in the background.
+ * Each reload builds a fresh reader from the factory and only swaps it in, through a
+ * volatile reference, once {@code load()} has succeeded, so queries never block on a
+ * reload and never see a half-loaded index. A failed reload keeps the current index.
+ * Queries {@link #pin()} the reader they start with; a replaced reader is closed once
+ * the last query pinning it is done. Unpinned calls pin it for the call alone.
+ */
+public class ReloadableIndexReader implements InvertedIndexReader {
+	private static final Logger logger = LoggerFactory.getLogger(ReloadableIndexReader.class);
+
+	private final Supplier<InvertedIndexReader> factory;
+	private final Path watchedFile;
+	private final ExecutorService loader;
+	private volatile Loaded current;
+	private CompletableFuture<ReloadStatus> pending; // guarded by this
+	private volatile String lastSeen;
+	private ScheduledExecutorService watcher;
+	private boolean closed; // guarded by this
+
+	/**
+	 * @param watchedFile file whose change means a new index was written, or null to only reload on request
+	 */
+	public ReloadableIndexReader(Supplier<InvertedIndexReader> factory, Path watchedFile) {
+		this.factory = factory;
+		this.watchedFile = watchedFile;
+		this.current = loaded(factory.get(), 0, 0);
+		this.loader = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "index-reloader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Load synchronously, replacing the current index only on success
+	 */
+	@Override
+	public void load() throws IOException {
+		// Taken before loading: a write that lands mid-load must still trigger another reload
+		lastSeen = fingerprint();
+		InvertedIndexReader reader = factory.get();
+		reader.load();
+		swap(reader);
+	}
+
+	/**
+	 * Load a fresh index on the background thread. Requests made while a reload is
+	 * running share its result.
+	 */
+	public synchronized CompletableFuture<ReloadStatus> reload() {
+		if (pending != null && !pending.isDone()) {
+			return pending;
+		}
+
+		pending = CompletableFuture.supplyAsync(() -> {
+			long start = System.nanoTime();
+			try {
+				load();
+			} catch (IOException e) {
+				logger.error("Index reload failed, still serving version {}: {}", current.version(), e.getMessage());
+				throw new IllegalStateException("Index reload failed: " + e.getMessage(), e);
+			}
+			long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+			logger.info("Reloaded index in {} ms (version {}, {} books)",
+					elapsedMillis, current.version(), corpusStats().documentCount());
+			return status();
+		}, loader);
+		return pending;
+	}
+
+	/**
+	 * Poll the watched file and reload when it changes. A file that fails to load is
+	 * not retried until it changes again.
+	 */
+	public synchronized void watch(long intervalMillis) {
+		if (watcher != null || watchedFile == null) {
+			return;
+		}
+		watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "index-watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		watcher.scheduleWithFixedDelay(() -> {
+			String fingerprint = fingerprint();
+			if (fingerprint != null && !fingerprint.equals(lastSeen)) {
+				lastSeen = fingerprint;
+				logger.info("Index file {} changed, reloading", watchedFile);
+				reload().exceptionally(e -> null).join();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public ReloadStatus status() {
+		Loaded loaded = current;
+		return new ReloadStatus(loaded.version(), loaded.loadedAt(), loaded.reader().isLoaded());
+	}
+
+	/**
+	 * Publish a newly loaded reader and drop the reference to the previous one, which is
+	 * closed once no query has it pinned. A factory that hands out the same reader every
+	 * time (e.g. one that refreshes itself) keeps it open.
+	 */
+	private synchronized void swap(InvertedIndexReader reader) {
+		Loaded previous = current;
+		if (closed) {
+			if (previous.reader() != reader) {
+				reader.close();
+			}
+			return;
+		}
+		current = loaded(reader, previous.version() + 1, System.currentTimeMillis());
+		if (previous.reader() != reader) {
+			previous.references().release();
+		}
+	}
+
+	private static Loaded loaded(InvertedIndexReader reader, long version, long loadedAt) {
+		return new Loaded(reader, version, loadedAt, new RefCount(reader::close));
+	}
+
+	/**
+	 * The current reader with a reference taken, retrying if it was swapped out and released meanwhile
+	 */
+	private Loaded acquire() {
+		while (true) {
+			Loaded loaded = current;
+			if (loaded.references().acquire()) {
+				return loaded;
+			}
+			if (loaded == current) {
+				// Only a closed reader has released the version it still serves
+				throw new IllegalStateException("Index reader is closed");
+			}
+		}
+	}
+
+	private <T> T read(Function<InvertedIndexReader, T> lookup) {
+		Loaded loaded = acquire();
+		try {
+			return lookup.apply(loaded.reader());
+		} finally {
+			loaded.references().release();
+		}
+	}
+
+	/**
+	 * The current reader, itself pinned, with this reader's generation for it
+	 */
+	@Override
+	public Pinned pin() {
+		Loaded loaded = acquire();
+		Pinned inner;
+		try {
+			inner = loaded.reader().pin();
+		} catch (RuntimeException e) {
+			loaded.references().release();
+			throw e;
+		}
+		return new Pinned(new VersionedReader(inner.reader(), loaded.version()), () -> {
+			inner.close();
+			loaded.references().release();
+		});
+	}
+
+	/**
+	 * Stop watching and reloading, and release the reader being served
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (watcher != null) {
+			watcher.shutdownNow();
+		}
+		loader.shutdownNow();
+		current.references().release();
+	}
+
+	/**
+	 * Modification time and size of the watched file, null if it does not exist
+	 */
+	private String fingerprint() {
+		if (watchedFile == null) {
+			return null;
+		}
+		try {
+			return Files.getLastModifiedTime(watchedFile).toMillis() + ":" + Files.size(watchedFile);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public Set<Integer> search(String word) {
+		return read(reader -> reader.search(word));
+	}
+
+	@Override
+	public PostingList postings(String word) {
+		return read(reader -> reader.postings(word));
+	}
+
+	@Override
+	public int documentFrequency(String word) {
+		return read(reader -> reader.documentFrequency(word));
+	}
+
+	@Override
+	public TermPostings termPostings(String word) {
+		return read(reader -> reader.termPostings(word));
+	}
+
+	@Override
+	public int documentLength(int bookId) {
+		return read(reader -> reader.documentLength(bookId));
+	}
+
+	@Override
+	public PostingList documentIds() {
+		return read(InvertedIndexReader::documentIds);
+	}
+
+	@Override
+	public CorpusStats corpusStats() {
+		return read(InvertedIndexReader::corpusStats);
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return read(InvertedIndexReader::hasPositions);
+	}
+
+	/**
+	 * Copied to the heap, since the cursor outlives the call and the reader may be closed.
+	 * Pin the reader to read positions in place.
+	 */
+	@Override
+	public PositionsCursor positions(String word) {
+		try (Pinned pinned = pin()) {
+			return pinned.reader().positions(word).onHeap();
+		}
+	}
+
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		read(reader -> {
+			reader.forEachTerm(prefix, visitor);
+			return null;
+		});
+	}
+
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		read(reader -> {
+			reader.forEachFuzzyTerm(automaton, visitor);
+			return null;
+		});
+	}
+
+	/**
+	 * Reload count in the high bits, so it changes on every swap as well as whenever
+	 * the current reader moves on by itself (e.g. new segments)
+	 */
+	@Override
+	public long generation() {
+		Loaded loaded = current;
+		return (loaded.version() << 32) + loaded.reader().generation();
+	}
+
+	@Override
+	public Map<String, Set<Integer>> getIndex() {
+		return read(InvertedIndexReader::getIndex);
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return current.reader().isLoaded();
+	}
+
+	@Override
+	public IndexStats getStats() {
+		return read(InvertedIndexReader::getStats);
+	}
+
+	/**
+	 * @param version number of successful loads, bumped on every swap
+	 * @param loadedAt epoch millis of the last successful load, 0 if none
+	 */
+	public record ReloadStatus(long version, long loadedAt, boolean loaded) {}
+
+	/**
+	 * @param references held by {@link #current} while this is the served reader, and by each query using it
+	 */
+	private record Loaded(InvertedIndexReader reader, long version, long loadedAt, RefCount references) {}
+
+	/**
+	 * One loaded version as seen by a pinned query, with the generation this reader reports for it
+	 */
+	private static final class VersionedReader implements InvertedIndexReader {
+		private final InvertedIndexReader reader;
+		private final long version;
+
+		VersionedReader(InvertedIndexReader reader, long version) {
+			this.reader = reader;
+			this.version = version;
+		}
+
+		/**
+		 * Already loaded: a pinned version never changes
+		 */
+		@Override
+		public void load() {
+		}
+
+		@Override
+		public Set<Integer> search(String word) {
+			return reader.search(word);
+		}
+
+		@Override
+		public PostingList postings(String word) {
+			return reader.postings(word);
+		}
+
+		@Override
+		public int documentFrequency(String word) {
+			return reader.documentFrequency(word);
+		}
+
+		@Override
+		public TermPostings termPostings(String word) {
+			return reader.termPostings(word);
+		}
+
+		@Override
+		public int documentLength(int bookId) {
+			return reader.documentLength(bookId);
+		}
+
+		@Override
+		public PostingList documentIds() {
+			return reader.documentIds();
+		}
+
+		@Override
+		public CorpusStats corpusStats() {
+			return reader.corpusStats();
+		}
+
+		@Override
+		public boolean hasPositions() {
+			return reader.hasPositions();
+		}
+
+		@Override
+		public PositionsCursor positions(String word) {
+			return reader.positions(word);
+		}
+
+		@Override
+		public void forEachTerm(String prefix, Predicate<String> visitor) {
+			reader.forEachTerm(prefix, visitor);
+		}
+
+		@Override
+		public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+			reader.forEachFuzzyTerm(automaton, visitor);
+		}
+
+		@Override
+		public long generation() {
+			return (version << 32) + reader.generation();
+		}
+
+		@Override
+		public Map<String, Set<Integer>> getIndex() {
+			return reader.getIndex();
+		}
+
+		@Override
+		public boolean isLoaded() {
+			return reader.isLoaded();
+		}
+
+		@Override
+		public IndexStats getStats() {
+			return reader.getStats();
+		}
+	}
+}
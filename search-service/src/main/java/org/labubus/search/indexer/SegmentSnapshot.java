@@ -0,0 +1,411 @@
+package org.labubus.search.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * One fixed set of segments opened by {@link SegmentedIndexReader}: lookups query every
+ * segment and merge the results, leaving out books a newer segment has indexed again.
+ * Snapshots are immutable and are what a query gets when it pins the segmented reader.
+ * Segments are shared with the snapshots before and after; each snapshot holds a
+ * reference to its segments and drops them once it is replaced and no query pins it.
+ */
+final class SegmentSnapshot implements InvertedIndexReader {
+	private static final Logger logger = LoggerFactory.getLogger(SegmentSnapshot.class);
+
+	private final Path segmentsDir;
+	private final List<Segment> segments;
+	private final PostingList documentIds;
+	private final CorpusStats stats;
+	private final String manifest;
+	private final long generation;
+	private final boolean loaded;
+	private final RefCount references;
+
+	/**
+	 * @param segments oldest first, each already holding a reference for this snapshot
+	 * @param documentIds every book in any segment
+	 * @param manifest manifest content the snapshot was opened from
+	 */
+	SegmentSnapshot(Path segmentsDir, List<Segment> segments, PostingList documentIds, CorpusStats stats,
+					String manifest, long generation, boolean loaded) {
+		this.segmentsDir = segmentsDir;
+		this.segments = List.copyOf(segments);
+		this.documentIds = documentIds;
+		this.stats = stats;
+		this.manifest = manifest;
+		this.generation = generation;
+		this.loaded = loaded;
+		this.references = new RefCount(() -> {
+			for (Segment segment : this.segments) {
+				segment.references().release();
+			}
+		});
+	}
+
+	/**
+	 * Before the first load
+	 */
+	static SegmentSnapshot notLoaded(Path segmentsDir) {
+		return new SegmentSnapshot(segmentsDir, List.of(), PostingList.empty(), new CorpusStats(0, 0.0, 0), null, 0, false);
+	}
+
+	List<Segment> segments() {
+		return segments;
+	}
+
+	String manifest() {
+		return manifest;
+	}
+
+	RefCount references() {
+		return references;
+	}
+
+	/**
+	 * Opened by {@link SegmentedIndexReader}; a snapshot never changes
+	 */
+	@Override
+	public void load() {
+	}
+
+	@Override
+	public Set<Integer> search(String word) {
+		return postings(word);
+	}
+
+	@Override
+	public PostingList postings(String word) {
+		if (!loaded) {
+			logger.warn("Index not loaded, returning empty results");
+			return PostingList.empty();
+		}
+		return postings(segments, word);
+	}
+
+	private static PostingList postings(List<Segment> segments, String word) {
+		if (segments.size() == 1) {
+			return segments.get(0).reader().postings(word);
+		}
+
+		List<TermPostings> parts = new ArrayList<>(segments.size());
+		for (Segment segment : segments) {
+			PostingList bookIds = segment.reader().postings(word);
+			if (bookIds.size() > 0) {
+				parts.add(segment.live(new TermPostings(bookIds, null)));
+			}
+		}
+		return merge(parts).bookIds();
+	}
+
+	@Override
+	public TermPostings termPostings(String word) {
+		if (!loaded) {
+			return new TermPostings(PostingList.empty(), null);
+		}
+		if (segments.size() == 1) {
+			return segments.get(0).reader().termPostings(word);
+		}
+
+		List<TermPostings> parts = new ArrayList<>(segments.size());
+		for (Segment segment : segments) {
+			TermPostings postings = segment.reader().termPostings(word);
+			if (postings.size() > 0) {
+				parts.add(segment.live(postings));
+			}
+		}
+		return merge(parts);
+	}
+
+	/**
+	 * Sum over segments; an upper bound when books have been re-indexed
+	 */
+	@Override
+	public int documentFrequency(String word) {
+		int frequency = 0;
+		for (Segment segment : segments) {
+			frequency += segment.reader().documentFrequency(word);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Length from the newest segment holding the book
+	 */
+	@Override
+	public int documentLength(int bookId) {
+		for (int i = segments.size() - 1; i >= 0; i--) {
+			if (segments.get(i).bookIds().containsInt(bookId)) {
+				return segments.get(i).reader().documentLength(bookId);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Union of every segment's books
+	 */
+	@Override
+	public PostingList documentIds() {
+		return documentIds;
+	}
+
+	@Override
+	public CorpusStats corpusStats() {
+		return stats;
+	}
+
+	@Override
+	public boolean hasPositions() {
+		if (!loaded || segments.isEmpty()) {
+			return false;
+		}
+		for (Segment segment : segments) {
+			if (!segment.reader().hasPositions()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads each segment's live positions for the word and re-encodes them as a
+	 * single block in book order, so phrase matching sees one cursor
+	 */
+	@Override
+	public PositionsCursor positions(String word) {
+		if (!hasPositions()) {
+			throw new UnsupportedOperationException("Index does not store positions");
+		}
+		if (segments.size() == 1) {
+			return segments.get(0).reader().positions(word);
+		}
+
+		TreeMap<Integer, int[]> byBook = new TreeMap<>();
+		for (Segment segment : segments) {
+			PostingList bookIds = segment.reader().postings(word);
+			if (bookIds.size() == 0) {
+				continue;
+			}
+			PositionsCursor cursor = segment.reader().positions(word);
+			for (int i = 0; i < bookIds.size(); i++) {
+				int bookId = bookIds.getInt(i);
+				if (!segment.hidden().containsInt(bookId) && cursor.advanceTo(bookId)) {
+					byBook.put(bookId, cursor.positions());
+				}
+			}
+		}
+
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		int[] bookIds = new int[byBook.size()];
+		int n = 0;
+		for (Map.Entry<Integer, int[]> entry : byBook.entrySet()) {
+			bookIds[n++] = entry.getKey();
+			writeVInt(block, entry.getValue().length);
+			int previous = 0;
+			for (int position : entry.getValue()) {
+				writeVInt(block, position - previous);
+				previous = position;
+			}
+		}
+		return new PositionsCursor(PostingList.ofSorted(bookIds, n), ByteBuffer.wrap(block.toByteArray()));
+	}
+
+	/**
+	 * Union of the words each segment has in the prefix range, in sorted order
+	 */
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		if (segments.size() == 1) {
+			segments.get(0).reader().forEachTerm(prefix, visitor);
+			return;
+		}
+
+		SortedSet<String> words = new TreeSet<>();
+		for (Segment segment : segments) {
+			segment.reader().forEachTerm(prefix, word -> {
+				words.add(word);
+				return true;
+			});
+		}
+		for (String word : words) {
+			if (!visitor.test(word)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Union of the words each segment accepts, in sorted order
+	 */
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		if (segments.size() == 1) {
+			segments.get(0).reader().forEachFuzzyTerm(automaton, visitor);
+			return;
+		}
+
+		SortedMap<String, Integer> words = new TreeMap<>();
+		for (Segment segment : segments) {
+			segment.reader().forEachFuzzyTerm(automaton, (word, distance) -> {
+				words.put(word, distance);
+				return true;
+			});
+		}
+		for (Map.Entry<String, Integer> entry : words.entrySet()) {
+			if (!visitor.visit(entry.getKey(), entry.getValue())) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Materializes the whole index on the heap. Only meant for tooling and tests.
+	 */
+	@Override
+	public Map<String, Set<Integer>> getIndex() {
+		if (!loaded) {
+			return Collections.emptyMap();
+		}
+
+		Set<String> words = new HashSet<>();
+		for (Segment segment : segments) {
+			words.addAll(segment.reader().getIndex().keySet());
+		}
+
+		Map<String, Set<Integer>> index = new HashMap<>(words.size() * 2);
+		for (String word : words) {
+			PostingList bookIds = postings(segments, word);
+			if (bookIds.size() > 0) {
+				index.put(word, bookIds);
+			}
+		}
+		return Collections.unmodifiableMap(index);
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	@Override
+	public long generation() {
+		return generation;
+	}
+
+	/**
+	 * Sums of each segment's word and posting counts, taken when the segment is mapped.
+	 * Upper bounds: a word in several segments, and the postings of a re-indexed book,
+	 * count once per segment.
+	 */
+	@Override
+	public IndexStats getStats() {
+		if (!loaded) {
+			return new IndexStats(0, 0, 0.0);
+		}
+
+		int uniqueWords = 0;
+		int totalMappings = 0;
+		for (Segment segment : segments) {
+			uniqueWords += segment.counts().uniqueWords();
+			totalMappings += segment.counts().totalMappings();
+		}
+
+		long bytes = 0;
+		try (Stream<Path> files = Files.list(segmentsDir)) {
+			for (Path file : files.toList()) {
+				bytes += Files.size(file);
+			}
+		} catch (IOException e) {
+			logger.warn("Failed to get index size", e);
+		}
+
+		return new IndexStats(uniqueWords, totalMappings, bytes / (1024.0 * 1024.0));
+	}
+
+	/**
+	 * k-way merge of per-segment postings; live books never repeat across segments
+	 */
+	private static TermPostings merge(List<TermPostings> parts) {
+		if (parts.isEmpty()) {
+			return new TermPostings(PostingList.empty(), null);
+		}
+		if (parts.size() == 1) {
+			return parts.get(0);
+		}
+
+		int total = 0;
+		for (TermPostings part : parts) {
+			total += part.size();
+		}
+
+		int[] bookIds = new int[total];
+		int[] frequencies = new int[total];
+		int[] cursors = new int[parts.size()];
+		for (int n = 0; n < total; n++) {
+			int best = -1;
+			for (int p = 0; p < parts.size(); p++) {
+				if (cursors[p] < parts.get(p).size() && (best < 0
+						|| parts.get(p).bookIdAt(cursors[p]) < parts.get(best).bookIdAt(cursors[best]))) {
+					best = p;
+				}
+			}
+			bookIds[n] = parts.get(best).bookIdAt(cursors[best]);
+			frequencies[n] = parts.get(best).frequencyAt(cursors[best]);
+			cursors[best]++;
+		}
+		return new TermPostings(PostingList.ofSorted(bookIds, total), frequencies);
+	}
+
+	private static void writeVInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * @param bookIds every book in the segment
+	 * @param hidden books that a newer segment has indexed again
+	 * @param counts the segment's own word and posting counts
+	 * @param references one per snapshot using the segment; the last one closes its reader
+	 */
+	record Segment(String name, BinaryIndexReader reader, PostingList bookIds, PostingList hidden, IndexStats counts,
+				   RefCount references) {
+		/**
+		 * The same mapped segment, hiding another set of books
+		 */
+		Segment withHidden(PostingList hidden) {
+			return new Segment(name, reader, bookIds, hidden, counts, references);
+		}
+
+		TermPostings live(TermPostings postings) {
+			if (hidden.size() == 0) {
+				return postings;
+			}
+
+			int[] bookIds = new int[postings.size()];
+			int[] frequencies = new int[postings.size()];
+			int n = 0;
+			for (int i = 0; i < postings.size(); i++) {
+				int bookId = postings.bookIdAt(i);
+				if (!hidden.containsInt(bookId)) {
+					bookIds[n] = bookId;
+					frequencies[n] = postings.frequencyAt(i);
+					n++;
+				}
+			}
+			return new TermPostings(PostingList.ofSorted(bookIds, n), frequencies);
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package org.labubus.search.indexer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static org.labubus.search.indexer.BinaryIndexFormat.*;
+
+/**
+ * Reads the segmented index written by indexing-service: the binary segments named
+ * in {@code datamart/segments/segments.manifest}, each memory-mapped by its own
+ * {@link BinaryIndexReader}. Lookups query every segment and merge the results.
+ * A book indexed again in a newer segment is hidden in the older ones, so updates
+ * replace rather than duplicate it.
+ * All state lives in an immutable {@link SegmentSnapshot} behind a volatile reference:
+ * {@link #refresh()} builds the next one from a changed manifest, reusing segments that
+ * are already mapped, and swaps it in, so queries see either the old or the new set of
+ * segments. A query that {@link #pin() pins} the reader keeps its snapshot for its whole
+ * length; segments that were merged away are unmapped once no snapshot uses them.
+ */
+public class SegmentedIndexReader implements InvertedIndexReader {
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedIndexReader.class);
+
+	private final Path segmentsDir;
+	private final Object refreshLock = new Object();
+	private volatile SegmentSnapshot snapshot;
+	private ScheduledExecutorService watcher;
+	private boolean closed; // guarded by refreshLock
+
+	public SegmentedIndexReader(String datamartPath) {
+		this.segmentsDir = Paths.get(datamartPath, SEGMENTS_DIR);
+		this.snapshot = SegmentSnapshot.notLoaded(segmentsDir);
+	}
+
+	@Override
+	public void load() throws IOException {
+		Path manifest = segmentsDir.resolve(MANIFEST_FILE);
+		if (!Files.exists(manifest)) {
+			throw new IOException("Segment manifest not found: " + manifest);
+		}
+
+		synchronized (refreshLock) {
+			String content = Files.readString(manifest);
+			publish(open(content, snapshot));
+		}
+		logger.info("Loaded segmented index from {} ({} segments, {} books)",
+				segmentsDir, snapshot.segments().size(), snapshot.corpusStats().documentCount());
+	}
+
+	/**
+	 * Switch to the current manifest if it has changed since the last load
+	 * @return whether a new set of segments was swapped in
+	 */
+	public boolean refresh() throws IOException {
+		Path manifest = segmentsDir.resolve(MANIFEST_FILE);
+		if (!Files.exists(manifest)) {
+			return false;
+		}
+
+		synchronized (refreshLock) {
+			String content = Files.readString(manifest);
+			if (content.equals(snapshot.manifest())) {
+				return false;
+			}
+			publish(open(content, snapshot));
+		}
+		logger.info("Picked up {} segments ({} books)", snapshot.segments().size(), snapshot.corpusStats().documentCount());
+		return true;
+	}
+
+	/**
+	 * Poll the manifest on a background thread and pick up new segments as they are published
+	 */
+	public synchronized void watch(long intervalMillis) {
+		if (watcher != null) {
+			return;
+		}
+		watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "segment-watcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		watcher.scheduleWithFixedDelay(() -> {
+			try {
+				refresh();
+			} catch (Exception e) {
+				logger.warn("Failed to refresh index segments: {}", e.getMessage());
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Swap in the next snapshot and drop the reader's reference to the previous one. Caller holds the refresh lock.
+	 */
+	private void publish(SegmentSnapshot next) {
+		if (closed) {
+			next.references().release();
+			throw new IllegalStateException("Index reader is closed");
+		}
+		SegmentSnapshot previous = snapshot;
+		snapshot = next;
+		previous.references().release();
+	}
+
+	/**
+	 * Map the segments a manifest names, reusing those the previous snapshot already has open
+	 */
+	private SegmentSnapshot open(String manifest, SegmentSnapshot previous) throws IOException {
+		Map<String, SegmentSnapshot.Segment> reusable = new HashMap<>();
+		for (SegmentSnapshot.Segment segment : previous.segments()) {
+			reusable.put(segment.name(), segment);
+		}
+
+		// Every segment gets a reference for the new snapshot, given back if opening fails
+		List<SegmentSnapshot.Segment> opened = new ArrayList<>();
+		try {
+			for (String line : manifest.split("\n")) {
+				String[] parts = line.trim().split("\\s+");
+				if (parts.length != 2) {
+					continue;
+				}
+				SegmentSnapshot.Segment existing = reusable.get(parts[0]);
+				if (existing != null && existing.references().acquire()) {
+					opened.add(existing);
+				} else {
+					opened.add(openSegment(parts[0]));
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			for (SegmentSnapshot.Segment segment : opened) {
+				segment.references().release();
+			}
+			throw e;
+		}
+
+		// Walk newest to oldest, hiding books already seen in a newer segment
+		SegmentSnapshot.Segment[] segments = new SegmentSnapshot.Segment[opened.size()];
+		PostingList seen = PostingList.empty();
+		long totalLength = 0;
+		int documentCount = 0;
+		int minLength = Integer.MAX_VALUE;
+
+		for (int i = opened.size() - 1; i >= 0; i--) {
+			SegmentSnapshot.Segment segment = opened.get(i);
+			PostingList hidden = PostingList.intersect(segment.bookIds(), seen);
+			PostingList live = PostingList.difference(segment.bookIds(), hidden);
+
+			for (int j = 0; j < live.size(); j++) {
+				int length = segment.reader().documentLength(live.getInt(j));
+				totalLength += length;
+				minLength = Math.min(minLength, length);
+			}
+			documentCount += live.size();
+
+			segments[i] = segment.withHidden(hidden);
+			seen = PostingList.union(seen, segment.bookIds());
+		}
+
+		CorpusStats stats = new CorpusStats(documentCount,
+				documentCount == 0 ? 0.0 : (double) totalLength / documentCount,
+				documentCount == 0 ? 0 : minLength);
+		return new SegmentSnapshot(segmentsDir, List.of(segments), seen, stats, manifest, previous.generation() + 1, true);
+	}
+
+	private SegmentSnapshot.Segment openSegment(String name) throws IOException {
+		BinaryIndexReader reader = new BinaryIndexReader(segmentsDir.toString(), name);
+		try {
+			reader.load();
+		} catch (IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+		return new SegmentSnapshot.Segment(name, reader, reader.documentIds(), PostingList.empty(),
+				reader.getStats(), new RefCount(reader::close));
+	}
+
+	/**
+	 * The current snapshot with a reference taken, retrying if it was swapped out and released meanwhile
+	 */
+	private SegmentSnapshot acquire() {
+		while (true) {
+			SegmentSnapshot current = snapshot;
+			if (current.references().acquire()) {
+				return current;
+			}
+			if (current == snapshot) {
+				// Only a closed reader has released the snapshot it still serves
+				throw new IllegalStateException("Index reader is closed");
+			}
+		}
+	}
+
+	private <T> T read(Function<InvertedIndexReader, T> lookup) {
+		SegmentSnapshot current = acquire();
+		try {
+			return lookup.apply(current);
+		} finally {
+			current.references().release();
+		}
+	}
+
+	/**
+	 * The current snapshot, whose segments stay mapped until the pin is closed
+	 */
+	@Override
+	public Pinned pin() {
+		SegmentSnapshot current = acquire();
+		return new Pinned(current, current.references()::release);
+	}
+
+	/**
+	 * Stop watching and release the current segments
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (watcher != null) {
+				watcher.shutdownNow();
+			}
+		}
+		synchronized (refreshLock) {
+			if (!closed) {
+				closed = true;
+				snapshot.references().release();
+			}
+		}
+	}
+
+	@Override
+	public Set<Integer> search(String word) {
+		return postings(word);
+	}
+
+	@Override
+	public PostingList postings(String word) {
+		return read(reader -> reader.postings(word));
+	}
+
+	@Override
+	public TermPostings termPostings(String word) {
+		return read(reader -> reader.termPostings(word));
+	}
+
+	/**
+	 * Sum over segments; an upper bound when books have been re-indexed
+	 */
+	@Override
+	public int documentFrequency(String word) {
+		return read(reader -> reader.documentFrequency(word));
+	}
+
+	/**
+	 * Length from the newest segment holding the book
+	 */
+	@Override
+	public int documentLength(int bookId) {
+		return read(reader -> reader.documentLength(bookId));
+	}
+
+	/**
+	 * Union of every segment's books, kept with the snapshot
+	 */
+	@Override
+	public PostingList documentIds() {
+		return snapshot.documentIds();
+	}
+
+	@Override
+	public CorpusStats corpusStats() {
+		return snapshot.corpusStats();
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return read(InvertedIndexReader::hasPositions);
+	}
+
+	/**
+	 * Copied to the heap, since the cursor outlives the call and its segments may be
+	 * unmapped. Pin the reader to read positions in place.
+	 */
+	@Override
+	public PositionsCursor positions(String word) {
+		return read(reader -> reader.positions(word).onHeap());
+	}
+
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		read(reader -> {
+			reader.forEachTerm(prefix, visitor);
+			return null;
+		});
+	}
+
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		read(reader -> {
+			reader.forEachFuzzyTerm(automaton, visitor);
+			return null;
+		});
+	}
+
+	/**
+	 * Materializes the whole index on the heap. Only meant for tooling and tests.
+	 */
+	@Override
+	public Map<String, Set<Integer>> getIndex() {
+		return read(InvertedIndexReader::getIndex);
+	}
+
+	@Override
+	public boolean isLoaded() {
+		return snapshot.isLoaded();
+	}
+
+	@Override
+	public long generation() {
+		return snapshot.generation();
+	}
+
+	@Override
+	public IndexStats getStats() {
+		return read(InvertedIndexReader::getStats);
+	}
+}
@@ -0,0 +1,33 @@
+package org.labubus.search.indexer;
+
+/**
+ * A word's posting list together with how often the word occurs in each book
+ */
+public final class TermPostings {
+	private final PostingList bookIds;
+	private final int[] frequencies;
+
+	/**
+	 * @param frequencies aligned with {@code bookIds}, or null when every frequency is 1
+	 */
+	public TermPostings(PostingList bookIds, int[] frequencies) {
+		this.bookIds = bookIds;
+		this.frequencies = frequencies;
+	}
+
+	public PostingList bookIds() {
+		return bookIds;
+	}
+
+	public int size() {
+		return bookIds.size();
+	}
+
+	public int bookIdAt(int index) {
+		return bookIds.getInt(index);
+	}
+
+	public int frequencyAt(int index) {
+		return frequencies == null ? 1 : frequencies[index];
+	}
+}
@@ -0,0 +1,19 @@
+package org.labubus.search.model;
+
+import java.util.Map;
+
+/**
+ * Counts of the books matching a search, broken down by field. Maps iterate in display
+ * order: languages and authors by count, most common first, years by bucket.
+ * @param total number of books counted
+ * @param years keyed by bucket, e.g. "1860-1869" for ten-year buckets or "1865" for one-year buckets
+ * @param authors only the most common authors
+ */
+public record SearchFacets(
+		int total,
+		Map<String, Integer> languages,
+		Map<String, Integer> years,
+		Map<String, Integer> authors
+) {
+	public static final SearchFacets EMPTY = new SearchFacets(0, Map.of(), Map.of(), Map.of());
+}
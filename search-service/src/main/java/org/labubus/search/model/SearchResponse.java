@@ -2,9 +2,13 @@ package org.labubus.search.model;
 
 import java.util.List;
 
+/**
+ * @param facets counts over every matching book, null unless requested
+ */
 public record SearchResponse(
 		String query,
 		int totalResults,
 		int returnedResults,
-		List<SearchResult> results
-) {}
\ No newline at end of file
+		List<SearchResult> results,
+		SearchFacets facets
+) {}
@@ -6,9 +6,9 @@ public record SearchResult(
 		String author,
 		String language,
 		Integer year,
-		int score
+		double score
 ) {
-	public static SearchResult fromMetadata(BookMetadata metadata, int score) {
+	public static SearchResult fromMetadata(BookMetadata metadata, double score) {
 		return new SearchResult(
 				metadata.bookId(),
 				metadata.title(),
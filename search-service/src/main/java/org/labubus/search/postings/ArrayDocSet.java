@@ -0,0 +1,85 @@
+package org.labubus.search.postings;
+
+import org.labubus.search.indexer.PostingList;
+
+/**
+ * DocSet over a sorted posting list; set algebra is a linear merge of the two arrays
+ */
+public final class ArrayDocSet implements DocSet {
+	private final PostingList postings;
+
+	public ArrayDocSet(PostingList postings) {
+		this.postings = postings;
+	}
+
+	public PostingList postings() {
+		return postings;
+	}
+
+	@Override
+	public int cardinality() {
+		return postings.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return postings.isEmpty();
+	}
+
+	@Override
+	public boolean contains(int bookId) {
+		return postings.containsInt(bookId);
+	}
+
+	@Override
+	public DocSet and(DocSet other) {
+		if (other instanceof ArrayDocSet that) {
+			return new ArrayDocSet(PostingList.intersect(postings, that.postings));
+		}
+		return filter(other, true);
+	}
+
+	@Override
+	public DocSet or(DocSet other) {
+		if (other instanceof ArrayDocSet that) {
+			return new ArrayDocSet(PostingList.union(postings, that.postings));
+		}
+		return other.or(this);
+	}
+
+	@Override
+	public DocSet andNot(DocSet other) {
+		if (other instanceof ArrayDocSet that) {
+			return new ArrayDocSet(PostingList.difference(postings, that.postings));
+		}
+		return filter(other, false);
+	}
+
+	@Override
+	public int andCardinality(DocSet other) {
+		int count = 0;
+		for (int i = 0; i < postings.size(); i++) {
+			if (other.contains(postings.getInt(i))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int[] toArray() {
+		return postings.toIntArray();
+	}
+
+	private DocSet filter(DocSet other, boolean keepContained) {
+		int[] result = new int[postings.size()];
+		int n = 0;
+		for (int i = 0; i < postings.size(); i++) {
+			int bookId = postings.getInt(i);
+			if (other.contains(bookId) == keepContained) {
+				result[n++] = bookId;
+			}
+		}
+		return new ArrayDocSet(PostingList.ofSorted(result, n));
+	}
+}
@@ -0,0 +1,102 @@
+package org.labubus.search.postings;
+
+import org.labubus.search.indexer.InvertedIndexReader;
+import org.labubus.search.indexer.LevenshteinAutomaton;
+import org.labubus.search.indexer.PositionsCursor;
+import org.labubus.search.indexer.PostingList;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Default engine: works directly on the reader's sorted posting lists.
+ * Only the universe for negation is cached, tagged with the index generation it was read from.
+ */
+public class ArrayPostingsEngine implements PostingsEngine {
+	private final InvertedIndexReader indexReader;
+	private final AtomicReference<Universe> allDocuments;
+
+	public ArrayPostingsEngine(InvertedIndexReader indexReader) {
+		this(indexReader, new AtomicReference<>(Universe.NONE));
+	}
+
+	private ArrayPostingsEngine(InvertedIndexReader indexReader, AtomicReference<Universe> allDocuments) {
+		this.indexReader = indexReader;
+		this.allDocuments = allDocuments;
+	}
+
+	@Override
+	public DocSet lookup(String word) {
+		return new ArrayDocSet(indexReader.postings(word));
+	}
+
+	@Override
+	public int documentFrequency(String word) {
+		return indexReader.documentFrequency(word);
+	}
+
+	@Override
+	public DocSet empty() {
+		return new ArrayDocSet(PostingList.empty());
+	}
+
+	@Override
+	public DocSet of(PostingList bookIds) {
+		return new ArrayDocSet(bookIds);
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return indexReader.hasPositions();
+	}
+
+	@Override
+	public PositionsCursor positions(String word) {
+		return indexReader.positions(word);
+	}
+
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		indexReader.forEachTerm(prefix, visitor);
+	}
+
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		indexReader.forEachFuzzyTerm(automaton, visitor);
+	}
+
+	@Override
+	public DocSet allDocuments() {
+		long generation = indexReader.generation();
+		Universe cached = allDocuments.get();
+		if (cached.documents() != null && cached.generation() == generation) {
+			return cached.documents();
+		}
+
+		DocSet all = new ArrayDocSet(indexReader.documentIds());
+		if (indexReader.generation() == generation && cached.generation() <= generation) {
+			allDocuments.compareAndSet(cached, new Universe(generation, all));
+		}
+		return all;
+	}
+
+	/**
+	 * Swaps in a new empty holder, so a universe read before this call can no longer be stored
+	 */
+	@Override
+	public void invalidate() {
+		allDocuments.set(new Universe(Long.MIN_VALUE, null));
+	}
+
+	@Override
+	public PostingsEngine over(InvertedIndexReader reader) {
+		return new ArrayPostingsEngine(reader, allDocuments);
+	}
+
+	/**
+	 * @param documents null until read for this generation
+	 */
+	private record Universe(long generation, DocSet documents) {
+		static final Universe NONE = new Universe(Long.MIN_VALUE, null);
+	}
+}
@@ -0,0 +1,70 @@
+package org.labubus.search.postings;
+
+import org.labubus.search.indexer.PostingList;
+
+/**
+ * DocSet over a compressed {@link RoaringBitmap}; other set types are converted on the fly
+ */
+public final class BitmapDocSet implements DocSet {
+	private final RoaringBitmap bitmap;
+
+	public BitmapDocSet(RoaringBitmap bitmap) {
+		this.bitmap = bitmap;
+	}
+
+	public static BitmapDocSet of(PostingList postings) {
+		return new BitmapDocSet(RoaringBitmap.fromSorted(postings.toIntArray(), postings.size()));
+	}
+
+	public RoaringBitmap bitmap() {
+		return bitmap;
+	}
+
+	@Override
+	public int cardinality() {
+		return bitmap.cardinality();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return bitmap.isEmpty();
+	}
+
+	@Override
+	public boolean contains(int bookId) {
+		return bitmap.contains(bookId);
+	}
+
+	@Override
+	public DocSet and(DocSet other) {
+		return new BitmapDocSet(bitmap.and(toBitmap(other)));
+	}
+
+	@Override
+	public DocSet or(DocSet other) {
+		return new BitmapDocSet(bitmap.or(toBitmap(other)));
+	}
+
+	@Override
+	public DocSet andNot(DocSet other) {
+		return new BitmapDocSet(bitmap.andNot(toBitmap(other)));
+	}
+
+	@Override
+	public int andCardinality(DocSet other) {
+		return bitmap.andCardinality(toBitmap(other));
+	}
+
+	@Override
+	public int[] toArray() {
+		return bitmap.toArray();
+	}
+
+	private static RoaringBitmap toBitmap(DocSet other) {
+		if (other instanceof BitmapDocSet that) {
+			return that.bitmap;
+		}
+		int[] docs = other.toArray();
+		return RoaringBitmap.fromSorted(docs, docs.length);
+	}
+}
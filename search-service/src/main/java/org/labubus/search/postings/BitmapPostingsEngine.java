@@ -0,0 +1,173 @@
+package org.labubus.search.postings;
+
+import org.labubus.search.indexer.InvertedIndexReader;
+import org.labubus.search.indexer.LevenshteinAutomaton;
+import org.labubus.search.indexer.PositionsCursor;
+import org.labubus.search.indexer.PostingList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Engine backed by compressed bitmaps. Each word's posting list is converted once and
+ * kept in a bounded LRU cache, so repeated queries on common words combine bitmaps
+ * with word-wise AND/OR instead of re-reading and merging postings.
+ * Cached bitmaps live in a holder tagged with the index generation they were read from;
+ * a new generation or {@link #invalidate()} swaps in a fresh holder, so a lookup that
+ * raced with a reload can only store into the abandoned one.
+ */
+public class BitmapPostingsEngine implements PostingsEngine {
+	private static final Logger logger = LoggerFactory.getLogger(BitmapPostingsEngine.class);
+
+	private final InvertedIndexReader indexReader;
+	private final int maxCachedWords;
+	private final AtomicReference<Cache> cache;
+
+	public BitmapPostingsEngine(InvertedIndexReader indexReader, int maxCachedWords) {
+		this(indexReader, maxCachedWords, new AtomicReference<>(new Cache(indexReader.generation(), maxCachedWords)));
+		logger.info("Bitmap postings engine initialized (cache: {} words)", maxCachedWords);
+	}
+
+	private BitmapPostingsEngine(InvertedIndexReader indexReader, int maxCachedWords, AtomicReference<Cache> cache) {
+		this.indexReader = indexReader;
+		this.maxCachedWords = maxCachedWords;
+		this.cache = cache;
+	}
+
+	@Override
+	public DocSet lookup(String word) {
+		Cache current = cache();
+		String key = word.toLowerCase().trim();
+
+		BitmapDocSet cached = current.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		BitmapDocSet bitmap = BitmapDocSet.of(indexReader.postings(key));
+		if (indexReader.generation() == current.generation()) {
+			current.put(key, bitmap);
+		}
+		return bitmap;
+	}
+
+	@Override
+	public int documentFrequency(String word) {
+		String key = word.toLowerCase().trim();
+		BitmapDocSet cached = cache().get(key);
+		if (cached != null) {
+			return cached.cardinality();
+		}
+		return indexReader.documentFrequency(key);
+	}
+
+	@Override
+	public DocSet empty() {
+		return new BitmapDocSet(RoaringBitmap.empty());
+	}
+
+	@Override
+	public DocSet of(PostingList bookIds) {
+		return BitmapDocSet.of(bookIds);
+	}
+
+	@Override
+	public boolean hasPositions() {
+		return indexReader.hasPositions();
+	}
+
+	@Override
+	public PositionsCursor positions(String word) {
+		return indexReader.positions(word);
+	}
+
+	@Override
+	public void forEachTerm(String prefix, Predicate<String> visitor) {
+		indexReader.forEachTerm(prefix, visitor);
+	}
+
+	@Override
+	public void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor) {
+		indexReader.forEachFuzzyTerm(automaton, visitor);
+	}
+
+	@Override
+	public DocSet allDocuments() {
+		Cache current = cache();
+		BitmapDocSet all = current.allDocuments;
+		if (all == null) {
+			all = BitmapDocSet.of(indexReader.documentIds());
+			if (indexReader.generation() == current.generation()) {
+				current.allDocuments = all;
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * The holder for the reader's current generation, replacing an older one.
+	 * A reader seen at an older generation than the holder gets a throwaway holder.
+	 */
+	private Cache cache() {
+		long generation = indexReader.generation();
+		while (true) {
+			Cache current = cache.get();
+			if (current.generation() == generation) {
+				return current;
+			}
+			if (current.generation() > generation) {
+				return new Cache(generation, 0);
+			}
+			Cache fresh = new Cache(generation, maxCachedWords);
+			if (cache.compareAndSet(current, fresh)) {
+				return fresh;
+			}
+		}
+	}
+
+	@Override
+	public void invalidate() {
+		Cache current = cache.get();
+		cache.compareAndSet(current, new Cache(current.generation(), maxCachedWords));
+	}
+
+	@Override
+	public PostingsEngine over(InvertedIndexReader reader) {
+		return new BitmapPostingsEngine(reader, maxCachedWords, cache);
+	}
+
+	/**
+	 * Bitmaps read from one index generation, least recently used evicted first
+	 */
+	private static final class Cache {
+		private final long generation;
+		private final Map<String, BitmapDocSet> bitmaps;
+		private volatile BitmapDocSet allDocuments;
+
+		Cache(long generation, int maxCachedWords) {
+			this.generation = generation;
+			this.bitmaps = new LinkedHashMap<>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, BitmapDocSet> eldest) {
+					return size() > maxCachedWords;
+				}
+			};
+		}
+
+		long generation() {
+			return generation;
+		}
+
+		synchronized BitmapDocSet get(String word) {
+			return bitmaps.get(word);
+		}
+
+		synchronized void put(String word, BitmapDocSet bitmap) {
+			bitmaps.put(word, bitmap);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package org.labubus.search.postings;
+
+/**
+ * Immutable set of book IDs produced by a {@link PostingsEngine}.
+ * Set algebra and counting never box IDs into Integer.
+ */
+public interface DocSet {
+	/**
+	 * Number of book IDs in the set
+	 */
+	int cardinality();
+
+	boolean isEmpty();
+
+	boolean contains(int bookId);
+
+	DocSet and(DocSet other);
+
+	DocSet or(DocSet other);
+
+	/**
+	 * IDs in this set that are not in {@code other}
+	 */
+	DocSet andNot(DocSet other);
+
+	/**
+	 * Size of {@code this AND other} without materializing the intersection
+	 */
+	int andCardinality(DocSet other);
+
+	/**
+	 * Book IDs in ascending order
+	 */
+	int[] toArray();
+}
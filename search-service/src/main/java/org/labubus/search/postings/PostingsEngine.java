@@ -0,0 +1,63 @@
+package org.labubus.search.postings;
+
+import org.labubus.search.indexer.InvertedIndexReader;
+import org.labubus.search.indexer.LevenshteinAutomaton;
+import org.labubus.search.indexer.PositionsCursor;
+import org.labubus.search.indexer.PostingList;
+
+import java.util.function.Predicate;
+
+/**
+ * Turns index lookups into {@link DocSet}s so queries can be combined with set algebra
+ */
+public interface PostingsEngine {
+	/**
+	 * Book IDs containing a word, empty if the word is not indexed
+	 */
+	DocSet lookup(String word);
+
+	/**
+	 * Number of books containing a word, ideally without building its DocSet
+	 */
+	int documentFrequency(String word);
+
+	DocSet empty();
+
+	/**
+	 * Wrap book IDs computed outside the engine, e.g. by positional matching
+	 */
+	DocSet of(PostingList bookIds);
+
+	/**
+	 * Whether {@link #positions(String)} is available
+	 */
+	boolean hasPositions();
+
+	PositionsCursor positions(String word);
+
+	/**
+	 * Indexed words starting with {@code prefix}, in sorted order, until the visitor returns false
+	 */
+	void forEachTerm(String prefix, Predicate<String> visitor);
+
+	/**
+	 * Indexed words the automaton accepts, in sorted order, until the visitor returns false
+	 */
+	void forEachFuzzyTerm(LevenshteinAutomaton automaton, LevenshteinAutomaton.MatchVisitor visitor);
+
+	/**
+	 * Every book ID in the index, used as the universe for negation
+	 */
+	DocSet allDocuments();
+
+	/**
+	 * Drop anything derived from the current index, e.g. after a reload
+	 */
+	void invalidate();
+
+	/**
+	 * The same engine reading from another reader, typically one pinned for a single
+	 * query. Caches are shared and keyed by the reader's generation.
+	 */
+	PostingsEngine over(InvertedIndexReader reader);
+}
@@ -0,0 +1,555 @@
+package org.labubus.search.postings;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable compressed bitmap in the Roaring layout: book IDs are split into 16-bit
+ * chunks, and each chunk is a sorted char array when sparse (up to 4096 values) or a
+ * 65536-bit bitmap when dense. Set algebra works chunk by chunk, so intersecting two
+ * very common words costs a few thousand word-wise ANDs instead of boxed HashSet lookups.
+ * IDs are treated as unsigned, which matches ascending order for non-negative book IDs.
+ */
+public final class RoaringBitmap {
+	private static final int ARRAY_MAX = 4096;
+	private static final RoaringBitmap EMPTY = new RoaringBitmap(new char[0], new Container[0], 0);
+
+	private final char[] keys;
+	private final Container[] containers;
+	private final int cardinality;
+
+	private RoaringBitmap(char[] keys, Container[] containers, int cardinality) {
+		this.keys = keys;
+		this.containers = containers;
+		this.cardinality = cardinality;
+	}
+
+	public static RoaringBitmap empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Build from the first {@code size} values of an ascending, duplicate-free array
+	 */
+	public static RoaringBitmap fromSorted(int[] docs, int size) {
+		char[] keys = new char[8];
+		Container[] containers = new Container[8];
+		int count = 0;
+
+		int start = 0;
+		while (start < size) {
+			char high = (char) (docs[start] >>> 16);
+			int end = start;
+			while (end < size && (char) (docs[end] >>> 16) == high) {
+				end++;
+			}
+
+			if (count == keys.length) {
+				keys = Arrays.copyOf(keys, count * 2);
+				containers = Arrays.copyOf(containers, count * 2);
+			}
+			keys[count] = high;
+			containers[count] = Container.of(docs, start, end);
+			count++;
+			start = end;
+		}
+
+		return new RoaringBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count), size);
+	}
+
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	public boolean contains(int doc) {
+		int i = Arrays.binarySearch(keys, (char) (doc >>> 16));
+		return i >= 0 && containers[i].contains((char) doc);
+	}
+
+	public RoaringBitmap and(RoaringBitmap other) {
+		Builder result = new Builder(Math.min(keys.length, other.keys.length));
+		int i = 0;
+		int j = 0;
+
+		while (i < keys.length && j < other.keys.length) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				result.add(keys[i], containers[i].and(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result.build();
+	}
+
+	/**
+	 * Size of the intersection, computed without building it
+	 */
+	public int andCardinality(RoaringBitmap other) {
+		int count = 0;
+		int i = 0;
+		int j = 0;
+
+		while (i < keys.length && j < other.keys.length) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				count += containers[i].andCardinality(other.containers[j]);
+				i++;
+				j++;
+			}
+		}
+		return count;
+	}
+
+	public RoaringBitmap or(RoaringBitmap other) {
+		Builder result = new Builder(keys.length + other.keys.length);
+		int i = 0;
+		int j = 0;
+
+		while (i < keys.length && j < other.keys.length) {
+			if (keys[i] < other.keys[j]) {
+				result.add(keys[i], containers[i]);
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				result.add(other.keys[j], other.containers[j]);
+				j++;
+			} else {
+				result.add(keys[i], containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		while (i < keys.length) {
+			result.add(keys[i], containers[i]);
+			i++;
+		}
+		while (j < other.keys.length) {
+			result.add(other.keys[j], other.containers[j]);
+			j++;
+		}
+		return result.build();
+	}
+
+	public RoaringBitmap andNot(RoaringBitmap other) {
+		Builder result = new Builder(keys.length);
+		int j = 0;
+
+		for (int i = 0; i < keys.length; i++) {
+			while (j < other.keys.length && other.keys[j] < keys[i]) {
+				j++;
+			}
+			if (j < other.keys.length && other.keys[j] == keys[i]) {
+				result.add(keys[i], containers[i].andNot(other.containers[j]));
+			} else {
+				result.add(keys[i], containers[i]);
+			}
+		}
+		return result.build();
+	}
+
+	/**
+	 * Visit every book ID in ascending order
+	 */
+	public void forEach(IntConsumer consumer) {
+		for (int i = 0; i < keys.length; i++) {
+			containers[i].forEach(keys[i] << 16, consumer);
+		}
+	}
+
+	public int[] toArray() {
+		int[] result = new int[cardinality];
+		int pos = 0;
+		for (int i = 0; i < keys.length; i++) {
+			pos = containers[i].fill(result, pos, keys[i] << 16);
+		}
+		return result;
+	}
+
+	/**
+	 * Approximate heap footprint, used for cache accounting
+	 */
+	public long sizeInBytes() {
+		long bytes = 16L + keys.length * 2L;
+		for (Container container : containers) {
+			bytes += container.sizeInBytes();
+		}
+		return bytes;
+	}
+
+	private static final class Builder {
+		private final char[] keys;
+		private final Container[] containers;
+		private int count;
+		private int cardinality;
+
+		Builder(int capacity) {
+			this.keys = new char[capacity];
+			this.containers = new Container[capacity];
+		}
+
+		void add(char key, Container container) {
+			if (container != null) {
+				keys[count] = key;
+				containers[count] = container;
+				cardinality += container.cardinality();
+				count++;
+			}
+		}
+
+		RoaringBitmap build() {
+			if (count == 0) {
+				return EMPTY;
+			}
+			return new RoaringBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count), cardinality);
+		}
+	}
+
+	/**
+	 * One 16-bit chunk. Operations return null instead of an empty container.
+	 */
+	private abstract static sealed class Container permits ArrayContainer, BitmapContainer {
+		static Container of(int[] docs, int start, int end) {
+			int n = end - start;
+			if (n > ARRAY_MAX) {
+				long[] words = new long[1024];
+				for (int i = start; i < end; i++) {
+					char low = (char) docs[i];
+					words[low >>> 6] |= 1L << low;
+				}
+				return new BitmapContainer(words, n);
+			}
+
+			char[] values = new char[n];
+			for (int i = 0; i < n; i++) {
+				values[i] = (char) docs[start + i];
+			}
+			return new ArrayContainer(values, n);
+		}
+
+		abstract int cardinality();
+
+		abstract boolean contains(char value);
+
+		abstract Container and(Container other);
+
+		abstract int andCardinality(Container other);
+
+		abstract Container or(Container other);
+
+		abstract Container andNot(Container other);
+
+		abstract void forEach(int high, IntConsumer consumer);
+
+		abstract int fill(int[] out, int pos, int high);
+
+		abstract long sizeInBytes();
+	}
+
+	private static final class ArrayContainer extends Container {
+		private final char[] values;
+		private final int size;
+
+		ArrayContainer(char[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+
+		@Override
+		int cardinality() {
+			return size;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+
+		@Override
+		Container and(Container other) {
+			char[] result = new char[size];
+			int n = 0;
+
+			if (other instanceof ArrayContainer that) {
+				int i = 0;
+				int j = 0;
+				while (i < size && j < that.size) {
+					if (values[i] < that.values[j]) {
+						i++;
+					} else if (values[i] > that.values[j]) {
+						j++;
+					} else {
+						result[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for (int i = 0; i < size; i++) {
+					if (other.contains(values[i])) {
+						result[n++] = values[i];
+					}
+				}
+			}
+			return n == 0 ? null : new ArrayContainer(result, n);
+		}
+
+		@Override
+		int andCardinality(Container other) {
+			int n = 0;
+			if (other instanceof ArrayContainer that) {
+				int i = 0;
+				int j = 0;
+				while (i < size && j < that.size) {
+					if (values[i] < that.values[j]) {
+						i++;
+					} else if (values[i] > that.values[j]) {
+						j++;
+					} else {
+						n++;
+						i++;
+						j++;
+					}
+				}
+			} else {
+				for (int i = 0; i < size; i++) {
+					if (other.contains(values[i])) {
+						n++;
+					}
+				}
+			}
+			return n;
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+
+			ArrayContainer that = (ArrayContainer) other;
+			char[] result = new char[size + that.size];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size && j < that.size) {
+				if (values[i] < that.values[j]) {
+					result[n++] = values[i++];
+				} else if (values[i] > that.values[j]) {
+					result[n++] = that.values[j++];
+				} else {
+					result[n++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			while (i < size) {
+				result[n++] = values[i++];
+			}
+			while (j < that.size) {
+				result[n++] = that.values[j++];
+			}
+
+			if (n > ARRAY_MAX) {
+				long[] words = new long[1024];
+				for (int k = 0; k < n; k++) {
+					words[result[k] >>> 6] |= 1L << result[k];
+				}
+				return new BitmapContainer(words, n);
+			}
+			return new ArrayContainer(result, n);
+		}
+
+		@Override
+		Container andNot(Container other) {
+			char[] result = new char[size];
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if (!other.contains(values[i])) {
+					result[n++] = values[i];
+				}
+			}
+			return n == 0 ? null : new ArrayContainer(result, n);
+		}
+
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < size; i++) {
+				consumer.accept(high | values[i]);
+			}
+		}
+
+		@Override
+		int fill(int[] out, int pos, int high) {
+			for (int i = 0; i < size; i++) {
+				out[pos++] = high | values[i];
+			}
+			return pos;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 24L + values.length * 2L;
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+		private final long[] words;
+		private final int size;
+
+		BitmapContainer(long[] words, int size) {
+			this.words = words;
+			this.size = size;
+		}
+
+		@Override
+		int cardinality() {
+			return size;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+
+			BitmapContainer that = (BitmapContainer) other;
+			long[] result = new long[1024];
+			int n = 0;
+			for (int i = 0; i < 1024; i++) {
+				result[i] = words[i] & that.words[i];
+				n += Long.bitCount(result[i]);
+			}
+			return compact(result, n);
+		}
+
+		@Override
+		int andCardinality(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.andCardinality(this);
+			}
+
+			BitmapContainer that = (BitmapContainer) other;
+			int n = 0;
+			for (int i = 0; i < 1024; i++) {
+				n += Long.bitCount(words[i] & that.words[i]);
+			}
+			return n;
+		}
+
+		@Override
+		Container or(Container other) {
+			long[] result = words.clone();
+			int n = size;
+
+			if (other instanceof BitmapContainer that) {
+				n = 0;
+				for (int i = 0; i < 1024; i++) {
+					result[i] |= that.words[i];
+					n += Long.bitCount(result[i]);
+				}
+			} else {
+				ArrayContainer that = (ArrayContainer) other;
+				for (int i = 0; i < that.size; i++) {
+					char value = that.values[i];
+					long bit = 1L << value;
+					if ((result[value >>> 6] & bit) == 0) {
+						result[value >>> 6] |= bit;
+						n++;
+					}
+				}
+			}
+			return new BitmapContainer(result, n);
+		}
+
+		@Override
+		Container andNot(Container other) {
+			long[] result = words.clone();
+			int n = size;
+
+			if (other instanceof BitmapContainer that) {
+				n = 0;
+				for (int i = 0; i < 1024; i++) {
+					result[i] &= ~that.words[i];
+					n += Long.bitCount(result[i]);
+				}
+			} else {
+				ArrayContainer that = (ArrayContainer) other;
+				for (int i = 0; i < that.size; i++) {
+					char value = that.values[i];
+					long bit = 1L << value;
+					if ((result[value >>> 6] & bit) != 0) {
+						result[value >>> 6] &= ~bit;
+						n--;
+					}
+				}
+			}
+			return compact(result, n);
+		}
+
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < 1024; i++) {
+				long word = words[i];
+				while (word != 0) {
+					consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+
+		@Override
+		int fill(int[] out, int pos, int high) {
+			for (int i = 0; i < 1024; i++) {
+				long word = words[i];
+				while (word != 0) {
+					out[pos++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return pos;
+		}
+
+		@Override
+		long sizeInBytes() {
+			return 24L + words.length * 8L;
+		}
+
+		/**
+		 * Fall back to the array form once a result becomes sparse
+		 */
+		private static Container compact(long[] words, int n) {
+			if (n == 0) {
+				return null;
+			}
+			if (n > ARRAY_MAX) {
+				return new BitmapContainer(words, n);
+			}
+
+			char[] values = new char[n];
+			int pos = 0;
+			for (int i = 0; i < 1024; i++) {
+				long word = words[i];
+				while (word != 0) {
+					values[pos++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(values, n);
+		}
+	}
+}
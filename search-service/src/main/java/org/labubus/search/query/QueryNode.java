@@ -0,0 +1,87 @@
+package org.labubus.search.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed form of a boolean search query
+ */
+public sealed interface QueryNode permits QueryNode.Term, QueryNode.Wildcard, QueryNode.Fuzzy, QueryNode.Phrase, QueryNode.Near,
+		QueryNode.And, QueryNode.Or, QueryNode.Not {
+
+	record Term(String word) implements QueryNode {}
+
+	/**
+	 * Word pattern where {@code *} matches any run of characters and {@code ?} exactly one.
+	 * Matches no words of its own until {@link QueryPlanner#rewrite(QueryNode)} expands it.
+	 */
+	record Wildcard(String pattern) implements QueryNode {
+
+		/**
+		 * Characters before the first wildcard; only words in this prefix range can match
+		 */
+		public String prefix() {
+			int end = 0;
+			while (end < pattern.length() && pattern.charAt(end) != '*' && pattern.charAt(end) != '?') {
+				end++;
+			}
+			return pattern.substring(0, end);
+		}
+	}
+
+	/**
+	 * Word matching every indexed word within {@code maxEdits} edits of it.
+	 * Matches no words of its own until {@link QueryPlanner#rewrite(QueryNode)} expands it.
+	 */
+	record Fuzzy(String word, int maxEdits) implements QueryNode {
+
+		/**
+		 * Edits allowed when the query does not say: none for words of up to two
+		 * characters, one up to five, two beyond
+		 */
+		public static int autoEdits(String word) {
+			int length = word.codePointCount(0, word.length());
+			return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+		}
+	}
+
+	/**
+	 * Quoted sequence of words
+	 */
+	record Phrase(List<String> words) implements QueryNode {}
+
+	/**
+	 * Two words at most {@code distance} positions apart, in either order
+	 */
+	record Near(String left, String right, int distance) implements QueryNode {}
+
+	record And(List<QueryNode> children) implements QueryNode {}
+
+	record Or(List<QueryNode> children) implements QueryNode {}
+
+	record Not(QueryNode child) implements QueryNode {}
+
+	/**
+	 * Words outside any NOT, i.e. the ones that can contribute to a match's score
+	 */
+	default List<String> positiveTerms() {
+		List<String> terms = new ArrayList<>();
+		collectPositiveTerms(this, terms);
+		return terms;
+	}
+
+	private static void collectPositiveTerms(QueryNode node, List<String> terms) {
+		if (node instanceof Term term) {
+			terms.add(term.word());
+		} else if (node instanceof Phrase phrase) {
+			terms.addAll(phrase.words());
+		} else if (node instanceof Near near) {
+			terms.add(near.left());
+			terms.add(near.right());
+		} else if (node instanceof And and) {
+			and.children().forEach(child -> collectPositiveTerms(child, terms));
+		} else if (node instanceof Or or) {
+			or.children().forEach(child -> collectPositiveTerms(child, terms));
+		}
+	}
+}
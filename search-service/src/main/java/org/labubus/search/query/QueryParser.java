@@ -0,0 +1,250 @@
+package org.labubus.search.query;
+
+import org.labubus.search.indexer.LevenshteinAutomaton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recursive-descent parser for search queries.
+ * Supports AND, OR, NOT (upper case), parentheses, quoted phrases, wildcard words
+ * ({@code alic*}, {@code wom?n}), fuzzy words ({@code alise~}, {@code alise~2}) and
+ * {@code word NEAR/k word}; adjacent terms without an operator are joined with
+ * the default operator. NEAR binds tightest, then NOT, then AND, then OR.
+ */
+public class QueryParser {
+
+	public enum Operator { AND, OR }
+
+	private static final Pattern NEAR_PATTERN = Pattern.compile("NEAR/(\\d{1,4})");
+	private static final Pattern FUZZY_PATTERN = Pattern.compile("(.+)~(\\d?)");
+
+	private final Operator defaultOperator;
+
+	public QueryParser(Operator defaultOperator) {
+		this.defaultOperator = defaultOperator;
+	}
+
+	public Operator getDefaultOperator() {
+		return defaultOperator;
+	}
+
+	/**
+	 * Parse a query string
+	 * @throws IllegalArgumentException if the query is empty or malformed
+	 */
+	public QueryNode parse(String query) {
+		if (query == null || query.isBlank()) {
+			throw new IllegalArgumentException("Query is empty");
+		}
+
+		Parser parser = new Parser(tokenize(query));
+		QueryNode node = parser.parseOr();
+		if (!parser.atEnd()) {
+			throw new IllegalArgumentException("Unexpected '" + parser.peek().text() + "' in query");
+		}
+		return node;
+	}
+
+	private enum TokenType { WORD, PHRASE, AND, OR, NOT, NEAR, LPAREN, RPAREN }
+
+	private record Token(TokenType type, String text) {}
+
+	private static List<Token> tokenize(String query) {
+		List<Token> tokens = new ArrayList<>();
+		int i = 0;
+		int length = query.length();
+
+		while (i < length) {
+			char c = query.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '(') {
+				tokens.add(new Token(TokenType.LPAREN, "("));
+				i++;
+			} else if (c == ')') {
+				tokens.add(new Token(TokenType.RPAREN, ")"));
+				i++;
+			} else if (c == '"') {
+				int end = query.indexOf('"', i + 1);
+				if (end < 0) {
+					throw new IllegalArgumentException("Unterminated phrase in query");
+				}
+				tokens.add(new Token(TokenType.PHRASE, query.substring(i + 1, end)));
+				i = end + 1;
+			} else {
+				int start = i;
+				while (i < length && !isDelimiter(query.charAt(i))) {
+					i++;
+				}
+				String text = query.substring(start, i);
+				switch (text) {
+					case "AND" -> tokens.add(new Token(TokenType.AND, text));
+					case "OR" -> tokens.add(new Token(TokenType.OR, text));
+					case "NOT" -> tokens.add(new Token(TokenType.NOT, text));
+					default -> tokens.add(new Token(
+							NEAR_PATTERN.matcher(text).matches() ? TokenType.NEAR : TokenType.WORD, text));
+				}
+			}
+		}
+		return tokens;
+	}
+
+	private static boolean isDelimiter(char c) {
+		return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+	}
+
+	private class Parser {
+		private final List<Token> tokens;
+		private int position;
+
+		Parser(List<Token> tokens) {
+			this.tokens = tokens;
+		}
+
+		QueryNode parseOr() {
+			List<QueryNode> children = new ArrayList<>();
+			children.add(parseAnd());
+
+			while (!atEnd()) {
+				if (peek().type() == TokenType.OR) {
+					position++;
+				} else if (defaultOperator != Operator.OR || !startsOperand()) {
+					break;
+				}
+				children.add(parseAnd());
+			}
+			return children.size() == 1 ? children.get(0) : new QueryNode.Or(children);
+		}
+
+		QueryNode parseAnd() {
+			List<QueryNode> children = new ArrayList<>();
+			children.add(parseUnary());
+
+			while (!atEnd()) {
+				if (peek().type() == TokenType.AND) {
+					position++;
+				} else if (defaultOperator != Operator.AND || !startsOperand()) {
+					break;
+				}
+				children.add(parseUnary());
+			}
+			return children.size() == 1 ? children.get(0) : new QueryNode.And(children);
+		}
+
+		QueryNode parseUnary() {
+			if (atEnd()) {
+				throw new IllegalArgumentException("Query ends where a term was expected");
+			}
+
+			Token token = tokens.get(position++);
+			switch (token.type()) {
+				case NOT:
+					return new QueryNode.Not(parseUnary());
+				case LPAREN: {
+					QueryNode inner = parseOr();
+					if (atEnd() || peek().type() != TokenType.RPAREN) {
+						throw new IllegalArgumentException("Missing ')' in query");
+					}
+					position++;
+					return inner;
+				}
+				case WORD:
+					if (!atEnd() && peek().type() == TokenType.NEAR) {
+						return near(token);
+					}
+					return word(token.text());
+				case PHRASE:
+					return phrase(token.text());
+				default:
+					throw new IllegalArgumentException("Unexpected '" + token.text() + "' in query");
+			}
+		}
+
+		QueryNode near(Token left) {
+			Token operator = tokens.get(position++);
+			if (atEnd() || peek().type() != TokenType.WORD) {
+				throw new IllegalArgumentException(operator.text() + " needs a word on both sides");
+			}
+			Token right = tokens.get(position++);
+			if (!atEnd() && peek().type() == TokenType.NEAR) {
+				throw new IllegalArgumentException("NEAR can only join two words");
+			}
+			if (isWildcard(left.text()) || isWildcard(right.text())) {
+				throw new IllegalArgumentException("NEAR does not support wildcards");
+			}
+			if (left.text().indexOf('~') >= 0 || right.text().indexOf('~') >= 0) {
+				throw new IllegalArgumentException("NEAR does not support fuzzy words");
+			}
+
+			Matcher matcher = NEAR_PATTERN.matcher(operator.text());
+			matcher.matches();
+			return new QueryNode.Near(left.text().toLowerCase(), right.text().toLowerCase(),
+					Integer.parseInt(matcher.group(1)));
+		}
+
+		boolean startsOperand() {
+			TokenType type = peek().type();
+			return type == TokenType.WORD || type == TokenType.PHRASE
+					|| type == TokenType.NOT || type == TokenType.LPAREN;
+		}
+
+		boolean atEnd() {
+			return position >= tokens.size();
+		}
+
+		Token peek() {
+			return tokens.get(position);
+		}
+	}
+
+	private static QueryNode word(String text) {
+		String word = text.toLowerCase();
+		Matcher fuzzy = FUZZY_PATTERN.matcher(word);
+		if (fuzzy.matches()) {
+			return fuzzy(text, fuzzy.group(1), fuzzy.group(2));
+		}
+		if (!isWildcard(word)) {
+			return new QueryNode.Term(word);
+		}
+
+		QueryNode.Wildcard wildcard = new QueryNode.Wildcard(word);
+		if (wildcard.prefix().isEmpty()) {
+			throw new IllegalArgumentException("Wildcard '" + text + "' must start with at least one character");
+		}
+		return wildcard;
+	}
+
+	private static QueryNode fuzzy(String text, String word, String edits) {
+		if (isWildcard(word) || word.indexOf('~') >= 0) {
+			throw new IllegalArgumentException("Fuzzy word '" + text + "' cannot contain wildcards");
+		}
+		int maxEdits = edits.isEmpty() ? QueryNode.Fuzzy.autoEdits(word) : Integer.parseInt(edits);
+		if (maxEdits > LevenshteinAutomaton.MAX_EDITS) {
+			throw new IllegalArgumentException("Fuzzy word '" + text + "' allows at most "
+					+ LevenshteinAutomaton.MAX_EDITS + " edits");
+		}
+		return maxEdits == 0 ? new QueryNode.Term(word) : new QueryNode.Fuzzy(word, maxEdits);
+	}
+
+	private static boolean isWildcard(String text) {
+		return text.indexOf('*') >= 0 || text.indexOf('?') >= 0;
+	}
+
+	private static QueryNode phrase(String text) {
+		List<String> words = new ArrayList<>();
+		for (String word : text.toLowerCase().trim().split("[^\\p{L}\\p{N}]+")) {
+			if (!word.isEmpty()) {
+				words.add(word);
+			}
+		}
+
+		if (words.isEmpty()) {
+			throw new IllegalArgumentException("Empty phrase in query");
+		}
+		return words.size() == 1 ? new QueryNode.Term(words.get(0)) : new QueryNode.Phrase(words);
+	}
+}
@@ -0,0 +1,474 @@
+package org.labubus.search.query;
+
+import org.labubus.search.indexer.LevenshteinAutomaton;
+import org.labubus.search.indexer.PositionsCursor;
+import org.labubus.search.indexer.PostingList;
+import org.labubus.search.postings.DocSet;
+import org.labubus.search.postings.PostingsEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Evaluates a parsed query against a {@link PostingsEngine}.
+ * AND children are intersected rarest first and evaluation stops as soon as the
+ * running intersection is empty, so adding selective terms makes a query cheaper.
+ * NOT under an AND is applied as a difference; a bare NOT falls back to the
+ * set of all documents. Phrases and NEAR are verified against word positions
+ * when the index stores them, and degrade to a plain AND otherwise. Stop words in
+ * a phrase match any word in their slot; any other word must be in the index. Bare
+ * stop words under an AND or OR are left out, and a query of nothing else matches nothing.
+ * Wildcards are rewritten into an OR of the words they match, found by walking
+ * only the dictionary range of their literal prefix. Fuzzy words are rewritten the
+ * same way, with the words found by a Levenshtein automaton walk of the dictionary.
+ */
+public class QueryPlanner {
+	private static final Logger logger = LoggerFactory.getLogger(QueryPlanner.class);
+
+	/**
+	 * Most words a single wildcard may expand to
+	 */
+	public static final int DEFAULT_MAX_EXPANSIONS = 1024;
+
+	/**
+	 * Most words a fuzzy word expands to; the closest ones are kept
+	 */
+	public static final int MAX_FUZZY_EXPANSIONS = 50;
+
+	private final PostingsEngine postingsEngine;
+	private final int maxExpansions;
+	private final StopWords stopWords;
+
+	public QueryPlanner(PostingsEngine postingsEngine) {
+		this(postingsEngine, DEFAULT_MAX_EXPANSIONS, StopWords.NONE);
+	}
+
+	public QueryPlanner(PostingsEngine postingsEngine, StopWords stopWords) {
+		this(postingsEngine, DEFAULT_MAX_EXPANSIONS, stopWords);
+	}
+
+	public QueryPlanner(PostingsEngine postingsEngine, int maxExpansions) {
+		this(postingsEngine, maxExpansions, StopWords.NONE);
+	}
+
+	/**
+	 * @param stopWords words the indexer leaves out, which phrases skip over
+	 */
+	public QueryPlanner(PostingsEngine postingsEngine, int maxExpansions, StopWords stopWords) {
+		this.postingsEngine = postingsEngine;
+		this.maxExpansions = maxExpansions;
+		this.stopWords = stopWords;
+	}
+
+	/**
+	 * Replace every wildcard with an OR of the indexed words it matches, so the words
+	 * can be scored like any other term
+	 * @throws IllegalArgumentException if a wildcard matches more than the expansion limit
+	 */
+	public QueryNode rewrite(QueryNode node) {
+		if (node instanceof QueryNode.Wildcard wildcard) {
+			List<QueryNode> terms = new ArrayList<>();
+			for (String word : expand(wildcard)) {
+				terms.add(new QueryNode.Term(word));
+			}
+			return terms.size() == 1 ? terms.get(0) : new QueryNode.Or(terms);
+		} else if (node instanceof QueryNode.Fuzzy fuzzy) {
+			List<QueryNode> terms = new ArrayList<>();
+			for (String word : expand(fuzzy)) {
+				terms.add(new QueryNode.Term(word));
+			}
+			return terms.size() == 1 ? terms.get(0) : new QueryNode.Or(terms);
+		} else if (node instanceof QueryNode.And and) {
+			return new QueryNode.And(rewriteAll(and.children()));
+		} else if (node instanceof QueryNode.Or or) {
+			return new QueryNode.Or(rewriteAll(or.children()));
+		} else if (node instanceof QueryNode.Not not) {
+			return new QueryNode.Not(rewrite(not.child()));
+		}
+		return node;
+	}
+
+	/**
+	 * Turn every word outside a NOT that is not in the index into a fuzzy word and expand
+	 * it, for retrying a query that matched nothing. Words too short to allow an edit stay as they are,
+	 * and so do stop words, which are missing from the index on purpose.
+	 */
+	public QueryNode fuzzyFallback(QueryNode node) {
+		if (node instanceof QueryNode.Term term) {
+			int maxEdits = QueryNode.Fuzzy.autoEdits(term.word());
+			if (maxEdits == 0 || stopWords.contains(term.word()) || postingsEngine.documentFrequency(term.word()) > 0) {
+				return term;
+			}
+			return rewrite(new QueryNode.Fuzzy(term.word(), maxEdits));
+		} else if (node instanceof QueryNode.And and) {
+			return new QueryNode.And(fuzzyFallbackAll(and.children()));
+		} else if (node instanceof QueryNode.Or or) {
+			return new QueryNode.Or(fuzzyFallbackAll(or.children()));
+		}
+		return node;
+	}
+
+	private List<QueryNode> fuzzyFallbackAll(List<QueryNode> children) {
+		List<QueryNode> rewritten = new ArrayList<>(children.size());
+		for (QueryNode child : children) {
+			rewritten.add(fuzzyFallback(child));
+		}
+		return rewritten;
+	}
+
+	private List<QueryNode> rewriteAll(List<QueryNode> children) {
+		List<QueryNode> rewritten = new ArrayList<>(children.size());
+		for (QueryNode child : children) {
+			rewritten.add(rewrite(child));
+		}
+		return rewritten;
+	}
+
+	/**
+	 * Indexed words matching a wildcard, in sorted order
+	 */
+	public List<String> expand(QueryNode.Wildcard wildcard) {
+		String pattern = wildcard.pattern();
+		List<String> words = new ArrayList<>();
+		postingsEngine.forEachTerm(wildcard.prefix(), word -> {
+			if (matchesWildcard(pattern, word)) {
+				if (words.size() == maxExpansions) {
+					throw new IllegalArgumentException("Wildcard '" + pattern + "' matches more than "
+							+ maxExpansions + " words, use a longer prefix");
+				}
+				words.add(word);
+			}
+			return true;
+		});
+		logger.debug("Wildcard '{}' expanded to {} words", pattern, words.size());
+		return words;
+	}
+
+	/**
+	 * Indexed words within the fuzzy word's edit distance, closest first and in sorted
+	 * order within the same distance, at most {@link #MAX_FUZZY_EXPANSIONS} of them
+	 */
+	public List<String> expand(QueryNode.Fuzzy fuzzy) {
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(fuzzy.word(), fuzzy.maxEdits());
+		List<List<String>> byDistance = new ArrayList<>();
+		for (int i = 0; i <= fuzzy.maxEdits(); i++) {
+			byDistance.add(new ArrayList<>());
+		}
+		postingsEngine.forEachFuzzyTerm(automaton, (word, distance) -> {
+			byDistance.get(distance).add(word);
+			return true;
+		});
+
+		List<String> words = new ArrayList<>();
+		for (List<String> sameDistance : byDistance) {
+			for (String word : sameDistance) {
+				if (words.size() == MAX_FUZZY_EXPANSIONS) {
+					break;
+				}
+				words.add(word);
+			}
+		}
+		logger.debug("Fuzzy word '{}~{}' expanded to {} words", fuzzy.word(), fuzzy.maxEdits(), words.size());
+		return words;
+	}
+
+	/**
+	 * Glob match where {@code *} matches any run of characters and {@code ?} one character.
+	 * Backtracks only to the last {@code *}, so it runs in O(pattern x word) at worst.
+	 */
+	static boolean matchesWildcard(String pattern, String word) {
+		int p = 0;
+		int w = 0;
+		int star = -1;
+		int starMatch = 0;
+
+		while (w < word.length()) {
+			if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == word.charAt(w))) {
+				p++;
+				w++;
+			} else if (p < pattern.length() && pattern.charAt(p) == '*') {
+				star = p++;
+				starMatch = w;
+			} else if (star >= 0) {
+				p = star + 1;
+				w = ++starMatch;
+			} else {
+				return false;
+			}
+		}
+		while (p < pattern.length() && pattern.charAt(p) == '*') {
+			p++;
+		}
+		return p == pattern.length();
+	}
+
+	/**
+	 * Book IDs matching the query
+	 */
+	public DocSet evaluate(QueryNode node) {
+		if (node instanceof QueryNode.Term term) {
+			return postingsEngine.lookup(term.word());
+		} else if (node instanceof QueryNode.Wildcard wildcard) {
+			return evaluate(rewrite(wildcard));
+		} else if (node instanceof QueryNode.Fuzzy fuzzy) {
+			return evaluate(rewrite(fuzzy));
+		} else if (node instanceof QueryNode.Phrase phrase) {
+			return evaluatePhrase(phrase);
+		} else if (node instanceof QueryNode.Near near) {
+			return evaluateNear(near);
+		} else if (node instanceof QueryNode.And and) {
+			return evaluateAnd(and.children());
+		} else if (node instanceof QueryNode.Or or) {
+			return evaluateOr(or.children());
+		} else {
+			QueryNode.Not not = (QueryNode.Not) node;
+			return postingsEngine.allDocuments().andNot(evaluate(not.child()));
+		}
+	}
+
+	/**
+	 * Upper bound on the number of matching books, used to order AND children
+	 */
+	public long estimate(QueryNode node) {
+		if (node instanceof QueryNode.Term term) {
+			return postingsEngine.documentFrequency(term.word());
+		} else if (node instanceof QueryNode.Wildcard wildcard) {
+			return estimate(rewrite(wildcard));
+		} else if (node instanceof QueryNode.Fuzzy fuzzy) {
+			return estimate(rewrite(fuzzy));
+		} else if (node instanceof QueryNode.Phrase phrase) {
+			long min = Long.MAX_VALUE;
+			for (String word : phrase.words()) {
+				if (!stopWords.contains(word)) {
+					min = Math.min(min, postingsEngine.documentFrequency(word));
+				}
+			}
+			return min == Long.MAX_VALUE ? 0 : min;
+		} else if (node instanceof QueryNode.Near near) {
+			return Math.min(postingsEngine.documentFrequency(near.left()), postingsEngine.documentFrequency(near.right()));
+		} else if (node instanceof QueryNode.And and) {
+			long min = Long.MAX_VALUE;
+			boolean skipped = false;
+			for (QueryNode child : and.children()) {
+				if (isStopWord(child)) {
+					skipped = true;
+				} else if (!(child instanceof QueryNode.Not)) {
+					min = Math.min(min, estimate(child));
+				}
+			}
+			return min == Long.MAX_VALUE && skipped ? 0 : min;
+		} else if (node instanceof QueryNode.Or or) {
+			long sum = 0;
+			for (QueryNode child : or.children()) {
+				if (isStopWord(child)) {
+					continue;
+				}
+				sum += estimate(child);
+				if (sum < 0) {
+					return Long.MAX_VALUE;
+				}
+			}
+			return sum;
+		} else {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Stop words keep their slot in the phrase but match any word, mirroring how the
+	 * indexer counts positions. Any other word missing from the index means no match.
+	 */
+	private DocSet evaluatePhrase(QueryNode.Phrase phrase) {
+		List<String> words = new ArrayList<>();
+		List<Integer> offsets = new ArrayList<>();
+		for (int i = 0; i < phrase.words().size(); i++) {
+			String word = phrase.words().get(i);
+			if (stopWords.contains(word)) {
+				continue;
+			}
+			if (postingsEngine.documentFrequency(word) == 0) {
+				return postingsEngine.empty();
+			}
+			words.add(word);
+			offsets.add(i);
+		}
+
+		if (words.isEmpty()) {
+			return postingsEngine.empty();
+		}
+
+		List<QueryNode> terms = new ArrayList<>(words.size());
+		for (String word : words) {
+			terms.add(new QueryNode.Term(word));
+		}
+		DocSet candidates = evaluateAnd(terms);
+
+		if (words.size() == 1 || candidates.isEmpty() || !postingsEngine.hasPositions()) {
+			return candidates;
+		}
+
+		PositionsCursor[] cursors = new PositionsCursor[words.size()];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = postingsEngine.positions(words.get(i));
+		}
+
+		PostingList matches = new PostingList();
+		int[][] positions = new int[cursors.length][];
+		for (int bookId : candidates.toArray()) {
+			for (int i = 0; i < cursors.length; i++) {
+				cursors[i].advanceTo(bookId);
+				positions[i] = cursors[i].positions();
+			}
+			if (containsPhrase(positions, offsets)) {
+				matches.addInt(bookId);
+			}
+		}
+		return postingsEngine.of(matches);
+	}
+
+	private DocSet evaluateNear(QueryNode.Near near) {
+		DocSet candidates = evaluateAnd(List.of(new QueryNode.Term(near.left()), new QueryNode.Term(near.right())));
+
+		if (candidates.isEmpty() || !postingsEngine.hasPositions()) {
+			return candidates;
+		}
+
+		PositionsCursor left = postingsEngine.positions(near.left());
+		PositionsCursor right = postingsEngine.positions(near.right());
+
+		PostingList matches = new PostingList();
+		for (int bookId : candidates.toArray()) {
+			left.advanceTo(bookId);
+			right.advanceTo(bookId);
+			if (withinDistance(left.positions(), right.positions(), near.distance())) {
+				matches.addInt(bookId);
+			}
+		}
+		return postingsEngine.of(matches);
+	}
+
+	/**
+	 * Walks the first word's positions and advances a pointer per remaining word,
+	 * so each book costs one merge over its position lists.
+	 */
+	static boolean containsPhrase(int[][] positions, List<Integer> offsets) {
+		int[] pointers = new int[positions.length];
+
+		for (int anchor : positions[0]) {
+			int start = anchor - offsets.get(0);
+			boolean matched = true;
+
+			for (int i = 1; i < positions.length && matched; i++) {
+				int target = start + offsets.get(i);
+				int[] wordPositions = positions[i];
+				while (pointers[i] < wordPositions.length && wordPositions[pointers[i]] < target) {
+					pointers[i]++;
+				}
+				if (pointers[i] == wordPositions.length) {
+					return false;
+				}
+				matched = wordPositions[pointers[i]] == target;
+			}
+
+			if (matched) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Two-pointer merge looking for occurrences at most {@code distance} apart
+	 */
+	static boolean withinDistance(int[] left, int[] right, int distance) {
+		int i = 0;
+		int j = 0;
+
+		while (i < left.length && j < right.length) {
+			int gap = left[i] - right[j];
+			if (gap != 0 && Math.abs(gap) <= distance) {
+				return true;
+			}
+			if (left[i] < right[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stop words are not in the index, so they are left out rather than emptying the AND
+	 */
+	private DocSet evaluateAnd(List<QueryNode> children) {
+		List<Planned> required = new ArrayList<>();
+		List<QueryNode> excluded = new ArrayList<>();
+		boolean skipped = false;
+
+		for (QueryNode child : children) {
+			if (isStopWord(child)) {
+				skipped = true;
+			} else if (child instanceof QueryNode.Not not) {
+				excluded.add(not.child());
+			} else {
+				required.add(new Planned(child, estimate(child)));
+			}
+		}
+		if (required.isEmpty() && skipped) {
+			logger.debug("Skipping AND: only stop words");
+			return postingsEngine.empty();
+		}
+		required.sort(Comparator.comparingLong(Planned::estimate));
+
+		if (!required.isEmpty() && required.get(0).estimate() == 0) {
+			logger.debug("Skipping AND: {} matches nothing", required.get(0).node());
+			return postingsEngine.empty();
+		}
+
+		DocSet result = required.isEmpty() ? postingsEngine.allDocuments() : evaluate(required.get(0).node());
+
+		for (int i = 1; i < required.size(); i++) {
+			if (result.isEmpty()) {
+				logger.debug("Short-circuiting AND after {} of {} terms", i, required.size());
+				return result;
+			}
+			result = result.and(evaluate(required.get(i).node()));
+		}
+
+		for (QueryNode child : excluded) {
+			if (result.isEmpty()) {
+				return result;
+			}
+			result = result.andNot(evaluate(child));
+		}
+
+		return result;
+	}
+
+	private DocSet evaluateOr(List<QueryNode> children) {
+		DocSet result = postingsEngine.empty();
+		for (QueryNode child : children) {
+			if (isStopWord(child)) {
+				continue;
+			}
+			DocSet matches = evaluate(child);
+			if (!matches.isEmpty()) {
+				result = result.or(matches);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A bare word the indexer never stores, by configuration
+	 */
+	private boolean isStopWord(QueryNode node) {
+		return node instanceof QueryNode.Term term && stopWords.contains(term.word());
+	}
+
+	private record Planned(QueryNode node, long estimate) {}
+}
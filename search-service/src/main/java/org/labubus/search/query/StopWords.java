@@ -0,0 +1,36 @@
+package org.labubus.search.query;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Words the indexer leaves out of the index by configuration: its stop words and words
+ * outside its length limits. They still take up a position in the book, so a phrase
+ * keeps their slot but lets any word fill it. Must match the indexing service's settings.
+ */
+public record StopWords(Set<String> words, int minLength, int maxLength) {
+	/**
+	 * Every word is expected in the index, so a phrase word that is missing matches nothing
+	 */
+	public static final StopWords NONE = new StopWords(Set.of(), 0, Integer.MAX_VALUE);
+
+	public boolean contains(String word) {
+		return word.length() < minLength || word.length() > maxLength || words.contains(word);
+	}
+
+	/**
+	 * @param commaSeparated stop words as the indexing service is configured with them
+	 */
+	public static StopWords parse(String commaSeparated, int minLength, int maxLength) {
+		Set<String> words = new HashSet<>();
+		if (commaSeparated != null) {
+			for (String word : commaSeparated.split(",")) {
+				String cleaned = word.trim().toLowerCase();
+				if (!cleaned.isEmpty()) {
+					words.add(cleaned);
+				}
+			}
+		}
+		return new StopWords(Set.copyOf(words), minLength, maxLength);
+	}
+}
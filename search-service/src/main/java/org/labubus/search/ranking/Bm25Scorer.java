@@ -0,0 +1,169 @@
+package org.labubus.search.ranking;
+
+import org.labubus.search.indexer.InvertedIndexReader;
+import org.labubus.search.indexer.TermPostings;
+import org.labubus.search.postings.DocSet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Okapi BM25 over the index's term frequencies and document lengths.
+ * Each query term's postings are walked once against the sorted candidate IDs,
+ * accumulating into a score array, and a bounded heap keeps the top k.
+ * With pruning enabled, large match sets go through {@link WandTopK} instead,
+ * which skips books that cannot beat the current k-th score.
+ */
+public class Bm25Scorer {
+	private final InvertedIndexReader indexReader;
+	private final double k1;
+	private final double b;
+	private final boolean pruning;
+
+	public Bm25Scorer(InvertedIndexReader indexReader, double k1, double b) {
+		this(indexReader, k1, b, false);
+	}
+
+	public Bm25Scorer(InvertedIndexReader indexReader, double k1, double b, boolean pruning) {
+		this.indexReader = indexReader;
+		this.k1 = k1;
+		this.b = b;
+		this.pruning = pruning;
+	}
+
+	/**
+	 * Same parameters over another reader, typically one pinned for a single query
+	 */
+	public Bm25Scorer withReader(InvertedIndexReader reader) {
+		return new Bm25Scorer(reader, k1, b, pruning);
+	}
+
+	/**
+	 * Best {@code k} books among the matches, highest score first
+	 */
+	public List<ScoredBook> topK(DocSet matches, List<String> terms, int k) {
+		if (pruning && matches.cardinality() > k) {
+			return new WandTopK(this, indexReader).collect(matches, terms, k);
+		}
+		return topK(matches.toArray(), terms, k);
+	}
+
+	/**
+	 * Best {@code k} candidates for the query terms, highest score first
+	 * @param candidates book IDs in ascending order
+	 */
+	public List<ScoredBook> topK(int[] candidates, List<String> terms, int k) {
+		double[] scores = score(candidates, terms);
+
+		PriorityQueue<ScoredBook> heap = new PriorityQueue<>(Math.max(1, k), ScoredBook.BEST_FIRST.reversed());
+		for (int i = 0; i < candidates.length; i++) {
+			ScoredBook scored = new ScoredBook(candidates[i], scores[i]);
+			if (heap.size() < k) {
+				heap.add(scored);
+			} else if (k > 0 && ScoredBook.BEST_FIRST.compare(scored, heap.peek()) < 0) {
+				heap.poll();
+				heap.add(scored);
+			}
+		}
+
+		List<ScoredBook> top = new ArrayList<>(heap);
+		top.sort(ScoredBook.BEST_FIRST);
+		return top;
+	}
+
+	/**
+	 * BM25 score of every candidate, aligned with {@code candidates}
+	 */
+	public double[] score(int[] candidates, List<String> terms) {
+		double[] scores = new double[candidates.length];
+		if (candidates.length == 0) {
+			return scores;
+		}
+
+		InvertedIndexReader.CorpusStats stats = indexReader.corpusStats();
+		int documentCount = Math.max(stats.documentCount(), candidates.length);
+		double[] norms = lengthNorms(candidates, stats.averageLength());
+
+		for (String term : new LinkedHashSet<>(terms)) {
+			TermPostings postings = indexReader.termPostings(term);
+			int docFreq = postings.size();
+			if (docFreq == 0) {
+				continue;
+			}
+
+			double idf = idf(docFreq, documentCount);
+			if (candidates.length * 8L < docFreq) {
+				accumulateByLookup(candidates, postings, idf, norms, scores);
+			} else {
+				accumulateByMerge(candidates, postings, idf, norms, scores);
+			}
+		}
+		return scores;
+	}
+
+	/**
+	 * k1 * (1 - b + b * dl / avgdl) per candidate; plain k1 when lengths are unknown
+	 */
+	private double[] lengthNorms(int[] candidates, double averageLength) {
+		double[] norms = new double[candidates.length];
+		for (int i = 0; i < candidates.length; i++) {
+			int length = averageLength > 0 ? indexReader.documentLength(candidates[i]) : 0;
+			norms[i] = lengthNorm(length, averageLength);
+		}
+		return norms;
+	}
+
+	double idf(int docFreq, int documentCount) {
+		return Math.log(1 + (documentCount - docFreq + 0.5) / (docFreq + 0.5));
+	}
+
+	double lengthNorm(int length, double averageLength) {
+		return length > 0 && averageLength > 0 ? k1 * (1 - b + b * length / averageLength) : k1;
+	}
+
+	/**
+	 * Smallest length norm any book can have, for score upper bounds
+	 */
+	double minLengthNorm(InvertedIndexReader.CorpusStats stats) {
+		if (stats.averageLength() <= 0) {
+			return k1;
+		}
+		return k1 * (1 - b + b * stats.minLength() / stats.averageLength());
+	}
+
+	private void accumulateByMerge(int[] candidates, TermPostings postings, double idf, double[] norms, double[] scores) {
+		int i = 0;
+		int j = 0;
+		while (i < candidates.length && j < postings.size()) {
+			int candidate = candidates[i];
+			int bookId = postings.bookIdAt(j);
+			if (candidate < bookId) {
+				i++;
+			} else if (candidate > bookId) {
+				j++;
+			} else {
+				scores[i] += termScore(idf, postings.frequencyAt(j), norms[i]);
+				i++;
+				j++;
+			}
+		}
+	}
+
+	/**
+	 * Few candidates against a long posting list: binary search instead of walking it
+	 */
+	private void accumulateByLookup(int[] candidates, TermPostings postings, double idf, double[] norms, double[] scores) {
+		for (int i = 0; i < candidates.length; i++) {
+			int index = postings.bookIds().indexOf(candidates[i]);
+			if (index >= 0) {
+				scores[i] += termScore(idf, postings.frequencyAt(index), norms[i]);
+			}
+		}
+	}
+
+	double termScore(double idf, int frequency, double norm) {
+		return idf * frequency * (k1 + 1) / (frequency + norm);
+	}
+}
@@ -0,0 +1,12 @@
+package org.labubus.search.ranking;
+
+import java.util.Comparator;
+
+public record ScoredBook(int bookId, double score) {
+	/**
+	 * Best first: higher score, then lower book ID so ties are stable
+	 */
+	public static final Comparator<ScoredBook> BEST_FIRST = Comparator
+			.comparingDouble(ScoredBook::score).reversed()
+			.thenComparingInt(ScoredBook::bookId);
+}
@@ -0,0 +1,223 @@
+package org.labubus.search.ranking;
+
+import org.labubus.search.indexer.InvertedIndexReader;
+import org.labubus.search.indexer.TermPostings;
+import org.labubus.search.postings.DocSet;
+
+import java.util.*;
+
+/**
+ * Top-k BM25 with WAND dynamic pruning and a block-max check.
+ * Each term gets an upper bound on its score contribution, overall and per block of
+ * postings. Books are only scored when the bounds of the terms they could contain
+ * exceed the current k-th best score, so most of a large result set is skipped
+ * without looking up document lengths or touching the heap.
+ * Produces the same ranking as exhaustive scoring.
+ */
+final class WandTopK {
+	private static final int BLOCK_SIZE = 64;
+
+	private final Bm25Scorer scorer;
+	private final InvertedIndexReader indexReader;
+
+	WandTopK(Bm25Scorer scorer, InvertedIndexReader indexReader) {
+		this.scorer = scorer;
+		this.indexReader = indexReader;
+	}
+
+	List<ScoredBook> collect(DocSet matches, List<String> terms, int k) {
+		InvertedIndexReader.CorpusStats stats = indexReader.corpusStats();
+		int documentCount = Math.max(stats.documentCount(), matches.cardinality());
+		double minNorm = scorer.minLengthNorm(stats);
+
+		List<TermCursor> active = new ArrayList<>();
+		for (String term : new LinkedHashSet<>(terms)) {
+			TermPostings postings = indexReader.termPostings(term);
+			if (postings.size() > 0) {
+				active.add(new TermCursor(active.size(), postings, scorer.idf(postings.size(), documentCount), minNorm));
+			}
+		}
+		TermCursor[] cursors = active.toArray(new TermCursor[0]);
+
+		PriorityQueue<ScoredBook> heap = new PriorityQueue<>(Math.max(1, k), ScoredBook.BEST_FIRST.reversed());
+
+		while (k > 0) {
+			sortByDoc(cursors);
+			double threshold = heap.size() < k ? 0.0 : heap.peek().score();
+
+			int pivot = findPivot(cursors, threshold);
+			if (pivot < 0) {
+				break;
+			}
+			int pivotDoc = cursors[pivot].doc();
+
+			if (cursors[0].doc() != pivotDoc) {
+				// Books before the pivot cannot reach the threshold with the terms that precede it
+				for (int i = 0; i < pivot; i++) {
+					cursors[i].advanceTo(pivotDoc);
+				}
+				continue;
+			}
+
+			int last = pivot;
+			while (last + 1 < cursors.length && cursors[last + 1].doc() == pivotDoc) {
+				last++;
+			}
+
+			if (heap.size() < k || blockBound(cursors, last) > threshold) {
+				if (matches.contains(pivotDoc)) {
+					offer(heap, new ScoredBook(pivotDoc, score(cursors, last, pivotDoc, stats)), k);
+				}
+			}
+
+			for (int i = 0; i <= last; i++) {
+				cursors[i].next();
+			}
+		}
+
+		if (heap.size() < k) {
+			fillWithUnscored(heap, matches, k);
+		}
+
+		List<ScoredBook> top = new ArrayList<>(heap);
+		top.sort(ScoredBook.BEST_FIRST);
+		return top;
+	}
+
+	/**
+	 * First cursor at which the summed upper bounds exceed the threshold, or -1
+	 */
+	private static int findPivot(TermCursor[] cursors, double threshold) {
+		double bound = 0;
+		for (int i = 0; i < cursors.length; i++) {
+			if (cursors[i].exhausted()) {
+				return -1;
+			}
+			bound += cursors[i].maxScore;
+			if (bound > threshold) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static double blockBound(TermCursor[] cursors, int last) {
+		double bound = 0;
+		for (int i = 0; i <= last; i++) {
+			bound += cursors[i].blockMaxScore();
+		}
+		return bound;
+	}
+
+	/**
+	 * Sums in query term order, the same order exhaustive scoring uses, so scores match exactly
+	 */
+	private double score(TermCursor[] cursors, int last, int bookId, InvertedIndexReader.CorpusStats stats) {
+		double norm = scorer.lengthNorm(indexReader.documentLength(bookId), stats.averageLength());
+		double score = 0;
+		for (int ordinal = 0; ordinal < cursors.length; ordinal++) {
+			for (int i = 0; i <= last; i++) {
+				if (cursors[i].ordinal == ordinal) {
+					score += scorer.termScore(cursors[i].idf, cursors[i].frequency(), norm);
+					break;
+				}
+			}
+		}
+		return score;
+	}
+
+	private static void offer(PriorityQueue<ScoredBook> heap, ScoredBook scored, int k) {
+		if (heap.size() < k) {
+			heap.add(scored);
+		} else if (ScoredBook.BEST_FIRST.compare(scored, heap.peek()) < 0) {
+			heap.poll();
+			heap.add(scored);
+		}
+	}
+
+	/**
+	 * Matches that contain none of the scored terms (e.g. via NOT) rank last with score 0,
+	 * exactly as exhaustive scoring would place them
+	 */
+	private static void fillWithUnscored(PriorityQueue<ScoredBook> heap, DocSet matches, int k) {
+		Set<Integer> scored = new HashSet<>();
+		for (ScoredBook book : heap) {
+			scored.add(book.bookId());
+		}
+		for (int bookId : matches.toArray()) {
+			if (heap.size() >= k) {
+				break;
+			}
+			if (!scored.contains(bookId)) {
+				heap.add(new ScoredBook(bookId, 0.0));
+			}
+		}
+	}
+
+	/**
+	 * Insertion sort: cursors move a little at a time, so the array is nearly sorted
+	 */
+	private static void sortByDoc(TermCursor[] cursors) {
+		for (int i = 1; i < cursors.length; i++) {
+			TermCursor cursor = cursors[i];
+			int j = i - 1;
+			while (j >= 0 && cursors[j].doc() > cursor.doc()) {
+				cursors[j + 1] = cursors[j];
+				j--;
+			}
+			cursors[j + 1] = cursor;
+		}
+	}
+
+	private final class TermCursor {
+		final int ordinal;
+		final TermPostings postings;
+		final double idf;
+		final double maxScore;
+		final double[] blockMaxScores;
+		int index;
+
+		TermCursor(int ordinal, TermPostings postings, double idf, double minNorm) {
+			this.ordinal = ordinal;
+			this.postings = postings;
+			this.idf = idf;
+			this.blockMaxScores = new double[(postings.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+
+			double max = 0;
+			for (int block = 0; block < blockMaxScores.length; block++) {
+				int maxFrequency = 0;
+				int end = Math.min(postings.size(), (block + 1) * BLOCK_SIZE);
+				for (int i = block * BLOCK_SIZE; i < end; i++) {
+					maxFrequency = Math.max(maxFrequency, postings.frequencyAt(i));
+				}
+				blockMaxScores[block] = scorer.termScore(idf, maxFrequency, minNorm);
+				max = Math.max(max, blockMaxScores[block]);
+			}
+			this.maxScore = max;
+		}
+
+		boolean exhausted() {
+			return index >= postings.size();
+		}
+
+		int doc() {
+			return exhausted() ? Integer.MAX_VALUE : postings.bookIdAt(index);
+		}
+
+		int frequency() {
+			return postings.frequencyAt(index);
+		}
+
+		double blockMaxScore() {
+			return blockMaxScores[index / BLOCK_SIZE];
+		}
+
+		void next() {
+			index++;
+		}
+
+		void advanceTo(int bookId) {
+			index = postings.bookIds().ceilingIndex(bookId, index);
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.labubus.search.repository;
 import org.labubus.search.model.BookMetadata;
 
 import java.sql.SQLException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,6 +38,12 @@ public interface MetadataRepository {
 	 */
 	List<BookMetadata> findByIds(List<Integer> bookIds) throws SQLException;
 
+	/**
+	 * Books written at or after {@code since}, or all books if it is null, each with the
+	 * time it was written, for keeping an in-memory copy up to date
+	 */
+	List<IndexedBook> findIndexedSince(Instant since) throws SQLException;
+
 	/**
 	 * Count total books in database
 	 */
@@ -46,4 +53,9 @@ public interface MetadataRepository {
 	 * Close database connection
 	 */
 	void close() throws SQLException;
+
+	/**
+	 * @param indexedAt when the indexing service last wrote the row, {@link Instant#EPOCH} if unknown
+	 */
+	record IndexedBook(BookMetadata book, Instant indexedAt) {}
 }
\ No newline at end of file
@@ -14,7 +14,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.regex.Pattern;
@@ -129,6 +131,26 @@ public class MongoMetadataRepository implements MetadataRepository {
 		}
 	}
 
+	@Override
+	public List<IndexedBook> findIndexedSince(Instant since) throws SQLException {
+		try {
+			List<IndexedBook> books = new ArrayList<>();
+			Bson filter = since == null ? new Document() : Filters.gte("indexed_at", Date.from(since));
+
+			booksCollection.find(filter)
+					.sort(Indexes.ascending("book_id"))
+					.forEach(doc -> {
+						Date indexedAt = doc.getDate("indexed_at");
+						books.add(new IndexedBook(documentToMetadata(doc),
+								indexedAt == null ? Instant.EPOCH : indexedAt.toInstant()));
+					});
+			return books;
+		} catch (MongoException e) {
+			logger.error("Failed to find books indexed since {}", since, e);
+			throw new SQLException("MongoDB findIndexedSince failed", e);
+		}
+	}
+
 	@Override
 	public int count() throws SQLException {
 		try {
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -136,6 +137,29 @@ public class PostgreSqlMetadataRepository implements MetadataRepository {
 		return books;
 	}
 
+	@Override
+	public List<IndexedBook> findIndexedSince(Instant since) throws SQLException {
+		List<IndexedBook> books = new ArrayList<>();
+		String sql = "SELECT book_id, title, author, language, year, path, indexed_at FROM books"
+				+ (since == null ? "" : " WHERE indexed_at >= ?") + " ORDER BY book_id";
+
+		try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+			if (since != null) {
+				stmt.setTimestamp(1, Timestamp.from(since));
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					Timestamp indexedAt = rs.getTimestamp("indexed_at");
+					books.add(new IndexedBook(mapResultSetToMetadata(rs),
+							indexedAt == null ? Instant.EPOCH : indexedAt.toInstant()));
+				}
+			}
+		}
+
+		return books;
+	}
+
 	@Override
 	public int count() throws SQLException {
 		String sql = "SELECT COUNT(*) FROM books";
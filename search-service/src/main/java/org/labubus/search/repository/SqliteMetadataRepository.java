@@ -5,6 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -12,6 +15,8 @@ import java.util.stream.Collectors;
 
 public class SqliteMetadataRepository implements MetadataRepository {
 	private static final Logger logger = LoggerFactory.getLogger(SqliteMetadataRepository.class);
+	private static final DateTimeFormatter TIMESTAMP_FORMAT =
+			DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
 	private final Connection connection;
 
 	public SqliteMetadataRepository(String dbPath) throws SQLException {
@@ -137,6 +142,32 @@ public class SqliteMetadataRepository implements MetadataRepository {
 		return books;
 	}
 
+	/**
+	 * indexed_at holds CURRENT_TIMESTAMP text in UTC, which compares correctly as a string
+	 */
+	@Override
+	public List<IndexedBook> findIndexedSince(Instant since) throws SQLException {
+		List<IndexedBook> books = new ArrayList<>();
+		String sql = "SELECT book_id, title, author, language, year, path, indexed_at FROM books"
+				+ (since == null ? "" : " WHERE indexed_at >= ?") + " ORDER BY book_id";
+
+		try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+			if (since != null) {
+				stmt.setString(1, TIMESTAMP_FORMAT.format(since));
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					String indexedAt = rs.getString("indexed_at");
+					books.add(new IndexedBook(mapResultSetToMetadata(rs),
+							indexedAt == null ? Instant.EPOCH : Instant.from(TIMESTAMP_FORMAT.parse(indexedAt))));
+				}
+			}
+		}
+
+		return books;
+	}
+
 	@Override
 	public int count() throws SQLException {
 		String sql = "SELECT COUNT(*) FROM books";
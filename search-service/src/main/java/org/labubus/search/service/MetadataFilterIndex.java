@@ -0,0 +1,228 @@
+package org.labubus.search.service;
+
+import org.labubus.search.postings.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed answers to the search filters over one version of the metadata columns:
+ * a bitmap of book IDs per language and per year, and for authors a trigram index over
+ * the distinct author names, so a filter only looks at the names sharing every trigram
+ * of the searched text. Filters then become bitmap intersections with the query matches.
+ */
+final class MetadataFilterIndex {
+	private static final int GRAM = 3;
+	private static final int[] NO_CODES = new int[0];
+
+	private final Map<String, RoaringBitmap> byLanguage;
+	private final Map<Integer, RoaringBitmap> byYear;
+	private final String[] authorNames;
+	private final int[][] booksByAuthor;
+	private final Map<Long, int[]> authorsByTrigram;
+
+	private MetadataFilterIndex(Map<String, RoaringBitmap> byLanguage, Map<Integer, RoaringBitmap> byYear,
+								String[] authorNames, int[][] booksByAuthor, Map<Long, int[]> authorsByTrigram) {
+		this.byLanguage = byLanguage;
+		this.byYear = byYear;
+		this.authorNames = authorNames;
+		this.booksByAuthor = booksByAuthor;
+		this.authorsByTrigram = authorsByTrigram;
+	}
+
+	/**
+	 * @param authorCodes per row, a code into {@code authors}; likewise {@code languageCodes}
+	 * @param years per row, {@code noYear} where unknown
+	 */
+	static MetadataFilterIndex build(int size, int[] bookIds, int[] authorCodes, String[] authors,
+									 int[] languageCodes, String[] languages, int[] years, int noYear) {
+		// Visit rows in book ID order, so every group below comes out sorted
+		long[] order = new long[size];
+		for (int row = 0; row < size; row++) {
+			order[row] = ((long) bookIds[row] << 32) | row;
+		}
+		Arrays.sort(order);
+
+		String[] languageKeys = new String[languages.length];
+		for (int code = 0; code < languages.length; code++) {
+			languageKeys[code] = languages[code] == null ? null : languages[code].toLowerCase();
+		}
+
+		Map<String, IdList> languageGroups = new HashMap<>();
+		Map<Integer, IdList> yearGroups = new HashMap<>();
+		IdList[] authorGroups = new IdList[authors.length];
+		for (long entry : order) {
+			int row = (int) entry;
+			int bookId = bookIds[row];
+			String language = languageKeys[languageCodes[row]];
+			if (language != null) {
+				languageGroups.computeIfAbsent(language, key -> new IdList()).add(bookId);
+			}
+			if (years[row] != noYear) {
+				yearGroups.computeIfAbsent(years[row], key -> new IdList()).add(bookId);
+			}
+			int author = authorCodes[row];
+			if (authorGroups[author] == null) {
+				authorGroups[author] = new IdList();
+			}
+			authorGroups[author].add(bookId);
+		}
+
+		Map<String, RoaringBitmap> byLanguage = new HashMap<>();
+		languageGroups.forEach((language, ids) -> byLanguage.put(language, ids.toBitmap()));
+		Map<Integer, RoaringBitmap> byYear = new HashMap<>();
+		yearGroups.forEach((year, ids) -> byYear.put(year, ids.toBitmap()));
+
+		String[] authorNames = new String[authors.length];
+		int[][] booksByAuthor = new int[authors.length][];
+		Map<Long, IdList> trigramGroups = new HashMap<>();
+		for (int code = 0; code < authors.length; code++) {
+			booksByAuthor[code] = authorGroups[code] == null ? NO_CODES : authorGroups[code].toArray();
+			// Names no book refers to any more stay out of the trigram index
+			if (authors[code] == null || booksByAuthor[code].length == 0) {
+				continue;
+			}
+			authorNames[code] = authors[code].toLowerCase();
+			for (long trigram : trigrams(authorNames[code])) {
+				IdList codes = trigramGroups.computeIfAbsent(trigram, key -> new IdList());
+				if (codes.size == 0 || codes.values[codes.size - 1] != code) {
+					codes.add(code);
+				}
+			}
+		}
+		Map<Long, int[]> authorsByTrigram = new HashMap<>(trigramGroups.size() * 2);
+		trigramGroups.forEach((trigram, codes) -> authorsByTrigram.put(trigram, codes.toArray()));
+
+		return new MetadataFilterIndex(byLanguage, byYear, authorNames, booksByAuthor, authorsByTrigram);
+	}
+
+	/**
+	 * Books matching every given filter, or null when no filter is given
+	 * @param author matched case-insensitively anywhere in the name
+	 * @param language matched case-insensitively as a whole
+	 */
+	RoaringBitmap matching(String author, String language, Integer year) {
+		RoaringBitmap result = null;
+		// Cheapest first, so an empty language or year skips the author lookup
+		if (language != null) {
+			result = byLanguage.getOrDefault(language.toLowerCase(), RoaringBitmap.empty());
+		}
+		if (year != null) {
+			result = and(result, byYear.getOrDefault(year, RoaringBitmap.empty()));
+		}
+		if (author != null && (result == null || !result.isEmpty())) {
+			result = and(result, authorMatching(author.toLowerCase()));
+		}
+		return result;
+	}
+
+	private RoaringBitmap authorMatching(String lowerCaseAuthor) {
+		IdList books = new IdList();
+		for (int code : authorCandidates(lowerCaseAuthor)) {
+			if (authorNames[code] != null && authorNames[code].contains(lowerCaseAuthor)) {
+				books.addAll(booksByAuthor[code]);
+			}
+		}
+		int[] ids = books.toArray();
+		Arrays.sort(ids);
+		return RoaringBitmap.fromSorted(ids, ids.length);
+	}
+
+	/**
+	 * Author codes containing every trigram of the text; every author when it is too short to have any
+	 */
+	private int[] authorCandidates(String lowerCaseAuthor) {
+		if (lowerCaseAuthor.length() < GRAM) {
+			int[] all = new int[authorNames.length];
+			Arrays.setAll(all, code -> code);
+			return all;
+		}
+
+		List<int[]> lists = new ArrayList<>();
+		for (long trigram : trigrams(lowerCaseAuthor)) {
+			int[] codes = authorsByTrigram.get(trigram);
+			if (codes == null) {
+				return NO_CODES;
+			}
+			lists.add(codes);
+		}
+		lists.sort((a, b) -> Integer.compare(a.length, b.length));
+
+		int[] candidates = lists.get(0);
+		for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+			candidates = intersect(candidates, lists.get(i));
+		}
+		return candidates;
+	}
+
+	private static RoaringBitmap and(RoaringBitmap current, RoaringBitmap next) {
+		return current == null ? next : current.and(next);
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] out = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				out[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(out, count);
+	}
+
+	/**
+	 * Distinct trigrams of the text, three UTF-16 chars packed into a long
+	 */
+	private static long[] trigrams(String text) {
+		if (text.length() < GRAM) {
+			return new long[0];
+		}
+		long[] grams = new long[text.length() - GRAM + 1];
+		for (int i = 0; i < grams.length; i++) {
+			grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+		}
+		return Arrays.stream(grams).distinct().toArray();
+	}
+
+	/**
+	 * Growable int array, to group IDs without boxing them
+	 */
+	private static final class IdList {
+		int[] values = new int[4];
+		int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		void addAll(int[] more) {
+			if (size + more.length > values.length) {
+				values = Arrays.copyOf(values, Math.max(size + more.length, size * 2));
+			}
+			System.arraycopy(more, 0, values, size, more.length);
+			size += more.length;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		RoaringBitmap toBitmap() {
+			return RoaringBitmap.fromSorted(values, size);
+		}
+	}
+}
@@ -0,0 +1,436 @@
+package org.labubus.search.service;
+
+import org.labubus.search.model.BookMetadata;
+import org.labubus.search.model.SearchFacets;
+import org.labubus.search.model.SearchResult;
+import org.labubus.search.postings.RoaringBitmap;
+import org.labubus.search.repository.MetadataRepository;
+import org.labubus.search.repository.MetadataRepository.IndexedBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory, column-per-field copy of the books table, so searches never wait on the
+ * database. Book IDs map to rows through a table indexed by the ID itself, authors and
+ * languages are stored once each and referenced by code, and each version carries a
+ * {@link MetadataFilterIndex}, so filters are bitmap intersections that never build a
+ * {@link BookMetadata} per candidate.
+ *
+ * Loaded in full at startup, then kept current by reading only the rows written since
+ * the newest {@code indexed_at} seen. Readers work on an immutable snapshot that is
+ * replaced, never modified, when rows change.
+ */
+public class MetadataStore {
+	private static final Logger logger = LoggerFactory.getLogger(MetadataStore.class);
+
+	private static final int NO_YEAR = Integer.MIN_VALUE;
+	private static final int NO_ROW = -1;
+
+	/**
+	 * Book IDs below this always get a slot in the row table; larger ones only if the
+	 * table stays within a few times the number of books
+	 */
+	private static final int DIRECT_ID_LIMIT = 1 << 17;
+
+	private final MetadataRepository repository;
+	private volatile Columns columns = Columns.empty(0);
+	private Instant watermark; // guarded by this, null until the first load
+	private ScheduledExecutorService refresher;
+
+	public MetadataStore(MetadataRepository repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * Read the whole table, replacing whatever is loaded
+	 */
+	public synchronized void load() throws SQLException {
+		long start = System.nanoTime();
+		List<IndexedBook> books = repository.findIndexedSince(null);
+		Builder builder = new Builder(Columns.empty(columns.version), books.size());
+		for (IndexedBook book : books) {
+			builder.put(book.book());
+		}
+		Columns loaded = builder.build();
+		columns = loaded;
+		watermark = newest(books, Instant.EPOCH);
+		logger.info("Loaded metadata for {} books in {} ms", loaded.size,
+				(System.nanoTime() - start) / 1_000_000);
+	}
+
+	/**
+	 * Apply the rows written since the last load or refresh. Falls back to a full load
+	 * when the table has fewer rows than the store, i.e. books were deleted.
+	 * @return number of rows read
+	 */
+	public synchronized int refresh() throws SQLException {
+		if (watermark == null) {
+			load();
+			return columns.size;
+		}
+
+		// Rows from the watermark's own second are read again, since more may have landed in it
+		List<IndexedBook> changed = repository.findIndexedSince(watermark);
+		Columns current = columns;
+		Columns updated = current.with(changed);
+		if (updated != current) {
+			columns = updated;
+			logger.info("Refreshed metadata: {} books changed, {} in total", changed.size(), updated.size);
+		}
+		watermark = newest(changed, watermark);
+
+		if (repository.count() < updated.size) {
+			logger.info("Books were removed from the database, reloading metadata");
+			load();
+		}
+		return changed.size();
+	}
+
+	/**
+	 * Refresh every {@code intervalMillis} on a background thread. A failed refresh is
+	 * logged and retried at the next interval; searches keep the current copy.
+	 */
+	public synchronized void watch(long intervalMillis) {
+		if (refresher != null) {
+			return;
+		}
+		refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metadata-refresher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresher.scheduleWithFixedDelay(() -> {
+			try {
+				refresh();
+			} catch (SQLException | RuntimeException e) {
+				logger.warn("Metadata refresh failed, keeping current copy: {}", e.getMessage());
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public int size() {
+		return columns.size;
+	}
+
+	/**
+	 * Bumped whenever the loaded rows change, so results built from older rows can be dropped
+	 */
+	public long version() {
+		return columns.version;
+	}
+
+	public boolean contains(int bookId) {
+		return columns.row(bookId) != NO_ROW;
+	}
+
+	public Optional<BookMetadata> get(int bookId) {
+		Columns current = columns;
+		int row = current.row(bookId);
+		return row == NO_ROW ? Optional.empty() : Optional.of(current.metadata(row));
+	}
+
+	/**
+	 * Search result for a book, null if the store does not know it
+	 */
+	public SearchResult toResult(int bookId, double score) {
+		Columns current = columns;
+		int row = current.row(bookId);
+		return row == NO_ROW ? null : current.result(row, score);
+	}
+
+	/**
+	 * Books passing every given filter, or null when no filter is given. Author matches
+	 * case-insensitively anywhere in the name, language case-insensitively as a whole.
+	 */
+	public RoaringBitmap matching(String author, String language, Integer year) {
+		return columns.filters.matching(author, language, year);
+	}
+
+	/**
+	 * Language, year and author counts over the given books, in one pass over their rows.
+	 * Books the store does not know, and unknown values, are not counted.
+	 * @param yearBucket width of each year bucket, 1 for single years
+	 * @param authorLimit how many of the most common authors to return
+	 */
+	public SearchFacets facets(int[] bookIds, int yearBucket, int authorLimit) {
+		if (yearBucket < 1) {
+			throw new IllegalArgumentException("Year bucket must be at least 1, got " + yearBucket);
+		}
+		Columns current = columns;
+		// Keyed by the codes these books use, so a few results don't cost a pass over every author
+		Map<Integer, int[]> languageCounts = new HashMap<>();
+		Map<Integer, int[]> authorCounts = new HashMap<>();
+		int[] buckets = new int[bookIds.length];
+		int bucketCount = 0;
+		int total = 0;
+
+		for (int bookId : bookIds) {
+			int row = current.row(bookId);
+			if (row == NO_ROW) {
+				continue;
+			}
+			total++;
+			languageCounts.computeIfAbsent(current.languageCodes[row], code -> new int[1])[0]++;
+			authorCounts.computeIfAbsent(current.authorCodes[row], code -> new int[1])[0]++;
+			if (current.years[row] != NO_YEAR) {
+				buckets[bucketCount++] = Math.floorDiv(current.years[row], yearBucket) * yearBucket;
+			}
+		}
+
+		// Language filters ignore case, so "EN" and "en" are counted together
+		Map<String, Integer> languages = new HashMap<>();
+		for (Map.Entry<Integer, int[]> count : languageCounts.entrySet()) {
+			String language = current.languages[count.getKey()];
+			if (language != null) {
+				languages.merge(language.toLowerCase(), count.getValue()[0], Integer::sum);
+			}
+		}
+
+		Map<String, Integer> authors = new HashMap<>();
+		for (Map.Entry<Integer, int[]> count : authorCounts.entrySet()) {
+			String author = current.authors[count.getKey()];
+			if (author != null) {
+				authors.put(author, count.getValue()[0]);
+			}
+		}
+
+		Arrays.sort(buckets, 0, bucketCount);
+		Map<String, Integer> years = new LinkedHashMap<>();
+		for (int i = 0; i < bucketCount; ) {
+			int start = i;
+			while (i < bucketCount && buckets[i] == buckets[start]) {
+				i++;
+			}
+			String label = yearBucket == 1 ? String.valueOf(buckets[start])
+					: buckets[start] + "-" + (buckets[start] + yearBucket - 1);
+			years.put(label, i - start);
+		}
+
+		return new SearchFacets(total, mostCommon(languages, Integer.MAX_VALUE), years, mostCommon(authors, authorLimit));
+	}
+
+	private static Map<String, Integer> mostCommon(Map<String, Integer> counts, int limit) {
+		Map<String, Integer> sorted = new LinkedHashMap<>();
+		counts.entrySet().stream()
+				.sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.limit(limit)
+				.forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+		return sorted;
+	}
+
+	/**
+	 * The books with the lowest IDs, in ID order
+	 */
+	public List<SearchResult> firstBooks(int limit) {
+		Columns current = columns;
+		int[] bookIds = Arrays.copyOf(current.bookIds, current.size);
+		Arrays.sort(bookIds);
+
+		List<SearchResult> results = new ArrayList<>(Math.min(limit, bookIds.length));
+		for (int i = 0; i < bookIds.length && results.size() < limit; i++) {
+			results.add(current.result(current.row(bookIds[i]), 0));
+		}
+		return results;
+	}
+
+	private static Instant newest(List<IndexedBook> books, Instant fallback) {
+		Instant newest = fallback;
+		for (IndexedBook book : books) {
+			if (book.indexedAt().isAfter(newest)) {
+				newest = book.indexedAt();
+			}
+		}
+		return newest;
+	}
+
+	/**
+	 * One immutable version of the table. Rows are in the order books were first seen;
+	 * author and language columns hold codes into the dictionaries.
+	 */
+	private static final class Columns {
+		final long version;
+		final int size;
+		final int[] bookIds;
+		final String[] titles;
+		final int[] authorCodes;
+		final int[] languageCodes;
+		final int[] years;
+		final String[] paths;
+		final String[] authors;
+		final String[] languages;
+		final int[] rowsById;
+		final Map<Integer, Integer> sparseRows;
+		final MetadataFilterIndex filters;
+
+		private Columns(long version, int size, int[] bookIds, String[] titles, int[] authorCodes, int[] languageCodes,
+						int[] years, String[] paths, String[] authors, String[] languages, int[] rowsById,
+						Map<Integer, Integer> sparseRows) {
+			this.version = version;
+			this.size = size;
+			this.bookIds = bookIds;
+			this.titles = titles;
+			this.authorCodes = authorCodes;
+			this.languageCodes = languageCodes;
+			this.years = years;
+			this.paths = paths;
+			this.authors = authors;
+			this.languages = languages;
+			this.rowsById = rowsById;
+			this.sparseRows = sparseRows;
+			this.filters = MetadataFilterIndex.build(size, bookIds, authorCodes, authors, languageCodes, languages,
+					years, NO_YEAR);
+		}
+
+		static Columns empty(long version) {
+			return new Columns(version, 0, new int[0], new String[0], new int[0], new int[0], new int[0], new String[0],
+					new String[0], new String[0], new int[0], Map.of());
+		}
+
+		int row(int bookId) {
+			if (bookId >= 0 && bookId < rowsById.length) {
+				return rowsById[bookId];
+			}
+			Integer row = sparseRows.get(bookId);
+			return row == null ? NO_ROW : row;
+		}
+
+		Integer year(int row) {
+			return years[row] == NO_YEAR ? null : years[row];
+		}
+
+		SearchResult result(int row, double score) {
+			return new SearchResult(bookIds[row], titles[row], authors[authorCodes[row]],
+					languages[languageCodes[row]], year(row), score);
+		}
+
+		BookMetadata metadata(int row) {
+			return new BookMetadata(bookIds[row], titles[row], authors[authorCodes[row]],
+					languages[languageCodes[row]], year(row), paths[row]);
+		}
+
+		/**
+		 * Copy with the given rows added or updated, or this same instance if none of them changed anything
+		 */
+		Columns with(List<IndexedBook> changes) {
+			Builder builder = null;
+			for (IndexedBook change : changes) {
+				BookMetadata book = change.book();
+				int row = row(book.bookId());
+				if (row != NO_ROW && metadata(row).equals(book)) {
+					continue;
+				}
+				if (builder == null) {
+					builder = new Builder(this, changes.size());
+				}
+				builder.put(book);
+			}
+			return builder == null ? this : builder.build();
+		}
+	}
+
+	private static final class Builder {
+		private final long version;
+		private int size;
+		private int[] bookIds;
+		private String[] titles;
+		private int[] authorCodes;
+		private int[] languageCodes;
+		private int[] years;
+		private String[] paths;
+		private final List<String> authors;
+		private final Map<String, Integer> authorDictionary = new HashMap<>();
+		private final List<String> languages;
+		private final Map<String, Integer> languageDictionary = new HashMap<>();
+		private int[] rowsById;
+		private final Map<Integer, Integer> sparseRows;
+
+		Builder(Columns base, int expectedAdditions) {
+			int capacity = base.size + expectedAdditions;
+			this.version = base.version + 1;
+			this.size = base.size;
+			this.bookIds = Arrays.copyOf(base.bookIds, capacity);
+			this.titles = Arrays.copyOf(base.titles, capacity);
+			this.authorCodes = Arrays.copyOf(base.authorCodes, capacity);
+			this.languageCodes = Arrays.copyOf(base.languageCodes, capacity);
+			this.years = Arrays.copyOf(base.years, capacity);
+			this.paths = Arrays.copyOf(base.paths, capacity);
+			this.authors = new ArrayList<>(Arrays.asList(base.authors));
+			this.languages = new ArrayList<>(Arrays.asList(base.languages));
+			for (int code = 0; code < base.authors.length; code++) {
+				authorDictionary.put(base.authors[code], code);
+			}
+			for (int code = 0; code < base.languages.length; code++) {
+				languageDictionary.put(base.languages[code], code);
+			}
+			this.rowsById = base.rowsById.clone();
+			this.sparseRows = new HashMap<>(base.sparseRows);
+		}
+
+		void put(BookMetadata book) {
+			int row = row(book.bookId());
+			if (row == NO_ROW) {
+				row = size++;
+				setRow(book.bookId(), row);
+			}
+			bookIds[row] = book.bookId();
+			titles[row] = book.title();
+			authorCodes[row] = code(book.author(), authors, authorDictionary);
+			languageCodes[row] = code(book.language(), languages, languageDictionary);
+			years[row] = book.year() == null ? NO_YEAR : book.year();
+			paths[row] = book.path();
+		}
+
+		Columns build() {
+			return new Columns(version, size, bookIds, titles, authorCodes, languageCodes, years, paths,
+					authors.toArray(new String[0]), languages.toArray(new String[0]), rowsById, sparseRows);
+		}
+
+		private int row(int bookId) {
+			if (bookId >= 0 && bookId < rowsById.length) {
+				return rowsById[bookId];
+			}
+			Integer row = sparseRows.get(bookId);
+			return row == null ? NO_ROW : row;
+		}
+
+		private void setRow(int bookId, int row) {
+			if (bookId >= rowsById.length && bookId < Math.max(DIRECT_ID_LIMIT, 4 * size)) {
+				int length = Math.max(bookId + 1, Math.min(rowsById.length * 2, Math.max(DIRECT_ID_LIMIT, 4 * size)));
+				int oldLength = rowsById.length;
+				rowsById = Arrays.copyOf(rowsById, length);
+				Arrays.fill(rowsById, oldLength, length, NO_ROW);
+				// IDs that did not fit before move into the grown table
+				Iterator<Map.Entry<Integer, Integer>> sparse = sparseRows.entrySet().iterator();
+				while (sparse.hasNext()) {
+					Map.Entry<Integer, Integer> entry = sparse.next();
+					if (entry.getKey() >= 0 && entry.getKey() < length) {
+						rowsById[entry.getKey()] = entry.getValue();
+						sparse.remove();
+					}
+				}
+			}
+			if (bookId >= 0 && bookId < rowsById.length) {
+				rowsById[bookId] = row;
+			} else {
+				sparseRows.put(bookId, row);
+			}
+		}
+
+		private static int code(String value, List<String> dictionary, Map<String, Integer> codes) {
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				dictionary.add(value);
+				codes.put(value, code);
+			}
+			return code;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package org.labubus.search.service;
+
+import org.labubus.search.model.SearchResult;
+import org.labubus.search.query.QueryNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of ranked search results, sized by the estimated bytes of each entry
+ * rather than by entry count. Entries are evicted least recently used first, but a new
+ * entry only displaces them if its query has been asked for more often lately than the
+ * least recently used one (TinyLFU admission), so a burst of one-off queries cannot
+ * flush the popular ones. The whole cache is dropped when the index generation changes.
+ */
+public class QueryResultCache {
+	private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+	private static final long ENTRY_OVERHEAD_BYTES = 160;
+	private static final long RESULT_OVERHEAD_BYTES = 96;
+
+	private final long maxBytes;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private final FrequencySketch sketch;
+	private long sizeBytes;
+	private long generation;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long rejections;
+	private long invalidations;
+
+	/**
+	 * @param maxBytes memory budget for cached results, 0 disables caching
+	 */
+	public QueryResultCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		// Assume about 2 KB per entry (a page of ten results) to size the frequency sketch
+		this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(256, maxBytes / 2048)));
+	}
+
+	public boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/**
+	 * @param generation index generation the caller is searching, entries from any other one are dropped
+	 * @return cached results, null on a miss
+	 */
+	public synchronized List<SearchResult> get(Key key, long generation) {
+		if (!isEnabled()) {
+			return null;
+		}
+		checkGeneration(generation);
+		sketch.increment(key.hashCode());
+
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.results();
+	}
+
+	/**
+	 * Cache results computed against {@code generation}; ignored if the index has moved on since
+	 */
+	public synchronized void put(Key key, long generation, List<SearchResult> results) {
+		if (!isEnabled() || generation != this.generation) {
+			return;
+		}
+
+		long weight = weigh(key, results);
+		if (weight > maxBytes) {
+			rejections++;
+			return;
+		}
+
+		Entry previous = entries.remove(key);
+		if (previous != null) {
+			sizeBytes -= previous.weight();
+		}
+
+		if (sizeBytes + weight > maxBytes) {
+			Key victim = entries.keySet().iterator().next();
+			if (sketch.frequency(key.hashCode()) <= sketch.frequency(victim.hashCode())) {
+				rejections++;
+				return;
+			}
+		}
+		Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+		while (sizeBytes + weight > maxBytes) {
+			Map.Entry<Key, Entry> victim = eldest.next();
+			eldest.remove();
+			sizeBytes -= victim.getValue().weight();
+			evictions++;
+		}
+
+		entries.put(key, new Entry(List.copyOf(results), weight));
+		sizeBytes += weight;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		sizeBytes = 0;
+	}
+
+	public synchronized Stats stats() {
+		return new Stats(hits, misses, evictions, rejections, invalidations, entries.size(), sizeBytes, maxBytes);
+	}
+
+	private void checkGeneration(long current) {
+		if (current != generation) {
+			if (!entries.isEmpty()) {
+				invalidations++;
+				logger.debug("Index generation changed, dropping {} cached queries", entries.size());
+			}
+			clear();
+			generation = current;
+		}
+	}
+
+	/**
+	 * Rough heap footprint of an entry: fixed overheads plus two bytes per character
+	 */
+	static long weigh(Key key, List<SearchResult> results) {
+		long bytes = ENTRY_OVERHEAD_BYTES + 2L * key.query().toString().length();
+		for (SearchResult result : results) {
+			bytes += RESULT_OVERHEAD_BYTES + 2L * (length(result.title()) + length(result.author()) + length(result.language()));
+		}
+		return bytes;
+	}
+
+	private static int length(String value) {
+		return value == null ? 0 : value.length();
+	}
+
+	/**
+	 * Normalized form of a search request: the parsed query, so spacing, case and
+	 * redundant operators do not matter, lower-cased filters and the effective limit
+	 */
+	public record Key(QueryNode query, String author, String language, Integer year, int limit) {}
+
+	private record Entry(List<SearchResult> results, long weight) {}
+
+	/**
+	 * @param sizeBytes estimated bytes held by cached results
+	 * @param rejections results not cached because they were too big or asked for less often than the entry they would evict
+	 * @param invalidations times the cache was dropped because the index changed
+	 */
+	public record Stats(long hits, long misses, long evictions, long rejections, long invalidations,
+						int entries, long sizeBytes, long maxBytes) {
+
+		public double hitRate() {
+			long requests = hits + misses;
+			return requests == 0 ? 0 : (double) hits / requests;
+		}
+	}
+
+	/**
+	 * Count-min sketch of recent request frequencies with four-bit counters. All
+	 * counters are halved once every {@code 10 x width} increments, so the counts
+	 * follow what is popular now rather than what was popular since startup.
+	 */
+	private static final class FrequencySketch {
+		private static final int DEPTH = 4;
+		private static final int MAX_COUNT = 15;
+		private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+		private final byte[][] counters;
+		private final int mask;
+		private final int sampleSize;
+		private int additions;
+
+		FrequencySketch(int expectedEntries) {
+			int width = Integer.highestOneBit(Math.max(16, expectedEntries - 1) << 1);
+			this.counters = new byte[DEPTH][width];
+			this.mask = width - 1;
+			this.sampleSize = 10 * width;
+		}
+
+		void increment(int hash) {
+			for (int row = 0; row < DEPTH; row++) {
+				int index = index(hash, row);
+				if (counters[row][index] < MAX_COUNT) {
+					counters[row][index]++;
+				}
+			}
+			if (++additions == sampleSize) {
+				age();
+			}
+		}
+
+		int frequency(int hash) {
+			int frequency = MAX_COUNT;
+			for (int row = 0; row < DEPTH; row++) {
+				frequency = Math.min(frequency, counters[row][index(hash, row)]);
+			}
+			return frequency;
+		}
+
+		private int index(int hash, int row) {
+			int h = hash * SEEDS[row];
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		private void age() {
+			for (byte[] row : counters) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] >>= 1;
+				}
+			}
+			additions /= 2;
+		}
+	}
+}
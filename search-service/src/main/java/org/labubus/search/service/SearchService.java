@@ -1,166 +1,209 @@
 package org.labubus.search.service;
 
 import org.labubus.search.indexer.InvertedIndexReader;
-import org.labubus.search.model.BookMetadata;
+import org.labubus.search.model.SearchFacets;
 import org.labubus.search.model.SearchResult;
-import org.labubus.search.repository.MetadataRepository;
+import org.labubus.search.postings.BitmapDocSet;
+import org.labubus.search.postings.DocSet;
+import org.labubus.search.postings.PostingsEngine;
+import org.labubus.search.postings.RoaringBitmap;
+import org.labubus.search.query.QueryNode;
+import org.labubus.search.query.QueryParser;
+import org.labubus.search.query.QueryPlanner;
+import org.labubus.search.query.StopWords;
+import org.labubus.search.ranking.Bm25Scorer;
+import org.labubus.search.ranking.ScoredBook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.sql.SQLException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SearchService {
 	private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
 
-	private final MetadataRepository metadataRepository;
+	private final MetadataStore metadataStore;
 	private final InvertedIndexReader indexReader;
+	private final PostingsEngine postingsEngine;
+	private final QueryParser queryParser;
+	private final StopWords stopWords;
+	private final Bm25Scorer scorer;
 	private final int maxResults;
+	private final boolean fuzzyFallback;
+	private final QueryResultCache resultCache;
 
-	public SearchService(MetadataRepository metadataRepository, InvertedIndexReader indexReader, int maxResults) {
-		this.metadataRepository = metadataRepository;
+	/**
+	 * @param stopWords words the indexer leaves out, which phrases skip over
+	 * @param fuzzyFallback retry a query that matches nothing with its unknown words made fuzzy
+	 */
+	public SearchService(MetadataStore metadataStore, InvertedIndexReader indexReader,
+						 PostingsEngine postingsEngine, QueryParser queryParser, StopWords stopWords, Bm25Scorer scorer,
+						 int maxResults, boolean fuzzyFallback, QueryResultCache resultCache) {
+		this.metadataStore = metadataStore;
 		this.indexReader = indexReader;
+		this.postingsEngine = postingsEngine;
+		this.queryParser = queryParser;
+		this.stopWords = stopWords;
+		this.scorer = scorer;
 		this.maxResults = maxResults;
+		this.fuzzyFallback = fuzzyFallback;
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Search for books by boolean keyword query
+	 * @throws IllegalArgumentException if the query cannot be parsed
+	 */
+	public List<SearchResult> search(String query, String author, String language, Integer year, Integer limit) {
+		return execute(query, author, language, year, limit, null).results();
 	}
 
 	/**
-	 * Search for books by keyword query
+	 * Search, and also count every matching book by language, year bucket and author
+	 * @param yearBucket width of the year buckets, 1 for single years
+	 * @param authorLimit how many of the most common authors to count
+	 * @throws IllegalArgumentException if the query cannot be parsed or the bucket is below 1
 	 */
-	public List<SearchResult> search(String query, String author, String language, Integer year, Integer limit) throws SQLException {
+	public FacetedResults searchWithFacets(String query, String author, String language, Integer year,
+										   Integer limit, int yearBucket, int authorLimit) {
+		return execute(query, author, language, year, limit, new FacetRequest(yearBucket, authorLimit));
+	}
+
+	/**
+	 * @param facetRequest null to skip facets, which lets a cached result be returned without evaluating the query
+	 */
+	private FacetedResults execute(String query, String author, String language, Integer year, Integer limit,
+								   FacetRequest facetRequest) {
 		logger.info("Search query: '{}', author: '{}', language: '{}', year: {}, limit: {}",
 				query, author, language, year, limit);
 
 		int resultLimit = (limit != null && limit > 0) ? Math.min(limit, maxResults) : maxResults;
+		// The cache key and the filter must see the same values, or differently spelled filters share results
+		String authorFilter = normalizeFilter(author);
+		String languageFilter = normalizeFilter(language);
 
-		Set<Integer> matchingBookIds = searchIndex(query);
-		logger.debug("Found {} books matching query in index", matchingBookIds.size());
-
-		if (matchingBookIds.isEmpty()) {
-			return Collections.emptyList();
+		if (query == null || query.trim().isEmpty()) {
+			logger.warn("Empty search query");
+			return new FacetedResults(Collections.emptyList(), facetRequest == null ? null : SearchFacets.EMPTY);
 		}
 
-		List<BookMetadata> matchingBooks = metadataRepository.findByIds(new ArrayList<>(matchingBookIds));
-		logger.debug("Retrieved metadata for {} books", matchingBooks.size());
+		// Every lookup, score and the cache generation come from the index version the query started on
+		try (InvertedIndexReader.Pinned pinned = indexReader.pin()) {
+			InvertedIndexReader reader = pinned.reader();
+			long generation = 31 * reader.generation() + metadataStore.version();
+			QueryNode parsed = queryParser.parse(query);
+			QueryResultCache.Key cacheKey = new QueryResultCache.Key(parsed, authorFilter,
+					languageFilter, year, resultLimit);
+			List<SearchResult> cached = resultCache.get(cacheKey, generation);
+			if (cached != null && facetRequest == null) {
+				logger.info("Returning {} cached search results", cached.size());
+				return new FacetedResults(cached, null);
+			}
 
-		List<BookMetadata> filteredBooks = applyFilters(matchingBooks, author, language, year);
-		logger.debug("After filtering: {} books", filteredBooks.size());
+			Match match = match(plannerFor(reader), parsed);
+			QueryNode parsedQuery = match.query();
+			DocSet candidates = match.bookIds();
+			logger.debug("Found {} books matching query in index", candidates.cardinality());
 
-		List<SearchResult> results = rankResults(filteredBooks, query);
+			// Filters are precomputed bitmaps, so they narrow the matches before anything is scored or looked up
+			RoaringBitmap filter = candidates.isEmpty() ? null : metadataStore.matching(authorFilter, languageFilter, year);
+			if (filter != null) {
+				candidates = candidates.and(new BitmapDocSet(filter));
+				logger.debug("After filtering: {} books", candidates.cardinality());
+			}
 
-		if (results.size() > resultLimit) {
-			results = results.subList(0, resultLimit);
-		}
+			List<SearchResult> results = cached;
+			if (results == null) {
+				results = candidates.isEmpty() ? Collections.emptyList()
+						: toResults(scorer.withReader(reader).topK(candidates, parsedQuery.positiveTerms(), resultLimit));
+				resultCache.put(cacheKey, generation, results);
+			}
 
-		logger.info("Returning {} search results", results.size());
-		return results;
+			SearchFacets facets = null;
+			if (facetRequest != null) {
+				facets = metadataStore.facets(candidates.toArray(), facetRequest.yearBucket(), facetRequest.authorLimit());
+			}
+			logger.info("Returning {} search results", results.size());
+			return new FacetedResults(results, facets);
+		}
 	}
 
 	/**
-	 * Search inverted index for books containing query words
+	 * Keep ranking order; books missing from the metadata store are dropped
 	 */
-	private Set<Integer> searchIndex(String query) {
-		if (query == null || query.trim().isEmpty()) {
-			logger.warn("Empty search query");
-			return Collections.emptySet();
-		}
-
-		String[] words = query.toLowerCase().trim().split("\\s+");
-
-		List<Set<Integer>> wordResults = new ArrayList<>();
-		for (String word : words) {
-			Set<Integer> bookIds = indexReader.search(word);
-			if (!bookIds.isEmpty()) {
-				wordResults.add(bookIds);
+	private List<SearchResult> toResults(List<ScoredBook> ranked) {
+		List<SearchResult> results = new ArrayList<>(ranked.size());
+		for (ScoredBook scored : ranked) {
+			SearchResult result = metadataStore.toResult(scored.bookId(), scored.score());
+			if (result != null) {
+				results.add(result);
 			}
 		}
-
-		if (wordResults.isEmpty()) {
-			return Collections.emptySet();
-		}
-
-		Set<Integer> allResults = new HashSet<>();
-		for (Set<Integer> result : wordResults) {
-			allResults.addAll(result);
-		}
-
-		return allResults;
+		return results;
 	}
 
 	/**
-	 * Apply filters to book list
+	 * Count books matching a query without fetching their metadata
 	 */
-	private List<BookMetadata> applyFilters(List<BookMetadata> books, String author, String language, Integer year) {
-		return books.stream()
-				.filter(book -> author == null || book.author().toLowerCase().contains(author.toLowerCase()))
-				.filter(book -> language == null || book.language().equalsIgnoreCase(language))
-				.filter(book -> year == null || (book.year() != null && book.year().equals(year)))
-				.collect(Collectors.toList());
+	public int countMatches(String query) {
+		if (query == null || query.trim().isEmpty()) {
+			return 0;
+		}
+		QueryNode parsed = queryParser.parse(query);
+		try (InvertedIndexReader.Pinned pinned = indexReader.pin()) {
+			return match(plannerFor(pinned.reader()), parsed).bookIds().cardinality();
+		}
 	}
 
 	/**
-	 * Rank results by relevance score
+	 * Planner over one pinned index version; engine caches are shared across queries
 	 */
-	private List<SearchResult> rankResults(List<BookMetadata> books, String query) {
-		String[] queryWords = query.toLowerCase().trim().split("\\s+");
-
-		return books.stream()
-				.map(book -> {
-					int score = calculateScore(book, queryWords);
-					return SearchResult.fromMetadata(book, score);
-				})
-				.sorted(Comparator.comparingInt(SearchResult::score).reversed())
-				.collect(Collectors.toList());
+	private QueryPlanner plannerFor(InvertedIndexReader reader) {
+		return new QueryPlanner(postingsEngine.over(reader), stopWords);
 	}
 
 	/**
-	 * Calculate relevance score for a book
+	 * Evaluate a parsed query, retrying with fuzzy words if it matches nothing
 	 */
-	private int calculateScore(BookMetadata book, String[] queryWords) {
-		int score = 0;
-		String titleLower = book.title().toLowerCase();
-		String authorLower = book.author().toLowerCase();
-
-		for (String word : queryWords) {
-			if (titleLower.contains(word)) {
-				score += 10;
+	private Match match(QueryPlanner queryPlanner, QueryNode query) {
+		QueryNode parsedQuery = queryPlanner.rewrite(query);
+		DocSet bookIds = queryPlanner.evaluate(parsedQuery);
+
+		if (bookIds.isEmpty() && fuzzyFallback) {
+			QueryNode fuzzyQuery = queryPlanner.fuzzyFallback(parsedQuery);
+			if (!fuzzyQuery.equals(parsedQuery)) {
+				logger.debug("No matches for '{}', retrying with fuzzy words", query);
+				return new Match(fuzzyQuery, queryPlanner.evaluate(fuzzyQuery));
 			}
+		}
+		return new Match(parsedQuery, bookIds);
+	}
 
-			if (authorLower.contains(word)) {
-				score += 5;
-			}
+	private record Match(QueryNode query, DocSet bookIds) {}
 
-			Set<Integer> bookIds = indexReader.search(word);
-			if (bookIds.contains(book.bookId())) {
-				score += 1;
-			}
-		}
+	private record FacetRequest(int yearBucket, int authorLimit) {}
 
-		return score;
+	/**
+	 * @param facets counts over every matching book, not just the returned page; null if not requested
+	 */
+	public record FacetedResults(List<SearchResult> results, SearchFacets facets) {}
+
+	private static String normalizeFilter(String value) {
+		return value == null ? null : value.trim().toLowerCase();
 	}
 
 	/**
 	 * Get all books (no search)
 	 */
-	public List<SearchResult> getAllBooks(Integer limit) throws SQLException {
+	public List<SearchResult> getAllBooks(Integer limit) {
 		int resultLimit = (limit != null && limit > 0) ? Math.min(limit, maxResults) : maxResults;
-
-		List<BookMetadata> books = metadataRepository.findAll();
-
-		if (books.size() > resultLimit) {
-			books = books.subList(0, resultLimit);
-		}
-
-		return books.stream()
-				.map(book -> SearchResult.fromMetadata(book, 0))
-				.collect(Collectors.toList());
+		return metadataStore.firstBooks(resultLimit);
 	}
 
 	/**
 	 * Get search statistics
 	 */
-	public SearchStats getStats() throws SQLException {
-		int totalBooks = metadataRepository.count();
+	public SearchStats getStats() {
+		int totalBooks = metadataStore.size();
 		InvertedIndexReader.IndexStats indexStats = indexReader.getStats();
 
 		return new SearchStats(
@@ -168,7 +211,8 @@ public class SearchService {
 				indexStats.uniqueWords(),
 				indexStats.totalMappings(),
 				indexStats.sizeInMB(),
-				indexReader.isLoaded()
+				indexReader.isLoaded(),
+				resultCache.stats()
 		);
 	}
 
@@ -177,6 +221,7 @@ public class SearchService {
 			int uniqueWords,
 			int totalMappings,
 			double indexSizeMB,
-			boolean indexLoaded
+			boolean indexLoaded,
+			QueryResultCache.Stats queryCache
 	) {}
 }
\ No newline at end of file
@@ -1,12 +1,57 @@
 package org.labubus.search;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.labubus.indexing.indexer.BinaryIndexWriter;
+import org.labubus.indexing.indexer.MergePolicy;
+import org.labubus.indexing.indexer.SegmentedIndexWriter;
+import org.labubus.indexing.service.InvertedIndexBuilder;
+import org.labubus.search.indexer.BinaryIndexReader;
+import org.labubus.search.indexer.FrontCodedDictionary;
 import org.labubus.search.indexer.InvertedIndexReader;
 import org.labubus.search.indexer.JsonIndexReader;
+import org.labubus.search.indexer.LevenshteinAutomaton;
+import org.labubus.search.indexer.PositionsCursor;
+import org.labubus.search.indexer.PostingList;
+import org.labubus.search.indexer.ReloadableIndexReader;
+import org.labubus.search.indexer.SegmentedIndexReader;
+import org.labubus.search.indexer.TermPostings;
+import org.labubus.search.model.SearchFacets;
+import org.labubus.search.model.SearchResult;
+import org.labubus.search.postings.ArrayDocSet;
+import org.labubus.search.postings.BitmapDocSet;
+import org.labubus.search.postings.BitmapPostingsEngine;
+import org.labubus.search.postings.ArrayPostingsEngine;
+import org.labubus.search.postings.DocSet;
+import org.labubus.search.postings.PostingsEngine;
+import org.labubus.search.query.QueryNode;
+import org.labubus.search.query.QueryParser;
+import org.labubus.search.query.QueryPlanner;
+import org.labubus.search.query.StopWords;
+import org.labubus.search.ranking.Bm25Scorer;
+import org.labubus.search.ranking.ScoredBook;
+import org.labubus.search.repository.SqliteMetadataRepository;
+import org.labubus.search.service.MetadataStore;
+import org.labubus.search.service.QueryResultCache;
+import org.labubus.search.service.SearchService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -109,4 +154,956 @@ public class SearchServiceTest {
 		Files.delete(indexFile);
 		Files.delete(tempDir);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testPostingListSetAlgebra() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-postings");
+		Path indexFile = tempDir.resolve("test_index.json");
+
+		String testIndex = """
+            {
+              "alice": [84, 11, 42],
+              "rabbit": [11, 84, 99]
+            }
+        """;
+
+		Files.writeString(indexFile, testIndex);
+
+		JsonIndexReader reader = new JsonIndexReader(tempDir.toString(), "test_index.json");
+		reader.load();
+
+		PostingList alice = reader.postings("alice");
+		PostingList rabbit = reader.postings("rabbit");
+
+		assertArrayEquals(new int[]{11, 42, 84}, alice.toIntArray());
+		assertArrayEquals(new int[]{11, 84}, PostingList.intersect(alice, rabbit).toIntArray());
+		assertArrayEquals(new int[]{11, 42, 84, 99}, PostingList.union(alice, rabbit).toIntArray());
+		assertEquals(Set.of(11, 42, 84), reader.search("alice"));
+
+		System.out.println("Posting list set algebra test passed!");
+
+		// Cleanup
+		Files.delete(indexFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testBitmapDocSetMatchesArrays() {
+		// Dense run crosses the array/bitmap container threshold, sparse tail spans several chunks
+		PostingList dense = new PostingList();
+		for (int i = 0; i < 10000; i++) {
+			dense.addInt(i * 2);
+		}
+		PostingList sparse = new PostingList();
+		for (int i = 0; i < 200; i++) {
+			sparse.addInt(i * 1000);
+		}
+		sparse.addInt(500_000);
+
+		DocSet denseBits = BitmapDocSet.of(dense);
+		DocSet sparseBits = BitmapDocSet.of(sparse);
+		DocSet sparseArray = new ArrayDocSet(sparse);
+
+		assertEquals(10000, denseBits.cardinality());
+		assertTrue(denseBits.contains(19998));
+		assertFalse(denseBits.contains(19999));
+
+		assertArrayEquals(PostingList.intersect(dense, sparse).toIntArray(), denseBits.and(sparseBits).toArray());
+		assertArrayEquals(PostingList.union(dense, sparse).toIntArray(), denseBits.or(sparseBits).toArray());
+		assertArrayEquals(PostingList.difference(dense, sparse).toIntArray(), denseBits.andNot(sparseBits).toArray());
+		assertArrayEquals(PostingList.difference(sparse, dense).toIntArray(), sparseArray.andNot(denseBits).toArray());
+		assertEquals(PostingList.intersect(dense, sparse).size(), denseBits.andCardinality(sparseArray));
+
+		System.out.println("Bitmap doc set test passed!");
+	}
+
+	@Test
+	public void testBooleanQueries() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-boolean");
+		Path indexFile = tempDir.resolve("test_index.json");
+
+		String testIndex = """
+            {
+              "alice": [11, 42],
+              "wonderland": [11],
+              "rabbit": [11, 84],
+              "pride": [1342],
+              "prejudice": [1342]
+            }
+        """;
+
+		Files.writeString(indexFile, testIndex);
+
+		JsonIndexReader reader = new JsonIndexReader(tempDir.toString(), "test_index.json");
+		reader.load();
+
+		QueryParser parser = new QueryParser(QueryParser.Operator.AND);
+		QueryPlanner planner = new QueryPlanner(new ArrayPostingsEngine(reader));
+
+		assertArrayEquals(new int[]{11}, planner.evaluate(parser.parse("alice rabbit")).toArray());
+		assertArrayEquals(new int[]{11, 42, 1342}, planner.evaluate(parser.parse("alice OR pride")).toArray());
+		assertArrayEquals(new int[]{42}, planner.evaluate(parser.parse("alice NOT rabbit")).toArray());
+		assertArrayEquals(new int[]{42, 84, 1342},
+				planner.evaluate(parser.parse("(alice OR rabbit OR pride) AND NOT wonderland")).toArray());
+		assertArrayEquals(new int[]{1342}, planner.evaluate(parser.parse("\"Pride Prejudice\"")).toArray());
+		// Only stop words may be missing from a phrase, an unknown word means no match
+		assertTrue(planner.evaluate(parser.parse("\"pride zzzz prejudice\"")).isEmpty());
+		QueryPlanner stopWordPlanner = new QueryPlanner(new ArrayPostingsEngine(reader), StopWords.parse("and, Of", 3, 50));
+		assertArrayEquals(new int[]{1342}, stopWordPlanner.evaluate(parser.parse("\"pride and prejudice\"")).toArray());
+		assertArrayEquals(new int[]{1342}, stopWordPlanner.evaluate(parser.parse("\"pride of an prejudice\"")).toArray());
+		assertTrue(stopWordPlanner.evaluate(parser.parse("\"pride zzzz prejudice\"")).isEmpty());
+		assertTrue(stopWordPlanner.evaluate(parser.parse("\"and of\"")).isEmpty());
+		// Unquoted stop words and words under the minimum length are not in the index and are left out
+		assertArrayEquals(new int[]{1342}, stopWordPlanner.evaluate(parser.parse("pride and prejudice")).toArray());
+		assertArrayEquals(new int[]{11}, stopWordPlanner.evaluate(parser.parse("alice of an wonderland")).toArray());
+		assertArrayEquals(new int[]{11, 42, 1342}, stopWordPlanner.evaluate(new QueryParser(QueryParser.Operator.OR).parse("alice of pride")).toArray());
+		assertTrue(stopWordPlanner.evaluate(parser.parse("and of an")).isEmpty());
+		assertTrue(stopWordPlanner.evaluate(parser.parse("of NOT alice")).isEmpty());
+		assertEquals(0, stopWordPlanner.estimate(parser.parse("and of")));
+		assertTrue(planner.evaluate(parser.parse("pride and prejudice")).isEmpty());
+		assertArrayEquals(new int[]{42, 84, 1342}, planner.evaluate(parser.parse("NOT wonderland")).toArray());
+		assertTrue(planner.evaluate(parser.parse("alice missing rabbit")).isEmpty());
+
+		QueryParser orParser = new QueryParser(QueryParser.Operator.OR);
+		assertArrayEquals(new int[]{11, 42, 84}, planner.evaluate(orParser.parse("alice rabbit")).toArray());
+		assertEquals(List.of("alice", "rabbit"), parser.parse("alice NOT wonderland rabbit").positiveTerms());
+		assertInstanceOf(QueryNode.Phrase.class, parser.parse("\"alice wonderland\""));
+		assertEquals(new QueryNode.Near("alice", "rabbit", 3), parser.parse("alice NEAR/3 rabbit"));
+		// Without positions in the index, phrases and NEAR fall back to AND
+		assertArrayEquals(new int[]{11}, planner.evaluate(parser.parse("rabbit NEAR/3 alice")).toArray());
+
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("(alice OR rabbit"));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("alice AND"));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("\"alice"));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("alice NEAR/3"));
+
+		System.out.println("Boolean query test passed!");
+
+		// Cleanup
+		Files.delete(indexFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testPhraseAndNearOverPositions(@TempDir Path tempDir) throws Exception {
+		BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "positional", true);
+		InvertedIndexBuilder builder = new InvertedIndexBuilder(writer, 3, 50, Set.of("and", "the", "of"));
+		builder.indexBook(1342, "Pride and Prejudice is the story of pride");
+		builder.indexBook(11, "Prejudice and pride in Wonderland");
+		builder.indexBook(84, "pride came long before any prejudice");
+		builder.indexBook(7, "The book of pride prejudice");
+		writer.save();
+
+		BinaryIndexReader reader = new BinaryIndexReader(tempDir.toString(), "positional");
+		reader.load();
+		assertTrue(reader.hasPositions());
+
+		// Stop words and short words still count towards positions
+		PositionsCursor pride = reader.positions("pride");
+		assertTrue(pride.advanceTo(1342));
+		assertArrayEquals(new int[]{0, 7}, pride.positions());
+		assertFalse(pride.advanceTo(1343));
+
+		QueryParser parser = new QueryParser(QueryParser.Operator.AND);
+		StopWords stopWords = StopWords.parse("and,the,of", 3, 50);
+		for (PostingsEngine engine : List.of(new ArrayPostingsEngine(reader), new BitmapPostingsEngine(reader, 16))) {
+			QueryPlanner planner = new QueryPlanner(engine, stopWords);
+
+			// Word order and the gaps left by stop words both matter
+			assertArrayEquals(new int[]{1342}, planner.evaluate(parser.parse("\"pride and prejudice\"")).toArray());
+			assertArrayEquals(new int[]{11}, planner.evaluate(parser.parse("\"prejudice and pride\"")).toArray());
+			assertArrayEquals(new int[]{7}, planner.evaluate(parser.parse("\"pride prejudice\"")).toArray());
+			assertTrue(planner.evaluate(parser.parse("\"prejudice pride\"")).isEmpty());
+			assertArrayEquals(new int[]{1342}, planner.evaluate(parser.parse("\"story of pride\"")).toArray());
+			assertArrayEquals(new int[]{1342}, planner.evaluate(parser.parse("\"pride and prejudice is\"")).toArray());
+			assertTrue(planner.evaluate(parser.parse("\"pride zzzz prejudice\"")).isEmpty());
+
+			// NEAR/k does not care about order
+			assertArrayEquals(new int[]{7, 11, 1342}, planner.evaluate(parser.parse("pride NEAR/2 prejudice")).toArray());
+			assertArrayEquals(new int[]{7, 11, 1342}, planner.evaluate(parser.parse("prejudice NEAR/2 pride")).toArray());
+			assertArrayEquals(new int[]{7}, planner.evaluate(parser.parse("prejudice NEAR/1 pride")).toArray());
+			assertArrayEquals(new int[]{7, 11, 84, 1342}, planner.evaluate(parser.parse("prejudice NEAR/5 pride")).toArray());
+			assertArrayEquals(new int[]{7, 84, 1342}, planner.evaluate(parser.parse("NOT wonderland")).toArray());
+		}
+
+		System.out.println("Phrase and NEAR over positions test passed!");
+	}
+
+	@Test
+	public void testSegmentedReaderOverRealSegments(@TempDir Path tempDir) throws Exception {
+		// One segment per save, never merged until the writer is reopened with another policy
+		SegmentedIndexWriter writer = new SegmentedIndexWriter(tempDir.toString(), true, MergePolicy.NONE, 1, 0);
+		writer.load();
+		InvertedIndexBuilder builder = new InvertedIndexBuilder(writer, 3, 50, Set.of("the", "and"));
+		builder.indexBook(11, "white rabbit follows Alice");
+		writer.save();
+		builder.indexBook(1342, "Pride and prejudice and white lies");
+		writer.save();
+		builder.indexBook(11, "Alice looking through white glass");
+		writer.save();
+		assertEquals(3, writer.segments().size());
+
+		SegmentedIndexReader reader = new SegmentedIndexReader(tempDir.toString());
+		reader.load();
+		QueryParser parser = new QueryParser(QueryParser.Operator.AND);
+		QueryPlanner planner = new QueryPlanner(new ArrayPostingsEngine(reader), StopWords.parse("the,and", 3, 50));
+
+		// The newest segment hides book 11's first version
+		assertEquals(0, reader.postings("rabbit").size());
+		assertEquals(Set.of(11, 1342), reader.postings("white"));
+		assertEquals(2, reader.termPostings("white").size());
+		assertArrayEquals(new int[]{11, 1342}, reader.documentIds().toIntArray());
+		assertEquals(2, reader.corpusStats().documentCount());
+		assertEquals(5, reader.documentLength(11));
+
+		// Per-segment counts add up without materializing the index: 4 + 4 + 5 words
+		InvertedIndexReader.IndexStats stats = reader.getStats();
+		assertEquals(13, stats.uniqueWords());
+		assertEquals(13, stats.totalMappings());
+
+		// Positions from two segments come back as one cursor, hidden books left out
+		PositionsCursor white = reader.positions("white");
+		assertTrue(white.advanceTo(11));
+		assertArrayEquals(new int[]{3}, white.positions());
+		assertTrue(white.advanceTo(1342));
+		assertArrayEquals(new int[]{4}, white.positions());
+		assertArrayEquals(new int[]{11}, planner.evaluate(parser.parse("\"white glass\"")).toArray());
+		assertArrayEquals(new int[]{1342}, planner.evaluate(parser.parse("\"prejudice and white\"")).toArray());
+		assertTrue(planner.evaluate(parser.parse("\"white rabbit\"")).isEmpty());
+
+		// Merge everything in the background; the open snapshot keeps answering meanwhile
+		SegmentedIndexWriter merging = new SegmentedIndexWriter(tempDir.toString(), true,
+				segments -> segments.size() > 1 ? segments : List.of(), 1, 0);
+		merging.load();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (merging.segments().size() > 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(1, merging.segments().size());
+		assertArrayEquals(new int[]{11}, planner.evaluate(parser.parse("\"white glass\"")).toArray());
+
+		long generation = reader.generation();
+		InvertedIndexReader.Pinned beforeMerge = reader.pin();
+		assertTrue(reader.refresh());
+		assertEquals(generation, beforeMerge.reader().generation());
+		assertEquals(13, beforeMerge.reader().getStats().uniqueWords());
+		assertArrayEquals(new int[]{11}, new QueryPlanner(new ArrayPostingsEngine(beforeMerge.reader()))
+				.evaluate(parser.parse("\"white glass\"")).toArray());
+		beforeMerge.close();
+		assertTrue(reader.generation() > generation);
+		assertEquals(Set.of(11, 1342), reader.postings("white"));
+		assertEquals(0, reader.postings("rabbit").size());
+		assertEquals(5, reader.documentLength(11));
+		assertArrayEquals(new int[]{11}, planner.evaluate(parser.parse("\"white glass\"")).toArray());
+		assertArrayEquals(new int[]{1342}, planner.evaluate(parser.parse("\"prejudice and white\"")).toArray());
+		assertEquals(new InvertedIndexReader.IndexStats(8, 9, reader.getStats().sizeInMB()), reader.getStats());
+
+		System.out.println("Segmented reader test passed!");
+	}
+
+	@Test
+	public void testBm25TopK() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-bm25");
+		Path indexFile = tempDir.resolve("test_index.json");
+
+		String testIndex = """
+            {
+              "alice": [11, 42, 84, 99],
+              "rabbit": [11, 84],
+              "pride": [1342]
+            }
+        """;
+
+		Files.writeString(indexFile, testIndex);
+
+		JsonIndexReader reader = new JsonIndexReader(tempDir.toString(), "test_index.json");
+		reader.load();
+
+		Bm25Scorer scorer = new Bm25Scorer(reader, 1.2, 0.75);
+		int[] candidates = {11, 42, 84, 99, 1342};
+		List<ScoredBook> top = scorer.topK(candidates, List.of("alice", "rabbit", "pride"), 3);
+
+		// Rare "pride" outweighs common "alice"; books with both alice and rabbit tie and break by ID
+		assertEquals(List.of(1342, 11, 84), top.stream().map(ScoredBook::bookId).toList());
+		assertTrue(top.get(0).score() > top.get(1).score());
+		assertEquals(top.get(1).score(), top.get(2).score(), 1e-9);
+		assertEquals(5, scorer.topK(candidates, List.of("alice"), 10).size());
+
+		System.out.println("BM25 top-k test passed!");
+
+		// Cleanup
+		Files.delete(indexFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testWandMatchesExhaustiveTopK(@TempDir Path tempDir) throws Exception {
+		// Terms from very common to rare so pruning has something to skip, with skewed
+		// frequencies and lengths so block maxima and length normalisation differ per book
+		Random random = new Random(42);
+		BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "wand");
+		String[] words = {"common", "frequent", "usual", "rare", "unique"};
+		int[] percentages = {90, 60, 30, 5, 1};
+		for (int bookId = 1; bookId <= 2000; bookId++) {
+			int length = 0;
+			for (int w = 0; w < words.length; w++) {
+				if (random.nextInt(100) < percentages[w]) {
+					int frequency = 1 + random.nextInt(1 + random.nextInt(40));
+					writer.addWord(words[w], bookId, frequency);
+					length += frequency;
+				}
+			}
+			writer.setDocumentLength(bookId, length + random.nextInt(random.nextBoolean() ? 200 : 20000));
+		}
+		writer.save();
+
+		BinaryIndexReader reader = new BinaryIndexReader(tempDir.toString(), "wand");
+		reader.load();
+		InvertedIndexReader.CorpusStats stats = reader.corpusStats();
+		assertTrue(stats.averageLength() > stats.minLength() && stats.minLength() > 0);
+		assertTrue(reader.termPostings("common").bookIds().size() > 1000);
+
+		ArrayPostingsEngine engine = new ArrayPostingsEngine(reader);
+		QueryPlanner planner = new QueryPlanner(engine);
+		QueryParser parser = new QueryParser(QueryParser.Operator.OR);
+		Bm25Scorer exhaustive = new Bm25Scorer(reader, 1.2, 0.75, false);
+		Bm25Scorer wand = new Bm25Scorer(reader, 1.2, 0.75, true);
+
+		for (String query : List.of("common frequent usual rare unique", "common rare", "usual NOT rare", "common frequent", "common")) {
+			QueryNode parsed = parser.parse(query);
+			DocSet matches = planner.evaluate(parsed);
+			for (int k : new int[]{1, 10, 100}) {
+				assertEquals(exhaustive.topK(matches, parsed.positiveTerms(), k),
+						wand.topK(matches, parsed.positiveTerms(), k), query + " k=" + k);
+			}
+		}
+
+		// Lengths and frequencies really shape the ranking: the best "common" book is not simply the most frequent one
+		List<ScoredBook> best = exhaustive.topK(planner.evaluate(parser.parse("common")), List.of("common"), 1);
+		TermPostings common = reader.termPostings("common");
+		int mostFrequent = 0;
+		for (int i = 1; i < common.size(); i++) {
+			if (common.frequencyAt(i) > common.frequencyAt(mostFrequent)) {
+				mostFrequent = i;
+			}
+		}
+		assertNotEquals(common.bookIdAt(mostFrequent), best.get(0).bookId());
+
+		System.out.println("WAND top-k test passed!");
+	}
+
+	@Test
+	public void testReloadSwapsIndexWithoutRestart() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-reload");
+		Path indexFile = tempDir.resolve("test_index.json");
+		Files.writeString(indexFile, "{\"alice\": [1, 2], \"rabbit\": [2]}");
+
+		ReloadableIndexReader reader = new ReloadableIndexReader(
+				() -> new JsonIndexReader(tempDir.toString(), "test_index.json"), indexFile);
+		reader.load();
+
+		QueryPlanner planner = new QueryPlanner(new ArrayPostingsEngine(reader));
+		QueryParser parser = new QueryParser(QueryParser.Operator.OR);
+		assertEquals(2, planner.evaluate(parser.parse("alice rabbit")).cardinality());
+		long generation = reader.generation();
+
+		Files.writeString(indexFile, "{\"alice\": [1, 2, 3], \"hatter\": [4]}");
+		assertEquals(1, reader.status().version(), "nothing is swapped before a reload");
+		assertEquals(2, reader.reload().get().version());
+
+		assertNotEquals(generation, reader.generation());
+		assertArrayEquals(new int[]{1, 2, 3}, reader.postings("alice").toIntArray());
+		assertTrue(reader.search("rabbit").isEmpty());
+		assertEquals(4, planner.evaluate(parser.parse("alice hatter")).cardinality());
+
+		// A broken file must not replace the index being served
+		Files.writeString(indexFile, "{\"alice\": [1,");
+		assertThrows(ExecutionException.class, () -> reader.reload().get());
+		assertEquals(2, reader.status().version());
+		assertArrayEquals(new int[]{1, 2, 3}, reader.postings("alice").toIntArray());
+
+		// The watcher picks up the next complete write by itself
+		Files.writeString(indexFile, "{\"alice\": [7]}");
+		reader.watch(20);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (reader.status().version() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertEquals(3, reader.status().version());
+		assertArrayEquals(new int[]{7}, reader.postings("alice").toIntArray());
+
+		// A lookup that races with a reload must not leave what it read from the old index cached
+		AtomicReference<Runnable> midRead = new AtomicReference<>();
+		ReloadableIndexReader racing = new ReloadableIndexReader(() -> new JsonIndexReader(tempDir.toString(), "test_index.json") {
+			@Override
+			public PostingList postings(String word) {
+				PostingList postings = super.postings(word);
+				runOnce(midRead);
+				return postings;
+			}
+
+			@Override
+			public PostingList documentIds() {
+				PostingList documentIds = super.documentIds();
+				runOnce(midRead);
+				return documentIds;
+			}
+		}, null);
+		racing.load();
+		BitmapPostingsEngine bitmaps = new BitmapPostingsEngine(racing, 16);
+		ArrayPostingsEngine arrays = new ArrayPostingsEngine(racing);
+
+		midRead.set(() -> {
+			reloadWith(racing, indexFile, "{\"alice\": [8, 9]}");
+			bitmaps.lookup("rabbit");
+		});
+		assertArrayEquals(new int[]{7}, bitmaps.lookup("alice").toArray());
+		assertArrayEquals(new int[]{8, 9}, bitmaps.lookup("alice").toArray());
+		assertEquals(2, bitmaps.documentFrequency("alice"));
+
+		midRead.set(() -> {
+			reloadWith(racing, indexFile, "{\"alice\": [8, 9], \"hatter\": [10]}");
+			arrays.allDocuments();
+			bitmaps.allDocuments();
+		});
+		assertArrayEquals(new int[]{8, 9}, arrays.allDocuments().toArray());
+		assertArrayEquals(new int[]{8, 9, 10}, arrays.allDocuments().toArray());
+		assertArrayEquals(new int[]{8, 9, 10}, bitmaps.allDocuments().toArray());
+
+		System.out.println("Index reload test passed!");
+
+		// Cleanup
+		Files.delete(indexFile);
+		Files.delete(tempDir);
+	}
+
+	private static void runOnce(AtomicReference<Runnable> action) {
+		Runnable pending = action.getAndSet(null);
+		if (pending != null) {
+			pending.run();
+		}
+	}
+
+	private static void reloadWith(ReloadableIndexReader reader, Path indexFile, String json) {
+		try {
+			Files.writeString(indexFile, json);
+			reader.load();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Test
+	public void testPinnedReaderKeepsItsVersionAcrossReload(@TempDir Path tempDir) throws Exception {
+		BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "pinned");
+		writer.addWord("alice", 1, 3);
+		writer.addWord("alice", 2, 1);
+		writer.setDocumentLength(1, 10);
+		writer.setDocumentLength(2, 20);
+		writer.save();
+
+		List<InvertedIndexReader> closed = new ArrayList<>();
+		ReloadableIndexReader reader = new ReloadableIndexReader(() -> new BinaryIndexReader(tempDir.toString(), "pinned") {
+			@Override
+			public void close() {
+				closed.add(this);
+				super.close();
+			}
+		}, null);
+		reader.load();
+		assertEquals(1, closed.size(), "the unloaded placeholder is closed by the first load");
+		ArrayPostingsEngine engine = new ArrayPostingsEngine(reader);
+
+		InvertedIndexReader.Pinned pinned = reader.pin();
+		long pinnedGeneration = pinned.reader().generation();
+		assertEquals(reader.generation(), pinnedGeneration);
+
+		writer.clear();
+		writer.addWord("alice", 3, 2);
+		writer.addWord("hatter", 4, 1);
+		writer.setDocumentLength(3, 30);
+		writer.setDocumentLength(4, 40);
+		writer.save();
+		reader.load();
+
+		// The pinned query still reads the version it started on, all of it
+		InvertedIndexReader version = pinned.reader();
+		assertArrayEquals(new int[]{1, 2}, version.postings("alice").toIntArray());
+		assertEquals(3, version.termPostings("alice").frequencyAt(0));
+		assertEquals(20, version.documentLength(2));
+		assertArrayEquals(new int[]{1, 2}, engine.over(version).allDocuments().toArray());
+		assertEquals(pinnedGeneration, version.generation());
+		assertNotEquals(pinnedGeneration, reader.generation());
+		assertEquals(1, closed.size(), "a pinned version stays open");
+
+		// New queries see the reload, and the old version is closed once its last query is done
+		assertArrayEquals(new int[]{3}, reader.postings("alice").toIntArray());
+		assertArrayEquals(new int[]{3, 4}, engine.allDocuments().toArray());
+		pinned.close();
+		pinned.close();
+		assertEquals(2, closed.size());
+		assertFalse(version.isLoaded());
+
+		reader.close();
+		assertEquals(3, closed.size());
+		assertThrows(IllegalStateException.class, () -> reader.postings("alice"));
+
+		System.out.println("Pinned reader test passed!");
+	}
+
+	@Test
+	public void testLoadRejectsFilesFromDifferentBuilds(@TempDir Path tempDir) throws Exception {
+		BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "mixed", true);
+		writer.addWord("alice", 1, new int[]{0, 4});
+		writer.setDocumentLength(1, 10);
+		writer.save();
+		Path old = Files.createDirectory(tempDir.resolve("old"));
+		for (String suffix : List.of(".postings", ".positions")) {
+			Files.copy(tempDir.resolve("mixed" + suffix), old.resolve("mixed" + suffix));
+		}
+
+		writer.addWord("alice", 2, new int[]{1});
+		writer.setDocumentLength(2, 20);
+		writer.save();
+		Path current = Files.createDirectory(tempDir.resolve("current"));
+		Files.copy(tempDir.resolve("mixed.postings"), current.resolve("mixed.postings"));
+
+		// A postings file from the previous save, as a reload racing the writer would see it
+		Files.copy(old.resolve("mixed.postings"), tempDir.resolve("mixed.postings"), StandardCopyOption.REPLACE_EXISTING);
+		BinaryIndexReader reader = new BinaryIndexReader(tempDir.toString(), "mixed");
+		IOException mixed = assertThrows(IOException.class, reader::load);
+		assertTrue(mixed.getMessage().contains("different builds"));
+		assertFalse(reader.isLoaded());
+		assertThrows(IOException.class, () -> new BinaryIndexWriter(tempDir.toString(), "mixed", true).load());
+
+		Files.copy(current.resolve("mixed.postings"), tempDir.resolve("mixed.postings"), StandardCopyOption.REPLACE_EXISTING);
+		reader.load();
+		assertArrayEquals(new int[]{1, 2}, reader.postings("alice").toIntArray());
+		assertTrue(reader.hasPositions());
+		reader.close();
+
+		// Stale positions alone are dropped rather than failing the load
+		Files.copy(old.resolve("mixed.positions"), tempDir.resolve("mixed.positions"), StandardCopyOption.REPLACE_EXISTING);
+		reader = new BinaryIndexReader(tempDir.toString(), "mixed");
+		reader.load();
+		assertArrayEquals(new int[]{1, 2}, reader.postings("alice").toIntArray());
+		assertFalse(reader.hasPositions());
+		reader.close();
+
+		System.out.println("Mixed build files test passed!");
+	}
+
+	@Test
+	public void testFrontCodedDictionaryMatchesSortedSet() {
+		Random random = new Random(15);
+		TreeSet<String> words = new TreeSet<>();
+		while (words.size() < 2000) {
+			StringBuilder word = new StringBuilder();
+			int length = 1 + random.nextInt(8);
+			for (int i = 0; i < length; i++) {
+				word.append((char) ('a' + random.nextInt(6)));
+			}
+			words.add(word.toString());
+		}
+
+		List<byte[]> sorted = new ArrayList<>();
+		for (String word : words) {
+			sorted.add(word.getBytes(StandardCharsets.UTF_8));
+		}
+		FrontCodedDictionary dictionary = FrontCodedDictionary.build(sorted, 16);
+		List<String> ordered = new ArrayList<>(words);
+
+		assertEquals(words.size(), dictionary.size());
+		for (int i = 0; i < ordered.size(); i += 7) {
+			assertEquals(ordered.get(i), dictionary.term(i));
+			assertEquals(i, dictionary.find(sorted.get(i)));
+		}
+		for (String probe : List.of("", "a", "abc", "ccc", "fff", "ffffffffff", "zzz")) {
+			int expected = words.headSet(probe).size();
+			assertEquals(expected, dictionary.ceiling(probe.getBytes(StandardCharsets.UTF_8)), probe);
+			assertEquals(words.contains(probe) ? expected : -1, dictionary.find(probe.getBytes(StandardCharsets.UTF_8)), probe);
+		}
+
+		System.out.println("Front-coded dictionary test passed!");
+	}
+
+	@Test
+	public void testWildcardQueries() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-wildcard");
+		Path indexFile = tempDir.resolve("test_index.json");
+
+		String testIndex = """
+            {
+              "alice": [1, 2],
+              "alicia": [3],
+              "alien": [4],
+              "woman": [5],
+              "women": [6],
+              "wombat": [7]
+            }
+        """;
+		Files.writeString(indexFile, testIndex);
+
+		JsonIndexReader reader = new JsonIndexReader(tempDir.toString(), "test_index.json");
+		reader.load();
+
+		List<String> prefixed = new ArrayList<>();
+		reader.forEachTerm("ali", prefixed::add);
+		assertEquals(List.of("alice", "alicia", "alien"), prefixed);
+
+		QueryPlanner planner = new QueryPlanner(new ArrayPostingsEngine(reader), 2);
+		QueryParser parser = new QueryParser(QueryParser.Operator.AND);
+
+		assertArrayEquals(new int[]{1, 2, 3}, planner.evaluate(planner.rewrite(parser.parse("alic*"))).toArray());
+		assertArrayEquals(new int[]{5, 6}, planner.evaluate(planner.rewrite(parser.parse("wom?n"))).toArray());
+		assertArrayEquals(new int[]{4}, planner.evaluate(planner.rewrite(parser.parse("al*n"))).toArray());
+		assertEquals(List.of("alice", "alicia"), planner.rewrite(parser.parse("alic*")).positiveTerms());
+		assertTrue(planner.evaluate(planner.rewrite(parser.parse("zebra*"))).isEmpty());
+		assertArrayEquals(new int[]{3}, planner.evaluate(planner.rewrite(parser.parse("alic* NOT alice"))).toArray());
+
+		assertThrows(IllegalArgumentException.class, () -> planner.rewrite(parser.parse("al*")));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("*ice"));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("alic* NEAR/3 woman"));
+
+		System.out.println("Wildcard query test passed!");
+
+		// Cleanup
+		Files.delete(indexFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testFuzzyQueries() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-fuzzy");
+		Path indexFile = tempDir.resolve("test_index.json");
+
+		String testIndex = """
+            {
+              "alice": [1, 2],
+              "alive": [3],
+              "slice": [4],
+              "malice": [5],
+              "whale": [6],
+              "straße": [7]
+            }
+        """;
+		Files.writeString(indexFile, testIndex);
+
+		JsonIndexReader reader = new JsonIndexReader(tempDir.toString(), "test_index.json");
+		reader.load();
+
+		List<String> close = new ArrayList<>();
+		reader.forEachFuzzyTerm(new LevenshteinAutomaton("alise", 1), (word, distance) -> close.add(word + ":" + distance));
+		assertEquals(List.of("alice:1", "alive:1"), close);
+
+		// The dictionary walk must agree with checking every word
+		Random random = new Random(11);
+		for (int i = 0; i < 200; i++) {
+			StringBuilder word = new StringBuilder();
+			for (int j = random.nextInt(7); j >= 0; j--) {
+				word.append("acelisvß".charAt(random.nextInt(8)));
+			}
+			LevenshteinAutomaton automaton = new LevenshteinAutomaton(word.toString(), 1 + random.nextInt(2));
+			List<String> walked = new ArrayList<>();
+			reader.forEachFuzzyTerm(automaton, (term, distance) -> walked.add(term));
+			List<String> scanned = new ArrayList<>();
+			for (String term : new TreeSet<>(reader.getIndex().keySet())) {
+				if (automaton.distance(term) <= automaton.maxEdits()) {
+					scanned.add(term);
+				}
+			}
+			assertEquals(scanned, walked, "fuzzy words for " + automaton);
+		}
+
+		QueryPlanner planner = new QueryPlanner(new ArrayPostingsEngine(reader));
+		QueryParser parser = new QueryParser(QueryParser.Operator.AND);
+
+		assertEquals(new QueryNode.Fuzzy("alise", 1), parser.parse("alise~"));
+		assertEquals(new QueryNode.Fuzzy("alise", 2), parser.parse("ALISE~2"));
+		assertEquals(new QueryNode.Term("alise"), parser.parse("alise~0"));
+		assertArrayEquals(new int[]{1, 2, 3}, planner.evaluate(planner.rewrite(parser.parse("alise~"))).toArray());
+		assertArrayEquals(new int[]{1, 2, 3, 4, 5}, planner.evaluate(planner.rewrite(parser.parse("alice~2"))).toArray());
+		assertArrayEquals(new int[]{7}, planner.evaluate(planner.rewrite(parser.parse("strasse~2"))).toArray());
+		assertArrayEquals(new int[]{3}, planner.evaluate(planner.rewrite(parser.parse("alise~ NOT alice"))).toArray());
+		assertEquals(List.of("alice", "alive", "malice", "slice"), planner.expand(new QueryNode.Fuzzy("alice", 1)));
+
+		// Fallback only rewrites unknown words outside NOT, and leaves words too short for an edit
+		QueryNode fallback = planner.fuzzyFallback(parser.parse("whalle AND NOT alise"));
+		assertArrayEquals(new int[]{6}, planner.evaluate(fallback).toArray());
+		assertEquals(new QueryNode.Term("alive"), planner.fuzzyFallback(new QueryNode.Term("alive")));
+		assertEquals(new QueryNode.Term("xy"), planner.fuzzyFallback(new QueryNode.Term("xy")));
+		// Stop words are missing from the index on purpose and are not turned into fuzzy words
+		QueryPlanner stopWordPlanner = new QueryPlanner(new ArrayPostingsEngine(reader), StopWords.parse("the,of,alike", 3, 50));
+		QueryNode withStopWords = stopWordPlanner.fuzzyFallback(parser.parse("whalle of the alike"));
+		assertEquals(List.of("whale", "of", "the", "alike"), withStopWords.positiveTerms());
+		assertArrayEquals(new int[]{6}, stopWordPlanner.evaluate(withStopWords).toArray());
+		assertEquals(new QueryNode.Term("alike"), stopWordPlanner.fuzzyFallback(new QueryNode.Term("alike")));
+		assertNotEquals(new QueryNode.Term("alike"), planner.fuzzyFallback(new QueryNode.Term("alike")));
+
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("alice~3"));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("ali*~1"));
+		assertThrows(IllegalArgumentException.class, () -> parser.parse("alice~ NEAR/3 whale"));
+
+		System.out.println("Fuzzy query test passed!");
+
+		// Cleanup
+		Files.delete(indexFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testQueryResultCache() {
+		QueryParser parser = new QueryParser(QueryParser.Operator.AND);
+		QueryResultCache cache = new QueryResultCache(1100);
+		List<SearchResult> results = List.of(new SearchResult(11, "Alice", "Carroll", "en", 1865, 1.5));
+
+		// Parsed queries make spacing, case and the default operator irrelevant
+		QueryResultCache.Key alice = new QueryResultCache.Key(parser.parse("Alice  AND rabbit"), null, "en", null, 10);
+		assertEquals(alice, new QueryResultCache.Key(parser.parse("alice rabbit"), null, "en", null, 10));
+		assertNotEquals(alice, new QueryResultCache.Key(parser.parse("alice rabbit"), null, "en", null, 20));
+
+		assertNull(cache.get(alice, 0));
+		cache.put(alice, 0, results);
+		assertEquals(results, cache.get(alice, 0));
+
+		// Each entry weighs 300 to 400 bytes, so only three fit
+		List<QueryResultCache.Key> others = new ArrayList<>();
+		for (String word : List.of("whale", "queen", "tiger")) {
+			QueryResultCache.Key key = new QueryResultCache.Key(parser.parse(word), null, null, null, 10);
+			others.add(key);
+			cache.get(key, 0);
+			cache.put(key, 0, results);
+		}
+
+		// "tiger" was asked for once, less often than the least recently used entry, so it is not admitted
+		QueryResultCache.Stats stats = cache.stats();
+		assertEquals(3, stats.entries());
+		assertEquals(1, stats.rejections());
+		assertNotNull(cache.get(alice, 0));
+		assertNull(cache.get(others.get(2), 0));
+
+		// Once it is popular it displaces the least recently used entry
+		cache.get(others.get(2), 0);
+		cache.get(others.get(2), 0);
+		cache.put(others.get(2), 0, results);
+		assertEquals(results, cache.get(others.get(2), 0));
+		assertNull(cache.get(others.get(0), 0));
+		assertEquals(1, cache.stats().evictions());
+		assertTrue(cache.stats().sizeBytes() <= 1100);
+
+		// A new index generation drops everything, and results from the old one are not cached
+		assertNull(cache.get(alice, 1));
+		cache.put(alice, 0, results);
+		assertNull(cache.get(alice, 1));
+		stats = cache.stats();
+		assertEquals(0, stats.entries());
+		assertEquals(1, stats.invalidations());
+		assertTrue(stats.hitRate() > 0 && stats.hitRate() < 1);
+
+		QueryResultCache disabled = new QueryResultCache(0);
+		disabled.put(alice, 0, results);
+		assertNull(disabled.get(alice, 0));
+
+		System.out.println("Query result cache test passed!");
+	}
+
+	@Test
+	public void testMetadataStoreLoadsAndRefreshes() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-metadata");
+		Path dbFile = tempDir.resolve("books.sqlite");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+			 Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE books (book_id INTEGER PRIMARY KEY, title TEXT, author TEXT, language TEXT, "
+					+ "year INTEGER, path TEXT, indexed_at DATETIME DEFAULT CURRENT_TIMESTAMP)");
+			stmt.execute("INSERT INTO books VALUES (11, 'Alice in Wonderland', 'Lewis Carroll', 'en', 1865, 'a', '2024-01-01 10:00:00')");
+			stmt.execute("INSERT INTO books VALUES (12, 'Through the Looking-Glass', 'Lewis Carroll', 'en', 1871, 'b', '2024-01-01 10:00:00')");
+			stmt.execute("INSERT INTO books VALUES (2000, 'Don Quijote', 'Miguel de Cervantes', 'ES', NULL, 'c', '2024-01-01 10:00:05')");
+			stmt.execute("INSERT INTO books VALUES (900000000, 'Far away', 'Nobody', 'en', 2000, 'd', '2024-01-01 10:00:05')");
+
+			SqliteMetadataRepository repository = new SqliteMetadataRepository(dbFile.toString());
+			try {
+				MetadataStore store = new MetadataStore(repository);
+				store.load();
+				long loadedVersion = store.version();
+
+				assertEquals(4, store.size());
+				assertTrue(store.contains(900000000));
+				assertFalse(store.contains(13));
+				assertEquals(new SearchResult(2000, "Don Quijote", "Miguel de Cervantes", "ES", null, 1.5),
+						store.toResult(2000, 1.5));
+				assertNull(store.toResult(13, 1.0));
+				assertEquals("c", store.get(2000).orElseThrow().path());
+
+				assertArrayEquals(new int[]{11, 12}, store.matching("carroll", null, null).toArray());
+				assertArrayEquals(new int[]{2000}, store.matching(null, "es", null).toArray());
+				assertArrayEquals(new int[]{12}, store.matching("LEWIS", "en", 1871).toArray());
+				assertNull(store.matching(null, null, null));
+				assertTrue(store.matching(null, "fr", null).isEmpty());
+				assertEquals(List.of(11, 12, 2000), store.firstBooks(3).stream().map(SearchResult::bookId).toList());
+
+				// Nothing written since the last load: nothing changes
+				store.refresh();
+				assertEquals(loadedVersion, store.version());
+
+				stmt.execute("INSERT INTO books VALUES (13, 'The Hunting of the Snark', 'Lewis Carroll', 'en', 1876, 'e', '2024-01-01 10:01:00')");
+				stmt.execute("UPDATE books SET title = 'Don Quixote', indexed_at = '2024-01-01 10:01:00' WHERE book_id = 2000");
+				stmt.execute("UPDATE books SET title = 'Ignored', indexed_at = '2023-12-31 00:00:00' WHERE book_id = 11");
+				// Row 900000000 shares the previous watermark's second, so it is read again
+				assertEquals(3, store.refresh());
+				assertTrue(store.version() > loadedVersion);
+				assertEquals(5, store.size());
+				assertEquals("Don Quixote", store.toResult(2000, 0).title());
+				assertEquals("Alice in Wonderland", store.toResult(11, 0).title());
+				assertArrayEquals(new int[]{11, 12, 13}, store.matching("carroll", null, null).toArray());
+
+				// A deleted book makes the next refresh load everything again
+				stmt.execute("DELETE FROM books WHERE book_id = 12");
+				store.refresh();
+				assertEquals(4, store.size());
+				assertFalse(store.contains(12));
+				assertEquals("Ignored", store.toResult(11, 0).title());
+			} finally {
+				repository.close();
+			}
+		}
+
+		System.out.println("Metadata store test passed!");
+
+		// Cleanup
+		Files.delete(dbFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testMetadataFilterBitmaps() throws Exception {
+		Path tempDir = Files.createTempDirectory("test-filters");
+		Path dbFile = tempDir.resolve("books.sqlite");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+			 Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE books (book_id INTEGER PRIMARY KEY, title TEXT, author TEXT, language TEXT, "
+					+ "year INTEGER, path TEXT, indexed_at DATETIME DEFAULT CURRENT_TIMESTAMP)");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (1, 'A', 'Lewis Carroll', 'en', 1865, 'a')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (2, 'B', 'Lewis Carroll', 'EN', 1871, 'b')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (3, 'C', 'Abc Xbcd', 'fr', 1865, 'c')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (70000, 'D', 'Abcd Ef', 'en', NULL, 'd')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (5, 'E', NULL, NULL, 1865, 'e')");
+
+			SqliteMetadataRepository repository = new SqliteMetadataRepository(dbFile.toString());
+			try {
+				MetadataStore store = new MetadataStore(repository);
+				store.load();
+
+				assertNull(store.matching(null, null, null));
+				assertArrayEquals(new int[]{1, 2, 70000}, store.matching(null, "En", null).toArray());
+				assertArrayEquals(new int[]{1, 3, 5}, store.matching(null, null, 1865).toArray());
+				assertArrayEquals(new int[]{1}, store.matching(null, "en", 1865).toArray());
+				assertTrue(store.matching(null, "de", null).isEmpty());
+				assertTrue(store.matching(null, null, 1999).isEmpty());
+
+				// Every trigram of "is car" occurs in "Lewis Carroll", across the space too
+				assertArrayEquals(new int[]{1, 2}, store.matching("IS CAR", null, null).toArray());
+				// "Abc Xbcd" has both trigrams of "abcd" but not the text itself
+				assertArrayEquals(new int[]{70000}, store.matching("abcd", null, null).toArray());
+				// Too short for trigrams, every author is checked
+				assertArrayEquals(new int[]{3, 70000}, store.matching("bc", null, null).toArray());
+				assertTrue(store.matching("tolkien", null, null).isEmpty());
+				assertArrayEquals(new int[]{3}, store.matching("abc", "fr", 1865).toArray());
+
+				// Moving a book to another author and language updates the bitmaps
+				stmt.execute("UPDATE books SET author = 'Jules Verne', language = 'fr', indexed_at = datetime('now', '+1 minute') WHERE book_id = 2");
+				store.refresh();
+				assertArrayEquals(new int[]{1}, store.matching("carroll", null, null).toArray());
+				assertArrayEquals(new int[]{2, 3}, store.matching(null, "fr", null).toArray());
+				assertArrayEquals(new int[]{2}, store.matching("verne", "fr", 1871).toArray());
+			} finally {
+				repository.close();
+			}
+		}
+
+		System.out.println("Metadata filter bitmaps test passed!");
+
+		// Cleanup
+		Files.delete(dbFile);
+		Files.delete(tempDir);
+	}
+
+	@Test
+	public void testMetadataFacets(@TempDir Path tempDir) throws Exception {
+		Path dbFile = tempDir.resolve("books.sqlite");
+
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+			 Statement stmt = connection.createStatement()) {
+			stmt.execute("CREATE TABLE books (book_id INTEGER PRIMARY KEY, title TEXT, author TEXT, language TEXT, "
+					+ "year INTEGER, path TEXT, indexed_at DATETIME DEFAULT CURRENT_TIMESTAMP)");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (1, 'A', 'Lewis Carroll', 'en', 1865, 'a')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (2, 'B', 'Lewis Carroll', 'EN', 1871, 'b')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (3, 'C', 'Abc Xbcd', 'fr', 1865, 'c')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (70000, 'D', 'Abcd Ef', 'en', NULL, 'd')");
+			stmt.execute("INSERT INTO books (book_id, title, author, language, year, path) VALUES (5, 'E', NULL, NULL, 1865, 'e')");
+		}
+
+		SqliteMetadataRepository repository = new SqliteMetadataRepository(dbFile.toString());
+		try {
+			MetadataStore store = new MetadataStore(repository);
+			store.load();
+
+			// Facets count each known book once, unknown IDs and values are skipped
+			SearchFacets facets = store.facets(new int[]{1, 2, 3, 5, 999, 70000}, 10, 2);
+			assertEquals(5, facets.total());
+			assertEquals(Map.of("en", 3, "fr", 1), facets.languages());
+			assertEquals(List.of("en", "fr"), List.copyOf(facets.languages().keySet()));
+			assertEquals(List.of("1860-1869", "1870-1879"), List.copyOf(facets.years().keySet()));
+			assertEquals(List.of(3, 1), List.copyOf(facets.years().values()));
+			assertEquals(List.of("Lewis Carroll", "Abc Xbcd"), List.copyOf(facets.authors().keySet()));
+			assertEquals(2, facets.authors().get("Lewis Carroll"));
+			assertEquals(Map.of("1865", 3, "1871", 1), store.facets(new int[]{1, 2, 3, 5}, 1, 10).years());
+			assertEquals(0, store.facets(new int[0], 10, 10).total());
+			assertThrows(IllegalArgumentException.class, () -> store.facets(new int[]{1}, 0, 10));
+
+
+			// Through the service the facets cover every match, not just the returned page
+			BinaryIndexWriter writer = new BinaryIndexWriter(tempDir.toString(), "facets");
+			for (int bookId : new int[]{1, 2, 3, 5, 999, 70000}) {
+				writer.addWord("rabbit", bookId, 1 + bookId % 3);
+				writer.setDocumentLength(bookId, 100);
+			}
+			writer.addWord("hole", 1, 1);
+			writer.addWord("hole", 3, 1);
+			writer.save();
+			BinaryIndexReader reader = new BinaryIndexReader(tempDir.toString(), "facets");
+			reader.load();
+			SearchService service = new SearchService(store, reader, new ArrayPostingsEngine(reader),
+					new QueryParser(QueryParser.Operator.AND), StopWords.NONE, new Bm25Scorer(reader, 1.2, 0.75),
+					10, false, new QueryResultCache(1 << 20));
+
+			// A cached page still gets its facets counted
+			assertEquals(2, service.search("rabbit", null, null, null, 2).size());
+			SearchService.FacetedResults all = service.searchWithFacets("rabbit", null, null, null, 2, 10, 2);
+			assertEquals(2, all.results().size());
+			assertEquals(store.facets(new int[]{1, 2, 3, 5, 999, 70000}, 10, 2), all.facets());
+
+			SearchService.FacetedResults french = service.searchWithFacets("rabbit", null, "FR", null, 10, 1, 10);
+			assertEquals(List.of(3), french.results().stream().map(SearchResult::bookId).toList());
+			assertEquals(1, french.facets().total());
+			assertEquals(Map.of("fr", 1), french.facets().languages());
+			assertEquals(Map.of("1865", 1), french.facets().years());
+			assertEquals(Map.of("Abc Xbcd", 1), french.facets().authors());
+
+			// Filters differing only in case and surrounding spaces share a cache entry, so they must match alike
+			List<SearchResult> padded = service.search("rabbit", " CARROLL ", " en", null, 10);
+			assertEquals(List.of(1, 2), padded.stream().map(SearchResult::bookId).sorted().toList());
+			assertEquals(padded, service.search("rabbit", "carroll", "en", null, 10));
+			assertEquals(2, service.searchWithFacets("rabbit", "carroll ", null, null, 10, 10, 10).facets().total());
+
+			assertEquals(2, service.searchWithFacets("rabbit hole", null, null, null, 10, 10, 10).facets().total());
+			assertEquals(SearchFacets.EMPTY, service.searchWithFacets(" ", null, null, null, 10, 10, 10).facets());
+			reader.close();
+		} finally {
+			repository.close();
+		}
+
+		System.out.println("Metadata facets test passed!");
+	}
+}